@@ -29,6 +29,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Queue;
 import java.util.Set;
+import java.util.function.Consumer;
 
 import com.blackrook.engine.EngineResourceSet.ResourceSet;
 import com.blackrook.engine.EngineLoggingFactory.LogLevel;
@@ -36,6 +37,8 @@ import com.blackrook.engine.EngineLoggingFactory.Logger;
 import com.blackrook.engine.annotation.EngineElement;
 import com.blackrook.engine.annotation.element.Ordering;
 import com.blackrook.engine.exception.EngineSetupException;
+import com.blackrook.engine.handler.EngineInputCaptureStack;
+import com.blackrook.engine.handler.EngineInputHandler;
 import com.blackrook.engine.receiver.EngineInputEventReceiver;
 import com.blackrook.engine.receiver.EngineMessageReceiver;
 import com.blackrook.engine.receiver.EngineWindowEventReceiver;
@@ -43,6 +46,7 @@ import com.blackrook.engine.roles.EngineDevice;
 import com.blackrook.engine.roles.EngineInputBroadcaster;
 import com.blackrook.engine.roles.EngineInputListener;
 import com.blackrook.engine.roles.EngineMessageBroadcaster;
+import com.blackrook.engine.roles.EngineRawWindowListener;
 import com.blackrook.engine.roles.EngineShutdownListener;
 import com.blackrook.engine.roles.EngineWindowListener;
 import com.blackrook.engine.roles.EngineReadyListener;
@@ -51,6 +55,7 @@ import com.blackrook.engine.roles.EngineResourceGenerator;
 import com.blackrook.engine.roles.EngineSettingsListener;
 import com.blackrook.engine.roles.EngineUpdateListener;
 import com.blackrook.engine.roles.EngineWindowBroadcaster;
+import com.blackrook.engine.struct.CopyOnWriteOrderedList;
 import com.blackrook.engine.struct.OrderedProperties;
 import com.blackrook.engine.struct.Utils;
 
@@ -73,6 +78,10 @@ public final class Engine
 	private EngineInputEventReceiver inputEventReceiver; 
 	/** Common window event receiver. */
 	private EngineWindowEventReceiver windowEventReceiver; 
+	/** Window mouse move/resize event coalescer. Can be null. */
+	private EngineWindowEventCoalescer windowEventCoalescer; 
+	/** Input/window event recorder. Can be null. */
+	private volatile EngineInputRecorder inputRecorder; 
 
 	/** Engine singleton-in-construction set. */
 	private Set<Class<?>> singletonsConstructing;
@@ -88,11 +97,13 @@ public final class Engine
 	/** Engine shutdown listener. */
 	private Queue<EngineShutdownListener> shutdownListeners;
 	/** Engine window listener. */
-	private Queue<EngineWindowListener> windowListeners;
+	private CopyOnWriteOrderedList<EngineWindowListener> windowListeners;
 	/** Engine message listeners. */
-	private Queue<EngineMessageListener> messageListeners;
+	private CopyOnWriteOrderedList<EngineMessageListener> messageListeners;
 	/** Engine input listeners. */
-	private Queue<EngineInputListener> inputListeners;
+	private CopyOnWriteOrderedList<EngineInputListener> inputListeners;
+	/** Engine input captures, consulted before the input listeners. */
+	private EngineInputCaptureStack inputCaptures;
 	/** Engine update ticker. */
 	private EngineTicker updateTicker;
 	
@@ -138,20 +149,52 @@ public final class Engine
 
 		// Create resources.
 		out.logger.debug("Gathering/creating resources...");
-		EngineResourceSet resources = new EngineResourceSet();
+		Integer definitionThreads = config.getResourceDefinitionThreadCount();
+		EngineResourceSet resources = new EngineResourceSet(out.loggingFactory.getLogger(EngineResourceDefinitionReader.class, false), resourceClasses, definitionThreads != null ? definitionThreads : 1);
 		out.singletons.put(EngineResourceSet.class, resources);
+		out.console.addEntries(resources, debugMode);
 
 		// Call generators first.
+		List<EngineResourceGenerator> generatorList = new ArrayList<>(generators.size());
 		for (OrderingNode<EngineResourceGenerator> generatorNode : generators)
+			generatorList.add(generatorNode.object);
+		File snapshotFile = null;
+		byte[] snapshotHash = null;
+		if (config.getResourceSnapshotFile() != null)
 		{
-			EngineResourceGenerator generator = generatorNode.object;
-			out.logger.debugf("Calling generator class %s...", generator.getClass().getSimpleName());
+			snapshotFile = new File(fileSystem.getGlobalSettingFilePath(config.getResourceSnapshotFile()));
 			try {
-				generator.createResources(out.loggingFactory.getLogger(generator.getClass()), fileSystem, resources);
-			} catch (EngineSetupException e) {
-				throw e;
-			} catch (Exception e) {
-				throw new EngineSetupException("An error occurred during resource generation.", e);
+				snapshotHash = EngineResourceSnapshot.hashInputs(fileSystem, generatorList, config.getResourceSnapshotVersion());
+			} catch (IOException e) {
+				out.logger.warnf("Could not hash resource inputs, so the resource snapshot will not be used: %s", e.getMessage());
+			}
+		}
+		
+		Integer cacheSize = config.getResourceCacheSize();
+		boolean fromSnapshot = snapshotHash != null && EngineResourceSnapshot.load(out.logger, resources, snapshotFile, snapshotHash, cacheSize != null ? cacheSize : 0);
+		if (!fromSnapshot)
+		{
+			Integer generatorThreads = config.getResourceGeneratorThreadCount();
+			(new EngineResourceGeneratorRunner(out.logger, out.loggingFactory, fileSystem, resources, generatorList))
+				.run(generatorThreads != null ? generatorThreads : 1);
+			if (snapshotHash != null)
+				EngineResourceSnapshot.save(out.logger, resources, snapshotFile, snapshotHash);
+		}
+		
+		// Watch definition files for changes. The snapshot does not record which resources came from which file.
+		if (config.getResourceDefinitionReload() && fromSnapshot)
+		{
+			out.logger.warn("Resources were loaded from the resource snapshot, so definition files will not be reloaded.");
+		}
+		else if (config.getResourceDefinitionReload())
+		{
+			EngineResourceReloader reloader = new EngineResourceReloader(out.loggingFactory.getLogger(EngineResourceReloader.class, false), resources, out.messageReceiver, fileSystem.getFolderArchivePaths());
+			try {
+				reloader.start();
+				out.updateTicker.add(reloader, Integer.MIN_VALUE);
+				out.shutdownListeners.add(reloader);
+			} catch (IOException e) {
+				out.logger.warnf("Could not watch resource definition files, so they will not be reloaded: %s", e.getMessage());
 			}
 		}
 
@@ -248,12 +291,13 @@ public final class Engine
 		singletonsConstructing = new HashSet<>();
 		singletons = new HashMap<>();
 		devices = new HashMap<>();
-		windowListeners = new LinkedList<>();
+		windowListeners = new CopyOnWriteOrderedList<>();
 		settingsListeners = new LinkedList<>();
 		readyListeners = new LinkedList<>(); 
 		shutdownListeners = new LinkedList<>();
-		messageListeners = new LinkedList<>();
-		inputListeners = new LinkedList<>();
+		messageListeners = new CopyOnWriteOrderedList<>();
+		inputListeners = new CopyOnWriteOrderedList<>();
+		inputCaptures = new EngineInputCaptureStack();
 
 		loggingFactory = new EngineLoggingFactory();
 		logger = loggingFactory.getLogger(Engine.class, false);
@@ -275,97 +319,183 @@ public final class Engine
 			@Override
 			public void fireInputFlag(String code, boolean set)
 			{
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireInputFlag(code, set);
+				// the capturer already had its chance, so it is skipped if the input falls through.
+				EngineInputHandler capturer;
+				if ((capturer = inputCaptures.getCapturer(code)) != null && capturer.onInputFlag(code, set))
+					return;
 				for (EngineInputListener listener : inputListeners)
-					if (listener.onInputFlag(code, set))
+					if (listener != capturer && listener.onInputFlag(code, set))
 						break;
 			}
 
 			@Override
 			public void fireInputValue(String code, double value)
 			{
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireInputValue(code, value);
+				EngineInputHandler capturer;
+				if ((capturer = inputCaptures.getCapturer(code)) != null && capturer.onInputValue(code, value))
+					return;
 				for (EngineInputListener listener : inputListeners)
-					if (listener.onInputValue(code, value))
+					if (listener != capturer && listener.onInputValue(code, value))
 						break;
 			}
 		};
 		
+		// Create window event coalescer.
+		if (config.getWindowEventCoalescingInterval() != null && config.getUpdatesPerSecond() != null)
+			windowEventCoalescer = new EngineWindowEventCoalescer(windowListeners, config.getWindowEventCoalescingInterval());
+		else
+		{
+			if (config.getWindowEventCoalescingInterval() != null)
+				logger.warn("Window event coalescing interval is set, but there is no update ticker (no updates per second). Window events will not be coalesced.");
+			windowEventCoalescer = null;
+		}
+		
 		// Create event receiver.
 		windowEventReceiver = new EngineWindowEventReceiver()
 		{
 			@Override
 			public void fireRestore()
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onRestore();
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireRestore();
+				fireWindowEvent((listener) -> listener.onRestore());
 			}
 			
 			@Override
 			public void fireMouseExit()
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onMouseExit();
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireMouseExit();
+				fireWindowEvent((listener) -> listener.onMouseExit());
 			}
 			
 			@Override
 			public void fireMouseEnter()
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onMouseEnter();
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireMouseEnter();
+				fireWindowEvent((listener) -> listener.onMouseEnter());
 			}
 			
 			@Override
 			public void fireMouseMove(int canvasX, int canvasY)
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onMouseMove(canvasX, canvasY);
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireMouseMove(canvasX, canvasY);
+				if (windowEventCoalescer != null)
+				{
+					for (EngineWindowListener listener : windowListeners)
+						if (listener instanceof EngineRawWindowListener)
+							listener.onMouseMove(canvasX, canvasY);
+					windowEventCoalescer.mouseMove(canvasX, canvasY);
+				}
+				else
+				{
+					for (EngineWindowListener listener : windowListeners)
+						listener.onMouseMove(canvasX, canvasY);
+				}
 			}
 
 			@Override
 			public void fireMinimize()
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onMinimize();
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireMinimize();
+				fireWindowEvent((listener) -> listener.onMinimize());
 			}
 			
 			@Override
 			public void fireFocus()
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onFocus();
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireFocus();
+				fireWindowEvent((listener) -> listener.onFocus());
 			}
 			
 			@Override
 			public void fireClosing()
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onClosing();
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireClosing();
+				fireWindowEvent((listener) -> listener.onClosing());
 			}
 			
 			@Override
 			public void fireBlur()
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onBlur();
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireBlur();
+				fireWindowEvent((listener) -> listener.onBlur());
 			}
 
 			@Override
 			public void fireResize(int width, int height)
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onResize(width, height);
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireResize(width, height);
+				if (windowEventCoalescer != null)
+				{
+					for (EngineWindowListener listener : windowListeners)
+						if (listener instanceof EngineRawWindowListener)
+							listener.onResize(width, height);
+					windowEventCoalescer.resize(width, height);
+				}
+				else
+				{
+					for (EngineWindowListener listener : windowListeners)
+						listener.onResize(width, height);
+				}
 			}
 
 			@Override
 			public void fireMove(int positionX, int positionY)
 			{
-				for (EngineWindowListener listener : windowListeners)
-					listener.onMove(positionX, positionY);
+				EngineInputRecorder recorder;
+				if ((recorder = inputRecorder) != null)
+					recorder.fireMove(positionX, positionY);
+				fireWindowEvent((listener) -> listener.onMove(positionX, positionY));
 			}
 			
+			// Calls the event on each listener, or queues it behind the pending coalesced events
+			// (raw listeners hear it now) so that listeners hear events in order.
+			private void fireWindowEvent(Consumer<EngineWindowListener> event)
+			{
+				if (windowEventCoalescer != null)
+				{
+					for (EngineWindowListener listener : windowListeners)
+						if (listener instanceof EngineRawWindowListener)
+							event.accept(listener);
+					windowEventCoalescer.post(event);
+				}
+				else
+				{
+					for (EngineWindowListener listener : windowListeners)
+						event.accept(listener);
+				}
+			}
 			
 		};
 
 		updateTicker = new EngineTicker(loggingFactory.getLogger(EngineTicker.class, false), this, config);
+		
+		// Coalesced window events are delivered before anything else updates.
+		if (windowEventCoalescer != null)
+			updateTicker.add(windowEventCoalescer, Integer.MIN_VALUE);
 				
 		singletons.put(Engine.class, this);
 		singletons.put(EngineConfig.class, config); // uses base class.
@@ -374,6 +504,7 @@ public final class Engine
 		// create console.
 		console = new EngineConsole(this, config);
 		console.addEntries(console, config.getDebugMode());
+		console.addEntries(updateTicker, config.getDebugMode());
 		singletons.put(EngineConsole.class, console);
 		
 		singletons.put(EngineTicker.class, updateTicker);
@@ -419,19 +550,19 @@ public final class Engine
 		
 		for (OrderingNode<EngineWindowListener> obj : lists.windowListeners)
 		{
-			windowListeners.add(obj.object);
+			windowListeners.add(obj.object, obj.ordering);
 			logger.debugf("%s added to window listeners.", obj.object.getClass().getSimpleName());
 		}
 	
 		for (OrderingNode<EngineInputListener> obj : lists.inputListeners)
 		{
-			inputListeners.add(obj.object);
+			inputListeners.add(obj.object, obj.ordering);
 			logger.debugf("%s added to input listeners.", obj.object.getClass().getSimpleName());
 		}
 		
 		for (OrderingNode<EngineMessageListener> obj : lists.messageListeners)
 		{
-			messageListeners.add(obj.object);
+			messageListeners.add(obj.object, obj.ordering);
 			logger.debugf("%s added to message listeners.", obj.object.getClass().getSimpleName());
 		}
 		
@@ -455,7 +586,7 @@ public final class Engine
 	
 		for (OrderingNode<EngineUpdateListener> obj : lists.updateListeners)
 		{
-			updateTicker.add(obj.object);
+			updateTicker.add(obj.object, obj.ordering);
 			logger.debugf("%s added to update listeners.", obj.object.getClass().getSimpleName());
 		}
 		
@@ -804,6 +935,155 @@ public final class Engine
 		return destroyDevice(name) && createDevice(name);
 	}
 
+	/**
+	 * Adds an object to the engine's listener roles while the engine is running, 
+	 * using its {@link Ordering} annotation (or 0) for its place in each role.
+	 * This is meant for objects created after startup, like spawned entities or sessions.
+	 * @param listener the listener to add.
+	 * @return true if it was added to at least one role, false if it does not implement one or was already added.
+	 * @see #addListener(Object, int)
+	 */
+	public boolean addListener(Object listener)
+	{
+		Ordering anno = listener.getClass().getAnnotation(Ordering.class);
+		return addListener(listener, anno == null ? 0 : anno.value());
+	}
+	
+	/**
+	 * Adds an object to the engine's listener roles while the engine is running.
+	 * This is meant for objects created after startup, like spawned entities or sessions.
+	 * <p>
+	 * The object is added to each role that it implements out of {@link EngineWindowListener}, {@link EngineInputListener}, 
+	 * {@link EngineMessageListener}, and {@link EngineUpdateListener}, after the listeners with an ordering less than or equal to the one provided.
+	 * Dispatches already in progress do not see the change.
+	 * @param listener the listener to add.
+	 * @param ordering the ordering value to use for its place in each role.
+	 * @return true if it was added to at least one role, false if it does not implement one or was already added.
+	 */
+	public boolean addListener(Object listener, int ordering)
+	{
+		boolean out = false;
+		if (listener instanceof EngineWindowListener)
+			out = windowListeners.add((EngineWindowListener)listener, ordering) || out;
+		if (listener instanceof EngineInputListener)
+			out = inputListeners.add((EngineInputListener)listener, ordering) || out;
+		if (listener instanceof EngineMessageListener)
+			out = messageListeners.add((EngineMessageListener)listener, ordering) || out;
+		if (listener instanceof EngineUpdateListener)
+			out = updateTicker.add((EngineUpdateListener)listener, ordering) || out;
+		if (out)
+			logger.debugf("%s added to listeners.", listener.getClass().getSimpleName());
+		return out;
+	}
+	
+	/**
+	 * Removes an object from all of the engine's listener roles while the engine is running,
+	 * and releases its input capture, if any. Dispatches already in progress do not see the change.
+	 * @param listener the listener to remove.
+	 * @return true if it was removed from at least one role, false if it was not in any.
+	 * @see #addListener(Object, int)
+	 */
+	public boolean removeListener(Object listener)
+	{
+		boolean out = false;
+		out = windowListeners.remove(listener) || out;
+		out = inputListeners.remove(listener) || out;
+		out = messageListeners.remove(listener) || out;
+		if (listener instanceof EngineUpdateListener)
+			out = updateTicker.remove((EngineUpdateListener)listener) || out;
+		inputCaptures.release(listener);
+		if (out)
+			logger.debugf("%s removed from listeners.", listener.getClass().getSimpleName());
+		return out;
+	}
+
+	/**
+	 * Makes an input handler capture a set of input codes, or all input.
+	 * Captured input goes straight to the most recent handler that captured it, before any input listener.
+	 * If that handler does not handle it, the input listeners get it as usual.
+	 * If the handler already has a capture, it is replaced.
+	 * @param handler the handler that captures the input (does not need to be an input listener).
+	 * @param codes the input codes to capture. If none are provided, all input is captured.
+	 * @see #releaseInput(EngineInputHandler)
+	 */
+	public void captureInput(EngineInputHandler handler, String ... codes)
+	{
+		inputCaptures.capture(handler, codes);
+	}
+	
+	/**
+	 * Releases an input handler's capture.
+	 * @param handler the handler to release.
+	 * @return true if it had a capture, false if not.
+	 * @see #captureInput(EngineInputHandler, String...)
+	 */
+	public boolean releaseInput(EngineInputHandler handler)
+	{
+		return inputCaptures.release(handler);
+	}
+
+	/**
+	 * Gets the receiver that input broadcasters fire input events through.
+	 * Events fired through this are heard by the input listeners as though a device fired them.
+	 * @return the engine's input event receiver.
+	 */
+	public EngineInputEventReceiver getInputEventReceiver()
+	{
+		return inputEventReceiver;
+	}
+
+	/**
+	 * Gets the receiver that window broadcasters fire window events through.
+	 * Events fired through this are heard by the window listeners as though the window fired them.
+	 * @return the engine's window event receiver.
+	 */
+	public EngineWindowEventReceiver getWindowEventReceiver()
+	{
+		return windowEventReceiver;
+	}
+
+	/**
+	 * Starts recording all input and window events heard by the engine, with the ticks they happened on.
+	 * If a recording is already in progress, it is stopped first.
+	 * @param out the output stream to write to. It is closed when the recording stops.
+	 * @throws IOException if the recording could not be started.
+	 * @see EngineInputReplayer
+	 */
+	public synchronized void startInputRecording(OutputStream out) throws IOException
+	{
+		stopInputRecording();
+		inputRecorder = new EngineInputRecorder(loggingFactory.getLogger(EngineInputRecorder.class, false), updateTicker, out);
+		logger.info("Started input recording.");
+	}
+	
+	/**
+	 * Stops the current input recording, if any, and closes its stream.
+	 * @return true if a recording was stopped, false if there was no recording in progress.
+	 */
+	public synchronized boolean stopInputRecording()
+	{
+		EngineInputRecorder recorder;
+		if ((recorder = inputRecorder) == null)
+			return false;
+		
+		inputRecorder = null;
+		try {
+			recorder.close();
+			logger.infof("Stopped input recording. %d events over %d ticks.", recorder.getEventCount(), recorder.getTickCount());
+		} catch (IOException e) {
+			logger.error(e, "Could not finish input recording.");
+		}
+		return true;
+	}
+	
+	/**
+	 * @return true if input is being recorded, false if not.
+	 */
+	public boolean isRecordingInput()
+	{
+		return inputRecorder != null;
+	}
+
 	/**
 	 * Handles an uncaught, fatal exception and initiates engine shutdown.
 	 * <p>The ticker is stopped, all devices have {@link EngineDevice#destroyDevice()} called on them, 
@@ -10,6 +10,8 @@ package com.blackrook.engine;
 import java.awt.Image;
 
 import com.blackrook.engine.EngineLoggingFactory.LogLevel;
+import com.blackrook.engine.annotation.element.ResourceDependencies;
+import com.blackrook.engine.roles.EngineRawWindowListener;
 import com.blackrook.engine.struct.Utils;
 
 /**
@@ -149,6 +151,104 @@ public interface EngineConfig
 	 */
 	public Integer getUpdatesPerSecond();
 	
+	/**
+	 * Gets the minimum amount of milliseconds between mouse move and resize events delivered to window listeners.
+	 * Consecutive events of the same kind are collapsed into the latest one and delivered on the next update tick
+	 * after the interval has passed. If this returns 0, at most one of each is delivered per update tick.
+	 * Other window events are then also delivered on the next update tick, in order, so that listeners
+	 * hear every window event on the updater's thread.
+	 * Listeners that implement {@link EngineRawWindowListener} still receive every event as it happens.
+	 * If this returns <code>null</code>, events are not coalesced (a warning is logged if this is set, but the updater is not started). 
+	 * @return the coalescing interval in milliseconds, or null for no coalescing.
+	 */
+	public default Integer getWindowEventCoalescingInterval()
+	{
+		return null;
+	}
+	
+	/**
+	 * Gets the maximum amount of resource generators to run at the same time on startup.
+	 * Generators run at the same time only if they declare what they produce and consume
+	 * with {@link ResourceDependencies} and do not depend on each other.
+	 * If this returns <code>null</code> or 1 or less, generators are run one at a time on the startup thread.
+	 * @return the amount of generator threads, or null for none.
+	 */
+	public default Integer getResourceGeneratorThreadCount()
+	{
+		return null;
+	}
+	
+	/**
+	 * Gets the maximum amount of threads to use for reading one resource definition file.
+	 * Large files are split between top-level blocks and the parts are read at the same time,
+	 * but the resources are still added in file order (see {@link EngineResourceDefinitionReader}).
+	 * If this returns <code>null</code> or 1 or less, definition files are read in one pass on the calling thread.
+	 * @return the amount of definition reader threads, or null for none.
+	 */
+	public default Integer getResourceDefinitionThreadCount()
+	{
+		return null;
+	}
+	
+	/**
+	 * Gets if resource definition files are reloaded when they change.
+	 * If true, the directories in the file system stack are watched for changes after startup. When a changed file 
+	 * was read with {@link EngineResourceSet#readDefinitions(java.io.Reader, String)} using its path in the file system
+	 * as the stream name, it is read again, only the changed resources are added, replaced, or removed, and a 
+	 * {@link EngineResourceSet#MESSAGE_DEFINITIONS_RELOADED} message is sent on the next update.
+	 * Files in archives are not watched, and nothing is reloaded if the resources were loaded from the resource snapshot
+	 * (see {@link #getResourceSnapshotFile()}), since it does not record which file each resource came from.
+	 * @return true to reload changed definition files, false to not.
+	 */
+	public default boolean getResourceDefinitionReload()
+	{
+		return false;
+	}
+	
+	/**
+	 * Returns the file off of the global directory path for the resource snapshot.
+	 * On startup, if the snapshot was made from the same generators and files (by size and modification time, 
+	 * see {@link #getResourceSnapshotVersion()}),
+	 * resources are loaded from it instead of being created by the resource generators.
+	 * Otherwise, the generators are run and the snapshot is written afterward.
+	 * Only use this if the resource generators read nothing but the file system, and
+	 * every resource class can be stored in a snapshot (see {@link EngineResourceSet#writeSnapshot(java.io.File, byte[])}).
+	 * If null, no snapshot is used.
+	 * @return the filename of the resource snapshot, or null for no snapshot.
+	 * @see #getGlobalSettingsPath()
+	 */
+	public default String getResourceSnapshotFile()
+	{
+		return null;
+	}
+	
+	/**
+	 * Gets a version for the code that creates resources, which is part of the hash that the resource snapshot 
+	 * is checked against. The snapshot is only checked against the size and modification time of each file 
+	 * and the class files of the resource generators themselves, so change this when anything else that the 
+	 * generators use (like a class that they call) changes what they create.
+	 * If null, no version is used.
+	 * @return the version, or null for no version.
+	 * @see #getResourceSnapshotFile()
+	 */
+	public default String getResourceSnapshotVersion()
+	{
+		return null;
+	}
+	
+	/**
+	 * Gets the amount of resources per resource set to keep in memory when resources are loaded from the resource snapshot.
+	 * If set, resources are read from the snapshot as they are fetched instead of all at once, and only the most 
+	 * recently fetched are kept in memory (see {@link EngineResourceSet#readSnapshot(java.io.File, byte[], int)}).
+	 * If this returns <code>null</code> or 0 or less, or there is no snapshot, all resources are kept in memory.
+	 * @return the resource cache size, or null for no cache.
+	 * @see #getResourceSnapshotFile()
+	 */
+	public default Integer getResourceCacheSize()
+	{
+		return null;
+	}
+	
 	/**
 	 * @return if this Engine should start in debug mode. 
 	 */
@@ -7,6 +7,10 @@
  ******************************************************************************/
 package com.blackrook.engine;
 
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.util.Arrays;
@@ -664,6 +668,33 @@ public class EngineConsole
 		engine.shutDown(status);
 	}
 
+	@CCMD(value = "recordinput", description = "Starts recording input and window events to a file.", usage = {"file path"})
+	public void recordInput(String path)
+	{
+		if (Utils.isEmpty(path))
+		{
+			println("Usage: recordinput [file path]");
+			return;
+		}
+		
+		OutputStream out = null;
+		try {
+			out = new BufferedOutputStream(new FileOutputStream(path));
+			engine.startInputRecording(out);
+			printfln("Recording input to \"%s\".", path);
+		} catch (IOException e) {
+			Utils.close(out);
+			printfln("Could not record input to \"%s\": %s", path, e.getLocalizedMessage());
+		}
+	}
+
+	@CCMD(value = "stoprecordinput", description = "Stops recording input and window events.")
+	public void stopRecordInput()
+	{
+		if (!engine.stopInputRecording())
+			println("Not recording input.");
+	}
+
 	@CCMD(description = "Echos a line to the console out.")
 	public void echo(String text)
 	{
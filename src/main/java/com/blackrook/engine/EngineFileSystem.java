@@ -15,7 +15,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipException;
 
 import com.blackrook.engine.EngineLoggingFactory.Logger;
@@ -37,6 +45,8 @@ public class EngineFileSystem extends FileSystem
 	private Logger logger;
 	/** Config ref. */
 	private EngineConfig config;
+	/** Paths of the archives and directories from the configuration, in the order they were pushed. */
+	private List<File> archivePaths;
 
 	/**
 	 * Creates a new file system.
@@ -50,6 +60,7 @@ public class EngineFileSystem extends FileSystem
 		
 		this.config = config;
 		this.logger = logger;
+		this.archivePaths = new ArrayList<>();
 		
 		String[] archives = config.getFileSystemArchives();
 		String[] stack = config.getFileSystemStack();
@@ -126,6 +137,7 @@ public class EngineFileSystem extends FileSystem
 			}
 			
 			pushArchive(new FolderArchive(dir));
+			archivePaths.add(dir);
 		}
 
 	}
@@ -139,6 +151,7 @@ public class EngineFileSystem extends FileSystem
 	{
 		try {
 			pushArchive(new ZipArchive(file));
+			archivePaths.add(file);
 		} catch (FileNotFoundException e) {
 			logger.error(e, "FileSystem: \""+file.getPath()+"\" cannot be found.");
 			return false;
@@ -163,6 +176,61 @@ public class EngineFileSystem extends FileSystem
 		logger.info("Pushed " + fsfa.getPath());
 	}
 
+	/**
+	 * @return the directories from the configuration, from the last pushed (searched first) to the first.
+	 */
+	List<File> getFolderArchivePaths()
+	{
+		List<File> out = new ArrayList<>();
+		for (int i = archivePaths.size() - 1; i >= 0; i--)
+			if (archivePaths.get(i).isDirectory())
+				out.add(archivePaths.get(i));
+		return out;
+	}
+
+	/**
+	 * Adds the size and modification time of every archive, and of every file in each directory, 
+	 * from the configuration to a digest, in the order they were pushed, so that a change to any file changes the result
+	 * without reading the files. Directories are walked in path order, and each file's relative path is added as well.
+	 * @param digest the digest to add to.
+	 * @throws IOException if a directory could not be walked.
+	 */
+	void digestStamps(MessageDigest digest) throws IOException
+	{
+		for (File archive : archivePaths)
+		{
+			if (archive.isDirectory())
+			{
+				Path root = archive.toPath();
+				List<Path> files;
+				try (Stream<Path> paths = Files.walk(root))
+				{
+					files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+				}
+				for (Path path : files)
+					digestFile(digest, root.relativize(path).toString().replace(File.separatorChar, '/'), path.toFile());
+			}
+			else
+			{
+				digestFile(digest, archive.getName(), archive);
+			}
+			digest.update((byte)0);
+		}
+	}
+	
+	// adds a file's name, size, and modification time to a digest.
+	private static void digestFile(MessageDigest digest, String name, File file)
+	{
+		digest.update(name.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+		long length = file.length();
+		long modified = file.lastModified();
+		for (int i = 0; i < 8; i++)
+			digest.update((byte)(length >>> (i * 8)));
+		for (int i = 0; i < 8; i++)
+			digest.update((byte)(modified >>> (i * 8)));
+	}
+
 	/**
 	 * Creates a new file off of the global settings path provided by {@link EngineConfig}.
 	 * If {@link EngineConfig#getGlobalSettingsPath()} returns null, the base path is the current working directory.
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.blackrook.engine.EngineLoggingFactory.Logger;
+import com.blackrook.engine.receiver.EngineInputEventReceiver;
+import com.blackrook.engine.receiver.EngineWindowEventReceiver;
+import com.blackrook.engine.struct.SerialWriter;
+import com.blackrook.engine.struct.Utils;
+
+/**
+ * Records the stream of input and window events heard by the Engine, along with the tick
+ * that each one happened on, to a compact binary stream that can be played back with an {@link EngineInputReplayer}.
+ * <p>
+ * Each record is a type byte, the amount of ticks since the previous record as a variable-length long, and the event's data.
+ * Input codes are written once and referred to by index afterward, and coordinates are zig-zag encoded variable-length longs.
+ * <p>
+ * If a write fails, the error is logged and the rest of the events are not recorded.
+ * @author Matthew Tropiano
+ */
+public class EngineInputRecorder implements EngineInputEventReceiver, EngineWindowEventReceiver
+{
+	/** Stream magic number. */
+	static final byte[] MAGIC = {'B', 'R', 'I', 'R'};
+	/** Stream format version. */
+	static final byte VERSION = 1;
+
+	static final byte TYPE_END = 0;
+	static final byte TYPE_INPUT_FLAG = 1;
+	static final byte TYPE_INPUT_VALUE = 2;
+	static final byte TYPE_CLOSING = 3;
+	static final byte TYPE_MINIMIZE = 4;
+	static final byte TYPE_RESTORE = 5;
+	static final byte TYPE_FOCUS = 6;
+	static final byte TYPE_BLUR = 7;
+	static final byte TYPE_MOUSE_ENTER = 8;
+	static final byte TYPE_MOUSE_EXIT = 9;
+	static final byte TYPE_MOUSE_MOVE = 10;
+	static final byte TYPE_RESIZE = 11;
+	static final byte TYPE_MOVE = 12;
+
+	/** Recorder logger. */
+	private Logger logger;
+	/** The ticker to read ticks from. */
+	private EngineTicker ticker;
+	/** The output stream. */
+	private OutputStream out;
+	/** The serial writer. */
+	private SerialWriter sw;
+	
+	/** Input code to index. */
+	private Map<String, Integer> codeIndexMap;
+	/** The tick that recording started on. */
+	private long startTick;
+	/** The tick of the last record written. */
+	private long lastTick;
+	/** Amount of events recorded. */
+	private long eventCount;
+	/** If true, no more events are written. */
+	private boolean closed;
+	
+	/**
+	 * Creates a new recorder and writes the stream header.
+	 * @param logger the logger for write errors.
+	 * @param ticker the ticker to read the current tick from.
+	 * @param out the output stream to write to.
+	 * @throws IOException if the header could not be written.
+	 */
+	EngineInputRecorder(Logger logger, EngineTicker ticker, OutputStream out) throws IOException
+	{
+		this.logger = logger;
+		this.ticker = ticker;
+		this.out = out;
+		this.sw = new SerialWriter(SerialWriter.LITTLE_ENDIAN);
+		this.codeIndexMap = new HashMap<>();
+		this.startTick = ticker.getCurrentTick();
+		this.lastTick = startTick;
+		this.eventCount = 0L;
+		this.closed = false;
+		
+		sw.writeBytes(out, MAGIC);
+		sw.writeByte(out, VERSION);
+		sw.writeVariableLengthInt(out, Math.max(ticker.getUpdatesPerSecond(), 0));
+	}
+
+	/**
+	 * @return the amount of events recorded so far.
+	 */
+	public synchronized long getEventCount()
+	{
+		return eventCount;
+	}
+	
+	/**
+	 * @return the amount of ticks since recording started.
+	 */
+	public synchronized long getTickCount()
+	{
+		return lastTick - startTick;
+	}
+	
+	/**
+	 * Writes the end of the stream and closes it.
+	 * Does nothing if already closed.
+	 * @throws IOException if the end could not be written or the stream could not be closed.
+	 */
+	public synchronized void close() throws IOException
+	{
+		if (closed)
+			return;
+		closed = true;
+		try {
+			sw.writeByte(out, TYPE_END);
+			out.flush();
+		} finally {
+			Utils.close(out);
+		}
+	}
+	
+	@Override
+	public synchronized void fireInputFlag(String code, boolean set)
+	{
+		if (closed)
+			return;
+		try {
+			writeHeader(TYPE_INPUT_FLAG);
+			writeCode(code);
+			sw.writeBoolean(out, set);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	@Override
+	public synchronized void fireInputValue(String code, double value)
+	{
+		if (closed)
+			return;
+		try {
+			writeHeader(TYPE_INPUT_VALUE);
+			writeCode(code);
+			sw.writeDouble(out, value);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	@Override
+	public void fireClosing()
+	{
+		writeEvent(TYPE_CLOSING);
+	}
+
+	@Override
+	public void fireMinimize()
+	{
+		writeEvent(TYPE_MINIMIZE);
+	}
+
+	@Override
+	public void fireRestore()
+	{
+		writeEvent(TYPE_RESTORE);
+	}
+
+	@Override
+	public void fireFocus()
+	{
+		writeEvent(TYPE_FOCUS);
+	}
+
+	@Override
+	public void fireBlur()
+	{
+		writeEvent(TYPE_BLUR);
+	}
+
+	@Override
+	public void fireMouseEnter()
+	{
+		writeEvent(TYPE_MOUSE_ENTER);
+	}
+
+	@Override
+	public void fireMouseExit()
+	{
+		writeEvent(TYPE_MOUSE_EXIT);
+	}
+
+	@Override
+	public void fireMouseMove(int canvasX, int canvasY)
+	{
+		writeEvent(TYPE_MOUSE_MOVE, canvasX, canvasY);
+	}
+
+	@Override
+	public void fireResize(int width, int height)
+	{
+		writeEvent(TYPE_RESIZE, width, height);
+	}
+
+	@Override
+	public void fireMove(int positionX, int positionY)
+	{
+		writeEvent(TYPE_MOVE, positionX, positionY);
+	}
+
+	// Writes an event with no data.
+	private synchronized void writeEvent(byte type)
+	{
+		if (closed)
+			return;
+		try {
+			writeHeader(type);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	// Writes an event with a coordinate pair.
+	private synchronized void writeEvent(byte type, int x, int y)
+	{
+		if (closed)
+			return;
+		try {
+			writeHeader(type);
+			sw.writeVariableLengthLong(out, zigZag(x));
+			sw.writeVariableLengthLong(out, zigZag(y));
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+	
+	// Writes the record type and tick delta.
+	private void writeHeader(byte type) throws IOException
+	{
+		long tick = ticker.getCurrentTick();
+		sw.writeByte(out, type);
+		sw.writeVariableLengthLong(out, Math.max(tick - lastTick, 0L));
+		lastTick = Math.max(tick, lastTick);
+		eventCount++;
+	}
+	
+	// Writes an input code reference, adding it to the table if new.
+	private void writeCode(String code) throws IOException
+	{
+		Integer index;
+		if ((index = codeIndexMap.get(code)) != null)
+		{
+			sw.writeVariableLengthInt(out, index);
+		}
+		else
+		{
+			index = codeIndexMap.size();
+			codeIndexMap.put(code, index);
+			sw.writeVariableLengthInt(out, index);
+			sw.writeString(out, code, StandardCharsets.UTF_8);
+		}
+	}
+	
+	// Stops recording on an error.
+	private void fail(IOException e)
+	{
+		logger.error(e, "Could not write input event. Recording stopped.");
+		closed = true;
+		Utils.close(out);
+	}
+	
+	// Maps signed values to unsigned ones so that small negatives stay small.
+	static long zigZag(int value)
+	{
+		return ((long)value << 1) ^ ((long)value >> 63);
+	}
+	
+	// Reverses zigZag().
+	static int unZigZag(long value)
+	{
+		return (int)((value >>> 1) ^ -(value & 1));
+	}
+	
+}
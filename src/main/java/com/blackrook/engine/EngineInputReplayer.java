@@ -0,0 +1,262 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.blackrook.engine.handler.EngineUpdateHandler;
+import com.blackrook.engine.receiver.EngineInputEventReceiver;
+import com.blackrook.engine.receiver.EngineWindowEventReceiver;
+import com.blackrook.engine.struct.SerialReader;
+import com.blackrook.engine.struct.Utils;
+
+/**
+ * Plays back a stream of events written by an {@link EngineInputRecorder} through a set of receivers,
+ * calling an update handler for each tick in between, so that input handling can be run without devices or a window.
+ * <p>
+ * The replay speed is relative to the updates per second that the stream was recorded at.
+ * A speed of 1.0 is real-time, 2.0 is twice as fast, and 0 or less is as fast as possible, which makes it useful
+ * as a throughput benchmark for input handling.
+ * @author Matthew Tropiano
+ */
+public class EngineInputReplayer
+{
+	/** The input stream. */
+	private InputStream in;
+	/** The serial reader. */
+	private SerialReader sr;
+	/** The updates per second that the stream was recorded at. */
+	private int updatesPerSecond;
+	/** Index to input code. */
+	private List<String> codeTable;
+
+	/**
+	 * Creates a new replayer and reads the stream header.
+	 * @param in the input stream to read from.
+	 * @throws IOException if the header could not be read or is not a recorded input stream.
+	 */
+	public EngineInputReplayer(InputStream in) throws IOException
+	{
+		this.in = in;
+		this.sr = new SerialReader(SerialReader.LITTLE_ENDIAN);
+		this.codeTable = new ArrayList<>();
+		
+		if (!Arrays.equals(sr.readBytes(in, EngineInputRecorder.MAGIC.length), EngineInputRecorder.MAGIC))
+			throw new IOException("Stream is not a recorded input stream.");
+		byte version;
+		if ((version = sr.readByte(in)) != EngineInputRecorder.VERSION)
+			throw new IOException("Unsupported recorded input stream version: " + version);
+		this.updatesPerSecond = sr.readVariableLengthInt(in);
+	}
+
+	/**
+	 * @return the updates per second that the stream was recorded at, or 0 if the ticker was running full bore.
+	 */
+	public int getUpdatesPerSecond()
+	{
+		return updatesPerSecond;
+	}
+	
+	/**
+	 * Plays back the rest of the stream.
+	 * Before each event, the update handler is called for every tick that came before it.
+	 * The stream is not closed after this completes.
+	 * @param inputReceiver the receiver for input events. If null, input events are skipped.
+	 * @param windowReceiver the receiver for window events. If null, window events are skipped.
+	 * @param updateHandler the handler to call for each elapsed tick. If null, ticks are only counted.
+	 * @param speed the speed multiplier, relative to the recorded updates per second. 0 or less is as fast as possible.
+	 * @return the replay results.
+	 * @throws IOException if a read error occurs or the stream is malformed.
+	 */
+	public Result replay(EngineInputEventReceiver inputReceiver, EngineWindowEventReceiver windowReceiver, EngineUpdateHandler updateHandler, double speed) throws IOException
+	{
+		long nanosPerTick = speed > 0.0 && updatesPerSecond > 0 ? (long)(1000000000.0 / (updatesPerSecond * speed)) : 0L;
+		long startNanos = System.nanoTime();
+		long tick = 0L;
+		long eventCount = 0L;
+		
+		byte type;
+		while ((type = sr.readByte(in)) != EngineInputRecorder.TYPE_END)
+		{
+			long eventTick = tick + sr.readVariableLengthLong(in);
+			while (tick < eventTick)
+			{
+				if (nanosPerTick > 0L)
+					waitUntil(startNanos + tick * nanosPerTick);
+				if (updateHandler != null)
+					updateHandler.update(tick, System.nanoTime());
+				tick++;
+			}
+			
+			if (nanosPerTick > 0L)
+				waitUntil(startNanos + tick * nanosPerTick);
+			
+			switch (type)
+			{
+				case EngineInputRecorder.TYPE_INPUT_FLAG:
+				{
+					String code = readCode();
+					boolean set = sr.readBoolean(in);
+					if (inputReceiver != null)
+						inputReceiver.fireInputFlag(code, set);
+					break;
+				}
+				case EngineInputRecorder.TYPE_INPUT_VALUE:
+				{
+					String code = readCode();
+					double value = sr.readDouble(in);
+					if (inputReceiver != null)
+						inputReceiver.fireInputValue(code, value);
+					break;
+				}
+				case EngineInputRecorder.TYPE_CLOSING:
+					if (windowReceiver != null)
+						windowReceiver.fireClosing();
+					break;
+				case EngineInputRecorder.TYPE_MINIMIZE:
+					if (windowReceiver != null)
+						windowReceiver.fireMinimize();
+					break;
+				case EngineInputRecorder.TYPE_RESTORE:
+					if (windowReceiver != null)
+						windowReceiver.fireRestore();
+					break;
+				case EngineInputRecorder.TYPE_FOCUS:
+					if (windowReceiver != null)
+						windowReceiver.fireFocus();
+					break;
+				case EngineInputRecorder.TYPE_BLUR:
+					if (windowReceiver != null)
+						windowReceiver.fireBlur();
+					break;
+				case EngineInputRecorder.TYPE_MOUSE_ENTER:
+					if (windowReceiver != null)
+						windowReceiver.fireMouseEnter();
+					break;
+				case EngineInputRecorder.TYPE_MOUSE_EXIT:
+					if (windowReceiver != null)
+						windowReceiver.fireMouseExit();
+					break;
+				case EngineInputRecorder.TYPE_MOUSE_MOVE:
+				{
+					int x = EngineInputRecorder.unZigZag(sr.readVariableLengthLong(in));
+					int y = EngineInputRecorder.unZigZag(sr.readVariableLengthLong(in));
+					if (windowReceiver != null)
+						windowReceiver.fireMouseMove(x, y);
+					break;
+				}
+				case EngineInputRecorder.TYPE_RESIZE:
+				{
+					int width = EngineInputRecorder.unZigZag(sr.readVariableLengthLong(in));
+					int height = EngineInputRecorder.unZigZag(sr.readVariableLengthLong(in));
+					if (windowReceiver != null)
+						windowReceiver.fireResize(width, height);
+					break;
+				}
+				case EngineInputRecorder.TYPE_MOVE:
+				{
+					int x = EngineInputRecorder.unZigZag(sr.readVariableLengthLong(in));
+					int y = EngineInputRecorder.unZigZag(sr.readVariableLengthLong(in));
+					if (windowReceiver != null)
+						windowReceiver.fireMove(x, y);
+					break;
+				}
+				default:
+					throw new IOException("Bad event type in recorded input stream: " + type);
+			}
+			eventCount++;
+		}
+		
+		return new Result(tick, eventCount, System.nanoTime() - startNanos);
+	}
+
+	// Reads an input code reference, adding it to the table if new.
+	private String readCode() throws IOException
+	{
+		int index = sr.readVariableLengthInt(in);
+		if (index < codeTable.size())
+			return codeTable.get(index);
+		else if (index == codeTable.size())
+		{
+			String code = sr.readString(in, StandardCharsets.UTF_8);
+			codeTable.add(code);
+			return code;
+		}
+		else
+			throw new IOException("Bad input code index in recorded input stream: " + index);
+	}
+	
+	// Waits until a nanotime is reached.
+	private static void waitUntil(long targetNanos)
+	{
+		long remaining;
+		while ((remaining = targetNanos - System.nanoTime()) > 0L)
+			Utils.sleep(remaining / 1000000L, (int)(remaining % 1000000L));
+	}
+	
+	/**
+	 * Replay results.
+	 */
+	public static class Result
+	{
+		private long tickCount;
+		private long eventCount;
+		private long nanos;
+		
+		private Result(long tickCount, long eventCount, long nanos)
+		{
+			this.tickCount = tickCount;
+			this.eventCount = eventCount;
+			this.nanos = nanos;
+		}
+		
+		/**
+		 * @return the amount of ticks played back.
+		 */
+		public long getTickCount()
+		{
+			return tickCount;
+		}
+		
+		/**
+		 * @return the amount of events played back.
+		 */
+		public long getEventCount()
+		{
+			return eventCount;
+		}
+		
+		/**
+		 * @return the total nanoseconds that playback took.
+		 */
+		public long getNanos()
+		{
+			return nanos;
+		}
+		
+		/**
+		 * @return the amount of events played back per second.
+		 */
+		public double getEventsPerSecond()
+		{
+			return nanos > 0L ? eventCount * 1000000000.0 / nanos : 0.0;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return String.format("%d events, %d ticks in %.3f ms (%.1f events/sec)", eventCount, tickCount, nanos / 1000000.0, getEventsPerSecond());
+		}
+	}
+	
+}
@@ -0,0 +1,285 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import com.blackrook.engine.struct.PersistentArray;
+import com.blackrook.engine.struct.PersistentHashMap;
+import com.blackrook.engine.struct.PersistentLongArray;
+import com.blackrook.engine.struct.PersistentLongHashMap;
+import com.blackrook.engine.struct.PersistentOrdinalSet;
+import com.blackrook.engine.struct.PersistentSortedLongMap;
+
+/**
+ * Estimates the heap sizes of objects, for memory accounting.
+ * <p>
+ * Sizes are worked out from a typical 64-bit layout (12-byte object headers, 4-byte compressed references,
+ * 8-byte alignment), not measured, so they are estimates. Objects that have already been counted
+ * are tracked in a "seen" set of identities, so that shared objects are only counted once.
+ * @author Matthew Tropiano
+ */
+final class EngineMemoryEstimator
+{
+	/** Object header size. */
+	static final int HEADER = 12;
+	/** Array header size (object header plus length). */
+	static final int ARRAY_HEADER = 16;
+	/** Reference size. */
+	static final int REFERENCE = 4;
+	/** Size of a HashMap (not its table or nodes). */
+	static final int HASH_MAP = 48;
+	/** Size of a HashMap node. */
+	static final int HASH_NODE = 32;
+	/** Size of a LinkedHashMap node. */
+	static final int LINKED_HASH_NODE = 40;
+	/** Size of a block of a persistent array (an edit token and an array, not counting the array). */
+	static final int BLOCK = 24;
+
+	/** If true, Latin-1 strings use one byte per character (Java 9 and later). */
+	private static final boolean COMPACT_STRINGS = !System.getProperty("java.specification.version", "1.8").startsWith("1.");
+
+	/** Shallow instance sizes. */
+	private static final ClassValue<Long> SHALLOW_SIZE = new ClassValue<Long>()
+	{
+		@Override
+		protected Long computeValue(Class<?> type)
+		{
+			long out = HEADER;
+			for (Class<?> c = type; c != null; c = c.getSuperclass())
+				for (Field field : c.getDeclaredFields())
+					if (!Modifier.isStatic(field.getModifiers()))
+						out += fieldSize(field.getType());
+			return align(out);
+		}
+	};
+
+	/** Readable reference fields, for following objects one level. */
+	private static final ClassValue<Field[]> REFERENCE_FIELDS = new ClassValue<Field[]>()
+	{
+		@Override
+		protected Field[] computeValue(Class<?> type)
+		{
+			List<Field> out = new ArrayList<>();
+			for (Class<?> c = type; c != null; c = c.getSuperclass())
+			{
+				for (Field field : c.getDeclaredFields())
+				{
+					if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive())
+						continue;
+					try {
+						field.setAccessible(true);
+						out.add(field);
+					} catch (RuntimeException e) {
+						// not readable: its contents are left out.
+					}
+				}
+			}
+			return out.toArray(new Field[out.size()]);
+		}
+	};
+
+	private EngineMemoryEstimator() {}
+
+	/**
+	 * @param bytes an amount of bytes.
+	 * @return the amount rounded up to the object alignment.
+	 */
+	static long align(long bytes)
+	{
+		return (bytes + 7L) & ~7L;
+	}
+
+	/**
+	 * @param length the array length.
+	 * @param elementSize the size of each element in bytes.
+	 * @return the size of an array.
+	 */
+	static long array(int length, int elementSize)
+	{
+		return align(ARRAY_HEADER + (long)length * elementSize);
+	}
+
+	/**
+	 * @param size the amount of mappings.
+	 * @return the size of a HashMap with its table and nodes (not its keys and values).
+	 */
+	static long hashMap(int size)
+	{
+		if (size == 0)
+			return HASH_MAP;
+		int capacity = Integer.highestOneBit(Math.max(1, (int)(size / 0.75f)) * 2 - 1);
+		return HASH_MAP + array(Math.max(16, capacity), REFERENCE) + (long)size * HASH_NODE;
+	}
+
+	/**
+	 * @param array the array.
+	 * @return the size of the blocks of a persistent array (not its elements).
+	 */
+	static long persistentArray(PersistentArray<?> array)
+	{
+		return array.getLeafCount() * (BLOCK + array(PersistentArray.LEAF_SIZE, REFERENCE))
+			+ array.getBranchCount() * (BLOCK + array(PersistentArray.BRANCH_SIZE, REFERENCE));
+	}
+
+	/**
+	 * @param array the array.
+	 * @return the size of the blocks of a persistent long array.
+	 */
+	static long persistentLongArray(PersistentLongArray array)
+	{
+		return array.getLeafCount() * (BLOCK + array(PersistentLongArray.LEAF_SIZE, 8))
+			+ array.getBranchCount() * (BLOCK + array(PersistentLongArray.BRANCH_SIZE, REFERENCE));
+	}
+
+	/**
+	 * @param set the set.
+	 * @return the size of a persistent ordinal set, with its value array or bitset.
+	 */
+	static long ordinalSet(PersistentOrdinalSet set)
+	{
+		return align(HEADER + 3 * REFERENCE + 8)
+			+ (set.getArrayLength() > 0 ? array(set.getArrayLength(), 4) : 0L)
+			+ (set.getBits() != null ? persistentLongArray(set.getBits()) : 0L);
+	}
+
+	/**
+	 * @param map the map.
+	 * @return the size of the nodes of a persistent hash map (not its keys and values).
+	 */
+	static long persistentHashMap(PersistentHashMap<?, ?> map)
+	{
+		// each node has two references per mapping or child, and each node but the root is a child.
+		int nodes = map.getNodeCount();
+		return nodes * (align(HEADER + 2 * REFERENCE + 8) + ARRAY_HEADER) + 2L * REFERENCE * (map.size() + Math.max(nodes - 1, 0));
+	}
+
+	/**
+	 * @param map the map.
+	 * @return the size of the nodes of a persistent long hash map (not its values).
+	 */
+	static long persistentLongHashMap(PersistentLongHashMap<?> map)
+	{
+		// each node has a key and a reference per mapping or child, and each node but the root is a child.
+		int nodes = map.getNodeCount();
+		return nodes * (align(HEADER + 3 * REFERENCE + 4) + 2 * ARRAY_HEADER) + (8L + REFERENCE) * (map.size() + Math.max(nodes - 1, 0));
+	}
+
+	/**
+	 * @param map the map.
+	 * @return the size of the blocks of a persistent sorted map (not its values).
+	 */
+	static long sortedLongMap(PersistentSortedLongMap<?> map)
+	{
+		int leaf = PersistentSortedLongMap.LEAF_SIZE;
+		int branch = PersistentSortedLongMap.BRANCH_SIZE;
+		return map.getLeafCount() * (align(HEADER + 4 * REFERENCE + 4) + array(leaf, 8) + array(leaf, 4) + array(leaf, REFERENCE))
+			+ map.getBranchCount() * (align(HEADER + 5 * REFERENCE + 8) + array(branch, REFERENCE) + 2 * array(branch, 4) + array(branch, 8));
+	}
+
+	/**
+	 * Gets the size of a string and its characters, if not seen already.
+	 * @param s the string (can be null).
+	 * @param seen the objects already counted.
+	 * @return the size, or 0 if null or already counted.
+	 */
+	static long string(String s, Set<Object> seen)
+	{
+		if (s == null || !seen.add(s))
+			return 0L;
+		return align(HEADER + 12) + array(s.length(), COMPACT_STRINGS && isLatin1(s) ? 1 : 2);
+	}
+
+	/**
+	 * Gets the size of an object, including the strings, arrays and boxed values that it references directly.
+	 * Other referenced objects are counted by their own size only, and are not followed further.
+	 * Enum constants and classes are not counted.
+	 * @param object the object (can be null).
+	 * @param seen the objects already counted.
+	 * @return the size, or 0 if null or already counted.
+	 */
+	static long object(Object object, Set<Object> seen)
+	{
+		if (!countable(object) || !seen.add(object))
+			return 0L;
+		long out = SHALLOW_SIZE.get(object.getClass());
+		for (Field field : REFERENCE_FIELDS.get(object.getClass()))
+		{
+			Object value;
+			try {
+				value = field.get(object);
+			} catch (IllegalAccessException e) {
+				continue;
+			}
+			out += reference(value, seen);
+		}
+		return out;
+	}
+
+	/**
+	 * Gets the size of a referenced value: strings and arrays are counted with their contents,
+	 * and other objects by their own size.
+	 * @param value the value (can be null).
+	 * @param seen the objects already counted.
+	 * @return the size, or 0 if null or already counted.
+	 */
+	static long reference(Object value, Set<Object> seen)
+	{
+		if (value instanceof String)
+			return string((String)value, seen);
+		if (!countable(value) || !seen.add(value))
+			return 0L;
+		Class<?> type = value.getClass();
+		if (!type.isArray())
+			return SHALLOW_SIZE.get(type);
+
+		int length = Array.getLength(value);
+		Class<?> componentType = type.getComponentType();
+		if (componentType.isPrimitive())
+			return array(length, fieldSize(componentType));
+		long out = array(length, REFERENCE);
+		Object[] values = (Object[])value;
+		for (int i = 0; i < length; i++)
+			if (values[i] instanceof String || (values[i] != null && !values[i].getClass().isArray()))
+				out += reference(values[i], seen);
+		return out;
+	}
+
+	private static boolean countable(Object object)
+	{
+		return object != null && !(object instanceof Enum) && !(object instanceof Class);
+	}
+
+	private static boolean isLatin1(String s)
+	{
+		for (int i = 0; i < s.length(); i++)
+			if (s.charAt(i) > 0xFF)
+				return false;
+		return true;
+	}
+
+	private static int fieldSize(Class<?> type)
+	{
+		if (type == Long.TYPE || type == Double.TYPE)
+			return 8;
+		else if (type == Integer.TYPE || type == Float.TYPE)
+			return 4;
+		else if (type == Short.TYPE || type == Character.TYPE)
+			return 2;
+		else if (type == Byte.TYPE || type == Boolean.TYPE)
+			return 1;
+		else
+			return REFERENCE;
+	}
+
+}
@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cache of resources read from a snapshot, for lazy sets.
+ * The most recently used resources are held in LRU order up to a capacity, 
+ * and each entry softly references the last resource read for it.
+ * @param <R> the resource type.
+ */
+class EngineResourceCache<R>
+{
+	/** The snapshot buffer. */
+	private final ByteBuffer buffer;
+	/** Resource layout. */
+	private final EngineResourceSnapshot.Layout layout;
+	/** Resource type. */
+	private final Class<R> type;
+	/** Recently used resources, by entry, in access order. */
+	private final LinkedHashMap<EngineResourceEntry<R>, R> recent;
+	
+	private long hits;
+	private long misses;
+	private long evictions;
+	
+	EngineResourceCache(ByteBuffer buffer, EngineResourceSnapshot.Layout layout, Class<R> type, final int capacity)
+	{
+		this.buffer = buffer;
+		this.layout = layout;
+		this.type = type;
+		this.recent = new LinkedHashMap<EngineResourceEntry<R>, R>(Math.min(capacity, 1024) * 4 / 3 + 1, 0.75f, true)
+		{
+			private static final long serialVersionUID = 4104530716427012416L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<EngineResourceEntry<R>, R> eldest)
+			{
+				if (size() <= capacity)
+					return false;
+				evictions++;
+				return true;
+			}
+		};
+		this.hits = 0L;
+		this.misses = 0L;
+		this.evictions = 0L;
+	}
+	
+	/**
+	 * Gets the resource for an entry, reading it from the snapshot if it is not in memory.
+	 * @param entry the entry.
+	 * @return the resource.
+	 */
+	R get(EngineResourceEntry<R> entry)
+	{
+		R out;
+		synchronized (this)
+		{
+			if ((out = cached(entry)) != null)
+			{
+				hits++;
+				return out;
+			}
+			misses++;
+		}
+		
+		// read outside of the lock, so that reads of different resources do not wait on each other.
+		R read = read(entry.location);
+		synchronized (this)
+		{
+			// another thread may have read it first.
+			if ((out = cached(entry)) != null)
+				return out;
+			entry.cached = new SoftReference<>(read);
+			recent.put(entry, read);
+			return read;
+		}
+	}
+	
+	// Gets a resource that is in memory, and marks it as recently used. Must be called while locked.
+	private R cached(EngineResourceEntry<R> entry)
+	{
+		R out;
+		if ((out = recent.get(entry)) != null)
+			return out;
+		SoftReference<R> ref;
+		if ((ref = entry.cached) != null && (out = ref.get()) != null)
+			recent.put(entry, out);
+		return out;
+	}
+	
+	// Reads a resource from the snapshot.
+	private R read(int location)
+	{
+		ByteBuffer in = buffer.duplicate();
+		in.position(location);
+		try {
+			return type.cast(layout.read(new EngineResourceSnapshot.Input(in)));
+		} catch (IOException e) {
+			throw new RuntimeException("Could not read resource from snapshot.", e);
+		}
+	}
+	
+	/**
+	 * @return the type of the resources read.
+	 */
+	Class<R> getType()
+	{
+		return type;
+	}
+	
+	synchronized long getHits()
+	{
+		return hits;
+	}
+	
+	synchronized long getMisses()
+	{
+		return misses;
+	}
+	
+	synchronized long getEvictions()
+	{
+		return evictions;
+	}
+	
+	synchronized int getHeldCount()
+	{
+		return recent.size();
+	}
+	
+	/**
+	 * @param seen the objects already counted.
+	 * @return the estimated size of the recently used resources held by this cache.
+	 */
+	synchronized long getMemoryEstimate(Set<Object> seen)
+	{
+		long out = EngineMemoryEstimator.hashMap(recent.size()) + (long)recent.size() * (EngineMemoryEstimator.LINKED_HASH_NODE - EngineMemoryEstimator.HASH_NODE);
+		for (R resource : recent.values())
+			out += EngineMemoryEstimator.object(resource, seen);
+		return out;
+	}
+	
+}
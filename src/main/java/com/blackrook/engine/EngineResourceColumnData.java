@@ -0,0 +1,269 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet.ValueGetter;
+import com.blackrook.engine.struct.PersistentLongArray;
+
+/**
+ * Column values, by ordinal.
+ * Values are kept as raw bits (the value itself if integral, else its double bits) in a {@link PersistentLongArray},
+ * along with a bitset of the ordinals that have a value, and copies of a column share both until they change them.
+ * Ordinals without a value hold 0, and have their bit cleared in the present bits.
+ */
+abstract class EngineResourceColumnData
+{
+	/** The value getter. */
+	protected final ValueGetter getter;
+	/** The edit token that this copy of the column changes its arrays in place with. */
+	protected final Object edit;
+	/** Bits set for ordinals that have a value, by 64-ordinal word. */
+	protected PersistentLongArray present;
+	/** Raw bits of the values by ordinal. */
+	protected PersistentLongArray values;
+	
+	EngineResourceColumnData(ValueGetter getter)
+	{
+		this.getter = getter;
+		this.edit = new Object();
+		this.present = PersistentLongArray.EMPTY;
+		this.values = PersistentLongArray.EMPTY;
+	}
+	
+	/**
+	 * Creates a column.
+	 * @param getter the value getter.
+	 * @param integral if true, values are kept as longs, else as doubles.
+	 * @return the new column.
+	 */
+	static EngineResourceColumnData create(ValueGetter getter, boolean integral)
+	{
+		if (integral)
+			return new LongColumnData(getter);
+		else
+			return new DoubleColumnData(getter);
+	}
+	
+	/**
+	 * @return true if values are integral, false if they are doubles.
+	 */
+	abstract boolean isIntegral();
+	
+	/**
+	 * @return the bitset of the ordinals that have a value.
+	 */
+	PersistentLongArray getPresent()
+	{
+		return present;
+	}
+	
+	/**
+	 * @return the raw bits of the values by ordinal.
+	 */
+	PersistentLongArray getValues()
+	{
+		return values;
+	}
+	
+	/**
+	 * Reads a resource's value into this column.
+	 * @param ordinal the resource ordinal.
+	 * @param resource the resource.
+	 */
+	void set(int ordinal, Object resource)
+	{
+		if (read(ordinal, resource))
+			setPresent(ordinal, true);
+		else
+			clear(ordinal);
+	}
+	
+	/**
+	 * Copies the value for an ordinal in a column of the same kind.
+	 * @param ordinal the resource ordinal.
+	 * @param column the column to copy from.
+	 * @param fromOrdinal the resource ordinal in that column.
+	 */
+	void set(int ordinal, EngineResourceColumnData column, int fromOrdinal)
+	{
+		if ((column.present.get(fromOrdinal >> 6) & (1L << fromOrdinal)) != 0)
+		{
+			setBits(ordinal, column.getBits(fromOrdinal));
+			setPresent(ordinal, true);
+		}
+		else
+		{
+			clear(ordinal);
+		}
+	}
+	
+	/**
+	 * Replaces the contents of this column.
+	 * @param present the bits set for ordinals that have a value.
+	 * @param bits the raw bits of the values by ordinal (see {@link #getBits(int)}).
+	 */
+	void load(long[] present, long[] bits)
+	{
+		this.present = PersistentLongArray.EMPTY;
+		this.values = PersistentLongArray.EMPTY;
+		for (int i = 0; i < present.length; i++)
+			this.present = this.present.set(edit, i, present[i]);
+		for (int i = 0; i < bits.length; i++)
+			setBits(i, bits[i]);
+	}
+	
+	/**
+	 * Clears the value for an ordinal.
+	 * @param ordinal the resource ordinal.
+	 */
+	void clear(int ordinal)
+	{
+		setPresent(ordinal, false);
+		setBits(ordinal, 0L);
+	}
+	
+	private void setPresent(int ordinal, boolean set)
+	{
+		long word = present.get(ordinal >> 6);
+		present = present.set(edit, ordinal >> 6, set ? word | (1L << ordinal) : word & ~(1L << ordinal));
+	}
+	
+	/**
+	 * Reads a resource's value into the values.
+	 * @param ordinal the resource ordinal.
+	 * @param resource the resource.
+	 * @return true if a value was read, false if the value is null.
+	 */
+	protected abstract boolean read(int ordinal, Object resource);
+	
+	/**
+	 * Gets the raw bits of a value (the value itself if integral, else its double bits).
+	 * @param ordinal the resource ordinal.
+	 * @return the bits, or 0 if the ordinal has no value.
+	 */
+	long getBits(int ordinal)
+	{
+		return values.get(ordinal);
+	}
+	
+	/**
+	 * Sets a value from its raw bits.
+	 * @param ordinal the resource ordinal.
+	 * @param bits the raw bits.
+	 */
+	protected void setBits(int ordinal, long bits)
+	{
+		values = values.set(edit, ordinal, bits);
+	}
+	
+	/**
+	 * @return a copy of this column, which shares this column's arrays until either one changes them.
+	 */
+	abstract EngineResourceColumnData copy();
+	
+	/**
+	 * @return the estimated size of this column's arrays.
+	 */
+	long getMemoryEstimate()
+	{
+		return EngineMemoryEstimator.persistentLongArray(values) + EngineMemoryEstimator.persistentLongArray(present);
+	}
+
+	/**
+	 * Integral column values.
+	 */
+	private static class LongColumnData extends EngineResourceColumnData
+	{
+		LongColumnData(ValueGetter getter)
+		{
+			super(getter);
+		}
+		
+		@Override
+		boolean isIntegral()
+		{
+			return true;
+		}
+		
+		@Override
+		protected boolean read(int ordinal, Object resource)
+		{
+			long value;
+			if (getter.isPrimitive())
+			{
+				value = getter.applyAsLong(resource);
+			}
+			else
+			{
+				Number boxed;
+				if ((boxed = getter.get(resource)) == null)
+					return false;
+				value = boxed.longValue();
+			}
+			setBits(ordinal, value);
+			return true;
+		}
+		
+		@Override
+		EngineResourceColumnData copy()
+		{
+			LongColumnData out = new LongColumnData(getter);
+			out.present = present;
+			out.values = values;
+			return out;
+		}
+		
+	}
+
+	/**
+	 * Floating-point column values.
+	 */
+	private static class DoubleColumnData extends EngineResourceColumnData
+	{
+		DoubleColumnData(ValueGetter getter)
+		{
+			super(getter);
+		}
+		
+		@Override
+		boolean isIntegral()
+		{
+			return false;
+		}
+		
+		@Override
+		protected boolean read(int ordinal, Object resource)
+		{
+			double value;
+			if (getter.isPrimitive())
+			{
+				value = getter.applyAsDouble(resource);
+			}
+			else
+			{
+				Number boxed;
+				if ((boxed = getter.get(resource)) == null)
+					return false;
+				value = boxed.doubleValue();
+			}
+			setBits(ordinal, Double.doubleToRawLongBits(value));
+			return true;
+		}
+		
+		@Override
+		EngineResourceColumnData copy()
+		{
+			DoubleColumnData out = new DoubleColumnData(getter);
+			out.present = present;
+			out.values = values;
+			return out;
+		}
+		
+	}
+
+}
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.function.DoublePredicate;
+import java.util.function.LongPredicate;
+
+import com.blackrook.engine.struct.PersistentLongArray;
+
+/**
+ * A read-only column of values, by resource ordinal.
+ * <p>
+ * Values are kept in blocks of primitive longs, so they can be scanned and totaled without reading the resources.
+ * Ordinals without a value (no resource, or a null value) are left out of the totals and filters.
+ * @see EngineResourceSet.ResourceSet#getColumn(String)
+ * @see com.blackrook.engine.annotation.resource.Column
+ */
+public final class EngineResourceColumnView
+{
+	private final String name;
+	/** If true, values are integral, else they are double bits. */
+	private final boolean integral;
+	/** Raw bits of the values by ordinal. */
+	private final PersistentLongArray values;
+	/** Bits set for ordinals that have a value. */
+	private final PersistentLongArray present;
+	/** Ordinal limit of the version read. */
+	private final int limit;
+	
+	EngineResourceColumnView(String name, EngineResourceColumnData data, int limit)
+	{
+		this.name = name;
+		this.integral = data.isIntegral();
+		this.values = data.getValues();
+		this.present = data.getPresent();
+		this.limit = limit;
+	}
+	
+	/**
+	 * @return the column name.
+	 */
+	public String getName()
+	{
+		return name;
+	}
+	
+	/**
+	 * @return true if this column holds integral values, false if floating-point.
+	 */
+	public boolean isIntegral()
+	{
+		return integral;
+	}
+	
+	/**
+	 * Checks if a resource ordinal has a value in this column.
+	 * @param ordinal the ordinal.
+	 * @return true if so, false if not.
+	 */
+	public boolean hasValue(int ordinal)
+	{
+		return ordinal >= 0 && ordinal < limit && (present.get(ordinal >> 6) & (1L << ordinal)) != 0;
+	}
+	
+	/**
+	 * Gets a value as a long.
+	 * @param ordinal the resource ordinal.
+	 * @return the value, or 0 if the ordinal has no value.
+	 */
+	public long getLong(int ordinal)
+	{
+		if (!hasValue(ordinal))
+			return 0L;
+		return integral ? values.get(ordinal) : (long)Double.longBitsToDouble(values.get(ordinal));
+	}
+
+	/**
+	 * Gets a value as a double.
+	 * @param ordinal the resource ordinal.
+	 * @return the value, or 0 if the ordinal has no value.
+	 */
+	public double getDouble(int ordinal)
+	{
+		if (!hasValue(ordinal))
+			return 0.0;
+		return asDouble(values.get(ordinal));
+	}
+	
+	/**
+	 * @return the amount of ordinals that have a value.
+	 */
+	public int getCount()
+	{
+		int out = 0;
+		int words = (limit + 63) >> 6;
+		for (int i = 0; i < words; i++)
+			out += Long.bitCount(present.get(i));
+		return out;
+	}
+	
+	/**
+	 * @return the sum of all values, or 0 if there are none.
+	 */
+	public double getSum()
+	{
+		if (integral)
+			return getLongSum();
+		double out = 0.0;
+		// ordinals without values hold 0, and blocks without values are not stored.
+		for (int i = 0; i < limit; i += PersistentLongArray.LEAF_SIZE)
+		{
+			long[] leaf;
+			if ((leaf = values.getLeaf(i)) == null)
+				continue;
+			for (int j = 0, n = Math.min(leaf.length, limit - i); j < n; j++)
+				out += Double.longBitsToDouble(leaf[j]);
+		}
+		return out;
+	}
+	
+	/**
+	 * @return the smallest value, or {@link Double#NaN} if there are none.
+	 */
+	public double getMin()
+	{
+		if (integral)
+			return getCount() > 0 ? getLongMin() : Double.NaN;
+		double out = Double.NaN;
+		for (int i = nextPresent(0); i >= 0; i = nextPresent(i + 1))
+		{
+			double value = Double.longBitsToDouble(values.get(i));
+			if (!(value >= out))
+				out = value;
+		}
+		return out;
+	}
+	
+	/**
+	 * @return the largest value, or {@link Double#NaN} if there are none.
+	 */
+	public double getMax()
+	{
+		if (integral)
+			return getCount() > 0 ? getLongMax() : Double.NaN;
+		double out = Double.NaN;
+		for (int i = nextPresent(0); i >= 0; i = nextPresent(i + 1))
+		{
+			double value = Double.longBitsToDouble(values.get(i));
+			if (!(value <= out))
+				out = value;
+		}
+		return out;
+	}
+	
+	/**
+	 * @return the sum of all values, or 0 if there are none.
+	 * @throws IllegalStateException if this column is not integral.
+	 */
+	public long getLongSum()
+	{
+		checkIntegral();
+		long out = 0L;
+		// ordinals without values hold 0, and blocks without values are not stored.
+		for (int i = 0; i < limit; i += PersistentLongArray.LEAF_SIZE)
+		{
+			long[] leaf;
+			if ((leaf = values.getLeaf(i)) == null)
+				continue;
+			for (int j = 0, n = Math.min(leaf.length, limit - i); j < n; j++)
+				out += leaf[j];
+		}
+		return out;
+	}
+	
+	/**
+	 * @return the smallest value, or {@link Long#MAX_VALUE} if there are none.
+	 * @throws IllegalStateException if this column is not integral.
+	 */
+	public long getLongMin()
+	{
+		checkIntegral();
+		long out = Long.MAX_VALUE;
+		for (int i = nextPresent(0); i >= 0; i = nextPresent(i + 1))
+			out = Math.min(out, values.get(i));
+		return out;
+	}
+	
+	/**
+	 * @return the largest value, or {@link Long#MIN_VALUE} if there are none.
+	 * @throws IllegalStateException if this column is not integral.
+	 */
+	public long getLongMax()
+	{
+		checkIntegral();
+		long out = Long.MIN_VALUE;
+		for (int i = nextPresent(0); i >= 0; i = nextPresent(i + 1))
+			out = Math.max(out, values.get(i));
+		return out;
+	}
+
+	/**
+	 * Gets the ordinals of values that pass a test, in ascending order.
+	 * The target array provided will be filled with the qualifying ordinals sequentially
+	 * and will stop if the end is reached, even if there may be more to return.
+	 * @param predicate the test to run on each value.
+	 * @param out the output array to put the ordinals into.
+	 * @param offset the offset into the array to start putting ordinals. 
+	 * @return the amount of ordinals returned, up to the size of the provided array.
+	 * @throws IllegalStateException if this column is not integral.
+	 * @throws NullPointerException if the predicate or array provided is {@code null}. 
+	 */
+	public int getOrdinalsWhereLong(LongPredicate predicate, int[] out, int offset)
+	{
+		checkIntegral();
+		int start = offset;
+		for (int i = nextPresent(0); i >= 0 && offset < out.length; i = nextPresent(i + 1))
+			if (predicate.test(values.get(i)))
+				out[offset++] = i;
+		return offset - start;
+	}
+	
+	/**
+	 * Gets the ordinals of values that pass a test, in ascending order.
+	 * Integral values are converted to doubles for the test.
+	 * The target array provided will be filled with the qualifying ordinals sequentially
+	 * and will stop if the end is reached, even if there may be more to return.
+	 * @param predicate the test to run on each value.
+	 * @param out the output array to put the ordinals into.
+	 * @param offset the offset into the array to start putting ordinals. 
+	 * @return the amount of ordinals returned, up to the size of the provided array.
+	 * @throws NullPointerException if the predicate or array provided is {@code null}. 
+	 */
+	public int getOrdinalsWhereDouble(DoublePredicate predicate, int[] out, int offset)
+	{
+		int start = offset;
+		for (int i = nextPresent(0); i >= 0 && offset < out.length; i = nextPresent(i + 1))
+			if (predicate.test(asDouble(values.get(i))))
+				out[offset++] = i;
+		return offset - start;
+	}
+	
+	// Next ordinal with a value at or after an ordinal, or -1 if none.
+	private int nextPresent(int ordinal)
+	{
+		if (ordinal >= limit)
+			return -1;
+		int w = ordinal >> 6;
+		long word = present.get(w) & (-1L << ordinal);
+		while (word == 0)
+		{
+			if (++w << 6 >= limit)
+				return -1;
+			word = present.get(w);
+		}
+		int out = (w << 6) + Long.numberOfTrailingZeros(word);
+		return out < limit ? out : -1;
+	}
+	
+	// Converts raw bits to a double, from a long if integral.
+	private double asDouble(long bits)
+	{
+		return integral ? bits : Double.longBitsToDouble(bits);
+	}
+	
+	private void checkIntegral()
+	{
+		if (!integral)
+			throw new IllegalStateException("Column \"" + name + "\" is not integral.");
+	}
+	
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A cursor over the results of a query.
+ * <p>
+ * Results are found as the cursor advances, on the version of the set at the time the query was run,
+ * and can be read one at a time or in batches into arrays, picking up where the last read stopped.
+ * @param <R> the resource type.
+ * @see EngineResourceQuery#cursor()
+ */
+public final class EngineResourceCursor<R extends EngineResource> implements Iterator<R>
+{
+	final EngineResourceQueryPlan<R> plan;
+	/** Current candidate position (word index for scans). */
+	private int position;
+	/** End candidate position, exclusive. */
+	private int end;
+	/** Candidate bits left in the current word, for scans. */
+	private long word;
+	/** Next matching ordinal, or -1 if not found yet. */
+	private int next;
+	
+	EngineResourceCursor(EngineResourceQueryPlan<R> plan, int start, int end)
+	{
+		this.plan = plan;
+		this.position = plan.isScan() ? start - 1 : start;
+		this.end = end;
+		this.word = 0L;
+		this.next = -1;
+	}
+	
+	@Override
+	public boolean hasNext()
+	{
+		return next >= 0 || (next = find()) >= 0;
+	}
+	
+	@Override
+	public R next()
+	{
+		int ordinal;
+		if ((ordinal = nextOrdinal()) < 0)
+			throw new NoSuchElementException();
+		return plan.version.getByOrdinal(ordinal);
+	}
+	
+	/**
+	 * Reads the next matching ordinal.
+	 * @return the ordinal, or -1 if there are no more results.
+	 * @see EngineResourceSet.ResourceSet#getByOrdinal(int)
+	 */
+	public int nextOrdinal()
+	{
+		int out = next >= 0 ? next : find();
+		next = -1;
+		return out;
+	}
+	
+	/**
+	 * Reads the next results into an array.
+	 * The target array provided will be filled with results sequentially until the end is reached
+	 * or there are no more results. Later reads continue after the last result read.
+	 * @param out the output array to put the objects into.
+	 * @param offset the offset into the array to start putting objects.
+	 * @return the amount of objects read, or 0 if there are no more results (or no room in the array).
+	 * @throws NullPointerException if the array provided is {@code null}.
+	 */
+	public int next(R[] out, int offset)
+	{
+		int i = offset;
+		int ordinal;
+		while (i < out.length && (ordinal = nextOrdinal()) >= 0)
+			out[i++] = plan.version.getByOrdinal(ordinal);
+		return i - offset;
+	}
+	
+	/**
+	 * Reads the next result ordinals into an array.
+	 * The target array provided will be filled with ordinals sequentially until the end is reached
+	 * or there are no more results. Later reads continue after the last result read.
+	 * @param out the output array to put the ordinals into.
+	 * @param offset the offset into the array to start putting ordinals.
+	 * @return the amount of ordinals read, or 0 if there are no more results (or no room in the array).
+	 * @throws NullPointerException if the array provided is {@code null}.
+	 * @see EngineResourceSet.ResourceSet#getByOrdinal(int)
+	 */
+	public int nextOrdinals(int[] out, int offset)
+	{
+		int i = offset;
+		int ordinal;
+		while (i < out.length && (ordinal = nextOrdinal()) >= 0)
+			out[i++] = ordinal;
+		return i - offset;
+	}
+	
+	// Finds the next matching ordinal, or -1 if none.
+	private int find()
+	{
+		while (true)
+		{
+			int ordinal;
+			if (plan.isScan())
+			{
+				while (word == 0L)
+				{
+					if (++position >= end)
+						return -1;
+					word = plan.scanWord(position);
+				}
+				ordinal = (position << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+			}
+			else
+			{
+				if (position >= end)
+					return -1;
+				ordinal = plan.candidate(position++);
+			}
+			if (plan.accepts(ordinal))
+				return ordinal;
+		}
+	}
+	
+	// Splits off the first half of the remaining candidates into a new cursor, or returns null if too few.
+	EngineResourceCursor<R> split()
+	{
+		int start = plan.isScan() ? position + 1 : position;
+		int mid = (start + end) >>> 1;
+		if (mid <= start)
+			return null;
+		EngineResourceCursor<R> out = new EngineResourceCursor<>(plan, 0, mid);
+		out.position = position;
+		out.word = word;
+		out.next = next;
+		this.position = plan.isScan() ? mid - 1 : mid;
+		this.word = 0L;
+		this.next = -1;
+		return out;
+	}
+	
+	// Upper bound of the amount of remaining results.
+	long estimateRemaining()
+	{
+		if (plan.isScan())
+			return Math.max(0L, (long)(end - position - 1) << 6) + Long.bitCount(word) + (next >= 0 ? 1 : 0);
+		else
+			return end - position + (next >= 0 ? 1 : 0);
+	}
+
+}
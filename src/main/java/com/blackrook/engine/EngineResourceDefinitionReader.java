@@ -0,0 +1,1197 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.io.CharArrayReader;
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.blackrook.engine.EngineLoggingFactory.Logger;
+import com.blackrook.engine.EngineResourceSet.DefinitionReload;
+import com.blackrook.engine.annotation.resource.DefinitionName;
+import com.blackrook.engine.exception.EngineSetupException;
+import com.blackrook.engine.struct.TypeProfileFactory.Profile;
+import com.blackrook.engine.struct.TypeProfileFactory.Profile.FieldInfo;
+import com.blackrook.engine.struct.TypeProfileFactory.Profile.MethodInfo;
+import com.blackrook.engine.struct.Utils;
+
+/**
+ * Reads resource definitions and adds the resources to an {@link EngineResourceSet}.
+ * <p>
+ * A definition file is a series of blocks, each of which creates one resource:
+ * <pre>
+ * pair "Some Pair"
+ * {
+ *     x = 2;
+ *     y = 3;
+ * }
+ * </pre>
+ * The block type is the {@link DefinitionName} of a resource class, and the optional string after it
+ * is the resource id (set through the "id" member). Each member is set through its public setter or
+ * public field. Values can be numbers, strings in double quotes, <code>true</code>, <code>false</code>,
+ * <code>null</code>, enum constant names, or lists of values in square brackets (for array members).
+ * Both <code>//</code> and <code>/* ... *&#47;</code> comments are allowed.
+ * <p>
+ * Input is read in one pass, and each resource is added as soon as its block is closed.
+ * Member setters are looked up once per class, and values are parsed straight into the member's type.
+ * <p>
+ * If the reader has more than one thread, large inputs are instead read in full and split into chunks 
+ * between top-level blocks, which are parsed at the same time on a work-stealing pool. The resources are still 
+ * added in the order that they appear, so the outcome is the same as reading in one pass.
+ * <p>
+ * Readers keep running totals of blocks and characters read and the time taken, and log each read if they have a logger.
+ * Readers can be shared between threads.
+ * <p>
+ * The resource set remembers which resources were read from each stream name, along with a hash of each block's tokens,
+ * so that a changed stream can be read again with {@link EngineResourceSet#reloadDefinitions(Reader, String)}: 
+ * only the resources whose blocks were added, changed, or removed are added, replaced, or removed in the set.
+ * @author Matthew Tropiano
+ */
+public class EngineResourceDefinitionReader
+{
+	/** The smallest chunk to split an input into, in characters. */
+	private static final int MIN_CHUNK_LENGTH = 64 * 1024;
+	/** Chunks per thread to split an input into, so that busy threads can be helped. */
+	private static final int CHUNKS_PER_THREAD = 4;
+	/** Characters in a megabyte, for throughput. */
+	private static final double CHARS_PER_MEGABYTE = 1024.0 * 1024.0;
+
+	/** Logger for read metrics (can be null). */
+	private Logger logger;
+	/** Definition name to class binding. */
+	private Map<String, Binding> bindings;
+	/** Maximum amount of threads to parse with. */
+	private int threadCount;
+
+	/** Total blocks read. */
+	private AtomicLong blockCount;
+	/** Total characters read. */
+	private AtomicLong characterCount;
+	/** Total time spent reading in nanoseconds. */
+	private AtomicLong readNanos;
+
+	/**
+	 * Creates a new reader for a set of resource classes that parses on the calling thread and logs nothing.
+	 * Only classes annotated with {@link DefinitionName} are used, and the rest are ignored.
+	 * @param resourceClasses the resource classes.
+	 * @throws EngineSetupException if two classes have the same definition name,
+	 * 		or a class has no public default constructor.
+	 */
+	public EngineResourceDefinitionReader(Iterable<? extends Class<? extends EngineResource>> resourceClasses)
+	{
+		this(null, resourceClasses, 1);
+	}
+
+	/**
+	 * Creates a new reader for a set of resource classes.
+	 * Only classes annotated with {@link DefinitionName} are used, and the rest are ignored.
+	 * @param logger the logger for read metrics. Can be null.
+	 * @param resourceClasses the resource classes.
+	 * @param threadCount the maximum amount of threads to parse an input with. 
+	 * 		If 1 or less, inputs are parsed in one pass on the calling thread.
+	 * @throws EngineSetupException if two classes have the same definition name,
+	 * 		or a class has no public default constructor.
+	 */
+	public EngineResourceDefinitionReader(Logger logger, Iterable<? extends Class<? extends EngineResource>> resourceClasses, int threadCount)
+	{
+		this.logger = logger;
+		this.threadCount = threadCount;
+		this.blockCount = new AtomicLong(0L);
+		this.characterCount = new AtomicLong(0L);
+		this.readNanos = new AtomicLong(0L);
+		this.bindings = new HashMap<>();
+		for (Class<? extends EngineResource> clazz : resourceClasses)
+		{
+			DefinitionName anno = clazz.getAnnotation(DefinitionName.class);
+			if (anno == null)
+				continue;
+			String name = Utils.isEmpty(anno.value()) ? clazz.getSimpleName() : anno.value();
+			Binding previous;
+			if ((previous = bindings.get(name)) != null)
+				throw new EngineSetupException("Classes "+previous.type.getName()+" and "+clazz.getName()+" have the same definition name \""+name+"\".");
+			bindings.put(name, new Binding(clazz));
+		}
+	}
+
+	/**
+	 * Reads resource definitions from a UTF-8 stream and adds the resources to a resource set.
+	 * The resources are added in one update batch.
+	 * @param in the input stream.
+	 * @param streamName the name of the stream, for error messages.
+	 * @param resources the resource set to add to.
+	 * @return the amount of resources read.
+	 * @throws IOException if a read error occurs.
+	 * @throws EngineSetupException if the definitions could not be parsed, or a resource could not be added.
+	 */
+	public int read(InputStream in, String streamName, EngineResourceSet resources) throws IOException
+	{
+		return read(new InputStreamReader(in, StandardCharsets.UTF_8), streamName, resources);
+	}
+
+	/**
+	 * Reads resource definitions and adds the resources to a resource set.
+	 * The resources are added in one update batch.
+	 * @param reader the reader.
+	 * @param streamName the name of the stream, for error messages.
+	 * @param resources the resource set to add to.
+	 * @return the amount of resources read.
+	 * @throws IOException if a read error occurs.
+	 * @throws EngineSetupException if the definitions could not be parsed, or a resource could not be added.
+	 */
+	public int read(Reader reader, String streamName, EngineResourceSet resources) throws IOException
+	{
+		long start = System.nanoTime();
+		Source source = new Source();
+		int count;
+		long characters;
+		int chunkCount;
+		
+		resources.beginUpdate();
+		try {
+			if (threadCount <= 1)
+			{
+				Lexer lexer = new Lexer(reader, streamName, 1);
+				count = (new Parser(lexer)).parse((resource, line, hash) -> add(resources, source, resource, streamName, line, hash));
+				characters = lexer.characterCount;
+				chunkCount = 1;
+			}
+			else
+			{
+				CharArrayWriter writer = new CharArrayWriter(MIN_CHUNK_LENGTH);
+				char[] buffer = new char[8192];
+				int n;
+				while ((n = reader.read(buffer)) > 0)
+					writer.write(buffer, 0, n);
+				char[] text = writer.toCharArray();
+
+				List<Chunk> chunks = split(text, Math.max(MIN_CHUNK_LENGTH, text.length / (threadCount * CHUNKS_PER_THREAD)));
+				count = chunks.size() == 1 ? parse(text, chunks.get(0), streamName, resources, source) : parseParallel(text, chunks, streamName, resources, source);
+				characters = text.length;
+				chunkCount = chunks.size();
+			}
+		} finally {
+			resources.endUpdate();
+		}
+		resources.setDefinitionSource(streamName, source);
+
+		long nanos = System.nanoTime() - start;
+		blockCount.addAndGet(count);
+		characterCount.addAndGet(characters);
+		readNanos.addAndGet(nanos);
+		if (logger != null)
+		{
+			double seconds = nanos / 1000000000.0;
+			logger.infof("Read %d resource(s) from %s in %.3f ms (%d chunk(s), %.1f blocks/sec, %.2f MB/sec).", 
+				count, streamName, nanos / 1000000.0, chunkCount, count / seconds, characters / CHARS_PER_MEGABYTE / seconds);
+		}
+		return count;
+	}
+
+	/**
+	 * Reads resource definitions from a stream that was read before, and changes the resource set to match. 
+	 * Resources whose blocks are new are added, resources whose blocks changed are replaced, and resources 
+	 * whose blocks are gone are removed. Resources whose blocks did not change are left alone. 
+	 * Resources that were since replaced by another stream are not touched.
+	 * The changes are made in one update batch.
+	 * @param reader the reader.
+	 * @param streamName the name of the stream. This is matched against the names of streams read before.
+	 * @param resources the resource set to change.
+	 * @return the changes that were made.
+	 * @throws IOException if a read error occurs.
+	 * @throws EngineSetupException if the definitions could not be parsed, or a resource could not be added. 
+	 * 		If parsing fails, no changes are made.
+	 */
+	public DefinitionReload reload(Reader reader, String streamName, EngineResourceSet resources) throws IOException
+	{
+		Chunk parsed = new Chunk(0, 0, 1);
+		(new Parser(new Lexer(reader, streamName, 1))).parse(parsed);
+
+		Source previous = resources.getDefinitionSource(streamName);
+		Source source = new Source();
+		List<EngineResource> added = new ArrayList<>();
+		List<EngineResource> replaced = new ArrayList<>();
+		List<EngineResource> removed = new ArrayList<>();
+		
+		resources.beginUpdate();
+		try {
+			for (int i = 0; i < parsed.resources.size(); i++)
+			{
+				EngineResource resource = parsed.resources.get(i);
+				long hash = parsed.hashes[i];
+				Definition old = previous != null ? previous.get(resource.getClass(), resource.getId()) : null;
+				if (old != null && (old.hash == hash || resources.getResource(resource.getClass(), resource.getId()) != old.resource))
+				{
+					// unchanged, or replaced by another stream since.
+					source.put(old.hash == hash ? old.resource : resource, hash);
+					continue;
+				}
+				add(resources, source, resource, streamName, parsed.lines[i], hash);
+				(old != null ? replaced : added).add(resource);
+			}
+			
+			if (previous != null) for (Map<String, Definition> definitions : previous.definitions.values())
+			{
+				for (Definition old : definitions.values())
+				{
+					Class<? extends EngineResource> type = old.resource.getClass();
+					String id = old.resource.getId();
+					if (source.get(type, id) == null && resources.getResource(type, id) == old.resource)
+					{
+						resources.getResourceSet(type).remove(id);
+						removed.add(old.resource);
+					}
+				}
+			}
+		} finally {
+			resources.endUpdate();
+		}
+		resources.setDefinitionSource(streamName, source);
+		return new DefinitionReload(streamName, added, replaced, removed);
+	}
+
+	/**
+	 * @return the total amount of blocks (resources) read by this reader.
+	 */
+	public long getBlockCount()
+	{
+		return blockCount.get();
+	}
+
+	/**
+	 * @return the total amount of characters read by this reader.
+	 */
+	public long getCharacterCount()
+	{
+		return characterCount.get();
+	}
+
+	/**
+	 * @return the total time spent reading by this reader, in nanoseconds (including adding resources).
+	 */
+	public long getReadNanos()
+	{
+		return readNanos.get();
+	}
+
+	/**
+	 * @return the average blocks read per second over all reads by this reader, or 0 if nothing was read.
+	 */
+	public double getBlocksPerSecond()
+	{
+		long nanos = readNanos.get();
+		return nanos > 0 ? blockCount.get() / (nanos / 1000000000.0) : 0.0;
+	}
+
+	/**
+	 * @return the average megabytes (of characters) read per second over all reads by this reader, or 0 if nothing was read.
+	 */
+	public double getMegabytesPerSecond()
+	{
+		long nanos = readNanos.get();
+		return nanos > 0 ? characterCount.get() / CHARS_PER_MEGABYTE / (nanos / 1000000000.0) : 0.0;
+	}
+
+	/**
+	 * Splits an input between top-level blocks into chunks of at least a minimum length (save for the last).
+	 * Strings and comments are skipped so that braces in them are not counted.
+	 * @param text the input text.
+	 * @param minLength the minimum chunk length in characters.
+	 * @return the chunks, in input order.
+	 */
+	private static List<Chunk> split(char[] text, int minLength)
+	{
+		List<Chunk> out = new ArrayList<>();
+		int length = text.length;
+		int start = 0;
+		int startLine = 1;
+		int line = 1;
+		int depth = 0;
+		for (int i = 0; i < length; i++)
+		{
+			char c = text[i];
+			if (c == '\n')
+				line++;
+			else if (c == '"')
+			{
+				// strings end at a quote or newline, same as the lexer.
+				while (++i < length && text[i] != '"' && text[i] != '\n')
+					if (text[i] == '\\' && i + 1 < length && text[i + 1] != '\n')
+						i++;
+				if (i < length && text[i] == '\n')
+					i--;
+			}
+			else if (c == '/' && i + 1 < length && text[i + 1] == '/')
+			{
+				while (i + 1 < length && text[i + 1] != '\n')
+					i++;
+			}
+			else if (c == '/' && i + 1 < length && text[i + 1] == '*')
+			{
+				for (i += 2; i + 1 < length && !(text[i] == '*' && text[i + 1] == '/'); i++)
+					if (text[i] == '\n')
+						line++;
+				i++;
+			}
+			else if (c == '{')
+				depth++;
+			else if (c == '}' && --depth <= 0)
+			{
+				depth = 0;
+				if (i + 1 - start >= minLength)
+				{
+					out.add(new Chunk(start, i + 1 - start, startLine));
+					start = i + 1;
+					startLine = line;
+				}
+			}
+		}
+		if (start < length || out.isEmpty())
+			out.add(new Chunk(start, length - start, startLine));
+		return out;
+	}
+
+	/**
+	 * Parses one chunk on the calling thread and adds its resources.
+	 */
+	private int parse(char[] text, Chunk chunk, String streamName, EngineResourceSet resources, Source source) throws IOException
+	{
+		Lexer lexer = new Lexer(new CharArrayReader(text, chunk.offset, chunk.length), streamName, chunk.line);
+		return (new Parser(lexer)).parse((resource, line, hash) -> add(resources, source, resource, streamName, line, hash));
+	}
+
+	/**
+	 * Parses chunks at the same time and adds their resources in chunk order as each finishes.
+	 */
+	private int parseParallel(char[] text, List<Chunk> chunks, String streamName, EngineResourceSet resources, Source source) throws IOException
+	{
+		final AtomicInteger threadId = new AtomicInteger(0);
+		ForkJoinPool pool = new ForkJoinPool(Math.min(threadCount, chunks.size()), (p) -> {
+			ForkJoinWorkerThread out = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			out.setName("EngineResourceDefinitionReader-" + threadId.getAndIncrement());
+			return out;
+		}, null, false);
+		
+		try {
+			List<ForkJoinTask<Chunk>> tasks = new ArrayList<>(chunks.size());
+			for (Chunk chunk : chunks)
+			{
+				// errors are kept on the chunk, since pool tasks rethrow copies of them.
+				tasks.add(pool.submit(() -> {
+					try {
+						Lexer lexer = new Lexer(new CharArrayReader(text, chunk.offset, chunk.length), streamName, chunk.line);
+						(new Parser(lexer)).parse(chunk);
+					} catch (Throwable t) {
+						chunk.error = t;
+					}
+					return chunk;
+				}));
+			}
+			
+			int count = 0;
+			for (ForkJoinTask<Chunk> task : tasks)
+			{
+				Chunk chunk;
+				try {
+					chunk = task.get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted while reading " + streamName + ".");
+				} catch (ExecutionException e) {
+					throw new EngineSetupException(e.getCause());
+				}
+				
+				if (chunk.error instanceof IOException)
+					throw (IOException)chunk.error;
+				else if (chunk.error instanceof RuntimeException)
+					throw (RuntimeException)chunk.error;
+				else if (chunk.error instanceof Error)
+					throw (Error)chunk.error;
+
+				for (int i = 0; i < chunk.resources.size(); i++)
+					add(resources, source, chunk.resources.get(i), streamName, chunk.lines[i], chunk.hashes[i]);
+				count += chunk.resources.size();
+				chunk.resources = null;
+			}
+			return count;
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Adds a read resource and records it as read from its stream, reporting where it was read on error.
+	 */
+	private static void add(EngineResourceSet resources, Source source, EngineResource resource, String streamName, int line, long hash)
+	{
+		try {
+			resources.addResource(resource);
+		} catch (EngineSetupException e) {
+			throw error(streamName, line, e.getMessage(), e);
+		}
+		source.put(resource, hash);
+	}
+
+	/**
+	 * Creates a read error.
+	 * @param streamName the stream name.
+	 * @param line the line number.
+	 * @param message the message.
+	 * @param cause the cause, if any.
+	 * @return the exception to throw.
+	 */
+	private static EngineSetupException error(String streamName, int line, String message, Throwable cause)
+	{
+		return new EngineSetupException("(" + streamName + ") Line " + line + ": " + message, cause);
+	}
+
+	/**
+	 * Receives parsed resources.
+	 */
+	private interface Sink
+	{
+		/**
+		 * Accepts a resource.
+		 * @param resource the resource.
+		 * @param line the line that its block starts on.
+		 * @param hash the hash of its block's tokens.
+		 */
+		void accept(EngineResource resource, int line, long hash);
+	}
+
+	/**
+	 * The resources last read from one definition stream, with the hash of each one's block.
+	 * Not changed after it is stored in the resource set.
+	 */
+	static class Source
+	{
+		/** Definitions by resource class, then id. */
+		private Map<Class<?>, Map<String, Definition>> definitions;
+
+		Source()
+		{
+			this.definitions = new HashMap<>();
+		}
+
+		private void put(EngineResource resource, long hash)
+		{
+			definitions.computeIfAbsent(resource.getClass(), (c) -> new HashMap<>()).put(resource.getId(), new Definition(resource, hash));
+		}
+
+		private Definition get(Class<?> type, String id)
+		{
+			Map<String, Definition> map;
+			return (map = definitions.get(type)) != null ? map.get(id) : null;
+		}
+	}
+
+	/**
+	 * A resource read from a stream, and the hash of its block.
+	 */
+	private static class Definition
+	{
+		private EngineResource resource;
+		private long hash;
+
+		Definition(EngineResource resource, long hash)
+		{
+			this.resource = resource;
+			this.hash = hash;
+		}
+	}
+
+	/**
+	 * A chunk of input and the resources parsed from it.
+	 */
+	private static class Chunk implements Sink
+	{
+		private int offset;
+		private int length;
+		/** The line that the chunk starts on. */
+		private int line;
+		private List<EngineResource> resources;
+		/** The line of each resource's block. */
+		private int[] lines;
+		/** The hash of each resource's block. */
+		private long[] hashes;
+		/** The error that stopped the parse, if any. */
+		private Throwable error;
+
+		Chunk(int offset, int length, int line)
+		{
+			this.offset = offset;
+			this.length = length;
+			this.line = line;
+			this.resources = new ArrayList<>();
+			this.lines = new int[16];
+			this.hashes = new long[16];
+			this.error = null;
+		}
+
+		@Override
+		public void accept(EngineResource resource, int line, long hash)
+		{
+			if (resources.size() == lines.length)
+			{
+				lines = Arrays.copyOf(lines, lines.length * 2);
+				hashes = Arrays.copyOf(hashes, hashes.length * 2);
+			}
+			lines[resources.size()] = line;
+			hashes[resources.size()] = hash;
+			resources.add(resource);
+		}
+	}
+
+	/**
+	 * A token lexer.
+	 */
+	private static class Lexer
+	{
+		static final int EOF = -1;
+		static final int IDENTIFIER = 0;
+		static final int NUMBER = 1;
+		static final int STRING = 2;
+		static final int PUNCTUATION = 3;
+
+		private static final long HASH_OFFSET = 0xcbf29ce484222325L;
+		private static final long HASH_PRIME = 0x100000001b3L;
+
+		private Reader reader;
+		private String streamName;
+		private char[] buffer;
+		private int bufferPos;
+		private int bufferEnd;
+		/** One character of lookahead, or -2 if none. */
+		private int peeked;
+
+		/** Current line. */
+		private int line;
+		/** Line of the current token. */
+		private int tokenLine;
+		/** Current token type. */
+		private int type;
+		/** Current token characters (for strings, without quotes or escapes). */
+		private char[] token;
+		/** Current token length. */
+		private int tokenLength;
+		/** Characters read so far. */
+		private long characterCount;
+		/** Hash of the tokens since the last {@link #resetHash()}. */
+		private long hash;
+
+		Lexer(Reader reader, String streamName, int line)
+		{
+			this.reader = reader;
+			this.streamName = streamName;
+			this.buffer = new char[8192];
+			this.bufferPos = 0;
+			this.bufferEnd = 0;
+			this.peeked = -2;
+			this.line = line;
+			this.tokenLine = line;
+			this.type = EOF;
+			this.token = new char[64];
+			this.tokenLength = 0;
+			this.characterCount = 0L;
+			this.hash = HASH_OFFSET;
+		}
+
+		private int read() throws IOException
+		{
+			if (peeked != -2)
+			{
+				int out = peeked;
+				peeked = -2;
+				return out;
+			}
+			if (bufferPos == bufferEnd)
+			{
+				if ((bufferEnd = reader.read(buffer)) <= 0)
+				{
+					bufferEnd = bufferPos = 0;
+					return -1;
+				}
+				bufferPos = 0;
+				characterCount += bufferEnd;
+			}
+			char c = buffer[bufferPos++];
+			if (c == '\n')
+				line++;
+			return c;
+		}
+
+		private int peek() throws IOException
+		{
+			if (peeked == -2)
+				peeked = read();
+			return peeked;
+		}
+
+		private void append(char c)
+		{
+			if (tokenLength == token.length)
+				token = Arrays.copyOf(token, token.length * 2);
+			token[tokenLength++] = c;
+		}
+
+		/**
+		 * Reads the next token and adds it to the hash.
+		 * @return the token type.
+		 * @throws IOException if a read error occurs.
+		 */
+		int next() throws IOException
+		{
+			if (lex() != EOF)
+				hashToken();
+			return type;
+		}
+
+		/**
+		 * Starts a new hash with the current token.
+		 * Whitespace and comments are not part of the hash.
+		 */
+		void resetHash()
+		{
+			hash = HASH_OFFSET;
+			hashToken();
+		}
+
+		// FNV-1a over the token type, length, and characters.
+		private void hashToken()
+		{
+			long h = hash;
+			h = (h ^ type) * HASH_PRIME;
+			h = (h ^ tokenLength) * HASH_PRIME;
+			for (int i = 0; i < tokenLength; i++)
+				h = (h ^ token[i]) * HASH_PRIME;
+			hash = h;
+		}
+
+		private int lex() throws IOException
+		{
+			tokenLength = 0;
+			int c;
+			while (true)
+			{
+				c = read();
+				if (c == '/' && peek() == '/')
+				{
+					while ((c = read()) != -1 && c != '\n') ;
+					continue;
+				}
+				else if (c == '/' && peek() == '*')
+				{
+					read();
+					int last = 0;
+					while ((c = read()) != -1 && !(last == '*' && c == '/'))
+						last = c;
+					if (c == -1)
+						throw error("Unterminated comment.");
+					continue;
+				}
+				else if (c == -1 || !Character.isWhitespace(c))
+					break;
+			}
+
+			tokenLine = line;
+			if (c == -1)
+				return type = EOF;
+
+			if (Character.isLetter(c) || c == '_')
+			{
+				append((char)c);
+				while ((c = peek()) != -1 && (Character.isLetterOrDigit(c) || c == '_'))
+					append((char)read());
+				return type = IDENTIFIER;
+			}
+			else if (Character.isDigit(c) || c == '-' || c == '+' || c == '.')
+			{
+				append((char)c);
+				while ((c = peek()) != -1 && (Character.isLetterOrDigit(c) || c == '.' || ((c == '-' || c == '+') && isExponent(token[tokenLength - 1]))))
+					append((char)read());
+				return type = NUMBER;
+			}
+			else if (c == '"')
+			{
+				while ((c = read()) != '"')
+				{
+					if (c == -1 || c == '\n')
+						throw error("Unterminated string.");
+					if (c == '\\')
+						c = readEscape();
+					append((char)c);
+				}
+				return type = STRING;
+			}
+			else if (c == '{' || c == '}' || c == '[' || c == ']' || c == '=' || c == ';' || c == ',')
+			{
+				append((char)c);
+				return type = PUNCTUATION;
+			}
+			else
+				throw error("Unexpected character '" + (char)c + "'.");
+		}
+
+		private boolean isExponent(char c)
+		{
+			return (c == 'e' || c == 'E') && !(token[0] == '0' && tokenLength > 1 && (token[1] == 'x' || token[1] == 'X'));
+		}
+
+		private int readEscape() throws IOException
+		{
+			int c = read();
+			switch (c)
+			{
+				case 'n': return '\n';
+				case 't': return '\t';
+				case 'r': return '\r';
+				case 'b': return '\b';
+				case 'f': return '\f';
+				case '0': return '\0';
+				case '\\': return '\\';
+				case '"': return '"';
+				case '\'': return '\'';
+				case 'u':
+				{
+					int out = 0;
+					for (int i = 0; i < 4; i++)
+					{
+						int digit = Character.digit(read(), 16);
+						if (digit < 0)
+							throw error("Bad unicode escape in string.");
+						out = (out << 4) | digit;
+					}
+					return out;
+				}
+				default:
+					throw error("Bad escape in string.");
+			}
+		}
+
+		int getType()
+		{
+			return type;
+		}
+
+		/**
+		 * @param c the character.
+		 * @return true if the current token is a punctuation character, false if not.
+		 */
+		boolean is(char c)
+		{
+			return type == PUNCTUATION && token[0] == c;
+		}
+
+		/**
+		 * @param s the string.
+		 * @return true if the current token is an identifier that matches the string, false if not.
+		 */
+		boolean isIdentifier(String s)
+		{
+			if (type != IDENTIFIER || tokenLength != s.length())
+				return false;
+			for (int i = 0; i < tokenLength; i++)
+				if (token[i] != s.charAt(i))
+					return false;
+			return true;
+		}
+
+		String getString()
+		{
+			return new String(token, 0, tokenLength);
+		}
+
+		/**
+		 * Parses the current token as an integer, without creating a string.
+		 * @param min the minimum value.
+		 * @param max the maximum value.
+		 * @return the value.
+		 * @throws EngineSetupException if the token is not an integer, or is out of range.
+		 */
+		long getLong(long min, long max)
+		{
+			if (type != NUMBER)
+				throw error("Expected an integer.");
+			int i = 0;
+			boolean negative = false;
+			if (token[0] == '-' || token[0] == '+')
+			{
+				negative = token[0] == '-';
+				i++;
+			}
+			int radix = 10;
+			if (tokenLength > i + 2 && token[i] == '0' && (token[i + 1] == 'x' || token[i + 1] == 'X'))
+			{
+				radix = 16;
+				i += 2;
+			}
+			if (i == tokenLength)
+				throw error("Expected an integer.");
+
+			// accumulate negatively, so that the minimum long can be read.
+			long out = 0;
+			long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+			for (; i < tokenLength; i++)
+			{
+				int digit = Character.digit(token[i], radix);
+				if (digit < 0)
+					throw error("Expected an integer, found \"" + getString() + "\".");
+				if (out < (limit + digit) / radix)
+					throw error("Integer \"" + getString() + "\" is out of range.");
+				out = out * radix - digit;
+			}
+			out = negative ? out : -out;
+			if (out < min || out > max)
+				throw error("Integer \"" + getString() + "\" is out of range.");
+			return out;
+		}
+
+		/**
+		 * Parses the current token as a floating-point number.
+		 * @return the value.
+		 * @throws EngineSetupException if the token is not a number.
+		 */
+		double getDouble()
+		{
+			if (type == IDENTIFIER)
+			{
+				if (isIdentifier("NaN"))
+					return Double.NaN;
+				else if (isIdentifier("Infinity"))
+					return Double.POSITIVE_INFINITY;
+			}
+			if (type != NUMBER)
+				throw error("Expected a number.");
+			if (tokenLength > 1 && (token[tokenLength - 1] == 'f' || token[tokenLength - 1] == 'F' || token[tokenLength - 1] == 'd' || token[tokenLength - 1] == 'D'))
+				tokenLength--;
+			try {
+				return Double.parseDouble(getString());
+			} catch (NumberFormatException e) {
+				throw error("Expected a number, found \"" + getString() + "\".");
+			}
+		}
+
+		/**
+		 * Creates a parse error at the current token.
+		 * @param message the message.
+		 * @return the exception to throw.
+		 */
+		EngineSetupException error(String message)
+		{
+			return EngineResourceDefinitionReader.error(streamName, tokenLine, message, null);
+		}
+
+	}
+
+	/**
+	 * The parser.
+	 */
+	private class Parser
+	{
+		private Lexer lexer;
+
+		Parser(Lexer lexer)
+		{
+			this.lexer = lexer;
+		}
+
+		int parse(Sink sink) throws IOException
+		{
+			int count = 0;
+			while (lexer.next() != Lexer.EOF)
+			{
+				if (lexer.getType() != Lexer.IDENTIFIER)
+					throw lexer.error("Expected a resource type name.");
+				String typeName = lexer.getString();
+				int line = lexer.tokenLine;
+				lexer.resetHash();
+				Binding binding;
+				if ((binding = bindings.get(typeName)) == null)
+					throw lexer.error("No resource class with definition name \"" + typeName + "\".");
+
+				EngineResource resource = binding.create();
+				lexer.next();
+				if (lexer.getType() == Lexer.STRING)
+				{
+					Setter idSetter;
+					if ((idSetter = binding.setters.get("id")) == null || idSetter.type != String.class)
+						throw lexer.error("Resource class " + binding.type.getSimpleName() + " has no String \"id\" member to set.");
+					idSetter.set(resource, lexer.getString());
+					lexer.next();
+				}
+				if (!lexer.is('{'))
+					throw lexer.error("Expected \"{\" after resource type" + (lexer.getType() == Lexer.IDENTIFIER ? " (resource ids must be in quotes)." : "."));
+
+				while (true)
+				{
+					lexer.next();
+					if (lexer.is('}'))
+						break;
+					if (lexer.getType() != Lexer.IDENTIFIER)
+						throw lexer.error("Expected a member name or \"}\".");
+					Setter setter;
+					if ((setter = binding.setters.get(lexer.getString())) == null)
+						throw lexer.error("Resource class " + binding.type.getSimpleName() + " has no settable member \"" + lexer.getString() + "\".");
+					lexer.next();
+					if (!lexer.is('='))
+						throw lexer.error("Expected \"=\" after member name.");
+					lexer.next();
+					setter.read(resource, lexer);
+					lexer.next();
+					if (!lexer.is(';'))
+						throw lexer.error("Expected \";\" after member value.");
+				}
+
+				sink.accept(resource, line, lexer.hash);
+				count++;
+			}
+			return count;
+		}
+
+	}
+
+	/**
+	 * A resource class binding.
+	 */
+	private static class Binding
+	{
+		private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(EngineResource.class);
+
+		private Class<? extends EngineResource> type;
+		private MethodHandle constructor;
+		private Map<String, Setter> setters;
+
+		Binding(Class<? extends EngineResource> type)
+		{
+			this.type = type;
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			try {
+				this.constructor = lookup.findConstructor(type, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new EngineSetupException("Resource class "+type.getSimpleName()+" needs a public default constructor to be read from definitions.");
+			}
+
+			this.setters = new HashMap<>();
+			Profile<? extends EngineResource> profile = Utils.getProfile(type);
+			try {
+				for (Map.Entry<String, FieldInfo> pair : profile.getPublicFieldsByName().entrySet())
+				{
+					Field field = pair.getValue().getField();
+					if ((field.getModifiers() & Modifier.FINAL) == 0)
+						setters.put(pair.getKey(), new Setter(field.getType(), lookup.unreflectSetter(field)));
+				}
+				for (Map.Entry<String, MethodInfo> pair : profile.getSetterMethodsByName().entrySet())
+					setters.put(pair.getKey(), new Setter(pair.getValue().getType(), lookup.unreflect(pair.getValue().getMethod())));
+			} catch (IllegalAccessException e) {
+				throw new EngineSetupException("Resource class "+type.getSimpleName()+" has members that cannot be accessed.", e);
+			}
+		}
+
+		EngineResource create()
+		{
+			try {
+				return (EngineResource)constructor.invokeExact();
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+		}
+
+	}
+
+	/**
+	 * A member setter.
+	 * Primitive members are set without boxing.
+	 */
+	private static class Setter
+	{
+		private static final MethodType OBJECT_SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+
+		/** The member type. */
+		private Class<?> type;
+		/** The setter, typed (Object, type)void for primitives, (Object, Object)void otherwise. */
+		private MethodHandle handle;
+		/** Enum constants by name, if an enum (or enum array) member. */
+		private Map<String, Object> enumConstants;
+
+		Setter(Class<?> type, MethodHandle handle)
+		{
+			this.type = type;
+			this.handle = handle.asType(type.isPrimitive() ? MethodType.methodType(void.class, Object.class, type) : OBJECT_SETTER);
+			Class<?> enumType = type;
+			while (enumType.isArray())
+				enumType = enumType.getComponentType();
+			if (enumType.isEnum())
+			{
+				this.enumConstants = new HashMap<>();
+				for (Object constant : enumType.getEnumConstants())
+					enumConstants.put(((Enum<?>)constant).name(), constant);
+			}
+		}
+
+		/**
+		 * Reads the value at the current token and sets it.
+		 * @param resource the resource to set on.
+		 * @param lexer the lexer.
+		 * @throws IOException if a read error occurs.
+		 */
+		void read(Object resource, Lexer lexer) throws IOException
+		{
+			try {
+				if (type == Integer.TYPE)
+					handle.invokeExact(resource, (int)lexer.getLong(Integer.MIN_VALUE, Integer.MAX_VALUE));
+				else if (type == Long.TYPE)
+					handle.invokeExact(resource, lexer.getLong(Long.MIN_VALUE, Long.MAX_VALUE));
+				else if (type == Float.TYPE)
+					handle.invokeExact(resource, (float)lexer.getDouble());
+				else if (type == Double.TYPE)
+					handle.invokeExact(resource, lexer.getDouble());
+				else if (type == Boolean.TYPE)
+					handle.invokeExact(resource, readBoolean(lexer));
+				else if (type == Short.TYPE)
+					handle.invokeExact(resource, (short)lexer.getLong(Short.MIN_VALUE, Short.MAX_VALUE));
+				else if (type == Byte.TYPE)
+					handle.invokeExact(resource, (byte)lexer.getLong(Byte.MIN_VALUE, Byte.MAX_VALUE));
+				else if (type == Character.TYPE)
+					handle.invokeExact(resource, readChar(lexer));
+				else
+					handle.invokeExact(resource, readValue(type, lexer));
+			} catch (IOException | RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+		}
+
+		/**
+		 * Sets a value.
+		 * @param resource the resource to set on.
+		 * @param value the value, which must be of the member type.
+		 */
+		void set(Object resource, Object value)
+		{
+			try {
+				handle.invokeExact(resource, value);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+		}
+
+		// Reads a non-primitive value (or an array element).
+		private Object readValue(Class<?> valueType, Lexer lexer) throws IOException
+		{
+			if (lexer.isIdentifier("null"))
+			{
+				if (valueType.isPrimitive())
+					throw lexer.error("Member type " + valueType.getSimpleName() + " cannot be null.");
+				return null;
+			}
+
+			if (valueType == String.class)
+			{
+				if (lexer.getType() != Lexer.STRING)
+					throw lexer.error("Expected a string in quotes.");
+				return lexer.getString();
+			}
+			else if (valueType == Integer.class || valueType == Integer.TYPE)
+				return (int)lexer.getLong(Integer.MIN_VALUE, Integer.MAX_VALUE);
+			else if (valueType == Long.class || valueType == Long.TYPE)
+				return lexer.getLong(Long.MIN_VALUE, Long.MAX_VALUE);
+			else if (valueType == Float.class || valueType == Float.TYPE)
+				return (float)lexer.getDouble();
+			else if (valueType == Double.class || valueType == Double.TYPE)
+				return lexer.getDouble();
+			else if (valueType == Boolean.class || valueType == Boolean.TYPE)
+				return readBoolean(lexer);
+			else if (valueType == Short.class || valueType == Short.TYPE)
+				return (short)lexer.getLong(Short.MIN_VALUE, Short.MAX_VALUE);
+			else if (valueType == Byte.class || valueType == Byte.TYPE)
+				return (byte)lexer.getLong(Byte.MIN_VALUE, Byte.MAX_VALUE);
+			else if (valueType == Character.class || valueType == Character.TYPE)
+				return readChar(lexer);
+			else if (valueType.isEnum())
+			{
+				if (lexer.getType() != Lexer.IDENTIFIER && lexer.getType() != Lexer.STRING)
+					throw lexer.error("Expected a " + valueType.getSimpleName() + " name.");
+				Object out;
+				if ((out = enumConstants.get(lexer.getString())) == null)
+					throw lexer.error("\"" + lexer.getString() + "\" is not a " + valueType.getSimpleName() + ".");
+				return out;
+			}
+			else if (valueType.isArray())
+			{
+				if (!lexer.is('['))
+					throw lexer.error("Expected a list in \"[ ]\".");
+				List<Object> values = new ArrayList<>();
+				lexer.next();
+				if (!lexer.is(']'))
+				{
+					while (true)
+					{
+						values.add(readValue(valueType.getComponentType(), lexer));
+						lexer.next();
+						if (lexer.is(']'))
+							break;
+						if (!lexer.is(','))
+							throw lexer.error("Expected \",\" or \"]\" in list.");
+						lexer.next();
+					}
+				}
+				Object out = Array.newInstance(valueType.getComponentType(), values.size());
+				for (int i = 0; i < values.size(); i++)
+					Array.set(out, i, values.get(i));
+				return out;
+			}
+			else
+				throw lexer.error("Member type " + valueType.getSimpleName() + " cannot be read from definitions.");
+		}
+
+		private static boolean readBoolean(Lexer lexer)
+		{
+			if (lexer.isIdentifier("true"))
+				return true;
+			else if (lexer.isIdentifier("false"))
+				return false;
+			else
+				throw lexer.error("Expected true or false.");
+		}
+
+		private static char readChar(Lexer lexer)
+		{
+			if (lexer.getType() != Lexer.STRING || lexer.tokenLength != 1)
+				throw lexer.error("Expected a single character in quotes.");
+			return lexer.token[0];
+		}
+
+	}
+
+}
@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.lang.ref.SoftReference;
+import java.util.Set;
+
+/**
+ * A resource and what it was indexed under, so that it can be removed 
+ * even if it was changed since it was added.
+ * @param <R> the resource type.
+ */
+class EngineResourceEntry<R>
+{
+	/** The resource, or null if it is read from a cache source. */
+	R resource;
+	/** The cache to read the resource from, if not held. */
+	EngineResourceCache<R> source;
+	/** The resource's location in the cache source. */
+	int location;
+	/** The last resource read from the cache source, if not collected. */
+	volatile SoftReference<R> cached;
+	/** The resource's ordinal (set when added to a version). */
+	int ordinal;
+	/** Tag symbols at the time of indexing. */
+	final int[] tags;
+	/** Numeric index keys by index slot. */
+	final long[] keys;
+	/** Numeric index slots that have no value (null), or null if all have one. */
+	boolean[] unindexed;
+	/** Hash index keys by index slot (null if not indexed). */
+	final Object[] hashKeys;
+	/** Spatial index points by index slot (null if not indexed). */
+	final double[][] points;
+	
+	EngineResourceEntry(R resource, int[] tags, int indexCount, int keyIndexCount, int spatialIndexCount)
+	{
+		this.resource = resource;
+		this.ordinal = -1;
+		this.tags = tags;
+		this.keys = new long[indexCount];
+		this.unindexed = null;
+		this.hashKeys = new Object[keyIndexCount];
+		this.points = new double[spatialIndexCount][];
+	}
+	
+	/**
+	 * @return the resource, read from the cache source if not held.
+	 */
+	R resource()
+	{
+		return resource != null ? resource : source.get(this);
+	}
+	
+	/**
+	 * Stops holding the resource, so that it is read from a cache source when needed.
+	 * Must be called before this entry is published.
+	 * @param source the cache source.
+	 * @param location the location of the resource in the source.
+	 */
+	void setSource(EngineResourceCache<R> source, int location)
+	{
+		this.source = source;
+		this.location = location;
+		this.cached = null;
+		this.resource = null;
+	}
+	
+	/**
+	 * @return the class of the resource, without reading it from the cache source.
+	 */
+	Class<?> resourceType()
+	{
+		return resource != null ? resource.getClass() : source.getType();
+	}
+	
+	void setUnindexed(int slot)
+	{
+		if (unindexed == null)
+			unindexed = new boolean[keys.length];
+		unindexed[slot] = true;
+	}
+	
+	boolean isIndexed(int slot)
+	{
+		return unindexed == null || !unindexed[slot];
+	}
+	
+	/**
+	 * @param seen the objects already counted.
+	 * @return the estimated size of this entry, its keys, points and tags (not its resource).
+	 */
+	long getMemoryEstimate(Set<Object> seen)
+	{
+		long out = EngineMemoryEstimator.align(EngineMemoryEstimator.HEADER + 8 * EngineMemoryEstimator.REFERENCE + 2 * 4)
+			+ EngineMemoryEstimator.reference(tags, seen)
+			+ EngineMemoryEstimator.reference(keys, seen)
+			+ EngineMemoryEstimator.reference(unindexed, seen)
+			+ EngineMemoryEstimator.array(hashKeys.length, EngineMemoryEstimator.REFERENCE);
+		for (Object key : hashKeys)
+			out += EngineResourceKeyIndex.getKeyMemoryEstimate(key, seen);
+		out += EngineMemoryEstimator.array(points.length, EngineMemoryEstimator.REFERENCE);
+		for (double[] point : points)
+			out += EngineMemoryEstimator.reference(point, seen);
+		return out;
+	}
+	
+}
@@ -0,0 +1,268 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.blackrook.engine.EngineLoggingFactory.Logger;
+import com.blackrook.engine.annotation.element.ResourceDependencies;
+import com.blackrook.engine.exception.EngineSetupException;
+import com.blackrook.engine.roles.EngineResourceGenerator;
+
+/**
+ * Runs the resource generators in dependency order, 
+ * running generators that do not depend on each other at the same time if allowed.
+ * @author Matthew Tropiano
+ * @see ResourceDependencies
+ */
+final class EngineResourceGeneratorRunner
+{
+	private Logger logger;
+	private EngineLoggingFactory loggingFactory;
+	private EngineFileSystem fileSystem;
+	private EngineResourceSet resources;
+	
+	/** Generators, sorted by ordering. */
+	private EngineResourceGenerator[] generators;
+	/** For each generator, the generators that run after it. */
+	private int[][] dependents;
+	/** For each generator, the amount of generators that it runs after. */
+	private int[] dependencyCount;
+	/** For each generator, how long it took to run in nanoseconds. */
+	private long[] nanos;
+	
+	/**
+	 * Creates the runner and its dependency graph.
+	 * @param logger the logger for progress and timing.
+	 * @param loggingFactory the logging factory for generator loggers.
+	 * @param fileSystem the file system to pass to generators.
+	 * @param resources the resource set to pass to generators.
+	 * @param generators the generators, sorted by ordering.
+	 * @throws EngineSetupException if the dependencies are circular.
+	 */
+	EngineResourceGeneratorRunner(Logger logger, EngineLoggingFactory loggingFactory, EngineFileSystem fileSystem, EngineResourceSet resources, List<EngineResourceGenerator> generators)
+	{
+		this.logger = logger;
+		this.loggingFactory = loggingFactory;
+		this.fileSystem = fileSystem;
+		this.resources = resources;
+		this.generators = generators.toArray(new EngineResourceGenerator[generators.size()]);
+		this.nanos = new long[this.generators.length];
+		buildGraph();
+	}
+	
+	private void buildGraph()
+	{
+		int count = generators.length;
+		ResourceDependencies[] declared = new ResourceDependencies[count];
+		for (int i = 0; i < count; i++)
+			declared[i] = generators[i].getClass().getAnnotation(ResourceDependencies.class);
+		
+		dependencyCount = new int[count];
+		dependents = new int[count][];
+		List<Integer> list = new ArrayList<>(count);
+		for (int i = 0; i < count; i++)
+		{
+			list.clear();
+			for (int j = 0; j < count; j++)
+			{
+				if (i != j && runsBefore(declared, i, j))
+				{
+					list.add(j);
+					dependencyCount[j]++;
+				}
+			}
+			dependents[i] = new int[list.size()];
+			for (int x = 0; x < dependents[i].length; x++)
+				dependents[i][x] = list.get(x);
+		}
+		
+		// check for cycles.
+		int[] remaining = dependencyCount.clone();
+		int[] ready = new int[count];
+		int readyCount = 0;
+		for (int i = 0; i < count; i++)
+			if (remaining[i] == 0)
+				ready[readyCount++] = i;
+		for (int r = 0; r < readyCount; r++)
+			for (int d : dependents[ready[r]])
+				if (--remaining[d] == 0)
+					ready[readyCount++] = d;
+		
+		if (readyCount < count)
+		{
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < count; i++)
+			{
+				if (remaining[i] > 0)
+				{
+					if (sb.length() > 0)
+						sb.append(", ");
+					sb.append(generators[i].getClass().getSimpleName());
+				}
+			}
+			throw new EngineSetupException("Resource generators have circular dependencies: " + sb);
+		}
+	}
+	
+	// Checks if generator "before" must finish before generator "after" starts. 
+	private static boolean runsBefore(ResourceDependencies[] declared, int before, int after)
+	{
+		if (declared[before] == null || declared[after] == null)
+			return before < after;
+		
+		for (Class<?> produced : declared[before].produces())
+		{
+			for (Class<?> consumed : declared[after].consumes())
+				if (consumed.isAssignableFrom(produced))
+					return true;
+			if (before < after)
+				for (Class<?> alsoProduced : declared[after].produces())
+					if (alsoProduced == produced)
+						return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Runs all of the generators.
+	 * @param threadCount the maximum amount of generators to run at the same time. 
+	 * 		If 1 or less, they are run one at a time on the calling thread.
+	 * @throws EngineSetupException if a generator fails.
+	 */
+	void run(int threadCount)
+	{
+		long start = System.nanoTime();
+		threadCount = Math.min(threadCount, generators.length);
+		if (threadCount <= 1)
+			runSerial();
+		else
+			runParallel(threadCount);
+		
+		for (int i = 0; i < generators.length; i++)
+			logger.infof("Generator %s took %.3f ms.", generators[i].getClass().getSimpleName(), nanos[i] / 1000000.0);
+		logger.infof("Resource generation took %.3f ms (%d generator(s), %d thread(s)).", (System.nanoTime() - start) / 1000000.0, generators.length, Math.max(threadCount, 1));
+	}
+	
+	// Runs generators one at a time, in ordering order where dependencies allow.
+	private void runSerial()
+	{
+		int[] remaining = dependencyCount.clone();
+		PriorityQueue<Integer> ready = new PriorityQueue<>();
+		for (int i = 0; i < generators.length; i++)
+			if (remaining[i] == 0)
+				ready.add(i);
+		while (!ready.isEmpty())
+		{
+			int i = ready.poll();
+			generate(i);
+			for (int d : dependents[i])
+				if (--remaining[d] == 0)
+					ready.add(d);
+		}
+	}
+	
+	// Runs generators on a thread pool as soon as their dependencies are done.
+	private void runParallel(int threadCount)
+	{
+		final AtomicInteger threadId = new AtomicInteger(0);
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount, (runnable) -> {
+			Thread out = new Thread(runnable, "EngineResourceGenerator-" + threadId.getAndIncrement());
+			out.setDaemon(true);
+			return out;
+		});
+		
+		try {
+			CompletionService<Integer> completion = new ExecutorCompletionService<>(executor);
+			int[] remaining = dependencyCount.clone();
+			int running = 0;
+			for (int i = 0; i < generators.length; i++)
+			{
+				if (remaining[i] == 0)
+				{
+					submit(completion, i);
+					running++;
+				}
+			}
+			
+			Throwable failure = null;
+			while (running > 0)
+			{
+				int done;
+				try {
+					done = completion.take().get();
+				} catch (ExecutionException e) {
+					if (failure == null)
+						failure = e.getCause();
+					running--;
+					continue;
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new EngineSetupException("Interrupted during resource generation.", e);
+				}
+				running--;
+
+				if (failure != null)
+					continue;
+				for (int d : dependents[done])
+				{
+					if (--remaining[d] == 0)
+					{
+						submit(completion, d);
+						running++;
+					}
+				}
+			}
+			
+			if (failure instanceof RuntimeException)
+				throw (RuntimeException)failure;
+			else if (failure instanceof Error)
+				throw (Error)failure;
+			else if (failure != null)
+				throw new EngineSetupException("An error occurred during resource generation.", failure);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+	
+	private void submit(CompletionService<Integer> completion, final int index)
+	{
+		completion.submit(() -> {
+			generate(index);
+			return index;
+		});
+	}
+	
+	// Calls a single generator in its own update batch.
+	private void generate(int index)
+	{
+		EngineResourceGenerator generator = generators[index];
+		logger.debugf("Calling generator class %s...", generator.getClass().getSimpleName());
+		long start = System.nanoTime();
+		resources.beginUpdate();
+		try {
+			generator.createResources(loggingFactory.getLogger(generator.getClass()), fileSystem, resources);
+		} catch (EngineSetupException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new EngineSetupException("An error occurred during resource generation.", e);
+		} finally {
+			resources.endUpdate();
+			nanos[index] = System.nanoTime() - start;
+		}
+	}
+	
+}
@@ -0,0 +1,440 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.Arrays;
+import java.util.Set;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet.ValueGetter;
+import com.blackrook.engine.struct.PersistentHashMap;
+import com.blackrook.engine.struct.PersistentOrdinalSet;
+
+/**
+ * A hash index of resources, on one or more values.
+ * Keys are kept in a {@link PersistentHashMap} that copies of this index share, so a change costs O(log n).
+ * @param <R> the resource type.
+ */
+abstract class EngineResourceKeyIndex<R extends EngineResource>
+{
+	/** The value getters, in key order. */
+	protected final ValueGetter[] getters;
+	/** If true, keys must be unique. */
+	protected final boolean unique;
+	/** Slot in entry hash key arrays. */
+	protected final int slot;
+	/** The edit token that this copy of the index changes its map in place with. */
+	protected final Object edit;
+	
+	EngineResourceKeyIndex(ValueGetter[] getters, boolean unique, int slot)
+	{
+		this.getters = getters;
+		this.unique = unique;
+		this.slot = slot;
+		this.edit = new Object();
+	}
+	
+	/**
+	 * Creates a hash index.
+	 * @param <R> the resource type.
+	 * @param getters the value getters, in key order.
+	 * @param unique if true, keys must be unique.
+	 * @param slot the slot in entry hash key arrays.
+	 * @return the new index.
+	 */
+	static <R extends EngineResource> EngineResourceKeyIndex<R> create(ValueGetter[] getters, boolean unique, int slot)
+	{
+		if (unique)
+			return new UniqueKeyIndex<R>(getters, slot);
+		else
+			return new MultiKeyIndex<R>(getters, slot);
+	}
+	
+	/**
+	 * Reads the key of a resource.
+	 * @param resource the resource.
+	 * @return the key, or null if any of its values are null.
+	 */
+	Object readKey(R resource)
+	{
+		if (getters.length == 1)
+		{
+			Object value = getters[0].getValue(resource);
+			return value != null ? normalizeKey(value) : null;
+		}
+		
+		Object[] values = new Object[getters.length];
+		for (int i = 0; i < getters.length; i++)
+		{
+			Object value;
+			if ((value = getters[i].getValue(resource)) == null)
+				return null;
+			values[i] = normalizeKey(value);
+		}
+		return new CompositeKey(values);
+	}
+	
+	/**
+	 * Converts a key provided for lookup to a key in this index.
+	 * @param key the key. For composite indices, an Object array of the member values.
+	 * @return the index key, or null if it can match nothing.
+	 * @throws IllegalArgumentException if the key is not an array of the right length for a composite index.
+	 */
+	Object lookupKey(Object key)
+	{
+		if (getters.length == 1)
+			return key != null ? normalizeKey(key) : null;
+		
+		if (!(key instanceof Object[]) || ((Object[])key).length != getters.length)
+			throw new IllegalArgumentException("Key for a composite index must be an Object array of " + getters.length + " values.");
+		Object[] values = ((Object[])key).clone();
+		for (int i = 0; i < values.length; i++)
+		{
+			if (values[i] == null)
+				return null;
+			values[i] = normalizeKey(values[i]);
+		}
+		return new CompositeKey(values);
+	}
+	
+	/**
+	 * @return the amount of values in each key.
+	 */
+	int getKeyLength()
+	{
+		return getters.length;
+	}
+	
+	/**
+	 * Gets the values of a key in this index.
+	 * @param key the key.
+	 * @return the values, in key order.
+	 */
+	Object[] getKeyValues(Object key)
+	{
+		return key instanceof CompositeKey ? ((CompositeKey)key).values : new Object[]{key};
+	}
+	
+	/**
+	 * Creates a key in this index from values returned by {@link #getKeyValues(Object)}.
+	 * @param values the values, in key order.
+	 * @return the key.
+	 */
+	Object createKey(Object[] values)
+	{
+		return getters.length == 1 ? values[0] : new CompositeKey(values);
+	}
+	
+	// Converts numbers to Long, or Double if not integral, so that lookups match regardless of boxed type,
+	// as they do in numeric indices.
+	private static Object normalizeKey(Object value)
+	{
+		if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)
+			return ((Number)value).longValue();
+		else if (value instanceof Float || value instanceof Double)
+		{
+			double d = ((Number)value).doubleValue();
+			return d >= -0x1p63 && d < 0x1p63 && d == Math.rint(d) ? (Object)(long)d : (Object)d;
+		}
+		else
+			return value;
+	}
+	
+	/**
+	 * Adds an entry to this index.
+	 * @param key the key read by {@link #readKey(EngineResource)}.
+	 * @param entry the entry.
+	 */
+	abstract void insert(Object key, EngineResourceEntry<R> entry);
+	
+	/**
+	 * Removes an entry from this index.
+	 * @param key the key the entry was added with.
+	 * @param entry the entry.
+	 */
+	abstract void delete(Object key, EngineResourceEntry<R> entry);
+
+	/**
+	 * Checks if an entry other than the provided one is in this index with a key.
+	 * @param version the version that this index is in.
+	 * @param key the key.
+	 * @param entry the entry to ignore (can be null).
+	 * @return true if so, false if not.
+	 */
+	boolean conflicts(EngineResourceVersion<R> version, Object key, EngineResourceEntry<R> entry)
+	{
+		EngineResourceEntry<R> found = first(version, key);
+		return found != null && found != entry;
+	}
+	
+	/**
+	 * Gets the first entry with a key.
+	 * @param version the version that this index is in.
+	 * @param key the key (can be null).
+	 * @return the entry with the lowest ordinal for the key, or null if none.
+	 */
+	abstract EngineResourceEntry<R> first(EngineResourceVersion<R> version, Object key);
+	
+	/**
+	 * Gets the resources with a key, in ordinal order.
+	 * @param version the version that this index is in.
+	 * @param key the key (can be null).
+	 * @param out the output array.
+	 * @param offset the starting offset into the array.
+	 * @return the amount of resources returned.
+	 */
+	abstract int get(EngineResourceVersion<R> version, Object key, R[] out, int offset);
+	
+	/**
+	 * Gets the ordinals of the resources with a key, in ascending order.
+	 * @param version the version that this index is in.
+	 * @param key the key (can be null).
+	 * @param out the output array.
+	 * @param offset the starting offset into the array.
+	 * @return the amount of ordinals returned.
+	 */
+	abstract int getOrdinals(EngineResourceVersion<R> version, Object key, int[] out, int offset);
+	
+	/**
+	 * @param key the key (can be null).
+	 * @return the amount of resources with the key.
+	 */
+	abstract int count(Object key);
+	
+	/**
+	 * @param seen the objects already counted.
+	 * @return the estimated size of this index and its keys.
+	 */
+	abstract long getMemoryEstimate(Set<Object> seen);
+	
+	/**
+	 * @param key the key (can be null).
+	 * @param seen the objects already counted.
+	 * @return the estimated size of a key.
+	 */
+	static long getKeyMemoryEstimate(Object key, Set<Object> seen)
+	{
+		if (key instanceof CompositeKey)
+		{
+			if (!seen.add(key))
+				return 0L;
+			return EngineMemoryEstimator.align(EngineMemoryEstimator.HEADER + EngineMemoryEstimator.REFERENCE + 4) 
+				+ EngineMemoryEstimator.reference(((CompositeKey)key).values, seen);
+		}
+		return EngineMemoryEstimator.reference(key, seen);
+	}
+	
+	/**
+	 * @return a copy of this index, which shares this index's map until either one changes it.
+	 */
+	abstract EngineResourceKeyIndex<R> copy();
+
+	/**
+	 * A key made of several values.
+	 */
+	private static final class CompositeKey
+	{
+		private final Object[] values;
+		private final int hash;
+		
+		CompositeKey(Object[] values)
+		{
+			this.values = values;
+			this.hash = Arrays.hashCode(values);
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return hash;
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			return obj instanceof CompositeKey && hash == ((CompositeKey)obj).hash && Arrays.equals(values, ((CompositeKey)obj).values);
+		}
+		
+		@Override
+		public String toString()
+		{
+			return Arrays.toString(values);
+		}
+		
+	}
+
+	/**
+	 * A hash index with one resource per key.
+	 * @param <R> the resource type.
+	 */
+	private static class UniqueKeyIndex<R extends EngineResource> extends EngineResourceKeyIndex<R>
+	{
+		private PersistentHashMap<Object, EngineResourceEntry<R>> map;
+		
+		UniqueKeyIndex(ValueGetter[] getters, int slot)
+		{
+			super(getters, true, slot);
+			this.map = PersistentHashMap.empty();
+		}
+		
+		@Override
+		void insert(Object key, EngineResourceEntry<R> entry)
+		{
+			map = map.put(edit, key, entry);
+		}
+
+		@Override
+		void delete(Object key, EngineResourceEntry<R> entry)
+		{
+			if (map.get(key) == entry)
+				map = map.remove(edit, key);
+		}
+
+		@Override
+		EngineResourceEntry<R> first(EngineResourceVersion<R> version, Object key)
+		{
+			return key != null ? map.get(key) : null;
+		}
+
+		@Override
+		int get(EngineResourceVersion<R> version, Object key, R[] out, int offset)
+		{
+			EngineResourceEntry<R> entry;
+			if (offset >= out.length || (entry = first(version, key)) == null)
+				return 0;
+			out[offset] = entry.resource();
+			return 1;
+		}
+
+		@Override
+		int getOrdinals(EngineResourceVersion<R> version, Object key, int[] out, int offset)
+		{
+			EngineResourceEntry<R> entry;
+			if (offset >= out.length || (entry = first(version, key)) == null)
+				return 0;
+			out[offset] = entry.ordinal;
+			return 1;
+		}
+
+		@Override
+		int count(Object key)
+		{
+			return key != null && map.containsKey(key) ? 1 : 0;
+		}
+
+		@Override
+		long getMemoryEstimate(Set<Object> seen)
+		{
+			long[] out = {EngineMemoryEstimator.persistentHashMap(map)};
+			map.forEach((key, entry) -> out[0] += getKeyMemoryEstimate(key, seen));
+			return out[0];
+		}
+
+		@Override
+		EngineResourceKeyIndex<R> copy()
+		{
+			UniqueKeyIndex<R> out = new UniqueKeyIndex<>(getters, slot);
+			out.map = map;
+			return out;
+		}
+		
+	}
+
+	/**
+	 * A hash index with a set of resource ordinals per key.
+	 * @param <R> the resource type.
+	 */
+	private static class MultiKeyIndex<R extends EngineResource> extends EngineResourceKeyIndex<R>
+	{
+		private PersistentHashMap<Object, PersistentOrdinalSet> map;
+		
+		MultiKeyIndex(ValueGetter[] getters, int slot)
+		{
+			super(getters, false, slot);
+			this.map = PersistentHashMap.empty();
+		}
+		
+		@Override
+		void insert(Object key, EngineResourceEntry<R> entry)
+		{
+			PersistentOrdinalSet set = map.get(key);
+			if (set == null)
+				set = PersistentOrdinalSet.EMPTY;
+			map = map.put(edit, key, set.add(edit, entry.ordinal));
+		}
+
+		@Override
+		void delete(Object key, EngineResourceEntry<R> entry)
+		{
+			PersistentOrdinalSet set;
+			if ((set = map.get(key)) == null || !set.contains(entry.ordinal))
+				return;
+			if (set.size() == 1)
+				map = map.remove(edit, key);
+			else
+				map = map.put(edit, key, set.remove(edit, entry.ordinal));
+		}
+
+		@Override
+		EngineResourceEntry<R> first(EngineResourceVersion<R> version, Object key)
+		{
+			PersistentOrdinalSet set;
+			if (key == null || (set = map.get(key)) == null)
+				return null;
+			return version.getEntry(set.next(0));
+		}
+
+		@Override
+		int get(EngineResourceVersion<R> version, Object key, R[] out, int offset)
+		{
+			PersistentOrdinalSet set;
+			if (key == null || (set = map.get(key)) == null)
+				return 0;
+			int i = offset;
+			for (int ordinal = set.next(0); ordinal >= 0 && i < out.length; ordinal = set.next(ordinal + 1))
+				out[i++] = version.getByOrdinal(ordinal);
+			return i - offset;
+		}
+
+		@Override
+		int getOrdinals(EngineResourceVersion<R> version, Object key, int[] out, int offset)
+		{
+			PersistentOrdinalSet set;
+			if (key == null || (set = map.get(key)) == null)
+				return 0;
+			int i = offset;
+			for (int ordinal = set.next(0); ordinal >= 0 && i < out.length; ordinal = set.next(ordinal + 1))
+				out[i++] = ordinal;
+			return i - offset;
+		}
+
+		@Override
+		int count(Object key)
+		{
+			PersistentOrdinalSet set;
+			return key != null && (set = map.get(key)) != null ? set.size() : 0;
+		}
+
+		@Override
+		long getMemoryEstimate(Set<Object> seen)
+		{
+			long[] out = {EngineMemoryEstimator.persistentHashMap(map)};
+			map.forEach((key, set) -> out[0] += getKeyMemoryEstimate(key, seen) + EngineMemoryEstimator.ordinalSet(set));
+			return out[0];
+		}
+
+		@Override
+		EngineResourceKeyIndex<R> copy()
+		{
+			MultiKeyIndex<R> out = new MultiKeyIndex<>(getters, slot);
+			out.map = map;
+			return out;
+		}
+		
+	}
+
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+/**
+ * The nearest points found so far in a search, up to a count, 
+ * kept in a heap with the farthest point on top.
+ */
+class EngineResourceNearestPoints
+{
+	/** Squared distances, in heap order. */
+	private final double[] distances;
+	/** Ordinals, in heap order. */
+	private final int[] ordinals;
+	/** Amount of points. */
+	private int size;
+	
+	EngineResourceNearestPoints(int capacity)
+	{
+		this.distances = new double[capacity];
+		this.ordinals = new int[capacity];
+		this.size = 0;
+	}
+	
+	/**
+	 * @return true if this has as many points as it can hold.
+	 */
+	boolean isFull()
+	{
+		return size == ordinals.length;
+	}
+	
+	/**
+	 * @return the squared distance of the farthest point held.
+	 */
+	double getFarthest()
+	{
+		return distances[0];
+	}
+	
+	/**
+	 * Adds a point, if it is nearer than the farthest point held, or if this is not full.
+	 * @param distance the squared distance of the point.
+	 * @param ordinal the point's ordinal.
+	 */
+	void offer(double distance, int ordinal)
+	{
+		int i;
+		if (size < ordinals.length)
+		{
+			i = size++;
+			while (i > 0 && farther(distance, ordinal, (i - 1) >> 1))
+			{
+				set(i, (i - 1) >> 1);
+				i = (i - 1) >> 1;
+			}
+		}
+		else if (farther(distance, ordinal, 0))
+			return;
+		else
+			i = siftDown(0, distance, ordinal);
+		distances[i] = distance;
+		ordinals[i] = ordinal;
+	}
+	
+	/**
+	 * Empties this, and returns the ordinals held.
+	 * @return the ordinals, nearest first.
+	 */
+	int[] toArray()
+	{
+		int[] out = new int[size];
+		while (size > 0)
+		{
+			out[size - 1] = ordinals[0];
+			double distance = distances[--size];
+			int ordinal = ordinals[size];
+			int i = siftDown(0, distance, ordinal);
+			distances[i] = distance;
+			ordinals[i] = ordinal;
+		}
+		return out;
+	}
+	
+	// Moves children up from a slot until a point fits, and returns the slot it fits in.
+	private int siftDown(int i, double distance, int ordinal)
+	{
+		int child;
+		while ((child = 2 * i + 1) < size)
+		{
+			if (child + 1 < size && farther(distances[child + 1], ordinals[child + 1], child))
+				child++;
+			if (!farther(distances[child], ordinals[child], distance, ordinal))
+				break;
+			set(i, child);
+			i = child;
+		}
+		return i;
+	}
+	
+	private void set(int to, int from)
+	{
+		distances[to] = distances[from];
+		ordinals[to] = ordinals[from];
+	}
+	
+	private boolean farther(double distance, int ordinal, int slot)
+	{
+		return farther(distance, ordinal, distances[slot], ordinals[slot]);
+	}
+	
+	private static boolean farther(double distance, int ordinal, double otherDistance, int otherOrdinal)
+	{
+		return distance > otherDistance || (distance == otherDistance && ordinal > otherOrdinal);
+	}
+	
+}
@@ -0,0 +1,463 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet.ValueGetter;
+import com.blackrook.engine.struct.PersistentSortedLongMap;
+
+/**
+ * A sorted numeric index of resources.
+ * Positions in the index are in ascending order of value, and in ascending order of ordinal for equal values.
+ * Entries are kept in a {@link PersistentSortedLongMap} that copies of this index share, so a change costs O(log n)
+ * and does not change the copy that it was made from.
+ * @param <R> the resource type.
+ */
+abstract class EngineResourceNumericIndex<R>
+{
+	/** The value getter. */
+	protected final ValueGetter getter;
+	/** If true, values must be unique. */
+	protected final boolean unique;
+	/** Slot in entry key arrays. */
+	protected final int slot;
+	/** The edit token that the map is changed in place with (only by this copy of the index). */
+	protected final Object edit;
+	/** Entries by sort key and ordinal. */
+	protected PersistentSortedLongMap<EngineResourceEntry<R>> map;
+	
+	EngineResourceNumericIndex(ValueGetter getter, boolean unique, int slot, PersistentSortedLongMap<EngineResourceEntry<R>> map)
+	{
+		this.getter = getter;
+		this.unique = unique;
+		this.slot = slot;
+		this.edit = new Object();
+		this.map = map;
+	}
+	
+	/**
+	 * Creates a numeric index.
+	 * @param <R> the resource type.
+	 * @param getter the value getter.
+	 * @param integral if true, values are kept as longs, else as doubles.
+	 * @param unique if true, values must be unique.
+	 * @param slot the slot in entry key arrays.
+	 * @return the new index.
+	 */
+	static <R> EngineResourceNumericIndex<R> create(ValueGetter getter, boolean integral, boolean unique, int slot)
+	{
+		if (integral)
+			return new LongIndex<R>(getter, unique, slot, PersistentSortedLongMap.empty());
+		else
+			return new DoubleIndex<R>(getter, unique, slot, PersistentSortedLongMap.empty());
+	}
+	
+	/**
+	 * Reads the indexed value of a resource as an index key.
+	 * @param resource the resource.
+	 * @param keys the key array to store the key into, at this index's slot.
+	 * @return true if read, false if the value was null (not indexed).
+	 */
+	abstract boolean readKey(R resource, long[] keys);
+	
+	/**
+	 * Converts a key read by {@link #readKey(Object, long[])} to its sort key in the map.
+	 * @param key the key.
+	 * @return the sort key.
+	 */
+	abstract long sortKey(long key);
+	
+	/**
+	 * Converts a sort key in the map back to a key.
+	 * @param sortKey the sort key.
+	 * @return the key, as read by {@link #readKey(Object, long[])}.
+	 */
+	abstract long unsortKey(long sortKey);
+	
+	/**
+	 * Adds an entry to this index, at its ordinal among entries with the same value.
+	 * @param key the key read by {@link #readKey(Object, long[])}.
+	 * @param entry the entry.
+	 */
+	void insert(long key, EngineResourceEntry<R> entry)
+	{
+		map = map.add(edit, sortKey(key), entry.ordinal, entry);
+	}
+	
+	/**
+	 * Removes an entry from this index.
+	 * @param key the key that the entry was inserted with.
+	 * @param entry the entry.
+	 */
+	void delete(long key, EngineResourceEntry<R> entry)
+	{
+		long sortKey = sortKey(key);
+		int position = map.indexOf(sortKey, entry.ordinal);
+		if (position >= 0 && map.getValue(position) == entry)
+			map = map.remove(edit, sortKey, entry.ordinal);
+	}
+	
+	/**
+	 * Checks if an entry other than the provided one is in this index with a key.
+	 * @param key the key read by {@link #readKey(Object, long[])}.
+	 * @param entry the entry to ignore (can be null).
+	 * @return true if so, false if not.
+	 */
+	boolean conflicts(long key, EngineResourceEntry<R> entry)
+	{
+		long sortKey = sortKey(key);
+		int end = map.upperBound(sortKey);
+		for (int i = map.lowerBound(sortKey); i < end; i++)
+			if (map.getValue(i) != entry)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * @return a copy of this index, which shares this index's map until either one changes it.
+	 */
+	abstract EngineResourceNumericIndex<R> copy();
+	
+	/**
+	 * @return the estimated size of this index's map.
+	 */
+	long getMemoryEstimate()
+	{
+		return EngineMemoryEstimator.sortedLongMap(map);
+	}
+	
+	/**
+	 * @param position the index position.
+	 * @return the key at the position, as read by {@link #readKey(Object, long[])}.
+	 */
+	long keyAt(int position)
+	{
+		return unsortKey(map.getKey(position));
+	}
+	
+	/**
+	 * @param key1 the first key.
+	 * @param key2 the second key.
+	 * @return true if both keys are the same value, false if not.
+	 */
+	boolean sameKey(long key1, long key2)
+	{
+		return sortKey(key1) == sortKey(key2);
+	}
+	
+	/**
+	 * Replaces the contents of this index with keys and entries that are already in index order.
+	 * @param keys the keys, as returned by {@link #keyAt(int)}.
+	 * @param ordinals the entry ordinals, aligned with the keys.
+	 * @param entries the entries, aligned with the keys.
+	 * @return true if loaded, false if the keys and ordinals are not in index order.
+	 */
+	boolean load(long[] keys, int[] ordinals, EngineResourceEntry<R>[] entries)
+	{
+		long[] sortKeys = new long[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			sortKeys[i] = sortKey(keys[i]);
+		try {
+			map = PersistentSortedLongMap.of(sortKeys, ordinals, entries, keys.length);
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return the amount of indexed resources.
+	 */
+	int size()
+	{
+		return map.size();
+	}
+	
+	/**
+	 * @param position the index position.
+	 * @return the entry at the position.
+	 */
+	EngineResourceEntry<R> getEntry(int position)
+	{
+		return map.getValue(position);
+	}
+	
+	/**
+	 * @param position the index position.
+	 * @return the resource at the position.
+	 */
+	R get(int position)
+	{
+		return getEntry(position).resource();
+	}
+	
+	/**
+	 * @param position the index position.
+	 * @return the first position that has the same value as the one at the provided position.
+	 */
+	int groupStart(int position)
+	{
+		return map.lowerBound(map.getKey(position));
+	}
+	
+	/**
+	 * @param value the value.
+	 * @return the first position with a value greater than or equal to the provided one.
+	 */
+	abstract int lowerBound(long value);
+
+	/**
+	 * @param value the value.
+	 * @return the first position with a value greater than the provided one.
+	 */
+	abstract int upperBound(long value);
+	
+	/**
+	 * @param value the value. NaN is ordered before all other values.
+	 * @return the first position with a value greater than or equal to the provided one.
+	 */
+	abstract int lowerBound(double value);
+	
+	/**
+	 * @param value the value. NaN is ordered before all other values.
+	 * @return the first position with a value greater than the provided one.
+	 */
+	abstract int upperBound(double value);
+	
+	/**
+	 * @param key a key read by {@link #readKey(Object, long[])}.
+	 * @return the first position with the same value as the key.
+	 */
+	int keyPosition(long key)
+	{
+		return map.lowerBound(sortKey(key));
+	}
+	
+	/**
+	 * @param min the lower bound of a range, or null for no lower bound.
+	 * @param inclusive if true, values equal to the lower bound are included.
+	 * @return the first position in the range.
+	 */
+	int rangeStart(Number min, boolean inclusive)
+	{
+		if (min == null)
+			return 0;
+		return inclusive ? lowerBound(min) : upperBound(min);
+	}
+	
+	/**
+	 * @param max the upper bound of a range, or null for no upper bound.
+	 * @param inclusive if true, values equal to the upper bound are included.
+	 * @return the end position (exclusive) of the range.
+	 */
+	int rangeEnd(Number max, boolean inclusive)
+	{
+		if (max == null)
+			return size();
+		return inclusive ? upperBound(max) : lowerBound(max);
+	}
+	
+	/**
+	 * Checks a key provided for a lookup in a numeric index.
+	 * @param key the key.
+	 * @return the key as a number.
+	 * @throws IllegalArgumentException if the key is not a Number.
+	 */
+	static Number numericKey(Object key)
+	{
+		if (!(key instanceof Number))
+			throw new IllegalArgumentException("Key for a numeric index must be a Number.");
+		return (Number)key;
+	}
+	
+	/**
+	 * @param value the value.
+	 * @return the first position with a value greater than or equal to the provided one.
+	 */
+	int lowerBound(Number value)
+	{
+		return isIntegral(value) ? lowerBound(value.longValue()) : lowerBound(value.doubleValue());
+	}
+	
+	/**
+	 * @param value the value.
+	 * @return the first position with a value greater than the provided one.
+	 */
+	int upperBound(Number value)
+	{
+		return isIntegral(value) ? upperBound(value.longValue()) : upperBound(value.doubleValue());
+	}
+	
+	private static boolean isIntegral(Number value)
+	{
+		return value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte;
+	}
+
+	/**
+	 * An index on integral values. Sort keys are the values.
+	 * @param <R> the resource type.
+	 */
+	private static class LongIndex<R> extends EngineResourceNumericIndex<R>
+	{
+		/** Smallest double that is past the long range. */
+		private static final double LONG_RANGE_END = 0x1p63;
+		
+		LongIndex(ValueGetter getter, boolean unique, int slot, PersistentSortedLongMap<EngineResourceEntry<R>> map)
+		{
+			super(getter, unique, slot, map);
+		}
+		
+		@Override
+		EngineResourceNumericIndex<R> copy()
+		{
+			return new LongIndex<>(getter, unique, slot, map);
+		}
+		
+		@Override
+		long sortKey(long key)
+		{
+			return key;
+		}
+		
+		@Override
+		long unsortKey(long sortKey)
+		{
+			return sortKey;
+		}
+		
+		@Override
+		boolean readKey(R resource, long[] keys)
+		{
+			Number value;
+			if (getter.isPrimitive())
+				keys[slot] = getter.applyAsLong(resource);
+			else if ((value = getter.get(resource)) != null)
+				keys[slot] = value.longValue();
+			else
+				return false;
+			return true;
+		}
+		
+		@Override
+		int lowerBound(long value)
+		{
+			return map.lowerBound(value);
+		}
+
+		@Override
+		int upperBound(long value)
+		{
+			return map.upperBound(value);
+		}
+
+		@Override
+		int lowerBound(double value)
+		{
+			if (Double.isNaN(value) || value < -LONG_RANGE_END)
+				return 0;
+			else if (value >= LONG_RANGE_END)
+				return map.size();
+			else
+				return map.lowerBound((long)Math.ceil(value));
+		}
+
+		@Override
+		int upperBound(double value)
+		{
+			if (Double.isNaN(value) || value < -LONG_RANGE_END)
+				return 0;
+			else if (value >= LONG_RANGE_END)
+				return map.size();
+			else
+				return map.upperBound((long)Math.floor(value));
+		}
+		
+	}
+
+	/**
+	 * An index on floating-point values. Sort keys are the values' bits, changed so that they
+	 * order as signed longs in the same way as the values, with NaN first and -0.0 the same as 0.0.
+	 * @param <R> the resource type.
+	 */
+	private static class DoubleIndex<R> extends EngineResourceNumericIndex<R>
+	{
+		DoubleIndex(ValueGetter getter, boolean unique, int slot, PersistentSortedLongMap<EngineResourceEntry<R>> map)
+		{
+			super(getter, unique, slot, map);
+		}
+		
+		@Override
+		EngineResourceNumericIndex<R> copy()
+		{
+			return new DoubleIndex<>(getter, unique, slot, map);
+		}
+		
+		@Override
+		long sortKey(long key)
+		{
+			return sortKey(Double.longBitsToDouble(key));
+		}
+		
+		private static long sortKey(double value)
+		{
+			if (Double.isNaN(value))
+				return Long.MIN_VALUE;
+			else if (value == 0.0)
+				return 0L;
+			long bits = Double.doubleToRawLongBits(value);
+			// negative values order backwards by their bits, so all but the sign bit are flipped.
+			return bits < 0L ? bits ^ Long.MAX_VALUE : bits;
+		}
+		
+		@Override
+		long unsortKey(long sortKey)
+		{
+			if (sortKey == Long.MIN_VALUE)
+				return Double.doubleToRawLongBits(Double.NaN);
+			return sortKey < 0L ? sortKey ^ Long.MAX_VALUE : sortKey;
+		}
+		
+		@Override
+		boolean readKey(R resource, long[] keys)
+		{
+			Number value;
+			if (getter.isPrimitive())
+				keys[slot] = Double.doubleToRawLongBits(getter.applyAsDouble(resource));
+			else if ((value = getter.get(resource)) != null)
+				keys[slot] = Double.doubleToRawLongBits(value.doubleValue());
+			else
+				return false;
+			return true;
+		}
+		
+		@Override
+		int lowerBound(long value)
+		{
+			return lowerBound((double)value);
+		}
+
+		@Override
+		int upperBound(long value)
+		{
+			return upperBound((double)value);
+		}
+
+		@Override
+		int lowerBound(double value)
+		{
+			return map.lowerBound(sortKey(value));
+		}
+
+		@Override
+		int upperBound(double value)
+		{
+			return map.upperBound(sortKey(value));
+		}
+		
+	}
+
+}
@@ -0,0 +1,233 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+
+/**
+ * A query on a resource set, combining tags, index values and ranges, and tests on the resources.
+ * <p>
+ * Each condition narrows the results. When results are read, the query is run on the version of the set
+ * at that time: the condition expected to match the fewest resources (by index range size, key count,
+ * or tag count) is used to find candidates, and the rest are checked against each candidate,
+ * reading the resource only for the tests added by {@link #filter(Predicate)}.
+ * <p>
+ * Results come in ordinal order, unless candidates are found by a numeric index,
+ * in which case they come in ascending order of that index's value.
+ * A query can be run more than once, and changes to the set after a run has started do not change its results.
+ * @param <R> the resource type.
+ * @see ResourceSet#query()
+ */
+public final class EngineResourceQuery<R extends EngineResource>
+{
+	private final ResourceSet<R> set;
+	String[] allOf;
+	String[] anyOf;
+	String[] noneOf;
+	/** Index names, then bounds (min, minInclusive, max, maxInclusive). */
+	List<Object[]> ranges;
+	/** Index names, then keys. */
+	List<Object[]> keys;
+	Predicate<? super R> predicate;
+	
+	EngineResourceQuery(ResourceSet<R> set)
+	{
+		this.set = set;
+		this.allOf = null;
+		this.anyOf = null;
+		this.noneOf = null;
+		this.ranges = new ArrayList<>(2);
+		this.keys = new ArrayList<>(2);
+		this.predicate = null;
+	}
+	
+	/**
+	 * Sets the tags that the resources must have, replacing the ones set before.
+	 * @param allOf the tags that the resources must all have. Can be null or empty for no requirement.
+	 * @param anyOf the tags that the resources must have at least one of. Can be null or empty for no requirement.
+	 * @param noneOf the tags that the resources must not have. Can be null or empty for no requirement.
+	 * @return this query.
+	 */
+	public EngineResourceQuery<R> withTags(String[] allOf, String[] anyOf, String[] noneOf)
+	{
+		this.allOf = allOf != null && allOf.length > 0 ? allOf.clone() : null;
+		this.anyOf = anyOf != null && anyOf.length > 0 ? anyOf.clone() : null;
+		this.noneOf = noneOf != null && noneOf.length > 0 ? noneOf.clone() : null;
+		return this;
+	}
+	
+	/**
+	 * Adds a condition on a numeric index: the value must be inside a range.
+	 * Resources without a value for the index (null) do not match.
+	 * @param indexName the name of the index. If there is no such index, nothing matches.
+	 * @param min the lower bound of the range, or null for no lower bound.
+	 * @param minInclusive if true, values equal to the lower bound are included.
+	 * @param max the upper bound of the range, or null for no upper bound.
+	 * @param maxInclusive if true, values equal to the upper bound are included.
+	 * @return this query.
+	 * @throws NullPointerException if the indexName provided is {@code null}.
+	 */
+	public EngineResourceQuery<R> inRange(String indexName, Number min, boolean minInclusive, Number max, boolean maxInclusive)
+	{
+		if (indexName == null)
+			throw new NullPointerException("indexName");
+		ranges.add(new Object[]{indexName, min, minInclusive, max, maxInclusive});
+		return this;
+	}
+	
+	/**
+	 * Adds a condition on an index: the value must match a key.
+	 * @param indexName the name of the hash, composite, or numeric index. If there is no such index, nothing matches.
+	 * @param key the value to match. For composite indices, this is an Object array of the member values, in order.
+	 * @return this query.
+	 * @throws NullPointerException if the indexName provided is {@code null}.
+	 * @throws IllegalArgumentException if the key is the wrong type for the index, when the query is run.
+	 */
+	public EngineResourceQuery<R> withKey(String indexName, Object key)
+	{
+		if (indexName == null)
+			throw new NullPointerException("indexName");
+		keys.add(new Object[]{indexName, key});
+		return this;
+	}
+	
+	/**
+	 * Adds a test that the resources must pass.
+	 * Tests are run last, only on the resources that match every other condition.
+	 * @param predicate the test.
+	 * @return this query.
+	 * @throws NullPointerException if the predicate provided is {@code null}.
+	 */
+	@SuppressWarnings("unchecked")
+	public EngineResourceQuery<R> filter(Predicate<? super R> predicate)
+	{
+		if (predicate == null)
+			throw new NullPointerException("predicate");
+		this.predicate = this.predicate == null ? predicate : ((Predicate<R>)this.predicate).and(predicate);
+		return this;
+	}
+	
+	/**
+	 * Runs this query.
+	 * @return a cursor for reading the results.
+	 * @throws IllegalArgumentException if a key is the wrong type for its index.
+	 */
+	public EngineResourceCursor<R> cursor()
+	{
+		EngineResourceQueryPlan<R> plan = new EngineResourceQueryPlan<>(this, set.getVersion());
+		return new EngineResourceCursor<>(plan, 0, plan.end);
+	}
+	
+	/**
+	 * Runs this query.
+	 * The spliterator can be split for parallel processing, by ranges of candidates.
+	 * @return a spliterator for the results.
+	 * @throws IllegalArgumentException if a key is the wrong type for its index.
+	 */
+	public Spliterator<R> spliterator()
+	{
+		return new QuerySpliterator<>(cursor());
+	}
+	
+	/**
+	 * Runs this query.
+	 * @return a sequential stream of the results.
+	 * @throws IllegalArgumentException if a key is the wrong type for its index.
+	 */
+	public Stream<R> stream()
+	{
+		return StreamSupport.stream(spliterator(), false);
+	}
+	
+	/**
+	 * Runs this query.
+	 * @return a parallel stream of the results.
+	 * @throws IllegalArgumentException if a key is the wrong type for its index.
+	 */
+	public Stream<R> parallelStream()
+	{
+		return StreamSupport.stream(spliterator(), true);
+	}
+	
+	/**
+	 * Runs this query and counts the results.
+	 * @return the amount of matching resources.
+	 * @throws IllegalArgumentException if a key is the wrong type for its index.
+	 */
+	public int count()
+	{
+		EngineResourceQueryPlan<R> plan = new EngineResourceQueryPlan<>(this, set.getVersion());
+		if (plan.isExact())
+			return plan.end;
+		EngineResourceCursor<R> cursor = new EngineResourceCursor<>(plan, 0, plan.end);
+		int out = 0;
+		while (cursor.nextOrdinal() >= 0)
+			out++;
+		return out;
+	}
+
+	/**
+	 * Spliterator over the results of a query.
+	 * @param <R> the resource type.
+	 */
+	private static class QuerySpliterator<R extends EngineResource> implements Spliterator<R>
+	{
+		private EngineResourceCursor<R> cursor;
+		
+		QuerySpliterator(EngineResourceCursor<R> cursor)
+		{
+			this.cursor = cursor;
+		}
+		
+		@Override
+		public boolean tryAdvance(Consumer<? super R> action)
+		{
+			if (!cursor.hasNext())
+				return false;
+			action.accept(cursor.next());
+			return true;
+		}
+		
+		@Override
+		public void forEachRemaining(Consumer<? super R> action)
+		{
+			int ordinal;
+			while ((ordinal = cursor.nextOrdinal()) >= 0)
+				action.accept(cursor.plan.version.getByOrdinal(ordinal));
+		}
+		
+		@Override
+		public Spliterator<R> trySplit()
+		{
+			EngineResourceCursor<R> split;
+			return (split = cursor.split()) != null ? new QuerySpliterator<>(split) : null;
+		}
+		
+		@Override
+		public long estimateSize()
+		{
+			return cursor.estimateRemaining();
+		}
+		
+		@Override
+		public int characteristics()
+		{
+			return ORDERED | DISTINCT | NONNULL | IMMUTABLE;
+		}
+
+	}
+
+}
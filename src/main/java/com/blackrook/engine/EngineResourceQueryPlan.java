@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.blackrook.engine.struct.PersistentOrdinalSet;
+
+/**
+ * A query, resolved against a version: the candidates to visit and the conditions to check on each.
+ * Candidates are either a scan of ordinal bits (by tags, or every resource),
+ * a range of numeric index positions, or the ordinals under a key in a hash index.
+ * Plans are not changed once made, and can be shared by threads.
+ * @param <R> the resource type.
+ */
+class EngineResourceQueryPlan<R extends EngineResource>
+{
+	private static final int[] NO_ORDINALS = new int[0];
+	
+	final EngineResourceVersion<R> version;
+	/** Tag conditions, or null if none. */
+	private final EngineResourceTagMatch tags;
+	/** Numeric index conditions. */
+	private final List<EngineResourceNumericIndex<R>> indexes;
+	/** Position ranges in each numeric index (start, end). */
+	private final List<int[]> indexRanges;
+	/** Hash index conditions. */
+	private final List<EngineResourceKeyIndex<R>> keyIndexes;
+	/** Keys for each hash index. */
+	private final List<Object> keyValues;
+	private final Predicate<? super R> predicate;
+	
+	/** If true, candidates are found by scanning ordinal bits. */
+	private boolean scan;
+	/** If true, candidates come from the tag conditions (when scanning). */
+	private boolean scanTags;
+	/** Numeric index that candidates come from, or null. */
+	private EngineResourceNumericIndex<R> driverIndex;
+	/** Position offset into the driving numeric index. */
+	private int driverStart;
+	/** Candidate ordinals from a hash index, or null. */
+	private int[] driverOrdinals;
+	/** Condition that candidates come from, which is not checked again (-1 for none). */
+	private int driverCondition;
+	/** Amount of candidates (words, if scanning). */
+	int end;
+	
+	EngineResourceQueryPlan(EngineResourceQuery<R> query, EngineResourceVersion<R> version)
+	{
+		this.version = version;
+		this.tags = query.allOf != null || query.anyOf != null || query.noneOf != null ? new EngineResourceTagMatch(version, query.allOf, query.anyOf, query.noneOf) : null;
+		this.indexes = new ArrayList<>(query.ranges.size() + query.keys.size());
+		this.indexRanges = new ArrayList<>(query.ranges.size() + query.keys.size());
+		this.keyIndexes = new ArrayList<>(query.keys.size());
+		this.keyValues = new ArrayList<>(query.keys.size());
+		this.predicate = query.predicate;
+		
+		boolean empty = false;
+		for (Object[] range : query.ranges)
+		{
+			EngineResourceNumericIndex<R> index;
+			if ((index = version.indexMap.get((String)range[0])) == null)
+			{
+				empty = true;
+				continue;
+			}
+			int start = index.rangeStart((Number)range[1], (Boolean)range[2]);
+			int end = index.rangeEnd((Number)range[3], (Boolean)range[4]);
+			addRange(index, start, end);
+		}
+		for (Object[] key : query.keys)
+		{
+			EngineResourceKeyIndex<R> keyIndex;
+			EngineResourceNumericIndex<R> index;
+			if ((keyIndex = version.keyIndexMap.get((String)key[0])) != null)
+			{
+				keyIndexes.add(keyIndex);
+				keyValues.add(keyIndex.lookupKey(key[1]));
+			}
+			else if ((index = version.indexMap.get((String)key[0])) != null)
+				addRange(index, index.lowerBound(EngineResourceNumericIndex.numericKey(key[1])), index.upperBound(EngineResourceNumericIndex.numericKey(key[1])));
+			else
+				empty = true;
+		}
+		
+		// pick the condition with the fewest candidates.
+		int best = tags != null ? tagEstimate(query) : version.size();
+		this.scan = true;
+		this.driverCondition = -1;
+		for (int i = 0; i < indexes.size(); i++)
+		{
+			int[] range = indexRanges.get(i);
+			int count = Math.max(0, range[1] - range[0]);
+			if (count < best || (count == best && scan))
+			{
+				best = count;
+				scan = false;
+				driverCondition = i;
+			}
+		}
+		for (int i = 0; i < keyIndexes.size(); i++)
+		{
+			int count = keyIndexes.get(i).count(keyValues.get(i));
+			if (count < best || (count == best && scan))
+			{
+				best = count;
+				scan = false;
+				driverCondition = indexes.size() + i;
+			}
+		}
+		
+		this.scanTags = scan && tags != null;
+		if (empty)
+		{
+			this.scan = false;
+			this.driverOrdinals = NO_ORDINALS;
+			this.end = 0;
+		}
+		else if (scan)
+		{
+			this.end = tags != null ? tags.wordCount() : (version.ordinalLimit + 63) >> 6;
+		}
+		else if (driverCondition < indexes.size())
+		{
+			int[] range = indexRanges.get(driverCondition);
+			this.driverIndex = indexes.get(driverCondition);
+			this.driverStart = range[0];
+			this.end = Math.max(0, range[1] - range[0]);
+		}
+		else
+		{
+			int k = driverCondition - indexes.size();
+			this.driverOrdinals = new int[best];
+			this.end = keyIndexes.get(k).getOrdinals(version, keyValues.get(k), driverOrdinals, 0);
+		}
+	}
+	
+	private void addRange(EngineResourceNumericIndex<R> index, int start, int end)
+	{
+		indexes.add(index);
+		indexRanges.add(new int[]{start, end});
+	}
+	
+	// Estimates the amount of resources that match the tags, by the rarest required tag.
+	private int tagEstimate(EngineResourceQuery<R> query)
+	{
+		if (query.allOf == null)
+			return version.size();
+		int out = Integer.MAX_VALUE;
+		for (String tag : query.allOf)
+		{
+			PersistentOrdinalSet set;
+			if ((set = version.getTagBits(tag)) == null)
+				return 0;
+			out = Math.min(out, set.size());
+		}
+		return out;
+	}
+	
+	/**
+	 * @return true if candidates are found by scanning ordinal bits (positions are word indices).
+	 */
+	boolean isScan()
+	{
+		return scan;
+	}
+	
+	/**
+	 * @return true if every candidate is a result, so the amount of results is {@link #end}.
+	 */
+	boolean isExact()
+	{
+		return !scan && predicate == null && tags == null && indexes.size() + keyIndexes.size() <= 1;
+	}
+	
+	/**
+	 * @param w the word index.
+	 * @return the candidate bits in the word.
+	 */
+	long scanWord(int w)
+	{
+		return scanTags ? tags.word(w) : version.live.word(w);
+	}
+	
+	/**
+	 * @param position the candidate position.
+	 * @return the candidate ordinal.
+	 */
+	int candidate(int position)
+	{
+		return driverOrdinals != null ? driverOrdinals[position] : driverIndex.getEntry(driverStart + position).ordinal;
+	}
+	
+	/**
+	 * Checks a candidate against the conditions that it was not found by.
+	 * @param ordinal the candidate ordinal.
+	 * @return true if it matches, false if not.
+	 */
+	boolean accepts(int ordinal)
+	{
+		if (tags != null && !scanTags)
+		{
+			int w = ordinal >> 6;
+			if (w >= tags.wordCount() || (tags.word(w) & (1L << ordinal)) == 0L)
+				return false;
+		}
+		EngineResourceEntry<R> entry = version.getEntry(ordinal);
+		for (int i = 0; i < indexes.size(); i++)
+		{
+			if (i == driverCondition)
+				continue;
+			EngineResourceNumericIndex<R> index = indexes.get(i);
+			int[] range = indexRanges.get(i);
+			if (!entry.isIndexed(index.slot))
+				return false;
+			// equal values share a group of positions, which is either in the range or not.
+			int position = index.keyPosition(entry.keys[index.slot]);
+			if (position < range[0] || position >= range[1])
+				return false;
+		}
+		for (int i = 0; i < keyIndexes.size(); i++)
+		{
+			if (indexes.size() + i == driverCondition)
+				continue;
+			Object key;
+			if ((key = keyValues.get(i)) == null || !key.equals(entry.hashKeys[keyIndexes.get(i).slot]))
+				return false;
+		}
+		return predicate == null || predicate.test(entry.resource());
+	}
+
+}
@@ -0,0 +1,292 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.blackrook.engine.EngineLoggingFactory.Logger;
+import com.blackrook.engine.EngineResourceSet.DefinitionReload;
+import com.blackrook.engine.exception.EngineSetupException;
+import com.blackrook.engine.receiver.EngineMessageReceiver;
+import com.blackrook.engine.roles.EngineShutdownListener;
+import com.blackrook.engine.roles.EngineUpdateListener;
+
+/**
+ * Watches the file system's directories and reloads changed resource definition files.
+ * <p>
+ * Changes are collected on a watcher thread, and a file is read once it has not changed for a short while
+ * (editors often write a file in more than one step). Only files that definitions were read from are reloaded.
+ * The definitions are applied on the update ticker, so that resources only change between updates, 
+ * and the results are sent as {@link EngineResourceSet#MESSAGE_DEFINITIONS_RELOADED} messages.
+ * The watcher is stopped when the engine shuts down.
+ * @author Matthew Tropiano
+ */
+final class EngineResourceReloader implements EngineUpdateListener, EngineShutdownListener
+{
+	/** Time that a file must go unchanged before it is reloaded. */
+	private static final long SETTLE_MILLIS = 250L;
+
+	private Logger logger;
+	private EngineResourceSet resources;
+	private EngineMessageReceiver messageReceiver;
+	/** The directory roots, searched first to last. */
+	private List<Path> roots;
+
+	private WatchService watchService;
+	private Thread watcherThread;
+	/** The root and directory of each watch key. */
+	private Map<WatchKey, Path[]> watchedDirectories;
+	/** Changed paths (relative to their root) and when they last changed, in nanoseconds. Watcher thread only. */
+	private Map<String, Long> pending;
+	/** Changed files read by the watcher thread, to reload on the next update. */
+	private Queue<ChangedFile> changes;
+
+	/**
+	 * Creates the reloader.
+	 * @param logger the logger.
+	 * @param resources the resource set to reload into.
+	 * @param messageReceiver the receiver to send reload messages to.
+	 * @param directories the directories of the file system stack, searched first to last.
+	 */
+	EngineResourceReloader(Logger logger, EngineResourceSet resources, EngineMessageReceiver messageReceiver, List<File> directories)
+	{
+		this.logger = logger;
+		this.resources = resources;
+		this.messageReceiver = messageReceiver;
+		this.roots = new ArrayList<>(directories.size());
+		for (File dir : directories)
+			roots.add(dir.toPath().toAbsolutePath());
+		this.watchService = null;
+		this.watcherThread = null;
+		this.watchedDirectories = new HashMap<>();
+		this.pending = new LinkedHashMap<>();
+		this.changes = new ConcurrentLinkedQueue<>();
+	}
+
+	/**
+	 * Registers every directory and starts the watcher thread.
+	 * @throws IOException if the directories could not be watched.
+	 */
+	void start() throws IOException
+	{
+		watchService = FileSystems.getDefault().newWatchService();
+		for (Path root : roots)
+			register(root, root, false);
+
+		watcherThread = new Thread(this::watch, "EngineResourceReloader");
+		watcherThread.setDaemon(true);
+		watcherThread.start();
+		logger.infof("Watching %d director(ies) for resource definition changes.", roots.size());
+	}
+
+	/**
+	 * Closes the watch service and waits for the watcher thread to end.
+	 * Changes that were not applied yet are dropped.
+	 */
+	void stop()
+	{
+		if (watcherThread == null)
+			return;
+		try {
+			watchService.close();
+		} catch (IOException e) {
+			logger.warnf("Could not close the definition file watcher: %s", e.getMessage());
+		}
+		watcherThread.interrupt();
+		try {
+			watcherThread.join(SETTLE_MILLIS * 4);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		watcherThread = null;
+		changes.clear();
+	}
+
+	// Applies the changed files read since the last update. Only called on the ticker thread.
+	@Override
+	public void update(long tick, long currentNanos)
+	{
+		ChangedFile change;
+		while ((change = changes.poll()) != null)
+		{
+			try {
+				DefinitionReload reload = resources.reloadDefinitions(new StringReader(change.text), change.path);
+				logger.infof("Reloaded %s.", reload);
+				if (!reload.isEmpty())
+					messageReceiver.sendMessage(EngineResourceSet.MESSAGE_DEFINITIONS_RELOADED, reload);
+			} catch (IOException | EngineSetupException e) {
+				logger.errorf("Could not reload %s: %s", change.path, e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void onEngineShutdown()
+	{
+		stop();
+	}
+
+	@Override
+	public void onUnexpectedEngineShutDown(Throwable t)
+	{
+		stop();
+	}
+
+	// Registers a directory and its subdirectories, marking their files as changed if they are new.
+	private void register(Path root, Path dir, final boolean created) throws IOException
+	{
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>()
+		{
+			@Override
+			public FileVisitResult preVisitDirectory(Path path, BasicFileAttributes attrs) throws IOException
+			{
+				WatchKey key = path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+				watchedDirectories.put(key, new Path[]{root, path});
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(Path path, BasicFileAttributes attrs)
+			{
+				if (created)
+					changed(root, path);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	// Watcher thread loop.
+	private void watch()
+	{
+		try {
+			while (true)
+			{
+				WatchKey key = pending.isEmpty() ? watchService.take() : watchService.poll(SETTLE_MILLIS, TimeUnit.MILLISECONDS);
+				if (key != null)
+					readEvents(key);
+				reloadSettled();
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			// stopped.
+		}
+	}
+
+	private void readEvents(WatchKey key)
+	{
+		Path[] rootAndDir;
+		if ((rootAndDir = watchedDirectories.get(key)) == null)
+			return;
+
+		for (WatchEvent<?> event : key.pollEvents())
+		{
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+			{
+				logger.warnf("Missed some file changes in %s. Changed definition files may not be reloaded.", rootAndDir[1]);
+				continue;
+			}
+
+			Path path = rootAndDir[1].resolve((Path)event.context());
+			if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+			{
+				try {
+					register(rootAndDir[0], path, true);
+				} catch (IOException e) {
+					logger.warnf("Could not watch new directory %s: %s", path, e.getMessage());
+				}
+			}
+			else
+			{
+				changed(rootAndDir[0], path);
+			}
+		}
+
+		if (!key.reset())
+			watchedDirectories.remove(key);
+	}
+
+	private void changed(Path root, Path path)
+	{
+		pending.put(root.relativize(path).toString().replace(File.separatorChar, '/'), System.nanoTime());
+	}
+
+	// Reloads the changed files that have settled.
+	private void reloadSettled()
+	{
+		long now = System.nanoTime();
+		Iterator<Map.Entry<String, Long>> it = pending.entrySet().iterator();
+		while (it.hasNext())
+		{
+			Map.Entry<String, Long> entry = it.next();
+			if (now - entry.getValue() < TimeUnit.MILLISECONDS.toNanos(SETTLE_MILLIS))
+				continue;
+			it.remove();
+			if (resources.isDefinitionSource(entry.getKey()))
+				read(entry.getKey());
+		}
+	}
+
+	// Reads a definition file for the next update, from the first directory that has it (or as empty if none do).
+	private void read(String path)
+	{
+		Path file = null;
+		for (Path root : roots)
+		{
+			Path p = root.resolve(path);
+			if (Files.isRegularFile(p))
+			{
+				file = p;
+				break;
+			}
+		}
+
+		try {
+			changes.add(new ChangedFile(path, file != null ? new String(Files.readAllBytes(file), StandardCharsets.UTF_8) : ""));
+		} catch (IOException e) {
+			logger.errorf("Could not reload %s: %s", path, e.getMessage());
+		}
+	}
+
+	/**
+	 * A changed definition file and its contents.
+	 */
+	private static class ChangedFile
+	{
+		private String path;
+		private String text;
+
+		ChangedFile(String path, String text)
+		{
+			this.path = path;
+			this.text = text;
+		}
+	}
+
+}
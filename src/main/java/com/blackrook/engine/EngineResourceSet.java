@@ -7,20 +7,50 @@
  ******************************************************************************/
 package com.blackrook.engine;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Queue;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import com.blackrook.engine.EngineLoggingFactory.Logger;
+import com.blackrook.engine.annotation.element.CCMD;
+import com.blackrook.engine.annotation.element.CVAR;
+import com.blackrook.engine.annotation.resource.Column;
+import com.blackrook.engine.annotation.resource.CombinedSet;
+import com.blackrook.engine.annotation.resource.CompositeIndex;
 import com.blackrook.engine.annotation.resource.Indexed;
+import com.blackrook.engine.annotation.resource.Spatial;
 import com.blackrook.engine.exception.EngineSetupException;
-import com.blackrook.engine.struct.HashDequeMap;
-import com.blackrook.engine.struct.TreeDequeMap;
+import com.blackrook.engine.struct.OrdinalSet;
+import com.blackrook.engine.struct.PersistentOrdinalSet;
 import com.blackrook.engine.struct.TypeProfileFactory.Profile;
 import com.blackrook.engine.struct.TypeProfileFactory.Profile.FieldInfo;
 import com.blackrook.engine.struct.TypeProfileFactory.Profile.MethodInfo;
@@ -28,29 +58,347 @@ import com.blackrook.engine.struct.Utils;
 
 /**
  * The thing that holds and manages all engine resources (by class).
+ * <p>
+ * This is thread-safe. Reads never block: each {@link ResourceSet} is read through an 
+ * immutable published version, and changes are made to a copy that is published atomically,
+ * either after each change or at the end of an update batch (see {@link #beginUpdate()}).
+ * A set can only be changed by one batch at a time.
  * @author Matthew Tropiano
  */
 public class EngineResourceSet
 {
+	/** 
+	 * Type of the message sent when a definition file is reloaded after it changed 
+	 * (see {@link EngineConfig#getResourceDefinitionReload()}).
+	 * The only argument is the {@link DefinitionReload}.
+	 */
+	public static final String MESSAGE_DEFINITIONS_RELOADED = "engine.resources.definitionsReloaded";
+	
 	/** Engine resources. */
 	private Map<Class<?>, ResourceSet<?>> resources;
+	/** Combined sets, by type annotated with {@link CombinedSet}. */
+	private Map<Class<?>, ResourceSet<?>> combinedSets;
+	/** Held while combined sets are changed, so that they are checked and changed together. */
+	private Object combinedLock;
+	/** Interned resource tags, shared by all sets. */
+	private EngineSymbolTable symbols;
+	/** The update batch of each thread, if any. */
+	private ThreadLocal<Update> updates;
+	/** Logger for the definition reader (can be null). */
+	private Logger definitionLogger;
+	/** The resource classes that definitions can be read for. */
+	private Iterable<? extends Class<? extends EngineResource>> resourceClasses;
+	/** The amount of threads that the definition reader can use. */
+	private int definitionThreadCount;
+	/** Resource definition reader (created on first use). */
+	private volatile EngineResourceDefinitionReader definitionReader;
+	/** The resources last read from each definition stream, by stream name. */
+	private Map<String, EngineResourceDefinitionReader.Source> definitionSources;
 
 	EngineResourceSet()
 	{
-		this.resources = new HashMap<>();
+		this(null, Collections.emptyList(), 1);
+	}
+	
+	EngineResourceSet(Logger definitionLogger, Iterable<? extends Class<? extends EngineResource>> resourceClasses, int definitionThreadCount)
+	{
+		this.resources = new ConcurrentHashMap<>();
+		this.combinedSets = new ConcurrentHashMap<>();
+		this.combinedLock = new Object();
+		this.symbols = new EngineSymbolTable();
+		this.updates = new ThreadLocal<>();
+		this.definitionLogger = definitionLogger;
+		this.resourceClasses = resourceClasses;
+		this.definitionThreadCount = definitionThreadCount;
+		this.definitionReader = null;
+		this.definitionSources = new ConcurrentHashMap<>();
 	}
 	
+	/**
+	 * Adds a resource to the resource set for its class.
+	 * If a resource of that class with the same id exists, it is replaced.
+	 * @param <T> the resource type.
+	 * @param resource the resource to add.
+	 */
 	@SuppressWarnings("unchecked")
 	public <T extends EngineResource> void addResource(T resource)
 	{
-		Class<T> clazz = (Class<T>)resource.getClass();
-		ResourceSet<T> resourceList;
-		if (!resources.containsKey(clazz))
-			resources.put(clazz, resourceList = new ResourceSet<T>(clazz));
-		else 
-			resourceList = (ResourceSet<T>)resources.get(clazz);
+		getOrCreateResourceSet((Class<T>)resource.getClass()).add(resource);
+	}
+	
+	// Gets the resource set for a class, creating it (and adding it to the combined sets of its supertypes) if needed.
+	@SuppressWarnings("unchecked")
+	private <T extends EngineResource> ResourceSet<T> getOrCreateResourceSet(Class<T> clazz)
+	{
+		return (ResourceSet<T>)resources.computeIfAbsent(clazz, (c) -> attachCombined(new ResourceSet<T>(clazz, this)));
+	}
+	
+	// Adds a resource set to the combined sets of its class and supertypes annotated with CombinedSet, creating them if needed.
+	@SuppressWarnings("unchecked")
+	private <T extends EngineResource> ResourceSet<T> attachCombined(ResourceSet<T> set)
+	{
+		List<Class<?>> types = getCombinedTypes(set.getType(), new ArrayList<>());
+		// in name order, so that every set takes the combined sets that it shares in the same order when changed.
+		types.sort(Comparator.comparing(Class::getName));
+		for (Class<?> type : types)
+		{
+			if (!EngineResource.class.isAssignableFrom(type))
+				throw new EngineSetupException("Combined set type "+type.getSimpleName()+" must extend or implement EngineResource.");
+		}
+		for (Class<?> type : types)
+		{
+			ResourceSet<? super T> combined = (ResourceSet<? super T>)combinedSets.computeIfAbsent(type, (t) -> createCombinedSet(t.asSubclass(EngineResource.class)));
+			combined.memberTypes.add(set.getType());
+			set.combinedSets.add(combined);
+		}
+		return set;
+	}
+	
+	// Creates an empty combined set.
+	private <T extends EngineResource> ResourceSet<T> createCombinedSet(Class<T> type)
+	{
+		ResourceSet<T> out = new ResourceSet<>(type, this);
+		out.memberTypes = new CopyOnWriteArrayList<>();
+		return out;
+	}
+	
+	// Adds a type and its supertypes that are annotated with CombinedSet to a list, once each.
+	private static List<Class<?>> getCombinedTypes(Class<?> type, List<Class<?>> out)
+	{
+		if (type == null || out.contains(type))
+			return out;
+		if (type.isAnnotationPresent(CombinedSet.class))
+			out.add(type);
+		getCombinedTypes(type.getSuperclass(), out);
+		for (Class<?> iface : type.getInterfaces())
+			getCombinedTypes(iface, out);
+		return out;
+	}
+	
+	/**
+	 * Reads resource definitions from a UTF-8 stream and adds the resources.
+	 * Definition block types are bound to resource classes by their {@link com.blackrook.engine.annotation.resource.DefinitionName}.
+	 * @param in the input stream.
+	 * @param streamName the name of the stream, for error messages.
+	 * @return the amount of resources read.
+	 * @throws IOException if a read error occurs.
+	 * @throws EngineSetupException if the definitions could not be parsed.
+	 * @see EngineResourceDefinitionReader
+	 */
+	public int readDefinitions(InputStream in, String streamName) throws IOException
+	{
+		return getDefinitionReader().read(in, streamName, this);
+	}
+	
+	/**
+	 * Reads resource definitions and adds the resources.
+	 * Definition block types are bound to resource classes by their {@link com.blackrook.engine.annotation.resource.DefinitionName}.
+	 * @param reader the reader.
+	 * @param streamName the name of the stream, for error messages.
+	 * @return the amount of resources read.
+	 * @throws IOException if a read error occurs.
+	 * @throws EngineSetupException if the definitions could not be parsed.
+	 * @see EngineResourceDefinitionReader
+	 */
+	public int readDefinitions(Reader reader, String streamName) throws IOException
+	{
+		return getDefinitionReader().read(reader, streamName, this);
+	}
+	
+	/**
+	 * Reads resource definitions from a UTF-8 stream that was read before, and adds, replaces, or removes
+	 * only the resources whose blocks were added, changed, or removed since.
+	 * @param in the input stream.
+	 * @param streamName the name of the stream, which must match the name it was first read with.
+	 * @return the changes that were made.
+	 * @throws IOException if a read error occurs.
+	 * @throws EngineSetupException if the definitions could not be parsed. If so, no changes are made.
+	 * @see EngineResourceDefinitionReader#reload(Reader, String, EngineResourceSet)
+	 */
+	public DefinitionReload reloadDefinitions(InputStream in, String streamName) throws IOException
+	{
+		return reloadDefinitions(new InputStreamReader(in, StandardCharsets.UTF_8), streamName);
+	}
+	
+	/**
+	 * Reads resource definitions from a stream that was read before, and adds, replaces, or removes
+	 * only the resources whose blocks were added, changed, or removed since.
+	 * @param reader the reader.
+	 * @param streamName the name of the stream, which must match the name it was first read with.
+	 * @return the changes that were made.
+	 * @throws IOException if a read error occurs.
+	 * @throws EngineSetupException if the definitions could not be parsed. If so, no changes are made.
+	 * @see EngineResourceDefinitionReader#reload(Reader, String, EngineResourceSet)
+	 */
+	public DefinitionReload reloadDefinitions(Reader reader, String streamName) throws IOException
+	{
+		return getDefinitionReader().reload(reader, streamName, this);
+	}
+	
+	/**
+	 * Checks if definitions were read from a stream name.
+	 * Names are compared with backslashes as slashes and without leading slashes.
+	 * @param streamName the stream name.
+	 * @return true if so, false if not.
+	 */
+	public boolean isDefinitionSource(String streamName)
+	{
+		return definitionSources.containsKey(getDefinitionSourceKey(streamName));
+	}
+	
+	/**
+	 * @param streamName the stream name.
+	 * @return the resources last read from a definition stream, or null if never read.
+	 */
+	EngineResourceDefinitionReader.Source getDefinitionSource(String streamName)
+	{
+		return definitionSources.get(getDefinitionSourceKey(streamName));
+	}
+	
+	/**
+	 * Sets the resources last read from a definition stream.
+	 * @param streamName the stream name.
+	 * @param source the resources read.
+	 */
+	void setDefinitionSource(String streamName, EngineResourceDefinitionReader.Source source)
+	{
+		definitionSources.put(getDefinitionSourceKey(streamName), source);
+	}
+	
+	// Normalizes a stream name so that file system paths match however they were written.
+	private static String getDefinitionSourceKey(String streamName)
+	{
+		String out = streamName.replace('\\', '/');
+		int i = 0;
+		while (i < out.length() && out.charAt(i) == '/')
+			i++;
+		return out.substring(i);
+	}
+	
+	/**
+	 * Gets the definition reader used by {@link #readDefinitions(Reader, String)}, 
+	 * which also keeps the read totals and throughput.
+	 * @return the definition reader for this set's resource classes.
+	 */
+	public EngineResourceDefinitionReader getDefinitionReader()
+	{
+		EngineResourceDefinitionReader out;
+		if ((out = definitionReader) == null)
+		{
+			synchronized (this)
+			{
+				if ((out = definitionReader) == null)
+					definitionReader = out = new EngineResourceDefinitionReader(definitionLogger, resourceClasses, definitionThreadCount);
+			}
+		}
+		return out;
+	}
+	
+	/**
+	 * Starts an update batch on the current thread.
+	 * Until the matching {@link #endUpdate()}, changes made by this thread are not 
+	 * published to other threads after each change, but all at once at the end,
+	 * which avoids copying a set for every change during bulk loading.
+	 * This thread reads its own changes as they are made.
+	 * Batches can be nested - only the outermost one publishes.
+	 * <p>A batch holds each resource set that it changes until it ends: changes to those sets from other 
+	 * threads wait for it, so that they cannot publish the batch's changes before it is done.
+	 * Batches on several threads can run at the same time if they change different sets.
+	 * <p>A batch can be published early with {@link ResourceSet#publish()} if other threads need to read its changes.
+	 */
+	public void beginUpdate()
+	{
+		Update update;
+		if ((update = updates.get()) == null)
+			updates.set(update = new Update());
+		update.depth++;
+	}
 
-		resourceList.add(resource);
+	/**
+	 * Ends an update batch on the current thread.
+	 * If this ends the outermost batch, the changed resource sets are published, and other threads can change them.
+	 * @throws IllegalStateException if no batch was started on this thread.
+	 */
+	public void endUpdate()
+	{
+		Update update;
+		if ((update = updates.get()) == null)
+			throw new IllegalStateException("No resource update was started on this thread.");
+		if (--update.depth > 0)
+			return;
+		
+		updates.remove();
+		for (ResourceSet<?> set : update.sets)
+			set.release(update);
+	}
+	
+	/**
+	 * Takes a resource set for the current thread's update batch, so that only this batch can change it
+	 * until it ends. If a batch on another thread holds the set, this waits for that batch to end.
+	 * Must not be called while any resource set is locked.
+	 * @param set the set to change.
+	 * @throws IllegalStateException if no batch was started on this thread, or if batches on other threads 
+	 * 		are waiting for sets that this batch holds (which would never end).
+	 * @throws EngineSetupException if the thread is interrupted while waiting.
+	 */
+	private void claim(ResourceSet<?> set)
+	{
+		Update update;
+		if ((update = updates.get()) == null)
+			throw new IllegalStateException("No resource update was started on this thread.");
+		if (update.sets.contains(set))
+			return;
+		
+		synchronized (set)
+		{
+			while (set.writer != null && set.writer != update)
+			{
+				update.waitingFor = set;
+				try {
+					// follow the batches that are waiting on each other.
+					Set<Update> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+					for (Update other = set.writer; other != null && seen.add(other); )
+					{
+						if (other == update)
+							throw new IllegalStateException("Resource update batches on different threads are waiting for each other's resource sets.");
+						ResourceSet<?> waitingFor = other.waitingFor;
+						other = waitingFor != null ? waitingFor.writer : null;
+					}
+					set.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new EngineSetupException("Interrupted while waiting for a resource update on another thread.", e);
+				} finally {
+					update.waitingFor = null;
+				}
+			}
+			set.writer = update;
+		}
+		update.sets.add(set);
+	}
+	
+	/**
+	 * Checks if the current thread is in an update batch, and if so, 
+	 * adds a resource set to the sets to publish at the end of it. 
+	 * @param set the set that was changed.
+	 * @return true if publishing is deferred, false if the set should publish now.
+	 */
+	private boolean deferPublish(ResourceSet<?> set)
+	{
+		Update update;
+		if ((update = updates.get()) == null)
+			return false;
+		update.sets.add(set);
+		return true;
+	}
+	
+	/**
+	 * Gets the symbol table that resource tags are interned into, shared by all of the resource sets.
+	 * @return the symbol table.
+	 */
+	public EngineSymbolTable getSymbolTable()
+	{
+		return symbols;
 	}
 	
 	/**
@@ -65,6 +413,23 @@ public class EngineResourceSet
 		return (ResourceSet<T>)resources.get(clazz);
 	}
 	
+	/**
+	 * Returns the combined set of the resources of every class that extends or implements a type
+	 * annotated with {@link CombinedSet}, which can be searched in one lookup instead of one per class.
+	 * <p>
+	 * The combined set is changed along with the sets of its member classes, and cannot be changed
+	 * on its own: adding, removing, or re-indexing through it changes the set of the resource's class.
+	 * @param <T> the type contained by the set.
+	 * @param type the annotated class or interface.
+	 * @return the combined set, or null if no resources of a member class were added yet.
+	 * @see CombinedSet
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends EngineResource> ResourceSet<T> getCombinedSet(Class<T> type)
+	{
+		return (ResourceSet<T>)combinedSets.get(type);
+	}
+	
 	/**
 	 * Returns a resource of a particular type and id.
 	 * @param <T> the type contained by the list.
@@ -82,423 +447,2780 @@ public class EngineResourceSet
 	}
 
 	/**
-	 * Mapping of name-to-resource and id-to-resource.
-	 * @param <R> an EngineResource type.
+	 * Estimates the memory used by each resource set: its resources (held in memory), id map, tags,
+	 * indices and columns. This reads every resource in memory, so it is meant for occasional use.
+	 * Combined sets are included, without their resources (which are counted in their member sets).
+	 * @return the usage of each set, largest first.
+	 * @see ResourceSet#getMemoryUsage()
 	 */
-	public static class ResourceSet<R extends EngineResource> implements Iterable<R>
+	public List<MemoryUsage> getMemoryUsage()
 	{
-		private static final List<Class<?>> NUMERIC_CLASSES = new ArrayList<Class<?>>(12) 
+		List<MemoryUsage> out = new ArrayList<>(resources.size() + combinedSets.size());
+		for (ResourceSet<?> set : resources.values())
+			out.add(set.getMemoryUsage());
+		for (ResourceSet<?> set : combinedSets.values())
+			out.add(set.getMemoryUsage());
+		out.sort((a, b) -> Long.compare(b.getTotalBytes(), a.getTotalBytes()));
+		return out;
+	}
+	
+	/**
+	 * @return the estimated amount of memory used by all resource sets, in bytes.
+	 * @see #getMemoryUsage()
+	 */
+	@CVAR(value = "resources_memory", description = "Estimated bytes used by all resource sets.")
+	public long getMemoryEstimate()
+	{
+		long out = 0L;
+		for (ResourceSet<?> set : resources.values())
+			out += set.getMemoryUsage().getTotalBytes();
+		return out;
+	}
+	
+	/**
+	 * @return the amount of resources in all resource sets.
+	 */
+	@CVAR(value = "resources_count", description = "Amount of resources in all resource sets.")
+	public int getResourceCount()
+	{
+		int out = 0;
+		for (ResourceSet<?> set : resources.values())
+			out += set.size();
+		return out;
+	}
+	
+	@CCMD(value = "resmem", description = "Lists the estimated memory used by each resource type, or the parts of one type.", usage = {"type name"})
+	public String listMemoryUsage(String typeName)
+	{
+		StringBuilder sb = new StringBuilder();
+		List<MemoryUsage> usages = getMemoryUsage();
+		if (Utils.isEmpty(typeName))
 		{
-			private static final long serialVersionUID = 1160496069763796739L;
+			long total = 0L;
+			sb.append(String.format("%12s %10s %s\n", "bytes", "resources", "type"));
+			for (MemoryUsage usage : usages)
 			{
-				add(Byte.class);
-				add(Byte.TYPE);
-				add(Short.class);
-				add(Short.TYPE);
-				add(Integer.class);
-				add(Integer.TYPE);
-				add(Long.class);
-				add(Long.TYPE);
-				add(Float.class);
-				add(Float.TYPE);
-				add(Double.class);
-				add(Double.TYPE);
+				sb.append(String.format("%12d %10d %s\n", usage.getTotalBytes(), usage.getCount(), usage.getType().getName()));
+				total += usage.getTotalBytes();
 			}
-		};
+			sb.append("total ").append(total).append(" bytes in ").append(usages.size()).append(" type(s)");
+			return sb.toString();
+		}
 		
-		/** This class. */
-		private Class<R> listClass;
+		for (MemoryUsage usage : usages)
+		{
+			if (!typeName.equalsIgnoreCase(usage.getType().getName()) && !typeName.equalsIgnoreCase(usage.getType().getSimpleName()))
+				continue;
+			sb.append(usage.getType().getName()).append(": ").append(usage.getCount()).append(" resource(s), ").append(usage.getHeldCount()).append(" in memory\n");
+			sb.append(String.format("%12d resources\n", usage.getResourceBytes()));
+			sb.append(String.format("%12d entries\n", usage.getEntryBytes()));
+			sb.append(String.format("%12d ids\n", usage.getIdBytes()));
+			sb.append(String.format("%12d tags\n", usage.getTagBytes()));
+			sb.append(String.format("%12d ordinals\n", usage.getOrdinalBytes()));
+			for (Map.Entry<String, Long> index : usage.getIndexBytes().entrySet())
+				sb.append(String.format("%12d index %s\n", index.getValue(), index.getKey()));
+			for (Map.Entry<String, Long> column : usage.getColumnBytes().entrySet())
+				sb.append(String.format("%12d column %s\n", column.getValue(), column.getKey()));
+			sb.append(String.format("%12d total", usage.getTotalBytes()));
+			return sb.toString();
+		}
+		return "No resource type \"" + typeName + "\".";
+	}
+
+	/**
+	 * Writes a binary snapshot of all resource sets to a file, which can be read back
+	 * by {@link #readSnapshot(File, byte[])} without re-creating the resources or rebuilding indices.
+	 * The published contents of each set are written.
+	 * <p>
+	 * Resources are stored by their non-final, non-transient public fields and their properties
+	 * that have both a public getter and setter, which must be primitives, boxed primitives, 
+	 * Strings, enums, or arrays of those. Resource classes must have a public default constructor.
+	 * @param file the file to write.
+	 * @param inputHash a hash of the inputs that the resources were created from.
+	 * @throws IOException if the file could not be written.
+	 * @throws EngineSetupException if a resource class cannot be stored in a snapshot.
+	 */
+	public void writeSnapshot(File file, byte[] inputHash) throws IOException
+	{
+		EngineResourceSnapshot.write(this, file, inputHash);
+	}
+	
+	/**
+	 * Reads a binary snapshot written by {@link #writeSnapshot(File, byte[])}, replacing all resource sets.
+	 * The file is memory-mapped, and nothing is changed unless the whole snapshot is read.
+	 * This should be called before the resources are in use.
+	 * @param file the file to read.
+	 * @param inputHash a hash of the current inputs. If this does not match the one that the snapshot was written with, it is not read.
+	 * @return true if read, false if the file does not exist, or was written from different inputs or resource classes.
+	 * @throws IOException if the file could not be read, or is damaged.
+	 * @throws EngineSetupException if a resource class cannot be stored in a snapshot.
+	 */
+	public boolean readSnapshot(File file, byte[] inputHash) throws IOException
+	{
+		return readSnapshot(file, inputHash, 0);
+	}
+	
+	/**
+	 * Reads a binary snapshot written by {@link #writeSnapshot(File, byte[])}, replacing all resource sets.
+	 * The file is memory-mapped, and nothing is changed unless the whole snapshot is read.
+	 * This should be called before the resources are in use.
+	 * <p>
+	 * If <code>cacheSize</code> is greater than 0, the resource sets are lazy: each one only keeps its ids, 
+	 * tags, and indices, and resources are read from the mapped file when they are fetched. The most 
+	 * recently fetched resources of each set, up to the cache size, are kept in memory, and the rest are only 
+	 * softly referenced, so they may be read again later as a different object. Resources that are added, 
+	 * replaced, or re-indexed after the read are always kept in memory. Changes made in place to any other 
+	 * resource in a lazy set can be lost, so lazy sets are meant for resources that are not changed.
+	 * @param file the file to read.
+	 * @param inputHash a hash of the current inputs. If this does not match the one that the snapshot was written with, it is not read.
+	 * @param cacheSize the amount of resources per set to keep in memory, or 0 or less to read all resources at once.
+	 * @return true if read, false if the file does not exist, or was written from different inputs or resource classes.
+	 * @throws IOException if the file could not be read, or is damaged.
+	 * @throws EngineSetupException if a resource class cannot be stored in a snapshot.
+	 * @see ResourceSet#isLazy()
+	 */
+	public boolean readSnapshot(File file, byte[] inputHash, int cacheSize) throws IOException
+	{
+		return EngineResourceSnapshot.read(this, file, inputHash, cacheSize);
+	}
+	
+	// Gets all resource sets.
+	Collection<ResourceSet<?>> getResourceSets()
+	{
+		return resources.values();
+	}
+	
+	// Replaces all resource sets, and rebuilds the combined sets from them.
+	void setResourceSets(Collection<ResourceSet<?>> sets)
+	{
+		resources.clear();
+		combinedSets.clear();
+		for (ResourceSet<?> set : sets)
+		{
+			resources.put(set.getType(), set);
+			attachCombined(set).fillCombined();
+		}
+	}
+	
+	/**
+	 * The changes made to the resources by reloading a definition stream.
+	 * @see EngineResourceSet#reloadDefinitions(Reader, String)
+	 */
+	public static class DefinitionReload
+	{
+		private String streamName;
+		private List<EngineResource> added;
+		private List<EngineResource> replaced;
+		private List<EngineResource> removed;
 		
-		/** Name-to-id mapping. */
-		private HashMap<String, R> idMap;
-		/** Tag to id mapping. */
-		private HashDequeMap<String, R> tagHash;
-		/** Object index. */
-		private HashMap<String, TreeDequeMap<Index, R>> indexMap;
+		DefinitionReload(String streamName, List<EngineResource> added, List<EngineResource> replaced, List<EngineResource> removed)
+		{
+			this.streamName = streamName;
+			this.added = Collections.unmodifiableList(added);
+			this.replaced = Collections.unmodifiableList(replaced);
+			this.removed = Collections.unmodifiableList(removed);
+		}
 		
-		/** Index names. */
-		private HashMap<String, ValueGetter> indexNameList;
-
 		/**
-		 * Creates a new EngineResourceList.
-		 * @param clazz the resource class.
+		 * @return the name of the stream that was reloaded.
 		 */
-		ResourceSet(Class<R> clazz)
+		public String getStreamName()
 		{
-			this.listClass = clazz;
-			idMap = new HashMap<>();
-			tagHash = new HashDequeMap<>();
-			indexMap = new HashMap<>();
-			indexNameList = new HashMap<>();
-			
-			Profile<R> profile = Utils.getProfile(clazz);
-			
-			// indices
-			for (Map.Entry<String, FieldInfo> fieldEntry : profile.getPublicFieldsByName().entrySet())
-			{
-				FieldInfo fieldInfo = fieldEntry.getValue();
-				Field field = fieldInfo.getField();
-				Indexed anno = field.getAnnotation(Indexed.class);
-				if (anno == null)
-					continue;
-				
-				String name = Utils.isEmpty(anno.value()) ? fieldEntry.getKey() : anno.value();
-	
-				if (!NUMERIC_CLASSES.contains(field.getType()))
-					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Indexed field \""+name+"\" must return a numeric type.");
-				if (indexNameList.containsKey(name))
-					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Index \""+name+"\" is already declared.");
-					
-				indexNameList.put(name, new ValueGetter(field));
-			}
-			for (Map.Entry<String, MethodInfo> methodSignature : profile.getGetterMethodsByName().entrySet())
-			{
-				MethodInfo methodInfo = methodSignature.getValue();
-				Method method = methodInfo.getMethod();
-				Indexed anno = method.getAnnotation(Indexed.class);
-				if (anno == null)
-					continue;
-
-				String name = Utils.isEmpty(anno.value()) ? methodSignature.getKey() : anno.value();
-				
-				if (!NUMERIC_CLASSES.contains(methodInfo.getType()))
-					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Indexed getter \""+name+"\" must return a numeric type.");
-				if (indexNameList.containsKey(name))
-					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Index \""+name+"\" is already declared.");
-				
-				indexNameList.put(name, new ValueGetter(method));
-			}
+			return streamName;
 		}
 		
 		/**
-		 * Adds a resource to the list.
-		 * @param resource the added resource.
+		 * @return the resources that were added.
 		 */
-		public void add(R resource)
+		public List<EngineResource> getAdded()
 		{
-			String id = resource.getId();
-			if (id == null)
-				throw new EngineSetupException("Attempted to add resource of class \""+listClass.getSimpleName()+"\". No id!");
-			
-			idMap.put(id, resource);
-			for (String s : resource.getTags())
-				tagHash.add(s, resource);
-	
-			// add indexed fields.
-			reIndex(resource);
-			
+			return added;
+		}
+		
+		/**
+		 * @return the new resources that replaced resources with the same id.
+		 */
+		public List<EngineResource> getReplaced()
+		{
+			return replaced;
+		}
+		
+		/**
+		 * @return the resources that were removed.
+		 */
+		public List<EngineResource> getRemoved()
+		{
+			return removed;
+		}
+		
+		/**
+		 * @return true if nothing was changed, false otherwise.
+		 */
+		public boolean isEmpty()
+		{
+			return added.isEmpty() && replaced.isEmpty() && removed.isEmpty();
+		}
+		
+		@Override
+		public String toString()
+		{
+			return streamName + ": " + added.size() + " added, " + replaced.size() + " replaced, " + removed.size() + " removed";
 		}
+	}
 	
-		// indexes a resource.
-		private void reIndex(R resource)
+	/**
+	 * Estimated memory used by a resource set, in bytes, by part.
+	 * Sizes are estimated from a typical 64-bit layout. Objects referenced by more than one part
+	 * (like id strings, which are also referenced by the resources) are only counted in the first
+	 * of: ids, tags, indices, columns, entries, resources.
+	 * @see ResourceSet#getMemoryUsage()
+	 */
+	public static class MemoryUsage
+	{
+		private Class<?> type;
+		private int count;
+		private int heldCount;
+		private long resourceBytes;
+		private long entryBytes;
+		private long idBytes;
+		private long tagBytes;
+		private long ordinalBytes;
+		private Map<String, Long> indexBytes;
+		private Map<String, Long> columnBytes;
+		
+		private MemoryUsage(Class<?> type)
 		{
-			for (Map.Entry<String, ValueGetter> pair : indexNameList.entrySet())
-			{
-				TreeDequeMap<Index, R> map;
-				if ((map = indexMap.get(pair.getKey())) == null)
-				{
-					map = new TreeDequeMap<Index, R>();
-					indexMap.put(pair.getKey(), map);
-				}
-				
-				map.add(new Index(pair.getValue().get(resource)), resource);
-			}
+			this.type = type;
+			this.indexBytes = new LinkedHashMap<>(4);
+			this.columnBytes = new LinkedHashMap<>(4);
+		}
+		
+		/**
+		 * @return the resource type.
+		 */
+		public Class<?> getType()
+		{
+			return type;
+		}
+		
+		/**
+		 * @return the amount of resources in the set.
+		 */
+		public int getCount()
+		{
+			return count;
+		}
+		
+		/**
+		 * @return the amount of resources held in memory (less than the count for lazy sets).
+		 */
+		public int getHeldCount()
+		{
+			return heldCount;
+		}
+		
+		/**
+		 * @return the estimated size of the resources held in memory, with the strings, arrays, and boxed values they reference.
+		 */
+		public long getResourceBytes()
+		{
+			return resourceBytes;
+		}
+		
+		/**
+		 * @return the estimated size of the per-resource bookkeeping (stored index keys and tags).
+		 */
+		public long getEntryBytes()
+		{
+			return entryBytes;
+		}
+		
+		/**
+		 * @return the estimated size of the id map and the ids.
+		 */
+		public long getIdBytes()
+		{
+			return idBytes;
+		}
+		
+		/**
+		 * @return the estimated size of the tag bitsets and tag names.
+		 */
+		public long getTagBytes()
+		{
+			return tagBytes;
+		}
+		
+		/**
+		 * @return the estimated size of the ordinal tables.
+		 */
+		public long getOrdinalBytes()
+		{
+			return ordinalBytes;
+		}
+		
+		/**
+		 * @return the estimated size of each index, by index name.
+		 */
+		public Map<String, Long> getIndexBytes()
+		{
+			return Collections.unmodifiableMap(indexBytes);
+		}
+		
+		/**
+		 * @return the estimated size of each column, by column name.
+		 */
+		public Map<String, Long> getColumnBytes()
+		{
+			return Collections.unmodifiableMap(columnBytes);
+		}
+		
+		/**
+		 * @return the estimated size of everything in the set.
+		 */
+		public long getTotalBytes()
+		{
+			long out = resourceBytes + entryBytes + idBytes + tagBytes + ordinalBytes;
+			for (Long bytes : indexBytes.values())
+				out += bytes;
+			for (Long bytes : columnBytes.values())
+				out += bytes;
+			return out;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return type.getSimpleName() + ": " + count + " resources, " + getTotalBytes() + " bytes";
+		}
+	}
+	
+	/**
+	 * An update batch.
+	 */
+	private static class Update
+	{
+		/** Nesting depth. */
+		private int depth = 0;
+		/** Changed sets. */
+		private Set<ResourceSet<?>> sets = Collections.newSetFromMap(new IdentityHashMap<>());
+		/** The set that this batch is waiting for another batch to release, if any. */
+		private volatile ResourceSet<?> waitingFor = null;
+	}
+	
+	/**
+	 * Mapping of name-to-resource and id-to-resource.
+	 * <p>
+	 * Reads go through the last published version of this set, which is never changed
+	 * once published, so they do not lock and never see a partially indexed resource.
+	 * Changes are made on a copy of that version (under a lock), which is published
+	 * after each change, or at the end of the owning resource set's update batch.
+	 * While a batch is changing this set, changes from other threads wait for it to end.
+	 * Versions keep their id map, entries, tags, indices, and columns in persistent structures, 
+	 * so a change copies only the path to what it touches in each one (the rest is shared with 
+	 * the published version), and costs O(log n) for each index, whether or not it is in a batch.
+	 * A batch still publishes once at its end, and changes nodes that it already copied in place.
+	 * Iterators and streams read the version that was published when they were created.
+	 * The exception is a thread whose update batch is changing this set: it reads the version 
+	 * being changed, so it sees its own changes, and its iterators and streams can see the
+	 * batch's later changes.
+	 * <p>
+	 * A set can also be a combined set of the resources of several classes (see {@link CombinedSet}),
+	 * which is changed along with the sets of those classes.
+	 * @param <R> an EngineResource type.
+	 */
+	public static class ResourceSet<R extends EngineResource> implements Iterable<R>
+	{
+		private static final List<Class<?>> INTEGRAL_CLASSES = new ArrayList<Class<?>>(8) 
+		{
+			private static final long serialVersionUID = -3418622370361380497L;
+			{
+				add(Byte.class);
+				add(Byte.TYPE);
+				add(Short.class);
+				add(Short.TYPE);
+				add(Integer.class);
+				add(Integer.TYPE);
+				add(Long.class);
+				add(Long.TYPE);
+			}
+		};
+		private static final List<Class<?>> NUMERIC_CLASSES = new ArrayList<Class<?>>(12) 
+		{
+			private static final long serialVersionUID = 1160496069763796739L;
+			{
+				add(Byte.class);
+				add(Byte.TYPE);
+				add(Short.class);
+				add(Short.TYPE);
+				add(Integer.class);
+				add(Integer.TYPE);
+				add(Long.class);
+				add(Long.TYPE);
+				add(Float.class);
+				add(Float.TYPE);
+				add(Double.class);
+				add(Double.TYPE);
+			}
+		};
+		
+		/** This class. */
+		private Class<R> listClass;
+		/** The owning resource set, if any. */
+		private EngineResourceSet owner;
+		/** Interned tags (the owner's, if any). */
+		private EngineSymbolTable symbols;
+		/** The combined sets that this set's resources are also in. */
+		private List<ResourceSet<? super R>> combinedSets;
+		/** If this is a combined set, the classes of its member sets, else null. */
+		private List<Class<? extends R>> memberTypes;
+		
+		/** The published version. */
+		private volatile EngineResourceVersion<R> published;
+		/** The version being changed, or null if not changed since the last publish. */
+		private EngineResourceVersion<R> working;
+		/** The update batch that is changing this set, if any. */
+		private volatile Update writer;
+		/** Snapshot member layout, created when first needed. */
+		private EngineResourceSnapshot.Layout snapshotLayout;
+		/** Cache of resources read from a snapshot, if this set is lazy. */
+		private EngineResourceCache<R> cache;
+
+		/**
+		 * Creates a new EngineResourceList that publishes after every change.
+		 * @param clazz the resource class.
+		 */
+		ResourceSet(Class<R> clazz)
+		{
+			this(clazz, null);
+		}
+		
+		/**
+		 * Creates a new EngineResourceList.
+		 * @param clazz the resource class.
+		 * @param owner the owning resource set, for update batches. Can be null.
+		 */
+		ResourceSet(Class<R> clazz, EngineResourceSet owner)
+		{
+			this.listClass = clazz;
+			this.owner = owner;
+			this.symbols = owner != null ? owner.symbols : new EngineSymbolTable();
+			this.combinedSets = new ArrayList<>(2);
+			this.memberTypes = null;
+			HashMap<String, EngineResourceNumericIndex<R>> indexMap = new HashMap<>();
+			HashMap<String, EngineResourceKeyIndex<R>> keyIndexMap = new HashMap<>();
+			
+			Profile<R> profile = Utils.getProfile(clazz);
+			
+			// indices
+			for (Map.Entry<String, FieldInfo> fieldEntry : profile.getPublicFieldsByName().entrySet())
+			{
+				FieldInfo fieldInfo = fieldEntry.getValue();
+				Field field = fieldInfo.getField();
+				Indexed anno = field.getAnnotation(Indexed.class);
+				if (anno == null)
+					continue;
+				
+				String name = Utils.isEmpty(anno.value()) ? fieldEntry.getKey() : anno.value();
+	
+				if (!NUMERIC_CLASSES.contains(field.getType()) && !isKeyType(field.getType()))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Indexed field \""+name+"\" must return a numeric, string, enum, boolean, or character type.");
+				if (indexMap.containsKey(name) || keyIndexMap.containsKey(name))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Index \""+name+"\" is already declared.");
+					
+				if (NUMERIC_CLASSES.contains(field.getType()))
+					indexMap.put(name, createIndex(field.getType(), new ValueGetter(field), anno.unique(), indexMap.size()));
+				else
+					keyIndexMap.put(name, createKeyIndex(new ValueGetter[]{new ValueGetter(field)}, anno.unique(), keyIndexMap.size()));
+			}
+			for (Map.Entry<String, MethodInfo> methodSignature : profile.getGetterMethodsByName().entrySet())
+			{
+				MethodInfo methodInfo = methodSignature.getValue();
+				Method method = methodInfo.getMethod();
+				Indexed anno = method.getAnnotation(Indexed.class);
+				if (anno == null)
+					continue;
+
+				String name = Utils.isEmpty(anno.value()) ? methodSignature.getKey() : anno.value();
+				
+				if (!NUMERIC_CLASSES.contains(methodInfo.getType()) && !isKeyType(methodInfo.getType()))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Indexed getter \""+name+"\" must return a numeric, string, enum, boolean, or character type.");
+				if (indexMap.containsKey(name) || keyIndexMap.containsKey(name))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Index \""+name+"\" is already declared.");
+				
+				if (NUMERIC_CLASSES.contains(methodInfo.getType()))
+					indexMap.put(name, createIndex(methodInfo.getType(), new ValueGetter(method), anno.unique(), indexMap.size()));
+				else
+					keyIndexMap.put(name, createKeyIndex(new ValueGetter[]{new ValueGetter(method)}, anno.unique(), keyIndexMap.size()));
+			}
+			for (CompositeIndex anno : clazz.getAnnotationsByType(CompositeIndex.class))
+			{
+				String name = anno.name();
+				if (Utils.isEmpty(name))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", a composite index has no name.");
+				if (anno.members().length == 0)
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", composite index \""+name+"\" has no members.");
+				if (indexMap.containsKey(name) || keyIndexMap.containsKey(name))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Index \""+name+"\" is already declared.");
+				
+				ValueGetter[] getters = new ValueGetter[anno.members().length];
+				for (int i = 0; i < getters.length; i++)
+				{
+					String member = anno.members()[i];
+					FieldInfo fieldInfo;
+					MethodInfo methodInfo;
+					if ((fieldInfo = profile.getPublicFieldsByName().get(member)) != null)
+						getters[i] = new ValueGetter(fieldInfo.getField());
+					else if ((methodInfo = profile.getGetterMethodsByName().get(member)) != null)
+						getters[i] = new ValueGetter(methodInfo.getMethod());
+					else
+						throw new EngineSetupException("On class "+clazz.getSimpleName()+", composite index \""+name+"\" member \""+member+"\" is not a public field or getter.");
+					
+					if (!NUMERIC_CLASSES.contains(getters[i].getType()) && !isKeyType(getters[i].getType()))
+						throw new EngineSetupException("On class "+clazz.getSimpleName()+", composite index \""+name+"\" member \""+member+"\" must be a numeric, string, enum, boolean, or character type.");
+				}
+				keyIndexMap.put(name, createKeyIndex(getters, anno.unique(), keyIndexMap.size()));
+			}
+			
+			// columns
+			HashMap<String, EngineResourceColumnData> columnMap = new HashMap<>();
+			for (Map.Entry<String, FieldInfo> fieldEntry : profile.getPublicFieldsByName().entrySet())
+			{
+				Field field = fieldEntry.getValue().getField();
+				Column anno = field.getAnnotation(Column.class);
+				if (anno == null)
+					continue;
+				
+				String name = Utils.isEmpty(anno.value()) ? fieldEntry.getKey() : anno.value();
+				if (!NUMERIC_CLASSES.contains(field.getType()))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Column field \""+name+"\" must return a numeric type.");
+				if (columnMap.containsKey(name))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Column \""+name+"\" is already declared.");
+				columnMap.put(name, createColumn(new ValueGetter(field)));
+			}
+			for (Map.Entry<String, MethodInfo> methodSignature : profile.getGetterMethodsByName().entrySet())
+			{
+				MethodInfo methodInfo = methodSignature.getValue();
+				Column anno = methodInfo.getMethod().getAnnotation(Column.class);
+				if (anno == null)
+					continue;
+				
+				String name = Utils.isEmpty(anno.value()) ? methodSignature.getKey() : anno.value();
+				if (!NUMERIC_CLASSES.contains(methodInfo.getType()))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Column getter \""+name+"\" must return a numeric type.");
+				if (columnMap.containsKey(name))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Column \""+name+"\" is already declared.");
+				columnMap.put(name, createColumn(new ValueGetter(methodInfo.getMethod())));
+			}
+			
+			// spatial indices
+			LinkedHashMap<String, ValueGetter[]> coordinateMap = new LinkedHashMap<>();
+			HashMap<String, Double> cellSizeMap = new HashMap<>();
+			for (Map.Entry<String, FieldInfo> fieldEntry : profile.getPublicFieldsByName().entrySet())
+			{
+				Field field = fieldEntry.getValue().getField();
+				Spatial anno = field.getAnnotation(Spatial.class);
+				if (anno == null)
+					continue;
+				addCoordinate(clazz, "field \""+fieldEntry.getKey()+"\"", anno, new ValueGetter(field), coordinateMap, cellSizeMap);
+			}
+			for (Map.Entry<String, MethodInfo> methodSignature : profile.getGetterMethodsByName().entrySet())
+			{
+				Method method = methodSignature.getValue().getMethod();
+				Spatial anno = method.getAnnotation(Spatial.class);
+				if (anno == null)
+					continue;
+				addCoordinate(clazz, "getter \""+methodSignature.getKey()+"\"", anno, new ValueGetter(method), coordinateMap, cellSizeMap);
+			}
+			HashMap<String, EngineResourceSpatialIndex<R>> spatialIndexMap = new HashMap<>();
+			for (Map.Entry<String, ValueGetter[]> coordinateEntry : coordinateMap.entrySet())
+			{
+				String name = coordinateEntry.getKey();
+				ValueGetter[] getters = coordinateEntry.getValue();
+				if (getters[0] == null || getters[1] == null)
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", spatial index \""+name+"\" needs an X and a Y coordinate.");
+				if (indexMap.containsKey(name) || keyIndexMap.containsKey(name))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", Index \""+name+"\" is already declared.");
+				if (getters[2] == null)
+					getters = Arrays.copyOf(getters, 2);
+				spatialIndexMap.put(name, new EngineResourceSpatialIndex<R>(getters, cellSizeMap.get(name), spatialIndexMap.size()));
+			}
+			
+			this.published = new EngineResourceVersion<>(symbols, indexMap, keyIndexMap, columnMap, spatialIndexMap);
+			this.working = null;
+			this.writer = null;
+		}
+		
+		// Adds a member annotated with Spatial to the coordinates of its index.
+		private static void addCoordinate(Class<?> clazz, String memberName, Spatial anno, ValueGetter getter, Map<String, ValueGetter[]> coordinateMap, Map<String, Double> cellSizeMap)
+		{
+			String name = anno.value();
+			if (Utils.isEmpty(name))
+				throw new EngineSetupException("On class "+clazz.getSimpleName()+", Spatial "+memberName+" has no index name.");
+			if (!NUMERIC_CLASSES.contains(getter.getType()))
+				throw new EngineSetupException("On class "+clazz.getSimpleName()+", Spatial "+memberName+" must return a numeric type.");
+			if (!(anno.cellSize() > 0.0) || Double.isInfinite(anno.cellSize()))
+				throw new EngineSetupException("On class "+clazz.getSimpleName()+", spatial index \""+name+"\" must have a cell size greater than 0.");
+			
+			Double cellSize;
+			if ((cellSize = cellSizeMap.putIfAbsent(name, anno.cellSize())) != null && cellSize != anno.cellSize())
+				throw new EngineSetupException("On class "+clazz.getSimpleName()+", spatial index \""+name+"\" has coordinates with different cell sizes.");
+			
+			ValueGetter[] getters = coordinateMap.computeIfAbsent(name, (k) -> new ValueGetter[3]);
+			if (getters[anno.axis().ordinal()] != null)
+				throw new EngineSetupException("On class "+clazz.getSimpleName()+", spatial index \""+name+"\" already has a "+anno.axis()+" coordinate.");
+			getters[anno.axis().ordinal()] = getter;
+		}
+		
+		// Creates the column for a value type: integral types are kept as longs, the rest as doubles.
+		private static EngineResourceColumnData createColumn(ValueGetter getter)
+		{
+			return EngineResourceColumnData.create(getter, INTEGRAL_CLASSES.contains(getter.getType()));
+		}
+		
+		// Creates the index for a value type: integral types are kept as longs, the rest as doubles.
+		private static <R> EngineResourceNumericIndex<R> createIndex(Class<?> type, ValueGetter getter, boolean unique, int slot)
+		{
+			return EngineResourceNumericIndex.create(getter, INTEGRAL_CLASSES.contains(type), unique, slot);
+		}
+		
+		// Creates a hash index.
+		private static <R extends EngineResource> EngineResourceKeyIndex<R> createKeyIndex(ValueGetter[] getters, boolean unique, int slot)
+		{
+			return EngineResourceKeyIndex.create(getters, unique, slot);
+		}
+		
+		// Checks if a type can be used in a hash index.
+		private static boolean isKeyType(Class<?> type)
+		{
+			return type == String.class
+				|| type.isEnum()
+				|| type == Boolean.class || type == Boolean.TYPE
+				|| type == Character.class || type == Character.TYPE;
+		}
+		
+		/**
+		 * Adds a resource to the list.
+		 * If a resource with the same id is already in the list, it is replaced.
+		 * @param resource the added resource.
+		 * @throws EngineSetupException if the resource has no id, or if it breaks a unique index.
+		 * @see #replace(EngineResource)
+		 */
+		public void add(R resource)
+		{
+			replace(resource);
+		}
+	
+		/**
+		 * Adds a resource to the list, removing the resource with the same id (if any)
+		 * from the id mapping, tags, and all indices.
+		 * <p>Replacing a resource costs as much as removing it (see {@link #remove(String)}), and the new resource 
+		 * is put in place in each index, at a cost of O(log n) per index.
+		 * @param resource the resource to add.
+		 * If this is a combined set, the resource is added to the set of its class (and so, to this one).
+		 * @return the resource that was replaced, or null if no resource had the same id.
+		 * @throws EngineSetupException if the resource has no id, or if it breaks a unique index.
+		 */
+		@SuppressWarnings("unchecked")
+		public R replace(R resource)
+		{
+			if (memberTypes != null)
+				return owner.getOrCreateResourceSet((Class<R>)resource.getClass()).replace(resource);
+			
+			String id = resource.getId();
+			if (id == null)
+				throw new EngineSetupException("Attempted to add resource of class \""+listClass.getSimpleName()+"\". No id!");
+			
+			EngineResourceEntry<R> previous;
+			beginChange();
+			try {
+				synchronized (this)
+				{
+					EngineResourceVersion<R> current = current();
+					previous = current.idMap.get(id);
+					EngineResourceEntry<R> entry = current.createEntry(resource);
+					current.checkUnique(entry, previous);
+					if (!combinedSets.isEmpty())
+						putCombined(id, entry);
+					put(id, entry, previous, null, null);
+				}
+			} finally {
+				endChange();
+			}
+			return previous != null ? previous.resource() : null;
+		}
+		
+		// Puts a checked entry in place of the entry with the same id, if any. Must be called while locked.
+		// If the entry was created from an entry in another version (for a combined set), that is passed as well.
+		private void put(String id, EngineResourceEntry<R> entry, EngineResourceEntry<R> previous, EngineResourceEntry<?> from, EngineResourceVersion<?> fromVersion)
+		{
+			EngineResourceVersion<R> version = write();
+			int ordinal;
+			if (previous != null)
+			{
+				version.unIndex(previous);
+				ordinal = previous.ordinal;
+			}
+			else
+			{
+				ordinal = version.allocateOrdinal();
+			}
+			version.insert(entry, ordinal, from, fromVersion);
+			version.putId(id, entry);
+			written();
+		}
+		
+		/**
+		 * Removes a resource from the list, and from its tags and all indices.
+		 * If this is a combined set, the resource is removed from the set of its class (and so, from this one).
+		 * <p>This costs O(log n) in the id map and each index and column that the resource is in, 
+		 * in or out of a batch: only the path to the removed entry in each structure is copied 
+		 * (or changed in place, if this batch already copied it).
+		 * @param id the identity of the resource.
+		 * @return the removed resource, or null if not found.
+		 */
+		public R remove(String id)
+		{
+			if (memberTypes != null)
+			{
+				ResourceSet<? extends R> set;
+				return (set = getMemberSet(id)) != null ? set.remove(id) : null;
+			}
+			
+			EngineResourceEntry<R> entry;
+			beginChange();
+			try {
+				synchronized (this)
+				{
+					if (!current().idMap.containsKey(id))
+						return null;
+					if (!combinedSets.isEmpty())
+						removeCombined(id);
+					EngineResourceVersion<R> version = write();
+					entry = version.removeId(id);
+					version.unIndex(entry);
+					version.releaseOrdinal(entry.ordinal);
+					written();
+				}
+			} finally {
+				endChange();
+			}
+			return entry.resource();
+		}
+		
+		/**
+		 * Re-reads the tags and indexed values of a resource that was changed in place,
+		 * and moves it to its new position in each index.
+		 * The resource's id must not have changed. This costs as much as {@link #replace(EngineResource)}.
+		 * If this is a combined set, the resource is re-indexed in the set of its class (and so, in this one).
+		 * @param id the identity of the resource.
+		 * @return true if the resource was found and re-indexed, false if not found.
+		 * @throws EngineSetupException if the resource's new values break a unique index.
+		 */
+		public boolean reindex(String id)
+		{
+			if (memberTypes != null)
+			{
+				ResourceSet<? extends R> set;
+				return (set = getMemberSet(id)) != null && set.reindex(id);
+			}
+			
+			beginChange();
+			try {
+				synchronized (this)
+				{
+					EngineResourceVersion<R> current = current();
+					EngineResourceEntry<R> previous;
+					if ((previous = current.idMap.get(id)) == null)
+						return false;
+					EngineResourceEntry<R> entry = current.createEntry(previous.resource());
+					current.checkUnique(entry, previous);
+					if (!combinedSets.isEmpty())
+						putCombined(id, entry);
+					put(id, entry, previous, null, null);
+				}
+			} finally {
+				endChange();
+			}
+			return true;
+		}
+		
+		/**
+		 * Checks if this is a combined set of the resources of several classes.
+		 * @return true if so, false if not.
+		 * @see EngineResourceSet#getCombinedSet(Class)
+		 */
+		public boolean isCombined()
+		{
+			return memberTypes != null;
+		}
+		
+		/**
+		 * Gets the classes with resources in this combined set.
+		 * @return the member classes, or an empty list if this is not a combined set.
+		 * @see #isCombined()
+		 */
+		public List<Class<? extends R>> getMemberTypes()
+		{
+			return memberTypes != null ? Collections.unmodifiableList(memberTypes) : Collections.emptyList();
+		}
+		
+		// Gets the set of the class of a resource in this combined set, or null if not found.
+		@SuppressWarnings("unchecked")
+		private ResourceSet<? extends R> getMemberSet(String id)
+		{
+			EngineResourceEntry<R> entry;
+			synchronized (this)
+			{
+				entry = current().idMap.get(id);
+			}
+			return entry != null ? owner.getResourceSet((Class<R>)entry.resourceType()) : null;
+		}
+		
+		// Puts a resource of this set in its combined sets. Nothing is changed unless it can be put in all of them.
+		// Must be called while locked.
+		private void putCombined(String id, EngineResourceEntry<R> memberEntry)
+		{
+			EngineResourceVersion<R> memberVersion = current();
+			synchronized (owner.combinedLock)
+			{
+				EngineResourceEntry<?>[] entries = new EngineResourceEntry<?>[combinedSets.size()];
+				for (int i = 0; i < entries.length; i++)
+					entries[i] = combinedSets.get(i).createMemberEntry(id, memberEntry, memberVersion);
+				for (int i = 0; i < entries.length; i++)
+					putMember(combinedSets.get(i), id, entries[i], memberEntry, memberVersion);
+			}
+		}
+		
+		// Removes a resource of this set from its combined sets.
+		private void removeCombined(String id)
+		{
+			synchronized (owner.combinedLock)
+			{
+				for (ResourceSet<? super R> combined : combinedSets)
+					combined.removeMember(id);
+			}
+		}
+		
+		// Puts all of the resources in this set in its combined sets, after they were attached to it.
+		// Resources that are not held are not read.
+		synchronized void fillCombined()
+		{
+			if (combinedSets.isEmpty())
+				return;
+			EngineResourceVersion<R> version = current();
+			String[] ids = new String[version.ordinalLimit];
+			version.idMap.forEach((id, entry) -> ids[entry.ordinal] = id);
+			for (int i = 0; i < version.ordinalLimit; i++)
+			{
+				if (ids[i] != null)
+					putCombined(ids[i], version.idMap.get(ids[i]));
+			}
+		}
+		
+		@SuppressWarnings("unchecked")
+		private static <S extends EngineResource> void putMember(ResourceSet<S> combined, String id, EngineResourceEntry<?> entry, EngineResourceEntry<?> memberEntry, EngineResourceVersion<?> memberVersion)
+		{
+			synchronized (combined)
+			{
+				combined.put(id, (EngineResourceEntry<S>)entry, combined.current().idMap.get(id), memberEntry, memberVersion);
+			}
+		}
+		
+		/**
+		 * Creates and checks the entry for a resource of a member class of this combined set.
+		 * The entry is made from what the member entry was indexed under, so a resource that is not held
+		 * is not read, and is read from the same place as the member entry when needed.
+		 * @param id the resource id.
+		 * @param memberEntry the resource's entry in its own set.
+		 * @param memberVersion the version of its own set that the member entry is from.
+		 * @return the entry for this set.
+		 * @throws EngineSetupException if a resource of another member class has the same id, or the resource breaks a unique index.
+		 */
+		@SuppressWarnings("unchecked")
+		private synchronized EngineResourceEntry<R> createMemberEntry(String id, EngineResourceEntry<? extends R> memberEntry, EngineResourceVersion<?> memberVersion)
+		{
+			EngineResourceVersion<R> current = current();
+			Class<?> type = memberEntry.resourceType();
+			EngineResourceEntry<R> previous = current.idMap.get(id);
+			if (previous != null && previous.resourceType() != type)
+				throw new EngineSetupException("Resource \""+id+"\" of class "+type.getSimpleName()+" has the same id as a resource of class "+previous.resourceType().getSimpleName()+" in combined set "+listClass.getSimpleName()+".");
+			EngineResourceEntry<R> entry;
+			// a member class that redeclares an index or column in another form is read like any other resource.
+			if ((entry = current.createEntry((R)memberEntry.resource, memberEntry, memberVersion)) == null)
+				entry = current.createEntry(memberEntry.resource());
+			current.checkUnique(entry, previous);
+			if (memberEntry.source != null)
+				entry.setSource((EngineResourceCache<R>)memberEntry.source, memberEntry.location);
+			return entry;
+		}
+		
+		// Removes a resource of a member class from this combined set.
+		private synchronized void removeMember(String id)
+		{
+			if (!current().idMap.containsKey(id))
+				return;
+			EngineResourceVersion<R> version = write();
+			EngineResourceEntry<R> entry = version.removeId(id);
+			version.unIndex(entry);
+			version.releaseOrdinal(entry.ordinal);
+			written();
+		}
+		
+		/**
+		 * Publishes the changes made to this set so far, so that readers see them.
+		 * Changes are published automatically after each change, or at the end of an update batch,
+		 * so this only needs to be called for other threads to read changes in the middle of a batch.
+		 * Nothing is published if an update batch on another thread is changing this set.
+		 */
+		public synchronized void publish()
+		{
+			if (writer != null && writer != owner.updates.get())
+				return;
+			publishWorking();
+		}
+		
+		// Publishes the version being changed, if any. Must be called while locked.
+		private void publishWorking()
+		{
+			if (working == null)
+				return;
+			published = working;
+			working = null;
+		}
+		
+		// Publishes the changes made by an update batch that is ending, and lets other batches change this set.
+		private synchronized void release(Update update)
+		{
+			if (writer != null && writer != update)
+				return;
+			publishWorking();
+			writer = null;
+			notifyAll();
+		}
+		
+		// Starts a change, in the current thread's update batch or in one of its own, 
+		// and takes this set and its combined sets for it. Must not be called while locked.
+		private void beginChange()
+		{
+			if (owner == null)
+				return;
+			owner.beginUpdate();
+			try {
+				owner.claim(this);
+				for (ResourceSet<? super R> combined : combinedSets)
+					owner.claim(combined);
+			} catch (RuntimeException | Error e) {
+				owner.endUpdate();
+				throw e;
+			}
+		}
+		
+		// Ends a change started with beginChange(), publishing it if it was not in a batch.
+		private void endChange()
+		{
+			if (owner != null)
+				owner.endUpdate();
+		}
+		
+		/**
+		 * @return the type of resource in this set.
+		 */
+		public Class<R> getType()
+		{
+			return listClass;
+		}
+		
+		// Gets the snapshot layout.
+		private synchronized EngineResourceSnapshot.Layout getSnapshotLayout()
+		{
+			if (snapshotLayout == null)
+				snapshotLayout = new EngineResourceSnapshot.Layout(listClass);
+			return snapshotLayout;
+		}
+		
+		/**
+		 * Writes the published contents of this set to a snapshot: the resources by ordinal, 
+		 * then the numeric index keys and ordinals in index order, the tag bitsets, the hash index keys, 
+		 * the spatial index points, and the column values.
+		 * @param out the snapshot output.
+		 * @throws IOException if a write error occurs.
+		 * @throws EngineSetupException if a hash index key cannot be stored.
+		 */
+		void writeSnapshot(EngineResourceSnapshot.Output out) throws IOException
+		{
+			EngineResourceSnapshot.Layout layout = getSnapshotLayout();
+			EngineResourceVersion<R> version = published;
+			
+			layout.writeDescription(out);
+			out.writeInt(version.ordinalLimit);
+			out.writeInt(version.size());
+			for (int i = 0; i < version.ordinalLimit; i++)
+			{
+				R resource;
+				if ((resource = version.getByOrdinal(i)) == null)
+					continue;
+				out.writeInt(i);
+				out.writeString(resource.getId());
+				layout.write(out, resource);
+			}
+			
+			out.writeInt(version.indexMap.size());
+			for (Map.Entry<String, EngineResourceNumericIndex<R>> pair : version.indexMap.entrySet())
+			{
+				EngineResourceNumericIndex<R> index = pair.getValue();
+				int size = index.size();
+				long[] keys = new long[size];
+				int[] ordinals = new int[size];
+				for (int i = 0; i < size; i++)
+				{
+					keys[i] = index.keyAt(i);
+					ordinals[i] = index.getEntry(i).ordinal;
+				}
+				out.writeString(pair.getKey());
+				out.writeLongs(keys, size);
+				out.writeInts(ordinals, size);
+			}
+			
+			// every tag in the version was interned before the symbol count was read.
+			int symbolCount = symbols.size();
+			out.writeInt(version.tagBits.size());
+			for (int tag = 0; tag < symbolCount; tag++)
+			{
+				PersistentOrdinalSet set;
+				if ((set = version.tagBits.get(tag)) == null)
+					continue;
+				long[] bits = new long[set.wordCount()];
+				for (int w = 0; w < bits.length; w++)
+					bits[w] = set.word(w);
+				out.writeString(symbols.getName(tag));
+				out.writeLongs(bits, bits.length);
+			}
+			
+			int[] ordinals = new int[version.ordinalLimit];
+			out.writeInt(version.keyIndexMap.size());
+			for (Map.Entry<String, EngineResourceKeyIndex<R>> pair : version.keyIndexMap.entrySet())
+			{
+				EngineResourceKeyIndex<R> index = pair.getValue();
+				int size = 0;
+				for (int i = 0; i < version.ordinalLimit; i++)
+				{
+					EngineResourceEntry<R> entry;
+					if ((entry = version.getEntry(i)) != null && entry.hashKeys[index.slot] != null)
+						ordinals[size++] = i;
+				}
+				out.writeString(pair.getKey());
+				out.writeInts(ordinals, size);
+				for (int i = 0; i < size; i++)
+					for (Object value : index.getKeyValues(version.getEntry(ordinals[i]).hashKeys[index.slot]))
+						out.writeKeyValue(value);
+			}
+			
+			out.writeInt(version.spatialIndexMap.size());
+			for (Map.Entry<String, EngineResourceSpatialIndex<R>> pair : version.spatialIndexMap.entrySet())
+			{
+				EngineResourceSpatialIndex<R> index = pair.getValue();
+				int dimensions = index.getDimensions();
+				int size = 0;
+				for (int i = 0; i < version.ordinalLimit; i++)
+				{
+					EngineResourceEntry<R> entry;
+					if ((entry = version.getEntry(i)) != null && entry.points[index.slot] != null)
+						ordinals[size++] = i;
+				}
+				long[] coordinates = new long[size * dimensions];
+				for (int i = 0; i < size; i++)
+				{
+					double[] point = version.getEntry(ordinals[i]).points[index.slot];
+					for (int d = 0; d < dimensions; d++)
+						coordinates[i * dimensions + d] = Double.doubleToRawLongBits(point[d]);
+				}
+				out.writeString(pair.getKey());
+				out.writeInts(ordinals, size);
+				out.writeLongs(coordinates, coordinates.length);
+			}
+			
+			long[] present = new long[(version.ordinalLimit + 63) >> 6];
+			long[] values = new long[version.ordinalLimit];
+			out.writeInt(version.columnMap.size());
+			for (Map.Entry<String, EngineResourceColumnData> pair : version.columnMap.entrySet())
+			{
+				EngineResourceColumnData column = pair.getValue();
+				for (int w = 0; w < present.length; w++)
+					present[w] = column.getPresent().get(w);
+				for (int i = 0; i < version.ordinalLimit; i++)
+					values[i] = column.getBits(i);
+				out.writeString(pair.getKey());
+				out.writeLongs(present, present.length);
+				out.writeLongs(values, values.length);
+			}
+		}
+		
+		/**
+		 * Reads the contents of this set from a snapshot written by {@link #writeSnapshot(EngineResourceSnapshot.Output)}.
+		 * This set must be empty, and is published once the read is complete.
+		 * Entries are made from the stored tags, index keys, points, and column values, and the numeric indices 
+		 * are loaded as stored, without sorting (a numeric index that is not in order is damaged). If this set is made lazy, the resources are skipped, not read.
+		 * @param in the snapshot input.
+		 * @param cacheSize if greater than 0, this set is made lazy with this cache size.
+		 * @return true if read, false if the snapshot does not match this set's resource class.
+		 * @throws IOException if a read error occurs, or the snapshot is damaged.
+		 */
+		@SuppressWarnings("unchecked")
+		synchronized boolean readSnapshot(EngineResourceSnapshot.Input in, int cacheSize) throws IOException
+		{
+			EngineResourceSnapshot.Layout layout = getSnapshotLayout();
+			if (!layout.readDescription(in))
+				return false;
+			
+			int limit = in.readInt();
+			int count = in.readInt();
+			if (limit < 0 || count < 0 || count > limit)
+				throw new IOException("Snapshot is damaged: bad resource count.");
+			
+			String[] ids = new String[limit];
+			R[] resources = cacheSize > 0 ? null : (R[])new EngineResource[limit];
+			int[] locations = cacheSize > 0 ? new int[limit] : null;
+			for (int i = 0; i < count; i++)
+			{
+				int ordinal = in.readInt();
+				String id = in.readString();
+				if (ordinal < 0 || ordinal >= limit || ids[ordinal] != null)
+					throw new IOException("Snapshot is damaged: bad resource ordinal.");
+				ids[ordinal] = id;
+				if (locations != null)
+				{
+					locations[ordinal] = in.position();
+					in.skipRecord();
+					continue;
+				}
+				R resource = listClass.cast(layout.read(in));
+				// resources must be fully described by what was stored.
+				if (!id.equals(resource.getId()))
+					return false;
+				resources[ordinal] = resource;
+			}
+			
+			EngineResourceVersion<R> version = write();
+			
+			if (in.readInt() != version.indexMap.size())
+				return false;
+			EngineResourceNumericIndex<R>[] indices = (EngineResourceNumericIndex<R>[])new EngineResourceNumericIndex<?>[version.indexMap.size()];
+			long[][] indexKeys = new long[indices.length][];
+			int[][] indexOrdinals = new int[indices.length][];
+			for (int n = 0; n < indices.length; n++)
+			{
+				EngineResourceNumericIndex<R> index;
+				if ((index = version.writeIndex(in.readString())) == null || indices[index.slot] != null)
+					return false;
+				indices[index.slot] = index;
+				indexKeys[index.slot] = in.readLongs();
+				indexOrdinals[index.slot] = readOrdinals(in, ids);
+				if (indexKeys[index.slot].length != indexOrdinals[index.slot].length)
+					throw new IOException("Snapshot is damaged: bad index length.");
+			}
+			
+			int tagCount = in.readInt();
+			int[] tagSymbols = new int[tagCount];
+			long[][] tagSets = new long[tagCount][];
+			int[] tagCounts = new int[limit];
+			for (int i = 0; i < tagCount; i++)
+			{
+				tagSymbols[i] = symbols.intern(in.readString());
+				tagSets[i] = in.readLongs();
+				for (int w = 0; w < tagSets[i].length; w++)
+					for (long bits = tagSets[i][w]; bits != 0L; bits &= bits - 1)
+					{
+						int ordinal = (w << 6) + Long.numberOfTrailingZeros(bits);
+						if (ordinal >= limit || ids[ordinal] == null)
+							throw new IOException("Snapshot is damaged: bad tag bits.");
+						tagCounts[ordinal]++;
+					}
+			}
+			
+			if (in.readInt() != version.keyIndexMap.size())
+				return false;
+			Object[][] hashKeys = new Object[version.keyIndexMap.size()][];
+			for (int n = 0; n < hashKeys.length; n++)
+			{
+				EngineResourceKeyIndex<R> index;
+				if ((index = version.keyIndexMap.get(in.readString())) == null || hashKeys[index.slot] != null)
+					return false;
+				Object[] keys = hashKeys[index.slot] = new Object[limit];
+				for (int ordinal : readOrdinals(in, ids))
+				{
+					Object[] values = new Object[index.getKeyLength()];
+					for (int i = 0; i < values.length; i++)
+						values[i] = in.readKeyValue();
+					keys[ordinal] = index.createKey(values);
+				}
+			}
+			
+			if (in.readInt() != version.spatialIndexMap.size())
+				return false;
+			double[][][] points = new double[version.spatialIndexMap.size()][][];
+			for (int n = 0; n < points.length; n++)
+			{
+				EngineResourceSpatialIndex<R> index;
+				if ((index = version.spatialIndexMap.get(in.readString())) == null || points[index.slot] != null)
+					return false;
+				int dimensions = index.getDimensions();
+				int[] ordinals = readOrdinals(in, ids);
+				long[] coordinates = in.readLongs();
+				if (coordinates.length != ordinals.length * dimensions)
+					throw new IOException("Snapshot is damaged: bad point length.");
+				points[index.slot] = new double[limit][];
+				for (int i = 0; i < ordinals.length; i++)
+				{
+					double[] point = points[index.slot][ordinals[i]] = new double[dimensions];
+					for (int d = 0; d < dimensions; d++)
+						point[d] = Double.longBitsToDouble(coordinates[i * dimensions + d]);
+				}
+			}
+			
+			if (in.readInt() != version.columnMap.size())
+				return false;
+			for (int n = 0; n < version.columnMap.size(); n++)
+			{
+				EngineResourceColumnData column;
+				if ((column = version.writeColumn(in.readString())) == null)
+					return false;
+				long[] present = in.readLongs();
+				long[] values = in.readLongs();
+				if (values.length != limit)
+					throw new IOException("Snapshot is damaged: bad column length.");
+				column.load(present, values);
+			}
+			
+			EngineResourceEntry<R>[] restored = (EngineResourceEntry<R>[])new EngineResourceEntry<?>[limit];
+			int[] noTags = new int[0];
+			for (int i = 0; i < limit; i++)
+			{
+				if (ids[i] == null)
+					continue;
+				EngineResourceEntry<R> entry = new EngineResourceEntry<>(resources != null ? resources[i] : null, tagCounts[i] > 0 ? new int[tagCounts[i]] : noTags, indices.length, hashKeys.length, points.length);
+				for (int s = 0; s < hashKeys.length; s++)
+					entry.hashKeys[s] = hashKeys[s][i];
+				for (int s = 0; s < points.length; s++)
+					entry.points[s] = points[s][i];
+				restored[i] = entry;
+				tagCounts[i] = 0;
+			}
+			for (int t = 0; t < tagCount; t++)
+				for (int w = 0; w < tagSets[t].length; w++)
+					for (long bits = tagSets[t][w]; bits != 0L; bits &= bits - 1)
+					{
+						int ordinal = (w << 6) + Long.numberOfTrailingZeros(bits);
+						restored[ordinal].tags[tagCounts[ordinal]++] = tagSymbols[t];
+					}
+			for (int s = 0; s < indices.length; s++)
+			{
+				long[] keys = indexKeys[s];
+				int[] ordinals = indexOrdinals[s];
+				boolean[] indexed = new boolean[limit];
+				EngineResourceEntry<R>[] values = (EngineResourceEntry<R>[])new EngineResourceEntry<?>[keys.length];
+				for (int i = 0; i < keys.length; i++)
+				{
+					if (indexed[ordinals[i]])
+						throw new IOException("Snapshot is damaged: bad index ordinal.");
+					indexed[ordinals[i]] = true;
+					values[i] = restored[ordinals[i]];
+					values[i].keys[s] = keys[i];
+				}
+				for (int i = 0; i < limit; i++)
+					if (restored[i] != null && !indexed[i])
+						restored[i].setUnindexed(s);
+				if (!indices[s].load(keys, ordinals, values))
+					throw new IOException("Snapshot is damaged: bad index order.");
+			}
+			
+			version.restore(restored, ids, limit);
+			for (int t = 0; t < tagCount; t++)
+			{
+				PersistentOrdinalSet set = PersistentOrdinalSet.EMPTY;
+				for (int w = 0; w < tagSets[t].length; w++)
+					for (long bits = tagSets[t][w]; bits != 0L; bits &= bits - 1)
+						set = set.add(version.edit, (w << 6) + Long.numberOfTrailingZeros(bits));
+				version.tagBits = version.tagBits.put(version.edit, tagSymbols[t], set);
+			}
+			
+			if (locations != null)
+			{
+				cache = new EngineResourceCache<>(in.getBuffer(), layout, listClass, cacheSize);
+				for (int i = 0; i < limit; i++)
+					if (restored[i] != null)
+						restored[i].setSource(cache, locations[i]);
+			}
+			
+			publish();
+			return true;
+		}
+		
+		// Reads stored ordinals, and checks that each is of a stored resource.
+		private static int[] readOrdinals(EngineResourceSnapshot.Input in, String[] ids) throws IOException
+		{
+			int[] out = in.readInts();
+			for (int ordinal : out)
+				if (ordinal < 0 || ordinal >= ids.length || ids[ordinal] == null)
+					throw new IOException("Snapshot is damaged: bad resource ordinal.");
+			return out;
+		}
+		
+		/**
+		 * Checks if this set is lazy: resources are read from a snapshot when fetched, 
+		 * and only the most recently fetched are kept in memory.
+		 * @return true if so, false if not.
+		 * @see EngineResourceSet#readSnapshot(File, byte[], int)
+		 */
+		public boolean isLazy()
+		{
+			return cache != null;
+		}
+		
+		/**
+		 * @return the amount of times that a fetched resource of a lazy set was in memory, or 0 if not lazy.
+		 */
+		public long getCacheHitCount()
+		{
+			return cache != null ? cache.getHits() : 0L;
+		}
+		
+		/**
+		 * @return the amount of times that a fetched resource of a lazy set was read from the snapshot, or 0 if not lazy.
+		 */
+		public long getCacheMissCount()
+		{
+			return cache != null ? cache.getMisses() : 0L;
+		}
+		
+		/**
+		 * @return the amount of resources of a lazy set that were dropped from the cache (and are only softly referenced), or 0 if not lazy.
+		 */
+		public long getCacheEvictionCount()
+		{
+			return cache != null ? cache.getEvictions() : 0L;
+		}
+		
+		/**
+		 * Estimates the memory used by this set, on the version of this set at the time of the call.
+		 * This reads every resource in memory, so it is meant for occasional use.
+		 * Lazy sets only count the resources that are held in memory (not softly referenced).
+		 * @return the estimated usage.
+		 * @see MemoryUsage
+		 */
+		public MemoryUsage getMemoryUsage()
+		{
+			EngineResourceVersion<R> version = published;
+			Set<Object> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+			MemoryUsage out = new MemoryUsage(listClass);
+			out.count = version.size();
+			
+			out.ordinalBytes = EngineMemoryEstimator.persistentArray(version.entries) 
+				+ version.getFreeOrdinalMemoryEstimate()
+				+ EngineMemoryEstimator.ordinalSet(version.live);
+			
+			out.idBytes = EngineMemoryEstimator.persistentHashMap(version.idMap);
+			version.idMap.forEach((id, entry) -> out.idBytes += EngineMemoryEstimator.string(id, seen));
+			
+			out.tagBytes = EngineMemoryEstimator.persistentLongHashMap(version.tagBits);
+			version.tagBits.forEachValue((set) -> out.tagBytes += EngineMemoryEstimator.ordinalSet(set));
+			
+			for (Map.Entry<String, EngineResourceNumericIndex<R>> index : version.indexMap.entrySet())
+				out.indexBytes.put(index.getKey(), index.getValue().getMemoryEstimate());
+			for (Map.Entry<String, EngineResourceKeyIndex<R>> index : version.keyIndexMap.entrySet())
+				out.indexBytes.put(index.getKey(), index.getValue().getMemoryEstimate(seen));
+			for (Map.Entry<String, EngineResourceSpatialIndex<R>> index : version.spatialIndexMap.entrySet())
+				out.indexBytes.put(index.getKey(), index.getValue().getMemoryEstimate());
+			for (Map.Entry<String, EngineResourceColumnData> column : version.columnMap.entrySet())
+				out.columnBytes.put(column.getKey(), column.getValue().getMemoryEstimate());
+			
+			for (int i = 0; i < version.ordinalLimit; i++)
+			{
+				EngineResourceEntry<R> entry;
+				if ((entry = version.getEntry(i)) == null)
+					continue;
+				out.entryBytes += entry.getMemoryEstimate(seen);
+				if (entry.resource != null && memberTypes == null)
+				{
+					out.resourceBytes += EngineMemoryEstimator.object(entry.resource, seen);
+					out.heldCount++;
+				}
+			}
+			
+			if (cache != null && memberTypes == null)
+			{
+				out.resourceBytes += cache.getMemoryEstimate(seen);
+				out.heldCount += cache.getHeldCount();
+			}
+			return out;
+		}
+		
+		// Gets the most recent version. Must be called while locked.
+		private EngineResourceVersion<R> current()
+		{
+			return working != null ? working : published;
+		}
+		
+		// Gets the version to change. Must be called while locked, and while this set is taken for the current batch (if owned).
+		private EngineResourceVersion<R> write()
+		{
+			if (working == null)
+				working = published.copy();
+			return working;
+		}
+		
+		// Gets the version to read: the version being changed if the current thread's update batch is changing this set, else the published version.
+		private EngineResourceVersion<R> read()
+		{
+			Update update = writer;
+			if (update == null || owner == null || update != owner.updates.get())
+				return published;
+			synchronized (this)
+			{
+				if (working == null)
+					return published;
+				return working;
+			}
+		}
+		
+		/**
+		 * @return the version that the current thread reads.
+		 */
+		EngineResourceVersion<R> getVersion()
+		{
+			return read();
+		}
+		
+		// Called after a change is done. Must be called while locked.
+		private void written()
+		{
+			if (owner == null || !owner.deferPublish(this))
+				publish();
+		}
+		
+		/**
+		 * Gets a resource by its identity.
+		 * @param id the identity of thge resource.
+		 * @return the resource desired, or null if not found.
+		 */
+		public R get(String id)
+		{
+			EngineResourceEntry<R> entry;
+			return (entry = read().idMap.get(id)) != null ? entry.resource() : null;
+		}
+	
+		/**
+		 * Gets a resource by its ordinal.
+		 * <p>Each resource is given an ordinal when it is added, which stays the same while it is in this set
+		 * (even if it is replaced by a resource with the same id or re-indexed). Ordinals of removed resources
+		 * are reused, so ordinals stay under {@link #getOrdinalLimit()}, and can be used to index arrays of 
+		 * data kept alongside the resources.
+		 * @param ordinal the ordinal.
+		 * @return the resource, or null if no resource has the ordinal.
+		 */
+		public R getByOrdinal(int ordinal)
+		{
+			return read().getByOrdinal(ordinal);
+		}
+	
+		/**
+		 * Gets the ordinal of a resource.
+		 * @param id the identity of the resource.
+		 * @return the resource's ordinal, or -1 if not found.
+		 * @see #getByOrdinal(int)
+		 */
+		public int ordinalOf(String id)
+		{
+			EngineResourceEntry<R> entry;
+			return (entry = read().idMap.get(id)) != null ? entry.ordinal : -1;
+		}
+	
+		/**
+		 * Gets the ordinal limit of this set, which is one more than the highest ordinal in use.
+		 * Arrays indexed by ordinal need to be at least this long.
+		 * @return the ordinal limit.
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalLimit()
+		{
+			return read().ordinalLimit;
+		}
+	
+		/**
+		 * Gets a column of values, kept for a member annotated with {@link Column}.
+		 * The column reads the version of this set at the time of the call, and does not change after.
+		 * @param columnName the name of the column.
+		 * @return the column, or null if no such column.
+		 */
+		public EngineResourceColumnView getColumn(String columnName)
+		{
+			EngineResourceVersion<R> version = read();
+			EngineResourceColumnData data;
+			return (data = version.columnMap.get(columnName)) != null ? new EngineResourceColumnView(columnName, data, version.ordinalLimit) : null;
+		}
+	
+		/**
+		 * Gets resources by a tag name.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param tagName the tag name.
+		 * @param out the output array to put the objects into.
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the tagName or array provided is {@code null}. 
+		 */
+		public int getByTag(String tagName, R[] out)
+		{
+			return getByTag(tagName, out, 0);
+		}
+	
+		/**
+		 * Gets resources by a tag name.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param tagName the tag name.
+		 * @param out the output array to put the objects into.
+		 * @param offset the offset into the array to start putting objects. 
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the tagName or array provided is {@code null}. 
+		 */
+		public int getByTag(String tagName, R[] out, int offset)
+		{
+			return getByTags(new String[]{tagName}, null, null, out, offset);
+		}
+	
+		/**
+		 * Gets resources that have all of a set of tags, at least one of another set of tags,
+		 * and none of a third set of tags, in ordinal order.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param allOf the tags that the resources must all have. Can be null or empty for no requirement.
+		 * @param anyOf the tags that the resources must have at least one of. Can be null or empty for no requirement.
+		 * @param noneOf the tags that the resources must not have. Can be null or empty for no requirement.
+		 * @param out the output array to put the objects into.
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the array provided is {@code null}. 
+		 */
+		public int getByTags(String[] allOf, String[] anyOf, String[] noneOf, R[] out)
+		{
+			return getByTags(allOf, anyOf, noneOf, out, 0);
+		}
+		
+		/**
+		 * Gets resources that have all of a set of tags, at least one of another set of tags,
+		 * and none of a third set of tags, in ordinal order.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param allOf the tags that the resources must all have. Can be null or empty for no requirement.
+		 * @param anyOf the tags that the resources must have at least one of. Can be null or empty for no requirement.
+		 * @param noneOf the tags that the resources must not have. Can be null or empty for no requirement.
+		 * @param out the output array to put the objects into.
+		 * @param offset the offset into the array to start putting objects. 
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the array provided is {@code null}. 
+		 */
+		public int getByTags(String[] allOf, String[] anyOf, String[] noneOf, R[] out, int offset)
+		{
+			EngineResourceVersion<R> version = read();
+			EngineResourceTagMatch match = new EngineResourceTagMatch(version, allOf, anyOf, noneOf);
+			int i = offset;
+			for (int w = 0; w < match.wordCount() && i < out.length; w++)
+			{
+				long word = match.word(w);
+				while (word != 0L && i < out.length)
+				{
+					out[i++] = version.getByOrdinal((w << 6) + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return i - offset;
+		}
+		
+		/**
+		 * Gets the ordinals of resources by a tag name, in ascending order.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param tagName the tag name.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the tagName or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsByTag(String tagName, int[] out)
+		{
+			return getOrdinalsByTag(tagName, out, 0);
+		}
+	
+		/**
+		 * Gets the ordinals of resources by a tag name, in ascending order.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param tagName the tag name.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the tagName or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsByTag(String tagName, int[] out, int offset)
+		{
+			return getOrdinalsByTags(new String[]{tagName}, null, null, out, offset);
+		}
+	
+		/**
+		 * Gets the ordinals of resources that have all of a set of tags, at least one of another set of tags,
+		 * and none of a third set of tags, in ascending order.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param allOf the tags that the resources must all have. Can be null or empty for no requirement.
+		 * @param anyOf the tags that the resources must have at least one of. Can be null or empty for no requirement.
+		 * @param noneOf the tags that the resources must not have. Can be null or empty for no requirement.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsByTags(String[] allOf, String[] anyOf, String[] noneOf, int[] out)
+		{
+			return getOrdinalsByTags(allOf, anyOf, noneOf, out, 0);
+		}
+		
+		/**
+		 * Gets the ordinals of resources that have all of a set of tags, at least one of another set of tags,
+		 * and none of a third set of tags, in ascending order.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param allOf the tags that the resources must all have. Can be null or empty for no requirement.
+		 * @param anyOf the tags that the resources must have at least one of. Can be null or empty for no requirement.
+		 * @param noneOf the tags that the resources must not have. Can be null or empty for no requirement.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsByTags(String[] allOf, String[] anyOf, String[] noneOf, int[] out, int offset)
+		{
+			EngineResourceTagMatch match = new EngineResourceTagMatch(read(), allOf, anyOf, noneOf);
+			int i = offset;
+			for (int w = 0; w < match.wordCount() && i < out.length; w++)
+			{
+				long word = match.word(w);
+				while (word != 0L && i < out.length)
+				{
+					out[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+					word &= word - 1;
+				}
+			}
+			return i - offset;
+		}
+		
+		/**
+		 * Counts the resources that have all of a set of tags, at least one of another set of tags,
+		 * and none of a third set of tags.
+		 * @param allOf the tags that the resources must all have. Can be null or empty for no requirement.
+		 * @param anyOf the tags that the resources must have at least one of. Can be null or empty for no requirement.
+		 * @param noneOf the tags that the resources must not have. Can be null or empty for no requirement.
+		 * @return the amount of matching resources.
+		 */
+		public int countByTags(String[] allOf, String[] anyOf, String[] noneOf)
+		{
+			EngineResourceTagMatch match = new EngineResourceTagMatch(read(), allOf, anyOf, noneOf);
+			int out = 0;
+			for (int w = 0; w < match.wordCount(); w++)
+				out += Long.bitCount(match.word(w));
+			return out;
+		}
+		
+		/**
+		 * Gets an iterator for the resources that have all of a set of tags, 
+		 * at least one of another set of tags, and none of a third set of tags, in ordinal order.
+		 * Matches are found as the iterator advances, on the version of this set at the time of the call.
+		 * @param allOf the tags that the resources must all have. Can be null or empty for no requirement.
+		 * @param anyOf the tags that the resources must have at least one of. Can be null or empty for no requirement.
+		 * @param noneOf the tags that the resources must not have. Can be null or empty for no requirement.
+		 * @return an iterator for the matching resources.
+		 */
+		public Iterator<R> iterateByTags(String[] allOf, String[] anyOf, String[] noneOf)
+		{
+			EngineResourceVersion<R> version = read();
+			return new TagIterator<>(version, new EngineResourceTagMatch(version, allOf, anyOf, noneOf));
+		}
+		
+		/**
+		 * Gets a stream of the resources that have all of a set of tags, 
+		 * at least one of another set of tags, and none of a third set of tags, in ordinal order.
+		 * Matches are found as the stream is consumed, on the version of this set at the time of the call.
+		 * @param allOf the tags that the resources must all have. Can be null or empty for no requirement.
+		 * @param anyOf the tags that the resources must have at least one of. Can be null or empty for no requirement.
+		 * @param noneOf the tags that the resources must not have. Can be null or empty for no requirement.
+		 * @return a sequential stream of the matching resources.
+		 */
+		public Stream<R> streamByTags(String[] allOf, String[] anyOf, String[] noneOf)
+		{
+			return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterateByTags(allOf, anyOf, noneOf), Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL), false);
+		}
+		
+		/**
+		 * Starts a query on this set, which can combine tags, index values and ranges, and tests on the resources.
+		 * @return a new query that matches every resource, until conditions are added.
+		 * @see EngineResourceQuery
+		 */
+		public EngineResourceQuery<R> query()
+		{
+			return new EngineResourceQuery<>(this);
+		}
+	
+		/**
+		 * Gets all objects that match an index value.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the objects into.
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 */
+		public int getByIndex(String indexName, Number value, R[] out)
+		{
+			return getByIndex(indexName, value, out, 0);
+		}
+	
+		/**
+		 * Gets all objects that match an index value.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the objects into.
+		 * @param offset the offset into the array to start putting objects. 
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 */
+		public int getByIndex(String indexName, Number value, R[] out, int offset)
+		{
+			EngineResourceNumericIndex<R> index;
+			if ((index = read().indexMap.get(indexName)) == null)
+				return 0;
+			
+			return copyRange(index, index.lowerBound(value), index.upperBound(value), out, offset);
+		}
+	
+		/**
+		 * Gets the ordinals of all objects that match an index value.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsByIndex(String indexName, Number value, int[] out)
+		{
+			return getOrdinalsByIndex(indexName, value, out, 0);
+		}
+	
+		/**
+		 * Gets the ordinals of all objects that match an index value.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsByIndex(String indexName, Number value, int[] out, int offset)
+		{
+			EngineResourceNumericIndex<R> index;
+			if ((index = read().indexMap.get(indexName)) == null)
+				return 0;
+			
+			return copyOrdinalRange(index, index.lowerBound(value), index.upperBound(value), out, offset);
+		}
+	
+		/**
+		 * Gets all objects that are before an index value.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the objects into.
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 */
+		public int getBeforeIndexValue(String indexName, Number value, R[] out)
+		{
+			return getBeforeIndexValue(indexName, value, out, 0);
+		}
+	
+		/**
+		 * Gets all objects that are before an index value.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the objects into.
+		 * @param offset the offset into the array to start putting objects. 
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 */
+		public int getBeforeIndexValue(String indexName, Number value, R[] out, int offset)
+		{
+			EngineResourceNumericIndex<R> index;
+			if ((index = read().indexMap.get(indexName)) == null)
+				return 0;
+	
+			return copyRange(index, 0, index.upperBound(value), out, offset);
+		}
+	
+		/**
+		 * Gets the ordinals of all objects that are before an index value.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsBeforeIndexValue(String indexName, Number value, int[] out)
+		{
+			return getOrdinalsBeforeIndexValue(indexName, value, out, 0);
+		}
+	
+		/**
+		 * Gets the ordinals of all objects that are before an index value.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsBeforeIndexValue(String indexName, Number value, int[] out, int offset)
+		{
+			EngineResourceNumericIndex<R> index;
+			if ((index = read().indexMap.get(indexName)) == null)
+				return 0;
+	
+			return copyOrdinalRange(index, 0, index.upperBound(value), out, offset);
+		}
+	
+		/**
+		 * Gets all objects that are after an index value.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the objects into.
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 */
+		public int getAfterIndexValue(String indexName, Number value, R[] out)
+		{
+			return getAfterIndexValue(indexName, value, out, 0);
+		}
+		
+		/**
+		 * Gets all objects that are after an index value.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the objects into.
+		 * @param offset the offset into the array to start putting objects. 
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 */
+		public int getAfterIndexValue(String indexName, Number value, R[] out, int offset)
+		{
+			EngineResourceNumericIndex<R> index;
+			if ((index = read().indexMap.get(indexName)) == null)
+				return 0;
+	
+			// descending by value, but in ordinal order for equal values.
+			int i = offset;
+			int start = index.lowerBound(value);
+			int end = index.size();
+			while (end > start && i < out.length)
+			{
+				int groupStart = Math.max(index.groupStart(end - 1), start);
+				for (int x = groupStart; x < end && i < out.length; x++)
+					out[i++] = index.get(x);
+				end = groupStart;
+			}
+			return i - offset;
+		}
+		
+		/**
+		 * Gets the ordinals of all objects that are after an index value.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsAfterIndexValue(String indexName, Number value, int[] out)
+		{
+			return getOrdinalsAfterIndexValue(indexName, value, out, 0);
+		}
+		
+		/**
+		 * Gets the ordinals of all objects that are after an index value.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param value the value to search for.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsAfterIndexValue(String indexName, Number value, int[] out, int offset)
+		{
+			EngineResourceNumericIndex<R> index;
+			if ((index = read().indexMap.get(indexName)) == null)
+				return 0;
+	
+			// descending by value, but in ordinal order for equal values.
+			int i = offset;
+			int start = index.lowerBound(value);
+			int end = index.size();
+			while (end > start && i < out.length)
+			{
+				int groupStart = Math.max(index.groupStart(end - 1), start);
+				for (int x = groupStart; x < end && i < out.length; x++)
+					out[i++] = index.getEntry(x).ordinal;
+				end = groupStart;
+			}
+			return i - offset;
+		}
+		
+		/**
+		 * Gets all objects that match a key in a hash or composite index, in ordinal order.
+		 * Numeric indices can be searched as well, in which case this is the same as 
+		 * {@link #getByIndex(String, Number, EngineResource[])}.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param key the value to search for. For composite indices, this is an Object array of the member values, in order.
+		 * @param out the output array to put the objects into.
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the key is the wrong type for the index.
+		 */
+		public int getByKey(String indexName, Object key, R[] out)
+		{
+			return getByKey(indexName, key, out, 0);
+		}
+		
+		/**
+		 * Gets all objects that match a key in a hash or composite index, in ordinal order.
+		 * Numeric indices can be searched as well, in which case this is the same as 
+		 * {@link #getByIndex(String, Number, EngineResource[], int)}.
+		 * The target array provided will be filled with the qualifying objects sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param key the value to search for. For composite indices, this is an Object array of the member values, in order.
+		 * @param out the output array to put the objects into.
+		 * @param offset the offset into the array to start putting objects. 
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the key is the wrong type for the index.
+		 */
+		public int getByKey(String indexName, Object key, R[] out, int offset)
+		{
+			EngineResourceVersion<R> version = read();
+			EngineResourceKeyIndex<R> keyIndex;
+			EngineResourceNumericIndex<R> index;
+			if ((keyIndex = version.keyIndexMap.get(indexName)) != null)
+				return keyIndex.get(version, keyIndex.lookupKey(key), out, offset);
+			else if ((index = version.indexMap.get(indexName)) != null)
+				return copyRange(index, index.lowerBound(EngineResourceNumericIndex.numericKey(key)), index.upperBound(EngineResourceNumericIndex.numericKey(key)), out, offset);
+			else
+				return 0;
+		}
+		
+		/**
+		 * Gets the ordinals of all objects that match a key in a hash or composite index, in ascending order.
+		 * Numeric indices can be searched as well, in which case this is the same as 
+		 * {@link #getOrdinalsByIndex(String, Number, int[])}.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param key the value to search for. For composite indices, this is an Object array of the member values, in order.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the key is the wrong type for the index.
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsByKey(String indexName, Object key, int[] out)
+		{
+			return getOrdinalsByKey(indexName, key, out, 0);
+		}
+		
+		/**
+		 * Gets the ordinals of all objects that match a key in a hash or composite index, in ascending order.
+		 * Numeric indices can be searched as well, in which case this is the same as 
+		 * {@link #getOrdinalsByIndex(String, Number, int[], int)}.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the index.
+		 * @param key the value to search for. For composite indices, this is an Object array of the member values, in order.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the key is the wrong type for the index.
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsByKey(String indexName, Object key, int[] out, int offset)
+		{
+			EngineResourceVersion<R> version = read();
+			EngineResourceKeyIndex<R> keyIndex;
+			EngineResourceNumericIndex<R> index;
+			if ((keyIndex = version.keyIndexMap.get(indexName)) != null)
+				return keyIndex.getOrdinals(version, keyIndex.lookupKey(key), out, offset);
+			else if ((index = version.indexMap.get(indexName)) != null)
+				return copyOrdinalRange(index, index.lowerBound(EngineResourceNumericIndex.numericKey(key)), index.upperBound(EngineResourceNumericIndex.numericKey(key)), out, offset);
+			else
+				return 0;
 		}
 		
 		/**
-		 * Gets a resource by its identity.
-		 * @param id the identity of thge resource.
-		 * @return the resource desired, or null if not found.
+		 * Gets the object that matches a key in an index.
+		 * This is meant for unique indices, where it takes constant time for hash and composite indices,
+		 * but can be used on any index, in which case the first match is returned.
+		 * @param indexName the name of the index.
+		 * @param key the value to search for. For composite indices, this is an Object array of the member values, in order.
+		 * @return the matching object, or null if none (or no such index).
+		 * @throws NullPointerException if the indexName provided is {@code null}. 
+		 * @throws IllegalArgumentException if the key is the wrong type for the index.
 		 */
-		public R get(String id)
+		public R getUnique(String indexName, Object key)
 		{
-			return idMap.get(id);
+			EngineResourceVersion<R> version = read();
+			EngineResourceKeyIndex<R> keyIndex;
+			EngineResourceNumericIndex<R> index;
+			if ((keyIndex = version.keyIndexMap.get(indexName)) != null)
+			{
+				EngineResourceEntry<R> entry = keyIndex.first(version, keyIndex.lookupKey(key));
+				return entry != null ? entry.resource() : null;
+			}
+			else if ((index = version.indexMap.get(indexName)) != null)
+			{
+				int position = index.lowerBound(EngineResourceNumericIndex.numericKey(key));
+				return position < index.upperBound(EngineResourceNumericIndex.numericKey(key)) ? index.get(position) : null;
+			}
+			else
+				return null;
 		}
-	
+		
 		/**
-		 * Gets resources by a tag name.
+		 * Gets all objects with an index value inside a range, in ascending order of value.
 		 * The target array provided will be filled with the qualifying objects sequentially
 		 * and will stop if the end is reached, even if there may be more to return.
-		 * @param tagName the tag name.
+		 * @param indexName the name of the index.
+		 * @param min the lower bound of the range, or null for no lower bound.
+		 * @param minInclusive if true, values equal to the lower bound are included.
+		 * @param max the upper bound of the range, or null for no upper bound.
+		 * @param maxInclusive if true, values equal to the upper bound are included.
 		 * @param out the output array to put the objects into.
 		 * @return the amount of objects returned, up to the size of the provided array.
-		 * @throws NullPointerException if the tagName or array provided is {@code null}. 
+		 * @throws NullPointerException if the indexName or array provided is {@code null}. 
 		 */
-		public int getByTag(String tagName, R[] out)
+		public int getInIndexRange(String indexName, Number min, boolean minInclusive, Number max, boolean maxInclusive, R[] out)
 		{
-			return getByTag(tagName, out, 0);
+			return getInIndexRange(indexName, min, minInclusive, max, maxInclusive, out, 0);
 		}
-	
+		
 		/**
-		 * Gets resources by a tag name.
+		 * Gets all objects with an index value inside a range, in ascending order of value.
 		 * The target array provided will be filled with the qualifying objects sequentially
 		 * and will stop if the end is reached, even if there may be more to return.
-		 * @param tagName the tag name.
+		 * @param indexName the name of the index.
+		 * @param min the lower bound of the range, or null for no lower bound.
+		 * @param minInclusive if true, values equal to the lower bound are included.
+		 * @param max the upper bound of the range, or null for no upper bound.
+		 * @param maxInclusive if true, values equal to the upper bound are included.
 		 * @param out the output array to put the objects into.
 		 * @param offset the offset into the array to start putting objects. 
 		 * @return the amount of objects returned, up to the size of the provided array.
-		 * @throws NullPointerException if the tagName or array provided is {@code null}. 
+		 * @throws NullPointerException if the indexName or array provided is {@code null}. 
 		 */
-		public int getByTag(String tagName, R[] out, int offset)
+		public int getInIndexRange(String indexName, Number min, boolean minInclusive, Number max, boolean maxInclusive, R[] out, int offset)
 		{
-			Queue<R> queue;
-			if ((queue = tagHash.get(tagName)) == null)
+			EngineResourceNumericIndex<R> index;
+			if ((index = read().indexMap.get(indexName)) == null)
 				return 0;
-	
-			int count = 0;
-			int i = offset;
-			for (R object : queue)
-			{
-				if (i >= out.length)
-					break;
-				
-				out[i++] = object;
-				count++;
-			}
 			
-			return count;
+			return copyRange(index, index.rangeStart(min, minInclusive), index.rangeEnd(max, maxInclusive), out, offset);
 		}
-	
+
 		/**
-		 * Gets all objects that match an index value.
-		 * The target array provided will be filled with the qualifying objects sequentially
+		 * Gets the ordinals of all objects with an index value inside a range, in ascending order of value.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
 		 * and will stop if the end is reached, even if there may be more to return.
 		 * @param indexName the name of the index.
-		 * @param value the value to search for.
-		 * @param out the output array to put the objects into.
-		 * @return the amount of objects returned, up to the size of the provided array.
-		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @param min the lower bound of the range, or null for no lower bound.
+		 * @param minInclusive if true, values equal to the lower bound are included.
+		 * @param max the upper bound of the range, or null for no upper bound.
+		 * @param maxInclusive if true, values equal to the upper bound are included.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
 		 */
-		public int getByIndex(String indexName, Number value, R[] out)
+		public int getOrdinalsInIndexRange(String indexName, Number min, boolean minInclusive, Number max, boolean maxInclusive, int[] out)
 		{
-			return getByIndex(indexName, value, out, 0);
+			return getOrdinalsInIndexRange(indexName, min, minInclusive, max, maxInclusive, out, 0);
 		}
-	
+		
 		/**
-		 * Gets all objects that match an index value.
-		 * The target array provided will be filled with the qualifying objects sequentially
+		 * Gets the ordinals of all objects with an index value inside a range, in ascending order of value.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
 		 * and will stop if the end is reached, even if there may be more to return.
 		 * @param indexName the name of the index.
-		 * @param value the value to search for.
-		 * @param out the output array to put the objects into.
-		 * @param offset the offset into the array to start putting objects. 
-		 * @return the amount of objects returned, up to the size of the provided array.
-		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @param min the lower bound of the range, or null for no lower bound.
+		 * @param minInclusive if true, values equal to the lower bound are included.
+		 * @param max the upper bound of the range, or null for no upper bound.
+		 * @param maxInclusive if true, values equal to the upper bound are included.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName or array provided is {@code null}. 
+		 * @see #getByOrdinal(int)
 		 */
-		public int getByIndex(String indexName, Number value, R[] out, int offset)
+		public int getOrdinalsInIndexRange(String indexName, Number min, boolean minInclusive, Number max, boolean maxInclusive, int[] out, int offset)
 		{
-			Index index = new Index(value);
-			
-			TreeDequeMap<Index, R> map;
-			if ((map = indexMap.get(indexName)) == null)
+			EngineResourceNumericIndex<R> index;
+			if ((index = read().indexMap.get(indexName)) == null)
 				return 0;
 			
-			Deque<R> queue;
-			if ((queue = map.get(index)) == null)
-				return 0;
+			return copyOrdinalRange(index, index.rangeStart(min, minInclusive), index.rangeEnd(max, maxInclusive), out, offset);
+		}
+
+		/**
+		 * Gets an iterator for all objects with an index value inside a range, in ascending order of value.
+		 * The iterator does not support removal, and iterates the version of this set that was published when 
+		 * this was called, so changes made to this set while iterating are not seen.
+		 * @param indexName the name of the index.
+		 * @param min the lower bound of the range, or null for no lower bound.
+		 * @param minInclusive if true, values equal to the lower bound are included.
+		 * @param max the upper bound of the range, or null for no upper bound.
+		 * @param maxInclusive if true, values equal to the upper bound are included.
+		 * @return an iterator for the objects in the range (empty if no such index).
+		 * @throws NullPointerException if the indexName provided is {@code null}. 
+		 */
+		public Iterator<R> iterateIndexRange(String indexName, Number min, boolean minInclusive, Number max, boolean maxInclusive)
+		{
+			EngineResourceNumericIndex<R> index;
+			if ((index = read().indexMap.get(indexName)) == null)
+				return new RangeIterator<>(null, 0, 0);
 			
+			return new RangeIterator<>(index, index.rangeStart(min, minInclusive), index.rangeEnd(max, maxInclusive));
+		}
+		
+		/**
+		 * Gets a stream of all objects with an index value inside a range, in ascending order of value.
+		 * The stream reads the version of this set that was published when this was called, 
+		 * so changes made to this set while it is consumed are not seen.
+		 * @param indexName the name of the index.
+		 * @param min the lower bound of the range, or null for no lower bound.
+		 * @param minInclusive if true, values equal to the lower bound are included.
+		 * @param max the upper bound of the range, or null for no upper bound.
+		 * @param maxInclusive if true, values equal to the upper bound are included.
+		 * @return a sequential stream of the objects in the range (empty if no such index).
+		 * @throws NullPointerException if the indexName provided is {@code null}. 
+		 */
+		public Stream<R> streamIndexRange(String indexName, Number min, boolean minInclusive, Number max, boolean maxInclusive)
+		{
+			RangeIterator<R> iterator = (RangeIterator<R>)iterateIndexRange(indexName, min, minInclusive, max, maxInclusive);
+			return StreamSupport.stream(Spliterators.spliterator(iterator, iterator.remaining(), Spliterator.ORDERED | Spliterator.NONNULL), false);
+		}
+		
+		// copies a range of index entries into an array.
+		private static <R> int copyRange(EngineResourceNumericIndex<R> index, int start, int end, R[] out, int offset)
+		{
 			int i = offset;
-			for (R res : queue)
-			{
-				out[i++] = res;
-				if (i >= out.length)
-					return i - offset;
-			}
-			
+			for (int x = start; x < end && i < out.length; x++)
+				out[i++] = index.get(x);
+			return i - offset;
+		}
+		
+		// copies the ordinals of a range of index entries into an array.
+		private static <R extends EngineResource> int copyOrdinalRange(EngineResourceNumericIndex<R> index, int start, int end, int[] out, int offset)
+		{
+			int i = offset;
+			for (int x = start; x < end && i < out.length; x++)
+				out[i++] = index.getEntry(x).ordinal;
 			return i - offset;
 		}
 	
 		/**
-		 * Gets all objects that are before an index value.
+		 * Gets all objects with a point in a spatial index within a distance of a center point, in ordinal order.
 		 * The target array provided will be filled with the qualifying objects sequentially
 		 * and will stop if the end is reached, even if there may be more to return.
-		 * @param indexName the name of the index.
-		 * @param value the value to search for.
+		 * @param indexName the name of the spatial index.
+		 * @param center the center point, one coordinate per axis of the index.
+		 * @param radius the distance from the center. Points at exactly this distance are included.
 		 * @param out the output array to put the objects into.
 		 * @return the amount of objects returned, up to the size of the provided array.
-		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @throws NullPointerException if the indexName, center, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the center point has the wrong amount of coordinates for the index.
+		 * @see Spatial
 		 */
-		public int getBeforeIndexValue(String indexName, Number value, R[] out)
+		public int getInRadius(String indexName, double[] center, double radius, R[] out)
 		{
-			return getBeforeIndexValue(indexName, value, out, 0);
+			return getInRadius(indexName, center, radius, out, 0);
 		}
-	
+		
 		/**
-		 * Gets all objects that are before an index value.
+		 * Gets all objects with a point in a spatial index within a distance of a center point, in ordinal order.
 		 * The target array provided will be filled with the qualifying objects sequentially
 		 * and will stop if the end is reached, even if there may be more to return.
-		 * @param indexName the name of the index.
-		 * @param value the value to search for.
+		 * @param indexName the name of the spatial index.
+		 * @param center the center point, one coordinate per axis of the index.
+		 * @param radius the distance from the center. Points at exactly this distance are included.
 		 * @param out the output array to put the objects into.
 		 * @param offset the offset into the array to start putting objects. 
 		 * @return the amount of objects returned, up to the size of the provided array.
-		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @throws NullPointerException if the indexName, center, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the center point has the wrong amount of coordinates for the index.
+		 * @see Spatial
 		 */
-		public int getBeforeIndexValue(String indexName, Number value, R[] out, int offset)
+		public int getInRadius(String indexName, double[] center, double radius, R[] out, int offset)
 		{
-			Index index = new Index(value);
-	
-			TreeDequeMap<Index, R> map;
-			if ((map = indexMap.get(indexName)) == null)
+			EngineResourceVersion<R> version = read();
+			EngineResourceSpatialIndex<R> index;
+			if ((index = version.spatialIndexMap.get(indexName)) == null)
 				return 0;
-	
-			int i = offset;
-			for (Index idx : map.navigableKeySet())
-			{
-				if (idx.compareTo(index) > 0)
-					return i - offset;
-				
-				for (R res : map.get(idx))
-				{
-					out[i++] = res;
-					if (i >= out.length)
-						return i - offset;
-				}
-			}
-				
-			return i - offset;
+			return copyOrdinalSet(version, index.inRadius(version, spatialPoint(indexName, index, center), radius), out, offset);
 		}
-	
+		
 		/**
-		 * Gets all objects that are after an index value.
+		 * Gets the ordinals of all objects with a point in a spatial index within a distance of a center point, in ascending order.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the spatial index.
+		 * @param center the center point, one coordinate per axis of the index.
+		 * @param radius the distance from the center. Points at exactly this distance are included.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, center, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the center point has the wrong amount of coordinates for the index.
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsInRadius(String indexName, double[] center, double radius, int[] out)
+		{
+			return getOrdinalsInRadius(indexName, center, radius, out, 0);
+		}
+		
+		/**
+		 * Gets the ordinals of all objects with a point in a spatial index within a distance of a center point, in ascending order.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the spatial index.
+		 * @param center the center point, one coordinate per axis of the index.
+		 * @param radius the distance from the center. Points at exactly this distance are included.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, center, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the center point has the wrong amount of coordinates for the index.
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsInRadius(String indexName, double[] center, double radius, int[] out, int offset)
+		{
+			EngineResourceVersion<R> version = read();
+			EngineResourceSpatialIndex<R> index;
+			if ((index = version.spatialIndexMap.get(indexName)) == null)
+				return 0;
+			return copyOrdinalSet(index.inRadius(version, spatialPoint(indexName, index, center), radius), out, offset);
+		}
+		
+		/**
+		 * Gets all objects with a point in a spatial index inside a box, in ordinal order.
 		 * The target array provided will be filled with the qualifying objects sequentially
 		 * and will stop if the end is reached, even if there may be more to return.
-		 * @param indexName the name of the index.
-		 * @param value the value to search for.
+		 * @param indexName the name of the spatial index.
+		 * @param min the lowest corner of the box, one coordinate per axis of the index.
+		 * @param max the highest corner of the box, one coordinate per axis of the index.
 		 * @param out the output array to put the objects into.
 		 * @return the amount of objects returned, up to the size of the provided array.
-		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @throws NullPointerException if the indexName, corners, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if a corner has the wrong amount of coordinates for the index.
+		 * @see Spatial
 		 */
-		public int getAfterIndexValue(String indexName, Number value, R[] out)
+		public int getInBox(String indexName, double[] min, double[] max, R[] out)
 		{
-			return getAfterIndexValue(indexName, value, out, 0);
+			return getInBox(indexName, min, max, out, 0);
 		}
 		
 		/**
-		 * Gets all objects that are after an index value.
+		 * Gets all objects with a point in a spatial index inside a box, in ordinal order.
 		 * The target array provided will be filled with the qualifying objects sequentially
 		 * and will stop if the end is reached, even if there may be more to return.
-		 * @param indexName the name of the index.
-		 * @param value the value to search for.
+		 * @param indexName the name of the spatial index.
+		 * @param min the lowest corner of the box, one coordinate per axis of the index.
+		 * @param max the highest corner of the box, one coordinate per axis of the index.
 		 * @param out the output array to put the objects into.
 		 * @param offset the offset into the array to start putting objects. 
 		 * @return the amount of objects returned, up to the size of the provided array.
-		 * @throws NullPointerException if the indexName, value, or array provided is {@code null}. 
+		 * @throws NullPointerException if the indexName, corners, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if a corner has the wrong amount of coordinates for the index.
+		 * @see Spatial
 		 */
-		public int getAfterIndexValue(String indexName, Number value, R[] out, int offset)
+		public int getInBox(String indexName, double[] min, double[] max, R[] out, int offset)
 		{
-			Index index = new Index(value);
-			
-			TreeDequeMap<Index, R> map;
-			if ((map = indexMap.get(indexName)) == null)
+			EngineResourceVersion<R> version = read();
+			EngineResourceSpatialIndex<R> index;
+			if ((index = version.spatialIndexMap.get(indexName)) == null)
 				return 0;
-	
+			return copyOrdinalSet(version, index.inBox(version, spatialPoint(indexName, index, min), spatialPoint(indexName, index, max)), out, offset);
+		}
+		
+		/**
+		 * Gets the ordinals of all objects with a point in a spatial index inside a box, in ascending order.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the spatial index.
+		 * @param min the lowest corner of the box, one coordinate per axis of the index.
+		 * @param max the highest corner of the box, one coordinate per axis of the index.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, corners, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if a corner has the wrong amount of coordinates for the index.
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsInBox(String indexName, double[] min, double[] max, int[] out)
+		{
+			return getOrdinalsInBox(indexName, min, max, out, 0);
+		}
+		
+		/**
+		 * Gets the ordinals of all objects with a point in a spatial index inside a box, in ascending order.
+		 * The target array provided will be filled with the qualifying ordinals sequentially
+		 * and will stop if the end is reached, even if there may be more to return.
+		 * @param indexName the name of the spatial index.
+		 * @param min the lowest corner of the box, one coordinate per axis of the index.
+		 * @param max the highest corner of the box, one coordinate per axis of the index.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, corners, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if a corner has the wrong amount of coordinates for the index.
+		 * @see #getByOrdinal(int)
+		 */
+		public int getOrdinalsInBox(String indexName, double[] min, double[] max, int[] out, int offset)
+		{
+			EngineResourceVersion<R> version = read();
+			EngineResourceSpatialIndex<R> index;
+			if ((index = version.spatialIndexMap.get(indexName)) == null)
+				return 0;
+			return copyOrdinalSet(index.inBox(version, spatialPoint(indexName, index, min), spatialPoint(indexName, index, max)), out, offset);
+		}
+		
+		/**
+		 * Gets the objects with the nearest points in a spatial index to a point, nearest first.
+		 * Objects at the same distance are in ordinal order.
+		 * The target array provided will be filled with as many of the nearest objects as it has room for.
+		 * @param indexName the name of the spatial index.
+		 * @param point the point to search from, one coordinate per axis of the index.
+		 * @param out the output array to put the objects into.
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, point, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the point has the wrong amount of coordinates for the index.
+		 * @see Spatial
+		 */
+		public int getNearest(String indexName, double[] point, R[] out)
+		{
+			return getNearest(indexName, point, out, 0);
+		}
+		
+		/**
+		 * Gets the objects with the nearest points in a spatial index to a point, nearest first.
+		 * Objects at the same distance are in ordinal order.
+		 * The target array provided will be filled with as many of the nearest objects as it has room for.
+		 * @param indexName the name of the spatial index.
+		 * @param point the point to search from, one coordinate per axis of the index.
+		 * @param out the output array to put the objects into.
+		 * @param offset the offset into the array to start putting objects. 
+		 * @return the amount of objects returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, point, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the point has the wrong amount of coordinates for the index.
+		 * @see Spatial
+		 */
+		public int getNearest(String indexName, double[] point, R[] out, int offset)
+		{
+			EngineResourceVersion<R> version = read();
+			EngineResourceSpatialIndex<R> index;
+			if ((index = version.spatialIndexMap.get(indexName)) == null)
+				return 0;
+			int[] ordinals = index.nearest(version, spatialPoint(indexName, index, point), out.length - offset);
+			for (int i = 0; i < ordinals.length; i++)
+				out[offset + i] = version.getByOrdinal(ordinals[i]);
+			return ordinals.length;
+		}
+		
+		/**
+		 * Gets the ordinals of the objects with the nearest points in a spatial index to a point, nearest first.
+		 * Objects at the same distance are in ordinal order.
+		 * The target array provided will be filled with as many of the nearest ordinals as it has room for.
+		 * @param indexName the name of the spatial index.
+		 * @param point the point to search from, one coordinate per axis of the index.
+		 * @param out the output array to put the ordinals into.
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, point, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the point has the wrong amount of coordinates for the index.
+		 * @see #getByOrdinal(int)
+		 */
+		public int getNearestOrdinals(String indexName, double[] point, int[] out)
+		{
+			return getNearestOrdinals(indexName, point, out, 0);
+		}
+		
+		/**
+		 * Gets the ordinals of the objects with the nearest points in a spatial index to a point, nearest first.
+		 * Objects at the same distance are in ordinal order.
+		 * The target array provided will be filled with as many of the nearest ordinals as it has room for.
+		 * @param indexName the name of the spatial index.
+		 * @param point the point to search from, one coordinate per axis of the index.
+		 * @param out the output array to put the ordinals into.
+		 * @param offset the offset into the array to start putting ordinals. 
+		 * @return the amount of ordinals returned, up to the size of the provided array.
+		 * @throws NullPointerException if the indexName, point, or array provided is {@code null}. 
+		 * @throws IllegalArgumentException if the point has the wrong amount of coordinates for the index.
+		 * @see #getByOrdinal(int)
+		 */
+		public int getNearestOrdinals(String indexName, double[] point, int[] out, int offset)
+		{
+			EngineResourceVersion<R> version = read();
+			EngineResourceSpatialIndex<R> index;
+			if ((index = version.spatialIndexMap.get(indexName)) == null)
+				return 0;
+			int[] ordinals = index.nearest(version, spatialPoint(indexName, index, point), out.length - offset);
+			System.arraycopy(ordinals, 0, out, offset, ordinals.length);
+			return ordinals.length;
+		}
+		
+		// Checks a point for a spatial index.
+		private static double[] spatialPoint(String indexName, EngineResourceSpatialIndex<?> index, double[] point)
+		{
+			if (point.length != index.getDimensions())
+				throw new IllegalArgumentException("Point for spatial index \""+indexName+"\" must have " + index.getDimensions() + " coordinates.");
+			return point;
+		}
+		
+		private static <R extends EngineResource> int copyOrdinalSet(EngineResourceVersion<R> version, OrdinalSet ordinals, R[] out, int offset)
+		{
 			int i = offset;
-			for (Index idx : map.descendingKeySet())
-			{
-				if (idx.compareTo(index) < 0)
-					return i - offset;
-				
-				for (R res : map.get(idx))
-				{
-					out[i++] = res;
-					if (i >= out.length)
-						return i - offset;
-				}
-			}
-				
+			for (int ordinal = ordinals.next(0); ordinal >= 0 && i < out.length; ordinal = ordinals.next(ordinal + 1))
+				out[i++] = version.getByOrdinal(ordinal);
 			return i - offset;
 		}
-	
+		
+		private static int copyOrdinalSet(OrdinalSet ordinals, int[] out, int offset)
+		{
+			int i = offset;
+			for (int ordinal = ordinals.next(0); ordinal >= 0 && i < out.length; ordinal = ordinals.next(ordinal + 1))
+				out[i++] = ordinal;
+			return i - offset;
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * <p>Resources are iterated in ordinal order, on the version of this set at the time of the call.
+		 */
 		@Override
 		public Iterator<R> iterator()
 		{
-			return idMap.values().iterator();
+			final EngineResourceVersion<R> version = read();
+			return new Iterator<R>()
+			{
+				private int next = advance(0);
+				
+				// finds the next used ordinal at or after a position.
+				private int advance(int ordinal)
+				{
+					int out = version.live.next(ordinal);
+					return out >= 0 ? out : version.ordinalLimit;
+				}
+				
+				@Override
+				public boolean hasNext()
+				{
+					return next < version.ordinalLimit;
+				}
+
+				@Override
+				public R next()
+				{
+					if (next >= version.ordinalLimit)
+						throw new NoSuchElementException();
+					R out = version.getByOrdinal(next);
+					next = advance(next + 1);
+					return out;
+				}
+			};
 		}
 	
 		public int size()
 		{
-			return idMap.size();
+			return read().idMap.size();
 		}
 		
 		public boolean isEmpty()
 		{
-			return idMap.isEmpty();
+			return read().idMap.isEmpty();
 		}
 		
 		/**
-		 * Value getter thing for ease of use. 
+		 * Value getter thing for ease of use.
+		 * Method handles for the member are created once, so that reading values 
+		 * does not go through reflection, and primitive members are read without boxing 
+		 * through {@link #applyAsLong(Object)} and {@link #applyAsDouble(Object)}.
 		 */
-		public static class ValueGetter
+		public static class ValueGetter implements ToLongFunction<Object>, ToDoubleFunction<Object>
 		{
-			private Field field;
-			private Method method;
+			private static final MethodType OBJECT_TYPE = MethodType.methodType(Object.class, Object.class);
+			private static final MethodType LONG_TYPE = MethodType.methodType(long.class, Object.class);
+			private static final MethodType DOUBLE_TYPE = MethodType.methodType(double.class, Object.class);
+			
+			/** Value type. */
+			private Class<?> type;
+			/** Handle typed (Object)Object. */
+			private MethodHandle objectHandle;
+			/** Handle typed (Object)long, or null if not a primitive integral or char type. */
+			private MethodHandle longHandle;
+			/** Handle typed (Object)double, or null if not a primitive numeric or char type. */
+			private MethodHandle doubleHandle;
 			
 			ValueGetter(Field field)
 			{
-				this.field = field;
+				MethodHandle handle;
+				try {
+					handle = MethodHandles.publicLookup().unreflectGetter(field);
+				} catch (IllegalAccessException e) {
+					try {
+						field.setAccessible(true);
+						handle = MethodHandles.publicLookup().unreflectGetter(field);
+					} catch (SecurityException | IllegalAccessException e1) {
+						throw new EngineSetupException("Could not access field \""+field.getName()+"\" on class "+field.getDeclaringClass().getSimpleName()+".", e1);
+					}
+				}
+				init(field.getType(), handle);
 			}
 			
 			ValueGetter(Method method)
 			{
-				this.method = method;
+				MethodHandle handle;
+				try {
+					handle = MethodHandles.publicLookup().unreflect(method);
+				} catch (IllegalAccessException e) {
+					try {
+						method.setAccessible(true);
+						handle = MethodHandles.publicLookup().unreflect(method);
+					} catch (SecurityException | IllegalAccessException e1) {
+						throw new EngineSetupException("Could not access method \""+method.getName()+"\" on class "+method.getDeclaringClass().getSimpleName()+".", e1);
+					}
+				}
+				init(method.getReturnType(), handle);
+			}
+			
+			private void init(Class<?> type, MethodHandle handle)
+			{
+				this.type = type;
+				this.objectHandle = handle.asType(OBJECT_TYPE);
+				// booleans (allowed in hash indices) cannot be converted to numbers.
+				if (type.isPrimitive() && type != Boolean.TYPE)
+				{
+					if (type != Float.TYPE && type != Double.TYPE)
+						this.longHandle = handle.asType(LONG_TYPE);
+					this.doubleHandle = handle.asType(DOUBLE_TYPE);
+				}
+			}
+			
+			/**
+			 * @return the type of the value read by this getter.
+			 */
+			public Class<?> getType()
+			{
+				return type;
+			}
+			
+			/**
+			 * @return true if this reads a primitive value, which can never be null.
+			 */
+			public boolean isPrimitive()
+			{
+				return type.isPrimitive();
 			}
 			
+			/**
+			 * Reads the numeric value from an object.
+			 * @param instance the object instance.
+			 * @return the (boxed) value.
+			 * @throws ClassCastException if the value is not a number.
+			 */
 			public Number get(Object instance)
 			{
-				if (field != null)
-					return (Number)Utils.getFieldValue(instance, field);
-				if (method != null)
-					return (Number)Utils.invokeBlind(method, instance);
-				return null;
+				return (Number)getValue(instance);
+			}
+			
+			/**
+			 * Reads the value from an object.
+			 * @param instance the object instance.
+			 * @return the (boxed) value.
+			 */
+			public Object getValue(Object instance)
+			{
+				try {
+					return (Object)objectHandle.invokeExact(instance);
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable t) {
+					throw new RuntimeException(t);
+				}
+			}
+			
+			/**
+			 * Reads the value from an object as a long.
+			 * @param instance the object instance.
+			 * @return the value, converted to a long.
+			 * @throws NullPointerException if the value is a null boxed value.
+			 */
+			@Override
+			public long applyAsLong(Object instance)
+			{
+				if (longHandle == null)
+					return get(instance).longValue();
+				try {
+					return (long)longHandle.invokeExact(instance);
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable t) {
+					throw new RuntimeException(t);
+				}
 			}
 	
+			/**
+			 * Reads the value from an object as a double.
+			 * @param instance the object instance.
+			 * @return the value, converted to a double.
+			 * @throws NullPointerException if the value is a null boxed value.
+			 */
+			@Override
+			public double applyAsDouble(Object instance)
+			{
+				if (doubleHandle == null)
+					return get(instance).doubleValue();
+				try {
+					return (double)doubleHandle.invokeExact(instance);
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable t) {
+					throw new RuntimeException(t);
+				}
+			}
+			
 		}
 		
 		/**
-		 * Index type.
+		 * Iterator over the resources in a tag query.
+		 * @param <R> the resource type.
 		 */
-		public static class Index implements Comparable<Index>
+		private static class TagIterator<R extends EngineResource> implements Iterator<R>
 		{
-			/** Value in the index. */
-			public Number value;
+			private EngineResourceVersion<R> version;
+			private EngineResourceTagMatch match;
+			private int wordIndex;
+			private long word;
 			
-			Index(Number value)
+			TagIterator(EngineResourceVersion<R> version, EngineResourceTagMatch match)
 			{
-				this.value = value;
+				this.version = version;
+				this.match = match;
+				this.wordIndex = -1;
+				this.word = 0L;
+				advance();
+			}
+			
+			private void advance()
+			{
+				while (word == 0L && ++wordIndex < match.wordCount())
+					word = match.word(wordIndex);
 			}
 			
-	
 			@Override
-			public boolean equals(Object obj)
+			public boolean hasNext()
 			{
-				if (obj instanceof Index)
-					return equals((Index)obj);
-				return super.equals(obj);
+				return word != 0L;
 			}
 			
-			public boolean equals(Index obj)
+			@Override
+			public R next()
 			{
-				return compareTo(obj) == 0;
+				if (word == 0L)
+					throw new NoSuchElementException();
+				int ordinal = (wordIndex << 6) + Long.numberOfTrailingZeros(word);
+				word &= word - 1;
+				advance();
+				return version.getByOrdinal(ordinal);
 			}
-	
+			
+		}
+		
+		/**
+		 * Iterator over a range of index positions.
+		 * @param <R> the resource type.
+		 */
+		private static class RangeIterator<R> implements Iterator<R>
+		{
+			private EngineResourceNumericIndex<R> index;
+			private int position;
+			private int end;
+			
+			RangeIterator(EngineResourceNumericIndex<R> index, int start, int end)
+			{
+				this.index = index;
+				this.position = start;
+				this.end = Math.max(start, end);
+			}
+			
+			int remaining()
+			{
+				return end - position;
+			}
+			
 			@Override
-			public int compareTo(Index index)
+			public boolean hasNext()
 			{
-				double v1 = value.doubleValue();
-				double v2 = index.value.doubleValue();
-				if (Double.isNaN(v1))
-				{
-					if (Double.isNaN(v2))
-						return 0;
-					else
-						return -1;
-				}
-				else if (Double.isNaN(v2))
-					return 1;
-				else
-					return v1 == v2 ? 0 : v1 < v2 ? -1 : 1;
+				return position < end;
+			}
+			
+			@Override
+			public R next()
+			{
+				if (position >= end)
+					throw new NoSuchElementException();
+				return index.get(position++);
 			}
+			
 		}
+		
 	}
 }
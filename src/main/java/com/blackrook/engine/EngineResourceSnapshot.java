@@ -0,0 +1,824 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.blackrook.engine.EngineLoggingFactory.Logger;
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.exception.EngineSetupException;
+import com.blackrook.engine.roles.EngineResourceGenerator;
+import com.blackrook.engine.struct.SerialReader;
+import com.blackrook.engine.struct.SerialWriter;
+import com.blackrook.engine.struct.TypeProfileFactory.Profile;
+import com.blackrook.engine.struct.TypeProfileFactory.Profile.FieldInfo;
+import com.blackrook.engine.struct.TypeProfileFactory.Profile.MethodInfo;
+import com.blackrook.engine.struct.Utils;
+
+/**
+ * Reads and writes binary snapshots of an {@link EngineResourceSet}.
+ * <p>
+ * A snapshot holds every resource (by its public fields and getter/setter pairs), plus the
+ * sorted numeric index arrays, tag bitsets, hash index keys, spatial index points, and column values 
+ * of each resource set, so loading one skips both resource generation and index building, and a lazy 
+ * load does not read the resources at all. Snapshots are read through a memory-mapped file, and
+ * carry a hash of the inputs that the resources were made from, so that stale ones are not used.
+ * @author Matthew Tropiano
+ */
+final class EngineResourceSnapshot
+{
+	/** Snapshot file magic number. */
+	private static final byte[] MAGIC = {'B', 'R', 'E', 'S'};
+	/** Snapshot format version. Changing the format requires changing this. */
+	private static final int FORMAT_VERSION = 4;
+	/** Digest algorithm for input hashes. */
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private EngineResourceSnapshot() {}
+
+	/**
+	 * Creates a hash of the inputs of resource generation: the generator classes (by name and class file contents), 
+	 * a version for the rest of the code, and the size and modification time of each file in the file system.
+	 * File contents are not read, so this stays cheap no matter how large the file system is.
+	 * @param fileSystem the file system.
+	 * @param generators the generators, in the order that they are run.
+	 * @param version the code version, or null for none.
+	 * @return the hash.
+	 * @throws IOException if the file system or a generator class file could not be read.
+	 */
+	static byte[] hashInputs(EngineFileSystem fileSystem, List<EngineResourceGenerator> generators, String version) throws IOException
+	{
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException("Digest algorithm " + DIGEST_ALGORITHM + " is not available.", e);
+		}
+
+		digest.update(MAGIC);
+		digest.update((byte)FORMAT_VERSION);
+		byte[] buffer = new byte[8192];
+		for (EngineResourceGenerator generator : generators)
+		{
+			Class<?> clazz = generator.getClass();
+			digest.update(clazz.getName().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte)0);
+			// a class without a class file (like a generated one) is identified by name only.
+			try (InputStream in = clazz.getResourceAsStream(clazz.getName().substring(clazz.getName().lastIndexOf('.') + 1) + ".class"))
+			{
+				int n;
+				while (in != null && (n = in.read(buffer)) > 0)
+					digest.update(buffer, 0, n);
+			}
+			digest.update((byte)0);
+		}
+		if (version != null)
+			digest.update(version.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte)0);
+		fileSystem.digestStamps(digest);
+		return digest.digest();
+	}
+
+	/**
+	 * Loads resources from a snapshot, if it exists and was made from the same inputs.
+	 * Errors are logged, not thrown.
+	 * @param logger the logger to use.
+	 * @param resources the resource set to load into.
+	 * @param file the snapshot file.
+	 * @param inputHash the hash of the current inputs.
+	 * @param cacheSize if greater than 0, the resource sets are lazy, with this cache size.
+	 * @return true if loaded, false if not.
+	 */
+	static boolean load(Logger logger, EngineResourceSet resources, File file, byte[] inputHash, int cacheSize)
+	{
+		try {
+			long time = System.nanoTime();
+			if (!read(resources, file, inputHash, cacheSize))
+			{
+				logger.infof("Resource snapshot \"%s\" is missing or out of date.", file.getPath());
+				return false;
+			}
+			logger.infof("Loaded resource snapshot \"%s\" in %.3f ms.", file.getPath(), (System.nanoTime() - time) / 1000000.0);
+			return true;
+		} catch (IOException | EngineSetupException e) {
+			logger.warnf("Could not read resource snapshot \"%s\": %s", file.getPath(), e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Saves resources to a snapshot.
+	 * Errors are logged, not thrown.
+	 * @param logger the logger to use.
+	 * @param resources the resource set to save.
+	 * @param file the snapshot file.
+	 * @param inputHash the hash of the inputs that the resources were made from.
+	 */
+	static void save(Logger logger, EngineResourceSet resources, File file, byte[] inputHash)
+	{
+		try {
+			long time = System.nanoTime();
+			write(resources, file, inputHash);
+			logger.infof("Wrote resource snapshot \"%s\" in %.3f ms.", file.getPath(), (System.nanoTime() - time) / 1000000.0);
+		} catch (IOException | EngineSetupException e) {
+			logger.warnf("Could not write resource snapshot \"%s\": %s", file.getPath(), e.getMessage());
+		}
+	}
+
+	/**
+	 * Writes a snapshot of all resource sets to a file.
+	 * The file is written to a temporary file first and then moved into place.
+	 * @param resources the resource set to write.
+	 * @param file the snapshot file.
+	 * @param inputHash the hash of the inputs that the resources were made from.
+	 * @throws IOException if the file could not be written.
+	 * @throws EngineSetupException if a resource class cannot be stored in a snapshot.
+	 */
+	static void write(EngineResourceSet resources, File file, byte[] inputHash) throws IOException
+	{
+		File parent = file.getAbsoluteFile().getParentFile();
+		if (parent != null && !parent.exists() && !parent.mkdirs())
+			throw new IOException("Could not create directory \"" + parent.getPath() + "\".");
+
+		File temp = new File(file.getPath() + ".tmp");
+		try (Output out = new Output(new BufferedOutputStream(new FileOutputStream(temp), 65536)))
+		{
+			out.out.write(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeBytes(inputHash);
+			Collection<ResourceSet<?>> sets = resources.getResourceSets();
+			out.writeInt(sets.size());
+			for (ResourceSet<?> set : sets)
+			{
+				out.writeString(set.getType().getName());
+				set.writeSnapshot(out);
+			}
+		}
+		catch (IOException | RuntimeException e)
+		{
+			temp.delete();
+			throw e;
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Reads a snapshot into a resource set, replacing all of its resource sets.
+	 * Nothing is changed unless the whole snapshot is read.
+	 * @param resources the resource set to read into.
+	 * @param file the snapshot file.
+	 * @param inputHash the hash of the current inputs.
+	 * @param cacheSize if greater than 0, the resource sets are lazy, with this cache size.
+	 * @return true if read, false if the file does not exist or does not match the inputs or resource classes.
+	 * @throws IOException if the file could not be read, or is damaged.
+	 * @throws EngineSetupException if a resource class cannot be stored in a snapshot.
+	 */
+	static boolean read(EngineResourceSet resources, File file, byte[] inputHash, int cacheSize) throws IOException
+	{
+		if (!file.isFile())
+			return false;
+
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+		{
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		try {
+			Input in = new Input(buffer);
+			byte[] magic = new byte[MAGIC.length];
+			buffer.get(magic);
+			if (!Arrays.equals(magic, MAGIC) || in.readInt() != FORMAT_VERSION || !Arrays.equals(in.readBytes(), inputHash))
+				return false;
+
+			int count = in.readInt();
+			List<ResourceSet<?>> sets = new ArrayList<>(count);
+			for (int i = 0; i < count; i++)
+			{
+				Class<?> clazz;
+				try {
+					clazz = Class.forName(in.readString(), false, EngineResourceSnapshot.class.getClassLoader());
+				} catch (ClassNotFoundException e) {
+					return false;
+				}
+				if (!EngineResource.class.isAssignableFrom(clazz))
+					return false;
+
+				ResourceSet<?> set = createSet(clazz.asSubclass(EngineResource.class), resources);
+				if (!set.readSnapshot(in, cacheSize))
+					return false;
+				sets.add(set);
+			}
+			if (buffer.hasRemaining())
+				throw new IOException("Snapshot has trailing data.");
+
+			resources.setResourceSets(sets);
+			return true;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Snapshot is truncated.", e);
+		}
+	}
+
+	private static <R extends EngineResource> ResourceSet<R> createSet(Class<R> clazz, EngineResourceSet owner)
+	{
+		return new ResourceSet<R>(clazz, owner);
+	}
+
+	/**
+	 * Snapshot output.
+	 */
+	static class Output implements Closeable
+	{
+		private OutputStream out;
+		private SerialWriter writer;
+
+		private Output(OutputStream out)
+		{
+			this.out = out;
+			this.writer = new SerialWriter(SerialWriter.BIG_ENDIAN);
+		}
+
+		void writeBoolean(boolean value) throws IOException
+		{
+			writer.writeBoolean(out, value);
+		}
+
+		void writeByte(byte value) throws IOException
+		{
+			writer.writeByte(out, value);
+		}
+
+		void writeShort(short value) throws IOException
+		{
+			writer.writeShort(out, value);
+		}
+
+		void writeChar(char value) throws IOException
+		{
+			writer.writeChar(out, value);
+		}
+
+		void writeInt(int value) throws IOException
+		{
+			writer.writeInt(out, value);
+		}
+
+		void writeLong(long value) throws IOException
+		{
+			writer.writeLong(out, value);
+		}
+
+		void writeString(String value) throws IOException
+		{
+			writer.writeString(out, value, StandardCharsets.UTF_8);
+		}
+
+		void writeBytes(byte[] value) throws IOException
+		{
+			writer.writeByteArray(out, value);
+		}
+
+		// Writes a length-prefixed array.
+		void writeLongs(long[] values, int count) throws IOException
+		{
+			writer.writeInt(out, count);
+			for (int i = 0; i < count; i++)
+				writer.writeLong(out, values[i]);
+		}
+
+		// Writes a length-prefixed array.
+		void writeInts(int[] values, int count) throws IOException
+		{
+			writer.writeInt(out, count);
+			for (int i = 0; i < count; i++)
+				writer.writeInt(out, values[i]);
+		}
+
+		/**
+		 * Writes a value of a hash index key, with its type.
+		 * @param value the value, as kept in the index (integers as Long, floating-point numbers as Double).
+		 * @throws IOException if a write error occurs.
+		 * @throws EngineSetupException if the value is not of a type that can be stored.
+		 */
+		void writeKeyValue(Object value) throws IOException
+		{
+			if (value instanceof Long)
+			{
+				writeByte((byte)'J');
+				writeLong((Long)value);
+			}
+			else if (value instanceof Double)
+			{
+				writeByte((byte)'D');
+				writeLong(Double.doubleToRawLongBits((Double)value));
+			}
+			else if (value instanceof String)
+			{
+				writeByte((byte)'S');
+				writeString((String)value);
+			}
+			else if (value instanceof Boolean)
+			{
+				writeByte((byte)'Z');
+				writeBoolean((Boolean)value);
+			}
+			else if (value instanceof Character)
+			{
+				writeByte((byte)'C');
+				writeChar((Character)value);
+			}
+			else if (value instanceof Enum)
+			{
+				writeByte((byte)'E');
+				writeString(((Enum<?>)value).getDeclaringClass().getName());
+				writeString(((Enum<?>)value).name());
+			}
+			else
+			{
+				throw new EngineSetupException("Index key value of class " + value.getClass().getName() + " cannot be stored in a resource snapshot.");
+			}
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			out.close();
+		}
+
+	}
+
+	/**
+	 * Snapshot input, over a (mapped) buffer.
+	 * Single values are read through a {@link SerialReader}, and arrays are copied out of the buffer in bulk.
+	 */
+	static class Input
+	{
+		private ByteBuffer buffer;
+		private InputStream in;
+		private SerialReader reader;
+
+		Input(final ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+			this.reader = new SerialReader(SerialReader.BIG_ENDIAN);
+			this.in = new InputStream()
+			{
+				@Override
+				public int read()
+				{
+					return buffer.hasRemaining() ? buffer.get() & 0x0ff : -1;
+				}
+
+				@Override
+				public int read(byte[] b, int off, int len)
+				{
+					if (len == 0)
+						return 0;
+					if (!buffer.hasRemaining())
+						return -1;
+					len = Math.min(len, buffer.remaining());
+					buffer.get(b, off, len);
+					return len;
+				}
+			};
+		}
+
+		/**
+		 * @return the buffer read from.
+		 */
+		ByteBuffer getBuffer()
+		{
+			return buffer;
+		}
+
+		/**
+		 * @return the current read position in the buffer.
+		 */
+		int position()
+		{
+			return buffer.position();
+		}
+
+		boolean readBoolean() throws IOException
+		{
+			return reader.readBoolean(in);
+		}
+
+		byte readByte() throws IOException
+		{
+			return reader.readByte(in);
+		}
+
+		short readShort() throws IOException
+		{
+			return reader.readShort(in);
+		}
+
+		char readChar() throws IOException
+		{
+			return reader.readChar(in);
+		}
+
+		int readInt() throws IOException
+		{
+			return reader.readInt(in);
+		}
+
+		long readLong() throws IOException
+		{
+			return reader.readLong(in);
+		}
+
+		String readString() throws IOException
+		{
+			return reader.readString(in, StandardCharsets.UTF_8);
+		}
+
+		byte[] readBytes() throws IOException
+		{
+			return reader.readByteArray(in);
+		}
+
+		// Reads a length-prefixed array.
+		long[] readLongs() throws IOException
+		{
+			long[] out = new long[readLength(8)];
+			buffer.asLongBuffer().get(out);
+			buffer.position(buffer.position() + out.length * 8);
+			return out;
+		}
+
+		// Reads a length-prefixed array.
+		int[] readInts() throws IOException
+		{
+			int[] out = new int[readLength(4)];
+			buffer.asIntBuffer().get(out);
+			buffer.position(buffer.position() + out.length * 4);
+			return out;
+		}
+
+		/**
+		 * Reads a value of a hash index key written by {@link Output#writeKeyValue(Object)}.
+		 * @return the value.
+		 * @throws IOException if a read error occurs, the snapshot is damaged, or an enum value no longer exists.
+		 */
+		Object readKeyValue() throws IOException
+		{
+			byte type = readByte();
+			switch (type)
+			{
+				case 'J':
+					return readLong();
+				case 'D':
+					return Double.longBitsToDouble(readLong());
+				case 'S':
+					return readString();
+				case 'Z':
+					return readBoolean();
+				case 'C':
+					return readChar();
+				case 'E':
+				{
+					String className = readString();
+					String name = readString();
+					Class<?> clazz;
+					try {
+						clazz = Class.forName(className, false, EngineResourceSnapshot.class.getClassLoader());
+					} catch (ClassNotFoundException e) {
+						clazz = null;
+					}
+					if (clazz != null && clazz.isEnum())
+					{
+						for (Object constant : clazz.getEnumConstants())
+							if (((Enum<?>)constant).name().equals(name))
+								return constant;
+					}
+					throw new IOException("Snapshot has a key value that no longer exists: " + className + "." + name);
+				}
+				default:
+					throw new IOException("Snapshot is damaged: bad key value.");
+			}
+		}
+
+		// Skips a length-prefixed record.
+		void skipRecord() throws IOException
+		{
+			int length = readLength(1);
+			buffer.position(buffer.position() + length);
+		}
+
+		// Reads an array length, and checks it against what is left.
+		private int readLength(int elementSize) throws IOException
+		{
+			int length = readInt();
+			if (length < 0 || (long)length * elementSize > buffer.remaining())
+				throw new IOException("Snapshot is damaged: bad array length.");
+			return length;
+		}
+
+	}
+
+	/**
+	 * The stored members of a resource class: its non-final, non-transient public fields,
+	 * and the properties that have both a public getter and setter, in name order.
+	 * Stored members must be primitives, boxed primitives, Strings, enums, or arrays of those.
+	 */
+	static class Layout
+	{
+		private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+		private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+		private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+		/** Member names. */
+		private String[] names;
+		/** Member types. */
+		private Class<?>[] types;
+		/** Member getters, typed (Object)Object. */
+		private MethodHandle[] getters;
+		/** Member setters, typed (Object, Object)void. */
+		private MethodHandle[] setters;
+		/** Resource constructor, typed ()Object. */
+		private MethodHandle constructor;
+		/** Description of the members, compared when reading. */
+		private String description;
+
+		/**
+		 * Creates the layout for a resource class.
+		 * @param clazz the class.
+		 * @throws EngineSetupException if the class has no public default constructor,
+		 * 		or has a member of a type that cannot be stored.
+		 */
+		Layout(Class<?> clazz)
+		{
+			MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+			try {
+				this.constructor = lookup.findConstructor(clazz, MethodType.methodType(void.class)).asType(CONSTRUCTOR_TYPE);
+			} catch (NoSuchMethodException | IllegalAccessException e) {
+				throw new EngineSetupException("Class "+clazz.getSimpleName()+" needs a public default constructor to be stored in a resource snapshot.");
+			}
+
+			Profile<?> profile = Utils.getProfile(clazz);
+			TreeMap<String, MethodHandle[]> members = new TreeMap<>();
+			TreeMap<String, Class<?>> memberTypes = new TreeMap<>();
+			try {
+				for (Map.Entry<String, FieldInfo> pair : profile.getPublicFieldsByName().entrySet())
+				{
+					Field field = pair.getValue().getField();
+					if ((field.getModifiers() & (Modifier.FINAL | Modifier.TRANSIENT)) != 0)
+						continue;
+					members.put(pair.getKey(), new MethodHandle[]{lookup.unreflectGetter(field), lookup.unreflectSetter(field)});
+					memberTypes.put(pair.getKey(), field.getType());
+				}
+				for (Map.Entry<String, MethodInfo> pair : profile.getGetterMethodsByName().entrySet())
+				{
+					MethodInfo setter = profile.getSetterMethodsByName().get(pair.getKey());
+					if (members.containsKey(pair.getKey()) || setter == null || setter.getType() != pair.getValue().getType())
+						continue;
+					members.put(pair.getKey(), new MethodHandle[]{lookup.unreflect(pair.getValue().getMethod()), lookup.unreflect(setter.getMethod())});
+					memberTypes.put(pair.getKey(), pair.getValue().getType());
+				}
+			} catch (IllegalAccessException e) {
+				throw new EngineSetupException("Class "+clazz.getSimpleName()+" has members that cannot be accessed for a resource snapshot.", e);
+			}
+
+			int count = members.size();
+			this.names = new String[count];
+			this.types = new Class<?>[count];
+			this.getters = new MethodHandle[count];
+			this.setters = new MethodHandle[count];
+			StringBuilder sb = new StringBuilder();
+			int i = 0;
+			for (Map.Entry<String, MethodHandle[]> pair : members.entrySet())
+			{
+				Class<?> type = memberTypes.get(pair.getKey());
+				if (!isStorable(type))
+					throw new EngineSetupException("On class "+clazz.getSimpleName()+", member \""+pair.getKey()+"\" is a "+type.getSimpleName()+", which cannot be stored in a resource snapshot.");
+				names[i] = pair.getKey();
+				types[i] = type;
+				getters[i] = pair.getValue()[0].asType(GETTER_TYPE);
+				setters[i] = pair.getValue()[1].asType(SETTER_TYPE);
+				sb.append(names[i]).append(':');
+				describe(sb, type);
+				sb.append(';');
+				i++;
+			}
+			this.description = sb.toString();
+		}
+
+		// Checks if a type can be stored.
+		private static boolean isStorable(Class<?> type)
+		{
+			if (type.isArray())
+				return isStorable(type.getComponentType());
+			return type.isPrimitive()
+				|| type == Boolean.class || type == Byte.class || type == Short.class || type == Character.class
+				|| type == Integer.class || type == Long.class || type == Float.class || type == Double.class
+				|| type == String.class
+				|| type.isEnum();
+		}
+
+		// Describes a type. Enums include their constant names, so that changes to them are detected.
+		private static void describe(StringBuilder sb, Class<?> type)
+		{
+			sb.append(type.getName());
+			if (type.isEnum())
+			{
+				sb.append('{');
+				for (Object constant : type.getEnumConstants())
+					sb.append(((Enum<?>)constant).name()).append(',');
+				sb.append('}');
+			}
+			else if (type.isArray() && type.getComponentType().isEnum())
+				describe(sb.append('/'), type.getComponentType());
+		}
+
+		/**
+		 * Writes the member description.
+		 * @param out the output.
+		 * @throws IOException if a write error occurs.
+		 */
+		void writeDescription(Output out) throws IOException
+		{
+			out.writeString(description);
+		}
+
+		/**
+		 * Reads a member description and compares it to this one.
+		 * @param in the input.
+		 * @return true if they match, false if not.
+		 * @throws IOException if a read error occurs.
+		 */
+		boolean readDescription(Input in) throws IOException
+		{
+			return description.equals(in.readString());
+		}
+
+		/**
+		 * Writes the members of a resource, as a length-prefixed record (see {@link Input#skipRecord()}).
+		 * @param out the output.
+		 * @param resource the resource.
+		 * @throws IOException if a write error occurs.
+		 */
+		void write(Output out, Object resource) throws IOException
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			Output record = new Output(bytes);
+			for (int i = 0; i < getters.length; i++)
+			{
+				Object value;
+				try {
+					value = (Object)getters[i].invokeExact(resource);
+				} catch (RuntimeException | Error e) {
+					throw e;
+				} catch (Throwable t) {
+					throw new RuntimeException(t);
+				}
+				writeValue(record, types[i], value);
+			}
+			out.writeInt(bytes.size());
+			bytes.writeTo(out.out);
+		}
+
+		/**
+		 * Creates a resource and reads its members from a record written by {@link #write(Output, Object)}.
+		 * @param in the input.
+		 * @return the new resource.
+		 * @throws IOException if a read error occurs, or the record is damaged.
+		 */
+		Object read(Input in) throws IOException
+		{
+			int length = in.readLength(1);
+			int end = in.position() + length;
+			try {
+				Object resource = (Object)constructor.invokeExact();
+				for (int i = 0; i < setters.length; i++)
+					setters[i].invokeExact(resource, readValue(in, types[i]));
+				if (in.position() != end)
+					throw new IOException("Snapshot is damaged: bad resource length.");
+				return resource;
+			} catch (IOException | RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable t) {
+				throw new RuntimeException(t);
+			}
+		}
+
+		private static void writeValue(Output out, Class<?> type, Object value) throws IOException
+		{
+			if (!type.isPrimitive())
+			{
+				out.writeBoolean(value != null);
+				if (value == null)
+					return;
+			}
+
+			if (type == Boolean.TYPE || type == Boolean.class)
+				out.writeBoolean((Boolean)value);
+			else if (type == Byte.TYPE || type == Byte.class)
+				out.writeByte((Byte)value);
+			else if (type == Short.TYPE || type == Short.class)
+				out.writeShort((Short)value);
+			else if (type == Character.TYPE || type == Character.class)
+				out.writeChar((Character)value);
+			else if (type == Integer.TYPE || type == Integer.class)
+				out.writeInt((Integer)value);
+			else if (type == Long.TYPE || type == Long.class)
+				out.writeLong((Long)value);
+			else if (type == Float.TYPE || type == Float.class)
+				out.writeInt(Float.floatToRawIntBits((Float)value));
+			else if (type == Double.TYPE || type == Double.class)
+				out.writeLong(Double.doubleToRawLongBits((Double)value));
+			else if (type == String.class)
+				out.writeString((String)value);
+			else if (type.isEnum())
+				out.writeInt(((Enum<?>)value).ordinal());
+			else // array
+			{
+				int length = Array.getLength(value);
+				out.writeInt(length);
+				for (int i = 0; i < length; i++)
+					writeValue(out, type.getComponentType(), Array.get(value, i));
+			}
+		}
+
+		private static Object readValue(Input in, Class<?> type) throws IOException
+		{
+			if (!type.isPrimitive() && !in.readBoolean())
+				return null;
+
+			if (type == Boolean.TYPE || type == Boolean.class)
+				return in.readBoolean();
+			else if (type == Byte.TYPE || type == Byte.class)
+				return in.readByte();
+			else if (type == Short.TYPE || type == Short.class)
+				return in.readShort();
+			else if (type == Character.TYPE || type == Character.class)
+				return in.readChar();
+			else if (type == Integer.TYPE || type == Integer.class)
+				return in.readInt();
+			else if (type == Long.TYPE || type == Long.class)
+				return in.readLong();
+			else if (type == Float.TYPE || type == Float.class)
+				return Float.intBitsToFloat(in.readInt());
+			else if (type == Double.TYPE || type == Double.class)
+				return Double.longBitsToDouble(in.readLong());
+			else if (type == String.class)
+				return in.readString();
+			else if (type.isEnum())
+			{
+				Object[] constants = type.getEnumConstants();
+				int ordinal = in.readInt();
+				if (ordinal < 0 || ordinal >= constants.length)
+					throw new IOException("Snapshot is damaged: bad enum value.");
+				return constants[ordinal];
+			}
+			else // array
+			{
+				int length = in.readInt();
+				if (length < 0)
+					throw new IOException("Snapshot is damaged: bad array length.");
+				Object out = Array.newInstance(type.getComponentType(), length);
+				for (int i = 0; i < length; i++)
+					Array.set(out, i, readValue(in, type.getComponentType()));
+				return out;
+			}
+		}
+
+	}
+
+}
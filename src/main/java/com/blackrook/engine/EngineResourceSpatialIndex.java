@@ -0,0 +1,312 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet.ValueGetter;
+import com.blackrook.engine.struct.OrdinalSet;
+import com.blackrook.engine.struct.PersistentLongHashMap;
+import com.blackrook.engine.struct.PersistentOrdinalSet;
+
+/**
+ * A spatial index: a grid of cells, each with the set of ordinals of the points inside it.
+ * <p>
+ * Points are kept in the entries, so that distances are checked without reading the resources.
+ * Cells and their sets are persistent, and shared between copies of this index until they are changed.
+ * @param <R> the resource type.
+ */
+class EngineResourceSpatialIndex<R extends EngineResource>
+{
+	/** The coordinate getters, in axis order. */
+	private final ValueGetter[] getters;
+	/** The width of each cell. */
+	private final double cellSize;
+	/** Slot in entry point arrays. */
+	final int slot;
+	/** The edit token that this copy of the index changes its cells in place with. */
+	private final Object edit;
+	/** Cell key to ordinals of the points in the cell. */
+	private PersistentLongHashMap<PersistentOrdinalSet> cells;
+	/** Amount of points. */
+	private int size;
+	
+	EngineResourceSpatialIndex(ValueGetter[] getters, double cellSize, int slot)
+	{
+		this.getters = getters;
+		this.cellSize = cellSize;
+		this.slot = slot;
+		this.edit = new Object();
+		this.cells = PersistentLongHashMap.empty();
+		this.size = 0;
+	}
+	
+	/**
+	 * @return the amount of coordinates in each point.
+	 */
+	int getDimensions()
+	{
+		return getters.length;
+	}
+	
+	/**
+	 * Reads the point of a resource.
+	 * @param resource the resource.
+	 * @return the point, or null if any of its coordinates are null, NaN, or infinite.
+	 */
+	double[] readPoint(R resource)
+	{
+		double[] out = new double[getters.length];
+		for (int i = 0; i < getters.length; i++)
+		{
+			ValueGetter getter = getters[i];
+			if (getter.isPrimitive())
+				out[i] = getter.applyAsDouble(resource);
+			else
+			{
+				Number value;
+				if ((value = getter.get(resource)) == null)
+					return null;
+				out[i] = value.doubleValue();
+			}
+			if (Double.isNaN(out[i]) || Double.isInfinite(out[i]))
+				return null;
+		}
+		return out;
+	}
+	
+	/**
+	 * Adds an entry to this index.
+	 * @param point the point read by {@link #readPoint(EngineResource)}.
+	 * @param entry the entry.
+	 */
+	void insert(double[] point, EngineResourceEntry<R> entry)
+	{
+		long key = cellKey(point);
+		PersistentOrdinalSet set = cells.get(key);
+		if (set == null)
+			set = PersistentOrdinalSet.EMPTY;
+		else if (set.contains(entry.ordinal))
+			return;
+		cells = cells.put(edit, key, set.add(edit, entry.ordinal));
+		size++;
+	}
+	
+	/**
+	 * Removes an entry from this index.
+	 * @param point the point that the entry was added with.
+	 * @param entry the entry.
+	 */
+	void delete(double[] point, EngineResourceEntry<R> entry)
+	{
+		long key = cellKey(point);
+		PersistentOrdinalSet set;
+		if ((set = cells.get(key)) == null || !set.contains(entry.ordinal))
+			return;
+		size--;
+		if (set.size() == 1)
+			cells = cells.remove(edit, key);
+		else
+			cells = cells.put(edit, key, set.remove(edit, entry.ordinal));
+	}
+	
+	/**
+	 * Finds the points within a distance of a center point.
+	 * @param version the version that this index is in.
+	 * @param center the center point.
+	 * @param radius the distance.
+	 * @return the ordinals of the points found.
+	 */
+	OrdinalSet inRadius(EngineResourceVersion<R> version, double[] center, double radius)
+	{
+		double[] min = new double[getters.length];
+		double[] max = new double[getters.length];
+		for (int i = 0; i < getters.length; i++)
+		{
+			min[i] = center[i] - radius;
+			max[i] = center[i] + radius;
+		}
+		return find(version, min, max, center, radius * radius);
+	}
+	
+	/**
+	 * Finds the points inside a box.
+	 * @param version the version that this index is in.
+	 * @param min the lowest corner of the box.
+	 * @param max the highest corner of the box.
+	 * @return the ordinals of the points found.
+	 */
+	OrdinalSet inBox(EngineResourceVersion<R> version, double[] min, double[] max)
+	{
+		return find(version, min, max, null, 0.0);
+	}
+	
+	// Finds the points inside a box, and within a distance of a center point (if any).
+	private OrdinalSet find(EngineResourceVersion<R> version, double[] min, double[] max, double[] center, double radiusSquared)
+	{
+		OrdinalSet out = new OrdinalSet();
+		long[] low = new long[3];
+		long[] high = new long[3];
+		double cellCount = 1.0;
+		for (int i = 0; i < getters.length; i++)
+		{
+			if (!(min[i] <= max[i]))
+				return out;
+			low[i] = cell(min[i]);
+			high[i] = cell(max[i]);
+			cellCount *= high[i] < Long.MAX_VALUE ? (double)high[i] - low[i] + 1.0 : Double.POSITIVE_INFINITY;
+		}
+		
+		// a large box is cheaper to check cell by cell than to step through.
+		if (cellCount > cells.size())
+		{
+			cells.forEachValue((set) -> collect(version, set, min, max, center, radiusSquared, out));
+			return out;
+		}
+		
+		for (long x = low[0]; x <= high[0]; x++)
+			for (long y = low[1]; y <= high[1]; y++)
+				for (long z = low[2]; z <= high[2]; z++)
+				{
+					PersistentOrdinalSet set;
+					if ((set = cells.get(cellKey(x, y, z))) != null)
+						collect(version, set, min, max, center, radiusSquared, out);
+				}
+		return out;
+	}
+	
+	// Adds the ordinals in a cell with points inside a box, and within a distance of a center point (if any).
+	private void collect(EngineResourceVersion<R> version, PersistentOrdinalSet set, double[] min, double[] max, double[] center, double radiusSquared, OrdinalSet out)
+	{
+		for (int ordinal = set.next(0); ordinal >= 0; ordinal = set.next(ordinal + 1))
+		{
+			double[] point = version.getEntry(ordinal).points[slot];
+			boolean inside = center == null || distanceSquared(point, center) <= radiusSquared;
+			for (int i = 0; inside && i < point.length; i++)
+				inside = point[i] >= min[i] && point[i] <= max[i];
+			if (inside)
+				out.add(ordinal);
+		}
+	}
+	
+	/**
+	 * Finds the points nearest to a point, searching outward from its cell, one ring of cells at a time.
+	 * @param version the version that this index is in.
+	 * @param point the point.
+	 * @param count the most points to find.
+	 * @return the ordinals of the points found, nearest first (or in ascending order, if the same distance).
+	 */
+	int[] nearest(EngineResourceVersion<R> version, double[] point, int count)
+	{
+		count = Math.min(count, size);
+		for (int i = 0; i < point.length; i++)
+			if (Double.isNaN(point[i]) || Double.isInfinite(point[i]))
+				count = 0;
+		if (count <= 0)
+			return new int[0];
+		
+		EngineResourceNearestPoints nearest = new EngineResourceNearestPoints(count);
+		long[] center = new long[3];
+		for (int i = 0; i < getters.length; i++)
+			center[i] = cell(point[i]);
+		
+		// cells to step through before it is cheaper to check every cell.
+		long budget = cells.size();
+		int found = 0;
+		for (long r = 0; found < size; r++)
+		{
+			long width = 2 * r + 1;
+			long ringCells = getters.length > 2 ? width * width * width : width * width;
+			if ((budget -= ringCells) < 0)
+			{
+				EngineResourceNearestPoints all = new EngineResourceNearestPoints(count);
+				cells.forEachValue((set) -> offer(version, set, point, all));
+				nearest = all;
+				break;
+			}
+			
+			long zr = getters.length > 2 ? r : 0L;
+			for (long dx = -r; dx <= r; dx++)
+				for (long dy = -r; dy <= r; dy++)
+					for (long dz = -zr; dz <= zr; dz++)
+					{
+						if (Math.abs(dx) != r && Math.abs(dy) != r && Math.abs(dz) != r)
+							continue;
+						PersistentOrdinalSet set;
+						if ((set = cells.get(cellKey(center[0] + dx, center[1] + dy, center[2] + dz))) != null)
+							found += offer(version, set, point, nearest);
+					}
+			
+			// points past this ring are at least r cells away on some axis.
+			double reach = r * cellSize;
+			if (nearest.isFull() && nearest.getFarthest() <= reach * reach)
+				break;
+		}
+		return nearest.toArray();
+	}
+	
+	// Offers the points in a cell to a nearest point search, and returns how many were offered.
+	private int offer(EngineResourceVersion<R> version, PersistentOrdinalSet set, double[] point, EngineResourceNearestPoints nearest)
+	{
+		int out = 0;
+		for (int ordinal = set.next(0); ordinal >= 0; ordinal = set.next(ordinal + 1), out++)
+			nearest.offer(distanceSquared(version.getEntry(ordinal).points[slot], point), ordinal);
+		return out;
+	}
+	
+	private static double distanceSquared(double[] a, double[] b)
+	{
+		double out = 0.0;
+		for (int i = 0; i < a.length; i++)
+		{
+			double d = a[i] - b[i];
+			out += d * d;
+		}
+		return out;
+	}
+	
+	// Gets the cell coordinate of a value.
+	private long cell(double value)
+	{
+		return (long)Math.floor(value / cellSize);
+	}
+	
+	private long cellKey(double[] point)
+	{
+		return cellKey(cell(point[0]), cell(point[1]), getters.length > 2 ? cell(point[2]) : 0L);
+	}
+	
+	// Packs cell coordinates into a key. Far-apart cells can share a key, which only costs extra checks.
+	private long cellKey(long x, long y, long z)
+	{
+		if (getters.length > 2)
+			return ((x & 0x1FFFFFL) << 42) | ((y & 0x1FFFFFL) << 21) | (z & 0x1FFFFFL);
+		else
+			return (x << 32) ^ (y & 0xFFFFFFFFL);
+	}
+	
+	/**
+	 * @return the estimated size of this index and its cells.
+	 */
+	long getMemoryEstimate()
+	{
+		long[] out = {EngineMemoryEstimator.persistentLongHashMap(cells)};
+		cells.forEachValue((set) -> out[0] += EngineMemoryEstimator.ordinalSet(set));
+		return out[0];
+	}
+	
+	/**
+	 * @return a copy of this index, which shares this index's cells until either one changes them.
+	 */
+	EngineResourceSpatialIndex<R> copy()
+	{
+		EngineResourceSpatialIndex<R> out = new EngineResourceSpatialIndex<>(getters, cellSize, slot);
+		out.cells = cells;
+		out.size = size;
+		return out;
+	}
+	
+}
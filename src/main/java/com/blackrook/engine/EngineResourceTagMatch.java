@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import com.blackrook.engine.struct.PersistentOrdinalSet;
+
+/**
+ * A tag query over a version: resources that have all of a set of tags,
+ * any of another set (if not empty), and none of a third set.
+ * Matches are computed a bitset word (64 ordinals) at a time.
+ */
+class EngineResourceTagMatch
+{
+	private static final PersistentOrdinalSet[] NO_SETS = new PersistentOrdinalSet[0];
+	
+	private PersistentOrdinalSet[] all;
+	private PersistentOrdinalSet[] any;
+	private PersistentOrdinalSet[] none;
+	private PersistentOrdinalSet live;
+	/** Amount of words that can have matches. */
+	private int wordCount;
+	
+	EngineResourceTagMatch(EngineResourceVersion<?> version, String[] allOf, String[] anyOf, String[] noneOf)
+	{
+		this.live = version.live;
+		this.all = sets(version, allOf);
+		this.any = sets(version, anyOf);
+		this.none = sets(version, noneOf);
+		
+		int count = (version.ordinalLimit + 63) >> 6;
+		for (PersistentOrdinalSet set : all)
+			count = Math.min(count, set == null ? 0 : set.wordCount());
+		if (any.length > 0)
+		{
+			int anyCount = 0;
+			for (PersistentOrdinalSet set : any)
+				anyCount = Math.max(anyCount, set == null ? 0 : set.wordCount());
+			count = Math.min(count, anyCount);
+		}
+		this.wordCount = count;
+	}
+	
+	private static PersistentOrdinalSet[] sets(EngineResourceVersion<?> version, String[] tags)
+	{
+		if (tags == null || tags.length == 0)
+			return NO_SETS;
+		PersistentOrdinalSet[] out = new PersistentOrdinalSet[tags.length];
+		for (int i = 0; i < tags.length; i++)
+			out[i] = version.getTagBits(tags[i]);
+		return out;
+	}
+	
+	/**
+	 * @return the amount of words that can have matches.
+	 */
+	int wordCount()
+	{
+		return wordCount;
+	}
+	
+	/**
+	 * @param w the word index.
+	 * @return the bits of the matching ordinals in the word.
+	 */
+	long word(int w)
+	{
+		long out = live.word(w);
+		for (PersistentOrdinalSet set : all)
+			out &= set.word(w);
+		if (any.length > 0)
+		{
+			long anyBits = 0L;
+			for (PersistentOrdinalSet set : any)
+				if (set != null)
+					anyBits |= set.word(w);
+			out &= anyBits;
+		}
+		for (PersistentOrdinalSet set : none)
+			if (set != null)
+				out &= ~set.word(w);
+		return out;
+	}
+	
+}
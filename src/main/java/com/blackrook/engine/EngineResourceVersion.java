@@ -0,0 +1,485 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import com.blackrook.engine.exception.EngineSetupException;
+import com.blackrook.engine.struct.PersistentArray;
+import com.blackrook.engine.struct.PersistentHashMap;
+import com.blackrook.engine.struct.PersistentLongHashMap;
+import com.blackrook.engine.struct.PersistentOrdinalSet;
+
+/**
+ * A version of the contents of a resource set.
+ * <p>
+ * Each resource has an ordinal that does not change while it is in the set 
+ * (even if it is replaced or re-indexed), and ordinals of removed resources are reused,
+ * so ordinals stay dense. The id map, entries, tags, indices, and columns are all persistent structures 
+ * that are shared between versions: a version changes the nodes that it made in place (by its edit token), 
+ * and copies the path to a shared node, so a change costs O(log n) for each structure that it touches, 
+ * and copying a version costs O(1) for each index and column.
+ * @param <R> the resource type.
+ */
+class EngineResourceVersion<R extends EngineResource>
+{
+	/** The edit token that this version changes its structures in place with. */
+	final Object edit;
+	/** Name-to-id mapping. */
+	PersistentHashMap<String, EngineResourceEntry<R>> idMap;
+	/** Entries by ordinal (null if unused). */
+	PersistentArray<EngineResourceEntry<?>> entries;
+	/** One past the highest ordinal used. */
+	int ordinalLimit;
+	/** Stack of unused ordinals under the limit (shared between versions). */
+	private FreeOrdinal freeOrdinals;
+	/** Amount of unused ordinals. */
+	int freeCount;
+	/** Set of used ordinals. */
+	PersistentOrdinalSet live;
+	/** Interned tags. */
+	final EngineSymbolTable symbols;
+	/** Tag symbol to set of ordinals. */
+	PersistentLongHashMap<PersistentOrdinalSet> tagBits;
+	/** Index name to numeric index. */
+	final HashMap<String, EngineResourceNumericIndex<R>> indexMap;
+	/** Index name to hash index. */
+	final HashMap<String, EngineResourceKeyIndex<R>> keyIndexMap;
+	/** Column name to column. */
+	final HashMap<String, EngineResourceColumnData> columnMap;
+	/** Index name to spatial index. */
+	final HashMap<String, EngineResourceSpatialIndex<R>> spatialIndexMap;
+	/** Indices and columns that were copied for (or created by) this version. */
+	private final Set<Object> ownedIndices;
+	
+	EngineResourceVersion(EngineSymbolTable symbols, HashMap<String, EngineResourceNumericIndex<R>> indexMap, HashMap<String, EngineResourceKeyIndex<R>> keyIndexMap, HashMap<String, EngineResourceColumnData> columnMap, HashMap<String, EngineResourceSpatialIndex<R>> spatialIndexMap)
+	{
+		this.edit = new Object();
+		this.symbols = symbols;
+		this.idMap = PersistentHashMap.empty();
+		this.entries = PersistentArray.empty();
+		this.ordinalLimit = 0;
+		this.freeOrdinals = null;
+		this.freeCount = 0;
+		this.live = PersistentOrdinalSet.EMPTY;
+		this.tagBits = PersistentLongHashMap.empty();
+		this.indexMap = indexMap;
+		this.keyIndexMap = keyIndexMap;
+		this.columnMap = columnMap;
+		this.spatialIndexMap = spatialIndexMap;
+		this.ownedIndices = Collections.newSetFromMap(new IdentityHashMap<>());
+		this.ownedIndices.addAll(indexMap.values());
+		this.ownedIndices.addAll(keyIndexMap.values());
+		this.ownedIndices.addAll(columnMap.values());
+		this.ownedIndices.addAll(spatialIndexMap.values());
+	}
+	
+	private EngineResourceVersion(EngineResourceVersion<R> version)
+	{
+		this.edit = new Object();
+		this.symbols = version.symbols;
+		this.idMap = version.idMap;
+		this.entries = version.entries;
+		this.ordinalLimit = version.ordinalLimit;
+		this.freeOrdinals = version.freeOrdinals;
+		this.freeCount = version.freeCount;
+		this.live = version.live;
+		this.tagBits = version.tagBits;
+		this.indexMap = new HashMap<>(version.indexMap);
+		this.keyIndexMap = new HashMap<>(version.keyIndexMap);
+		this.columnMap = new HashMap<>(version.columnMap);
+		this.spatialIndexMap = new HashMap<>(version.spatialIndexMap);
+		this.ownedIndices = Collections.newSetFromMap(new IdentityHashMap<>());
+	}
+	
+	/**
+	 * Copies this version. The copy shares all of this version's structures, 
+	 * and copies the parts of each one that it changes.
+	 * @return a copy of this version that can be changed without affecting this one.
+	 */
+	EngineResourceVersion<R> copy()
+	{
+		return new EngineResourceVersion<>(this);
+	}
+	
+	/**
+	 * @return the amount of resources in this version.
+	 */
+	int size()
+	{
+		return idMap.size();
+	}
+	
+	/**
+	 * Maps a resource id to an entry.
+	 * @param id the resource id.
+	 * @param entry the entry.
+	 */
+	void putId(String id, EngineResourceEntry<R> entry)
+	{
+		idMap = idMap.put(edit, id, entry);
+	}
+	
+	/**
+	 * Removes a resource id.
+	 * @param id the resource id.
+	 * @return the entry that was mapped to the id, or null if none.
+	 */
+	EngineResourceEntry<R> removeId(String id)
+	{
+		EngineResourceEntry<R> out;
+		if ((out = idMap.get(id)) != null)
+			idMap = idMap.remove(edit, id);
+		return out;
+	}
+	
+	/**
+	 * @param ordinal the ordinal.
+	 * @return the entry at the ordinal, or null if unused.
+	 */
+	@SuppressWarnings("unchecked")
+	EngineResourceEntry<R> getEntry(int ordinal)
+	{
+		return ordinal >= 0 && ordinal < ordinalLimit ? (EngineResourceEntry<R>)entries.get(ordinal) : null;
+	}
+	
+	/**
+	 * @param ordinal the ordinal.
+	 * @return the resource at the ordinal, or null if unused.
+	 */
+	R getByOrdinal(int ordinal)
+	{
+		EngineResourceEntry<R> entry;
+		return (entry = getEntry(ordinal)) != null ? entry.resource() : null;
+	}
+	
+	/**
+	 * Gets a new unused ordinal.
+	 * @return the ordinal.
+	 */
+	int allocateOrdinal()
+	{
+		if (freeCount > 0)
+		{
+			int out = freeOrdinals.ordinal;
+			freeOrdinals = freeOrdinals.next;
+			freeCount--;
+			return out;
+		}
+		live = live.add(edit, ordinalLimit);
+		return ordinalLimit++;
+	}
+	
+	/**
+	 * Marks an ordinal as unused.
+	 * @param ordinal the ordinal.
+	 */
+	void releaseOrdinal(int ordinal)
+	{
+		entries = entries.set(edit, ordinal, null);
+		live = live.remove(edit, ordinal);
+		freeOrdinals = new FreeOrdinal(ordinal, freeOrdinals);
+		freeCount++;
+	}
+	
+	/**
+	 * Restores entries at their ordinals into an empty version, and adds them to the id map, hash indices, and spatial indices.
+	 * Tags, numeric indices, and columns are left to the caller.
+	 * @param restored the entries by ordinal (null if unused).
+	 * @param ids the resource ids by ordinal.
+	 * @param limit one past the highest ordinal used.
+	 */
+	void restore(EngineResourceEntry<R>[] restored, String[] ids, int limit)
+	{
+		entries = PersistentArray.empty();
+		ordinalLimit = limit;
+		live = PersistentOrdinalSet.EMPTY;
+		freeOrdinals = null;
+		freeCount = 0;
+		// descending, so that the lowest unused ordinal is reused first.
+		for (int i = limit - 1; i >= 0; i--)
+		{
+			EngineResourceEntry<R> entry;
+			if ((entry = restored[i]) == null)
+			{
+				freeOrdinals = new FreeOrdinal(i, freeOrdinals);
+				freeCount++;
+				continue;
+			}
+			entry.ordinal = i;
+			entries = entries.set(edit, i, entry);
+			live = live.add(edit, i);
+			putId(ids[i], entry);
+			for (Map.Entry<String, EngineResourceKeyIndex<R>> pair : keyIndexMap.entrySet())
+			{
+				Object key;
+				if ((key = entry.hashKeys[pair.getValue().slot]) != null)
+					own(pair, EngineResourceKeyIndex::copy).insert(key, entry);
+			}
+			for (Map.Entry<String, EngineResourceSpatialIndex<R>> pair : spatialIndexMap.entrySet())
+			{
+				double[] point;
+				if ((point = entry.points[pair.getValue().slot]) != null)
+					own(pair, EngineResourceSpatialIndex::copy).insert(point, entry);
+			}
+		}
+	}
+	
+	/**
+	 * Gets a numeric index to change, copying it if it is shared with another version.
+	 * @param name the index name.
+	 * @return the index, or null if there is no such index.
+	 */
+	EngineResourceNumericIndex<R> writeIndex(String name)
+	{
+		for (Map.Entry<String, EngineResourceNumericIndex<R>> pair : indexMap.entrySet())
+			if (pair.getKey().equals(name))
+				return own(pair, EngineResourceNumericIndex::copy);
+		return null;
+	}
+	
+	/**
+	 * Gets a column to change, copying it if it is shared with another version.
+	 * @param name the column name.
+	 * @return the column, or null if there is no such column.
+	 */
+	EngineResourceColumnData writeColumn(String name)
+	{
+		for (Map.Entry<String, EngineResourceColumnData> pair : columnMap.entrySet())
+			if (pair.getKey().equals(name))
+				return own(pair, EngineResourceColumnData::copy);
+		return null;
+	}
+	
+	// Reads what a resource is to be indexed under. Does not change this version.
+	EngineResourceEntry<R> createEntry(R resource)
+	{
+		EngineResourceEntry<R> entry = new EngineResourceEntry<>(resource, internTags(resource.getTags()), indexMap.size(), keyIndexMap.size(), spatialIndexMap.size());
+		for (EngineResourceNumericIndex<R> index : indexMap.values())
+		{
+			if (!index.readKey(resource, entry.keys))
+				entry.setUnindexed(index.slot);
+		}
+		for (EngineResourceKeyIndex<R> index : keyIndexMap.values())
+			entry.hashKeys[index.slot] = index.readKey(resource);
+		for (EngineResourceSpatialIndex<R> index : spatialIndexMap.values())
+			entry.points[index.slot] = index.readPoint(resource);
+		return entry;
+	}
+	
+	/**
+	 * Creates an entry for a resource from its entry in another version (of a set of a subtype), 
+	 * with what it was indexed under there, so that the resource is not read. 
+	 * Indices and columns are matched by name. Does not change this version.
+	 * @param resource the resource, or null if it is not held.
+	 * @param from the resource's entry in the other version.
+	 * @param version the other version.
+	 * @return the new entry, or null if the other version does not have an index or column of this one in the same form.
+	 */
+	EngineResourceEntry<R> createEntry(R resource, EngineResourceEntry<?> from, EngineResourceVersion<?> version)
+	{
+		EngineResourceEntry<R> entry = new EngineResourceEntry<>(resource, from.tags, indexMap.size(), keyIndexMap.size(), spatialIndexMap.size());
+		for (Map.Entry<String, EngineResourceNumericIndex<R>> pair : indexMap.entrySet())
+		{
+			EngineResourceNumericIndex<?> index = version.indexMap.get(pair.getKey());
+			if (index == null || index.getClass() != pair.getValue().getClass())
+				return null;
+			entry.keys[pair.getValue().slot] = from.keys[index.slot];
+			if (!from.isIndexed(index.slot))
+				entry.setUnindexed(pair.getValue().slot);
+		}
+		for (Map.Entry<String, EngineResourceKeyIndex<R>> pair : keyIndexMap.entrySet())
+		{
+			EngineResourceKeyIndex<?> index = version.keyIndexMap.get(pair.getKey());
+			if (index == null || index.getKeyLength() != pair.getValue().getKeyLength())
+				return null;
+			entry.hashKeys[pair.getValue().slot] = from.hashKeys[index.slot];
+		}
+		for (Map.Entry<String, EngineResourceSpatialIndex<R>> pair : spatialIndexMap.entrySet())
+		{
+			EngineResourceSpatialIndex<?> index = version.spatialIndexMap.get(pair.getKey());
+			if (index == null || index.getDimensions() != pair.getValue().getDimensions())
+				return null;
+			entry.points[pair.getValue().slot] = from.points[index.slot];
+		}
+		for (Map.Entry<String, EngineResourceColumnData> pair : columnMap.entrySet())
+		{
+			EngineResourceColumnData column = version.columnMap.get(pair.getKey());
+			if (column == null || column.getClass() != pair.getValue().getClass())
+				return null;
+		}
+		return entry;
+	}
+	
+	// Interns tag names as a set of symbols. Null tags are skipped.
+	private int[] internTags(String[] tags)
+	{
+		int[] out = new int[tags.length];
+		int n = 0;
+		for (String tag : tags)
+		{
+			if (tag == null)
+				continue;
+			int symbol = symbols.intern(tag);
+			int i = 0;
+			while (i < n && out[i] != symbol)
+				i++;
+			if (i == n)
+				out[n++] = symbol;
+		}
+		return n == out.length ? out : Arrays.copyOf(out, n);
+	}
+	
+	// Checks that an entry does not conflict with another resource in a unique index.
+	void checkUnique(EngineResourceEntry<R> entry, EngineResourceEntry<R> replacing)
+	{
+		for (Map.Entry<String, EngineResourceNumericIndex<R>> pair : indexMap.entrySet())
+		{
+			EngineResourceNumericIndex<R> index = pair.getValue();
+			if (index.unique && entry.isIndexed(index.slot) && index.conflicts(entry.keys[index.slot], replacing))
+				throw new EngineSetupException("Resource \""+entry.resource().getId()+"\" has the same value in unique index \""+pair.getKey()+"\" as another resource.");
+		}
+		for (Map.Entry<String, EngineResourceKeyIndex<R>> pair : keyIndexMap.entrySet())
+		{
+			EngineResourceKeyIndex<R> index = pair.getValue();
+			Object key = entry.hashKeys[index.slot];
+			if (index.unique && key != null && index.conflicts(this, key, replacing))
+				throw new EngineSetupException("Resource \""+entry.resource().getId()+"\" has the same value in unique index \""+pair.getKey()+"\" as another resource.");
+		}
+	}
+	
+	// Adds an entry to the tags and indices at an ordinal.
+	void insert(EngineResourceEntry<R> entry, int ordinal)
+	{
+		insert(entry, ordinal, null, null);
+	}
+	
+	// Adds an entry to the tags and indices at an ordinal. If the entry's resource is not held, 
+	// column values are copied from the entry that it was created from (if any), so that the resource is not read.
+	void insert(EngineResourceEntry<R> entry, int ordinal, EngineResourceEntry<?> from, EngineResourceVersion<?> version)
+	{
+		entry.ordinal = ordinal;
+		entries = entries.set(edit, ordinal, entry);
+		live = live.add(edit, ordinal);
+		for (int tag : entry.tags)
+		{
+			PersistentOrdinalSet set = tagBits.get(tag);
+			tagBits = tagBits.put(edit, tag, (set != null ? set : PersistentOrdinalSet.EMPTY).add(edit, ordinal));
+		}
+		for (Map.Entry<String, EngineResourceNumericIndex<R>> pair : indexMap.entrySet())
+		{
+			int slot = pair.getValue().slot;
+			if (entry.isIndexed(slot))
+				own(pair, EngineResourceNumericIndex::copy).insert(entry.keys[slot], entry);
+		}
+		for (Map.Entry<String, EngineResourceKeyIndex<R>> pair : keyIndexMap.entrySet())
+		{
+			Object key;
+			if ((key = entry.hashKeys[pair.getValue().slot]) != null)
+				own(pair, EngineResourceKeyIndex::copy).insert(key, entry);
+		}
+		for (Map.Entry<String, EngineResourceColumnData> pair : columnMap.entrySet())
+		{
+			EngineResourceColumnData column;
+			if (entry.resource == null && from != null && (column = version.columnMap.get(pair.getKey())) != null && column.getClass() == pair.getValue().getClass())
+				own(pair, EngineResourceColumnData::copy).set(ordinal, column, from.ordinal);
+			else
+				own(pair, EngineResourceColumnData::copy).set(ordinal, entry.resource());
+		}
+		for (Map.Entry<String, EngineResourceSpatialIndex<R>> pair : spatialIndexMap.entrySet())
+		{
+			double[] point;
+			if ((point = entry.points[pair.getValue().slot]) != null)
+				own(pair, EngineResourceSpatialIndex::copy).insert(point, entry);
+		}
+	}
+	
+	// Removes a resource from the tags and indices that it was added under. Its ordinal stays in use.
+	void unIndex(EngineResourceEntry<R> entry)
+	{
+		int ordinal = entry.ordinal;
+		for (int tag : entry.tags)
+		{
+			PersistentOrdinalSet set;
+			if ((set = tagBits.get(tag)) != null)
+				tagBits = tagBits.put(edit, tag, set.remove(edit, ordinal));
+		}
+		for (Map.Entry<String, EngineResourceNumericIndex<R>> pair : indexMap.entrySet())
+		{
+			int slot = pair.getValue().slot;
+			if (entry.isIndexed(slot))
+				own(pair, EngineResourceNumericIndex::copy).delete(entry.keys[slot], entry);
+		}
+		for (Map.Entry<String, EngineResourceKeyIndex<R>> pair : keyIndexMap.entrySet())
+		{
+			Object key;
+			if ((key = entry.hashKeys[pair.getValue().slot]) != null)
+				own(pair, EngineResourceKeyIndex::copy).delete(key, entry);
+		}
+		for (Map.Entry<String, EngineResourceColumnData> pair : columnMap.entrySet())
+			own(pair, EngineResourceColumnData::copy).clear(ordinal);
+		for (Map.Entry<String, EngineResourceSpatialIndex<R>> pair : spatialIndexMap.entrySet())
+		{
+			double[] point;
+			if ((point = entry.points[pair.getValue().slot]) != null)
+				own(pair, EngineResourceSpatialIndex::copy).delete(point, entry);
+		}
+	}
+	
+	/**
+	 * @param tag the tag name.
+	 * @return the set of the ordinals with the tag, or null if no resource has had the tag.
+	 */
+	PersistentOrdinalSet getTagBits(String tag)
+	{
+		int symbol;
+		return tag != null && (symbol = symbols.lookup(tag)) >= 0 ? tagBits.get(symbol) : null;
+	}
+	
+	// Gets the index or column in a map entry that can be changed by this version, copying it on its first change.
+	private <T> T own(Map.Entry<String, T> pair, UnaryOperator<T> copier)
+	{
+		T out = pair.getValue();
+		if (ownedIndices.contains(out))
+			return out;
+		out = copier.apply(out);
+		pair.setValue(out);
+		ownedIndices.add(out);
+		return out;
+	}
+	
+	/**
+	 * @return the estimated size of the stack of unused ordinals.
+	 */
+	long getFreeOrdinalMemoryEstimate()
+	{
+		return freeCount * EngineMemoryEstimator.align(EngineMemoryEstimator.HEADER + EngineMemoryEstimator.REFERENCE + 4);
+	}
+	
+	/**
+	 * A node in a stack of unused ordinals, which versions share.
+	 */
+	private static class FreeOrdinal
+	{
+		private final int ordinal;
+		private final FreeOrdinal next;
+		
+		private FreeOrdinal(int ordinal, FreeOrdinal next)
+		{
+			this.ordinal = ordinal;
+			this.next = next;
+		}
+	}
+	
+}
@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A table of interned strings, each with an int symbol.
+ * <p>
+ * Resource tags are interned here when resources are added, so that equal strings
+ * are held once, and tags can be stored and matched by symbol. Symbols are assigned in order
+ * from 0 and never change or get reused, so the table only grows: it holds every tag name
+ * that was ever added, which is bounded by the tag vocabulary of the resources (not by their count).
+ * Resource ids are not interned, so that the ids of removed resources are not held.
+ * <p>
+ * This is thread-safe. Lookups of strings that are already interned do not lock.
+ * @author Matthew Tropiano
+ */
+public final class EngineSymbolTable
+{
+	/** Symbols by string. */
+	private final ConcurrentHashMap<String, Integer> symbols;
+	/** Strings by symbol. */
+	private volatile String[] names;
+	/** Amount of symbols. */
+	private int count;
+
+	/**
+	 * Creates a new, empty symbol table.
+	 */
+	public EngineSymbolTable()
+	{
+		this.symbols = new ConcurrentHashMap<>();
+		this.names = new String[64];
+		this.count = 0;
+	}
+
+	/**
+	 * Gets the symbol for a string, adding it if it is not in this table.
+	 * @param name the string.
+	 * @return its symbol.
+	 * @throws NullPointerException if the string is null.
+	 */
+	public int intern(String name)
+	{
+		Integer out;
+		if ((out = symbols.get(name)) != null)
+			return out;
+		synchronized (this)
+		{
+			if ((out = symbols.get(name)) != null)
+				return out;
+			String[] array = names;
+			if (count == array.length)
+				array = Arrays.copyOf(array, array.length * 2);
+			array[count] = name;
+			names = array;
+			symbols.put(name, count);
+			return count++;
+		}
+	}
+
+	/**
+	 * Gets the symbol for a string, without adding it.
+	 * @param name the string.
+	 * @return its symbol, or -1 if it is not in this table.
+	 * @throws NullPointerException if the string is null.
+	 */
+	public int lookup(String name)
+	{
+		Integer out;
+		return (out = symbols.get(name)) != null ? out : -1;
+	}
+
+	/**
+	 * Gets the string for a symbol.
+	 * @param symbol the symbol.
+	 * @return the string, or null if the symbol is not in this table.
+	 */
+	public String getName(int symbol)
+	{
+		String[] array = names;
+		return symbol >= 0 && symbol < array.length ? array[symbol] : null;
+	}
+
+	/**
+	 * @return the amount of symbols in this table.
+	 */
+	public int size()
+	{
+		return symbols.size();
+	}
+
+}
@@ -7,15 +7,18 @@
  ******************************************************************************/
 package com.blackrook.engine;
 
-import java.util.ArrayList;
-import java.util.List;
-
 import com.blackrook.engine.EngineLoggingFactory.Logger;
+import com.blackrook.engine.annotation.element.CCMD;
+import com.blackrook.engine.annotation.element.CVAR;
+import com.blackrook.engine.annotation.element.FaultPolicy;
 import com.blackrook.engine.roles.EngineUpdateListener;
+import com.blackrook.engine.struct.CopyOnWriteOrderedList;
 import com.blackrook.engine.struct.Utils;
 
 /**
  * An update thread class that updates all updatable objects on a set interval.
+ * <p>
+ * If an updatable throws an exception, what happens next depends on its {@link FaultPolicy}.
  * @author Matthew Tropiano
  */
 public class EngineTicker
@@ -24,10 +27,14 @@ public class EngineTicker
 	private Logger logger;
 	/** Engine reference. */
 	private Engine engine;
-	/** Queue of updatables. */
-	private List<EngineUpdateListener> updatables;
+	/** List of updatables. */
+	private CopyOnWriteOrderedList<Updatable> updatables;
+	/** Total amount of update failures. */
+	private volatile long failureCount;
 
 	private int updatesPerSecond;
+	/** The tick number of the next update. */
+	private volatile long currentTick;
 	private Thread updateThread;
 	private boolean enabled;
 	private boolean active;
@@ -41,8 +48,10 @@ public class EngineTicker
 	{
 		this.logger = logger;
 		this.engine = engine;
-		this.updatables = new ArrayList<EngineUpdateListener>();
+		this.updatables = new CopyOnWriteOrderedList<Updatable>();
+		this.failureCount = 0L;
 		this.updatesPerSecond = config.getUpdatesPerSecond();
+		this.currentTick = 0L;
 		this.updateThread = null;
 		this.enabled = true;
 		this.active = false;
@@ -76,7 +85,6 @@ public class EngineTicker
 		long millis = (long)millisPerUpdate;
 		long nanos = (long)((millisPerUpdate - millis) * 1000000L);
 		
-		long tick = 0;
 		long nanoCount = 0;
 		long lastNanos = System.nanoTime();
 	
@@ -92,7 +100,7 @@ public class EngineTicker
 			{
 				nanoCount -= totalNanos;
 				if (enabled)
-					update(tick++, System.nanoTime());
+					update(currentTick++, System.nanoTime());
 			}
 			
 			Utils.sleep(0, 500000);
@@ -102,14 +110,126 @@ public class EngineTicker
 		updateThread = null;
 	}
 
+	/**
+	 * Gets the tick number of the next update to be called by this ticker.
+	 * Events that happen between updates are considered part of this tick.
+	 * @return the current tick.
+	 */
+	public long getCurrentTick()
+	{
+		return currentTick;
+	}
+
+	/**
+	 * @return the amount of updates per second that this ticker runs at, or 0 if it runs full bore.
+	 */
+	public int getUpdatesPerSecond()
+	{
+		return updatesPerSecond;
+	}
+
 	/** 
-	 * Adds an updatable to this ticker.
-	 * If no updater was created, this does nothing.
+	 * Adds an updatable to this ticker, after the updatables with an ordering less than or equal to the one provided.
+	 * Safe to call while the ticker is running - it takes effect on the next update.
 	 * @param updatable the EngineUpdateListener to add. 
+	 * @param ordering the ordering value.
+	 * @return true if added, false if it was already added.
+	 */
+	boolean add(EngineUpdateListener updatable, int ordering)
+	{
+		synchronized (updatables)
+		{
+			if (getUpdatable(updatable) != null)
+				return false;
+			return updatables.add(new Updatable(updatable), ordering);
+		}
+	}
+	
+	/** 
+	 * Removes an updatable from this ticker.
+	 * Safe to call while the ticker is running - it takes effect on the next update.
+	 * @param updatable the EngineUpdateListener to remove. 
+	 * @return true if removed, false if it was not on this ticker.
+	 */
+	boolean remove(EngineUpdateListener updatable)
+	{
+		synchronized (updatables)
+		{
+			Updatable entry;
+			if ((entry = getUpdatable(updatable)) == null)
+				return false;
+			return updatables.remove(entry);
+		}
+	}
+	
+	/**
+	 * @return the total amount of failed updates since the ticker was created.
+	 */
+	@CVAR(value = "ticker_failures", description = "Total amount of failed updates.")
+	public long getFailureCount()
+	{
+		return failureCount;
+	}
+	
+	/**
+	 * Gets the amount of failed updates for a single updatable.
+	 * @param updatable the updatable.
+	 * @return the amount of failures, or 0 if the updatable is not on this ticker.
+	 */
+	public int getFailureCount(EngineUpdateListener updatable)
+	{
+		Updatable entry;
+		return (entry = getUpdatable(updatable)) != null ? entry.failureCount : 0;
+	}
+
+	/**
+	 * Checks if an updatable was quarantined for failing too many times.
+	 * @param updatable the updatable.
+	 * @return true if so, false if not or the updatable is not on this ticker.
 	 */
-	void add(EngineUpdateListener updatable)
+	public boolean isQuarantined(EngineUpdateListener updatable)
 	{
-		updatables.add(updatable);
+		Updatable entry;
+		return (entry = getUpdatable(updatable)) != null && entry.quarantined;
+	}
+
+	/**
+	 * Releases an updatable from quarantine and resets its failure count.
+	 * @param updatable the updatable.
+	 * @return true if it was quarantined, false if not or the updatable is not on this ticker.
+	 */
+	public boolean release(EngineUpdateListener updatable)
+	{
+		Updatable entry;
+		if ((entry = getUpdatable(updatable)) == null || !entry.quarantined)
+			return false;
+		entry.failureCount = 0;
+		entry.quarantined = false;
+		logger.infof("%s released from quarantine.", updatable.getClass().getSimpleName());
+		return true;
+	}
+	
+	@CCMD(value = "tickerfaults", description = "Lists the updatables that have failed and how many times.")
+	public String listFaults()
+	{
+		StringBuilder sb = new StringBuilder();
+		for (Updatable entry : updatables)
+		{
+			if (entry.failureCount == 0)
+				continue;
+			sb.append(String.format("%-9s %-10s %d %s\n", entry.policy.name(), entry.quarantined ? "QUARANTINE" : "", entry.failureCount, entry.listener.getClass().getName()));
+		}
+		sb.append("total ").append(failureCount);
+		return sb.toString();
+	}
+	
+	// Finds the entry for an updatable.
+	private Updatable getUpdatable(EngineUpdateListener updatable)
+	{
+		for (Updatable entry : updatables)
+			if (entry.listener == updatable)
+				return entry;
+		return null;
 	}
 	
 	/**
@@ -119,12 +239,54 @@ public class EngineTicker
 	 */
 	private void update(long tick, long currentNanos)
 	{
-		try {
-			for (int i = 0; i < updatables.size(); i++)
-				updatables.get(i).update(tick, currentNanos);
-		} catch (Throwable t) {
-			logger.severe(t, "An exception occurred!");
-			engine.handleException(t);
+		for (Updatable entry : updatables)
+		{
+			if (entry.quarantined)
+				continue;
+			try {
+				entry.listener.update(tick, currentNanos);
+			} catch (Throwable t) {
+				if (!handleFailure(entry, t))
+					return;
+			}
+		}
+	}
+	
+	/**
+	 * Handles a failed update according to the updatable's fault policy.
+	 * @return true if the rest of the updatables should still be updated.
+	 */
+	private boolean handleFailure(Updatable entry, Throwable t)
+	{
+		failureCount++;
+		int count = ++entry.failureCount;
+		String name = entry.listener.getClass().getSimpleName();
+		
+		switch (entry.policy)
+		{
+			default:
+			case FAIL_FAST:
+				logger.severe(t, "An exception occurred!");
+				engine.handleException(t);
+				return false;
+				
+			case ISOLATE:
+				// log the first failure fully, then less often.
+				if (count == 1)
+					logger.error(t, name + " failed to update.");
+				else if (Integer.bitCount(count) == 1)
+					logger.errorf("%s has failed to update %d times: %s", name, count, t);
+				return true;
+				
+			case QUARANTINE:
+				if (count >= entry.threshold)
+				{
+					entry.quarantined = true;
+					logger.error(t, name + " failed to update " + count + " times and was quarantined.");
+				}
+				else if (count == 1)
+					logger.error(t, name + " failed to update.");
+				return true;
 		}
 	}
 	
@@ -148,4 +310,26 @@ public class EngineTicker
 		}
 	}
 	
+	/**
+	 * An updatable and its failure state.
+	 */
+	private static class Updatable
+	{
+		private EngineUpdateListener listener;
+		private FaultPolicy.Type policy;
+		private int threshold;
+		private int failureCount;
+		private boolean quarantined;
+		
+		private Updatable(EngineUpdateListener listener)
+		{
+			FaultPolicy anno = listener.getClass().getAnnotation(FaultPolicy.class);
+			this.listener = listener;
+			this.policy = anno != null ? anno.value() : FaultPolicy.Type.FAIL_FAST;
+			this.threshold = anno != null ? Math.max(anno.threshold(), 1) : 1;
+			this.failureCount = 0;
+			this.quarantined = false;
+		}
+	}
+	
 }
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+
+import com.blackrook.engine.roles.EngineRawWindowListener;
+import com.blackrook.engine.roles.EngineUpdateListener;
+import com.blackrook.engine.roles.EngineWindowListener;
+import com.blackrook.engine.struct.CopyOnWriteOrderedList;
+
+/**
+ * Collapses consecutive mouse move and resize events and delivers the latest of each
+ * to the window listeners at most once per interval, on the update ticker.
+ * <p>
+ * All other window events are queued behind any pending move or resize, and are delivered
+ * on the next update, so that listeners hear every event on the ticker thread, in the order they happened.
+ * A pending move and resize that are delivered together go in the order that they were last recorded.
+ * <p>Listeners that implement {@link EngineRawWindowListener} are skipped, since they hear each event directly.
+ * @author Matthew Tropiano
+ */
+class EngineWindowEventCoalescer implements EngineUpdateListener
+{
+	/** The listeners to deliver to. */
+	private CopyOnWriteOrderedList<EngineWindowListener> listeners;
+	/** Minimum nanoseconds between deliveries. */
+	private long intervalNanos;
+
+	/** Events to deliver on the next update, in order. */
+	private ArrayDeque<Consumer<EngineWindowListener>> queue;
+
+	/** Counter for the order in which the pending events were recorded. */
+	private long sequence;
+
+	private boolean movePending;
+	private int moveX;
+	private int moveY;
+	private long moveSequence;
+	private long moveLastNanos;
+
+	private boolean resizePending;
+	private int resizeWidth;
+	private int resizeHeight;
+	private long resizeSequence;
+	private long resizeLastNanos;
+
+	/** Amount of events collapsed into a later one. */
+	private long coalescedCount;
+
+	/**
+	 * Creates a new coalescer.
+	 * @param listeners the listener list to deliver to.
+	 * @param intervalMillis the minimum milliseconds between deliveries of each event kind.
+	 */
+	EngineWindowEventCoalescer(CopyOnWriteOrderedList<EngineWindowListener> listeners, int intervalMillis)
+	{
+		this.listeners = listeners;
+		this.intervalNanos = Math.max(intervalMillis, 0) * 1000000L;
+		this.queue = new ArrayDeque<>();
+		this.sequence = 0L;
+		this.movePending = false;
+		this.moveLastNanos = System.nanoTime() - intervalNanos;
+		this.resizePending = false;
+		this.resizeLastNanos = moveLastNanos;
+		this.coalescedCount = 0L;
+	}
+
+	/**
+	 * Records a mouse move, replacing a pending one, if any.
+	 * @param canvasX the new canvas-local x-coordinate.
+	 * @param canvasY the new canvas-local y-coordinate.
+	 */
+	synchronized void mouseMove(int canvasX, int canvasY)
+	{
+		if (movePending)
+			coalescedCount++;
+		movePending = true;
+		moveX = canvasX;
+		moveY = canvasY;
+		moveSequence = sequence++;
+	}
+
+	/**
+	 * Records a resize, replacing a pending one, if any.
+	 * @param width the new canvas width.
+	 * @param height the new canvas height.
+	 */
+	synchronized void resize(int width, int height)
+	{
+		if (resizePending)
+			coalescedCount++;
+		resizePending = true;
+		resizeWidth = width;
+		resizeHeight = height;
+		resizeSequence = sequence++;
+	}
+
+	/**
+	 * Queues an event that is not coalesced, behind the pending move and resize (if any),
+	 * to be delivered on the next update.
+	 * @param event the event, called for each listener.
+	 */
+	synchronized void post(Consumer<EngineWindowListener> event)
+	{
+		queuePending(movePending, resizePending, System.nanoTime());
+		queue.add(event);
+	}
+
+	/**
+	 * @return the amount of mouse move and resize events that were collapsed into a later one.
+	 */
+	synchronized long getCoalescedCount()
+	{
+		return coalescedCount;
+	}
+
+	// Delivers queued events, then pending events whose interval has passed. Only called on the ticker thread.
+	@Override
+	public void update(long tick, long currentNanos)
+	{
+		ArrayDeque<Consumer<EngineWindowListener>> events;
+		if ((events = takeDue(currentNanos)) == null)
+			return;
+		for (Consumer<EngineWindowListener> event : events)
+		{
+			for (EngineWindowListener listener : listeners)
+				if (!(listener instanceof EngineRawWindowListener))
+					event.accept(listener);
+		}
+	}
+
+	// Takes the queued events and the pending events that are due, or returns null if there are none.
+	// Events that arrive while these are delivered wait for the next update.
+	private synchronized ArrayDeque<Consumer<EngineWindowListener>> takeDue(long currentNanos)
+	{
+		queuePending(
+			movePending && currentNanos - moveLastNanos >= intervalNanos, 
+			resizePending && currentNanos - resizeLastNanos >= intervalNanos, 
+			currentNanos
+		);
+		if (queue.isEmpty())
+			return null;
+		ArrayDeque<Consumer<EngineWindowListener>> out = queue;
+		queue = new ArrayDeque<>();
+		return out;
+	}
+
+	// Queues the pending move and/or resize, in the order that they were recorded. Must be called while locked.
+	private void queuePending(boolean move, boolean resize, long currentNanos)
+	{
+		if (move && resize && resizeSequence < moveSequence)
+		{
+			queueResize(currentNanos);
+			queueMove(currentNanos);
+		}
+		else
+		{
+			if (move)
+				queueMove(currentNanos);
+			if (resize)
+				queueResize(currentNanos);
+		}
+	}
+
+	// Queues the pending move. Must be called while locked.
+	private void queueMove(long currentNanos)
+	{
+		final int mx = moveX;
+		final int my = moveY;
+		queue.add((listener) -> listener.onMouseMove(mx, my));
+		movePending = false;
+		moveLastNanos = currentNanos;
+	}
+
+	// Queues the pending resize. Must be called while locked.
+	private void queueResize(long currentNanos)
+	{
+		final int rw = resizeWidth;
+		final int rh = resizeHeight;
+		queue.add((listener) -> listener.onResize(rw, rh));
+		resizePending = false;
+		resizeLastNanos = currentNanos;
+	}
+
+}
@@ -36,6 +36,12 @@ import com.blackrook.engine.EngineLoggingFactory.LogLevel;
  * 	<li>File system archive extension autoload is empty.</li>
  * 	<li>Resource definition file is empty.</li>
  * 	<li>Updates per second is null (no ticker).</li>
+ * 	<li>Window event coalescing interval is null (no coalescing).</li>
+ * 	<li>Resource generator thread count is null (one at a time).</li>
+ * 	<li>Resource definition thread count is null (one pass on the calling thread).</li>
+ * 	<li>Resource definition reload is false.</li>
+ * 	<li>Resource snapshot file path is null (no snapshot).</li>
+ * 	<li>Resource cache size is null (all resources kept in memory).</li>
  * 	<li>Debug mode is false.</li>
  * 	<li>List of console commands to execute is empty.</li>
  * </ul>
@@ -158,6 +164,48 @@ public class EngineConfigAdapter implements EngineConfig
 		return null;
 	}
 
+	@Override
+	public Integer getWindowEventCoalescingInterval()
+	{
+		return null;
+	}
+
+	@Override
+	public Integer getResourceGeneratorThreadCount()
+	{
+		return null;
+	}
+
+	@Override
+	public Integer getResourceDefinitionThreadCount()
+	{
+		return null;
+	}
+
+	@Override
+	public boolean getResourceDefinitionReload()
+	{
+		return false;
+	}
+
+	@Override
+	public String getResourceSnapshotFile()
+	{
+		return null;
+	}
+
+	@Override
+	public String getResourceSnapshotVersion()
+	{
+		return null;
+	}
+
+	@Override
+	public Integer getResourceCacheSize()
+	{
+		return null;
+	}
+
 	@Override
 	public boolean getDebugMode()
 	{
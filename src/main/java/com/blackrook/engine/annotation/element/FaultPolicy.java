@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.annotation.element;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.blackrook.engine.Engine;
+
+/**
+ * An annotation to be used on {@link com.blackrook.engine.roles.EngineUpdateListener} objects to influence 
+ * what happens when their update method throws an exception on the update ticker.
+ * Other role invocations do not consult it.
+ * <p>
+ * Without this annotation, the policy is {@link Type#FAIL_FAST}.
+ * @author Matthew Tropiano
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface FaultPolicy
+{
+	/** 
+	 * The policy type.
+	 * @return the policy type to use. 
+	 */
+	Type value() default Type.FAIL_FAST;
+
+	/** 
+	 * The amount of failures before the listener is quarantined, if the policy is {@link Type#QUARANTINE}.
+	 * @return the failure threshold. 
+	 */
+	int threshold() default 10;
+	
+	/**
+	 * Fault policy types.
+	 */
+	enum Type
+	{
+		/** The failure is treated as fatal and passed to {@link Engine#handleException(Throwable)}. */
+		FAIL_FAST,
+		
+		/** The failure is logged and counted, and the rest of the listeners are still updated. */
+		ISOLATE,
+		
+		/** 
+		 * The failure is logged and counted, and the rest of the listeners are still updated.
+		 * After {@link FaultPolicy#threshold()} failures, the listener is no longer updated.
+		 */
+		QUARANTINE;
+	}
+	
+}
@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.annotation.element;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+import com.blackrook.engine.roles.EngineResourceGenerator;
+
+/**
+ * An annotation to be used on {@link EngineResourceGenerator}s to declare which resource classes they 
+ * add and which ones they read, so that generators that do not depend on each other can run at the same time.
+ * <p>
+ * A generator runs after all of the generators that produce a class that it consumes (or a subclass of one),
+ * and after generators with a lower {@link Ordering} that produce the same classes that it does.
+ * Generators without this annotation run alone, after all generators before them in {@link Ordering}
+ * and before all generators after them.
+ * <p>
+ * Each generator runs in its own update batch, which holds the resource sets that it changes until 
+ * it is done, so generators that share a set (such as a combined set of their classes) wait for each other.
+ * @author Matthew Tropiano
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ResourceDependencies
+{
+	/** 
+	 * @return the resource classes that the generator adds.
+	 */
+	Class<?>[] produces() default {};
+
+	/** 
+	 * @return the resource classes that the generator reads.
+	 */
+	Class<?>[] consumes() default {};
+}
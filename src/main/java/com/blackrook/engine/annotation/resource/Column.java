@@ -0,0 +1,34 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.annotation.resource;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that tells the resource set to keep a copy of the value returned by this method
+ * in a column: a primitive array ordered by resource ordinal, which can be scanned, filtered,
+ * and totaled without reading the resources themselves.
+ * <p>Attach to a getter method or a public field of a numeric type.
+ * <p>By default, the column name is taken from the getter method name, without "get", or the field's name.
+ * <p>Can be used along with {@link Indexed}. Resources with a null value are left out of the column.
+ * @author Matthew Tropiano
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.FIELD})
+public @interface Column
+{
+	/**
+	 * Column name.
+	 * @return the name to use for the column.
+	 */
+	String value() default "";
+
+}
@@ -0,0 +1,30 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.annotation.resource;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that tells the resource loader to keep a combined set of the resources of every class
+ * that extends or implements the annotated class or interface (including the class itself),
+ * so that they can be searched as one set.
+ * <p>Attach to a class or interface that is or extends {@link com.blackrook.engine.EngineResource}.
+ * <p>The combined set has the indices and columns declared on the annotated type's own public fields
+ * and getters (which its member classes inherit). Members declared only on a member class are not in it.
+ * Resource ids must be unique across all of the member classes, and unique indices are unique across them as well.
+ * @author Matthew Tropiano
+ * @see com.blackrook.engine.EngineResourceSet#getCombinedSet(Class)
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface CombinedSet
+{
+}
@@ -0,0 +1,47 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.annotation.resource;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that tells the resource loader to create a hash index on a combination of the resource's values,
+ * searchable by all of those values at once.
+ * <p>Attach to the resource class. Members are named by public field name, or getter method name without "get".
+ * Resources with a null value in any member are not indexed.
+ * @author Matthew Tropiano
+ * @see Indexed
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+@Repeatable(CompositeIndexes.class)
+public @interface CompositeIndex
+{
+	/** 
+	 * Index name.
+	 * @return the name to use in the resource index. 
+	 */
+	String name();
+
+	/** 
+	 * The members that make up the index key, in order.
+	 * @return the member names.
+	 */
+	String[] members();
+
+	/** 
+	 * If true, no two resources in the same set can have the same combination of values.
+	 * Adding a resource that breaks this throws an exception.
+	 * @return true if unique, false if not.
+	 */
+	boolean unique() default false;
+}
@@ -17,6 +17,10 @@ import java.lang.annotation.Target;
  * value returned by this method.
  * <p>Attach to a getter method or a public field.
  * <p>By default, the index name is taken from the getter method name, without "get", or the field's name.
+ * <p>Numeric values are kept in a sorted index, which can be searched by value ranges.
+ * String, enum, boolean, and character values are kept in a hash index, which can be searched by value.
+ * Resources with a null value are not indexed.
+ * @see CompositeIndex
  * @author Matthew Tropiano
  */
 @Retention(RetentionPolicy.RUNTIME)
@@ -28,4 +32,11 @@ public @interface Indexed
 	 * @return the name to use in the resource index. 
 	 */
 	String value() default "";
+
+	/** 
+	 * If true, no two resources in the same set can have the same value.
+	 * Adding a resource that breaks this throws an exception.
+	 * @return true if unique, false if not.
+	 */
+	boolean unique() default false;
 }
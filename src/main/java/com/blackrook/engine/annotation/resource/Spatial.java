@@ -0,0 +1,58 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.annotation.resource;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that tells the resource loader to create a spatial index on the coordinates returned by
+ * a set of methods, searchable by distance, by bounding box, or by nearest point.
+ * <p>Attach to the getter methods or public fields of a numeric type that make up each coordinate of a point,
+ * all with the same index name. An index needs X and Y coordinates, and can have a Z coordinate (for 3D points).
+ * <p>Points are kept in a grid of cells, each {@link #cellSize()} units wide. A cell size close to
+ * the usual search radius works best.
+ * Resources with a null, NaN, or infinite coordinate are not indexed.
+ * @author Matthew Tropiano
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.METHOD, ElementType.FIELD})
+public @interface Spatial
+{
+	/**
+	 * The coordinate axes.
+	 */
+	enum Axis
+	{
+		X,
+		Y,
+		Z;
+	}
+
+	/**
+	 * Index name.
+	 * @return the name of the spatial index that this coordinate is part of.
+	 */
+	String value();
+
+	/**
+	 * Coordinate axis.
+	 * @return the axis of the point that this coordinate is for.
+	 */
+	Axis axis();
+
+	/**
+	 * The width of each grid cell, on every axis.
+	 * All of the coordinates in an index must have the same cell size.
+	 * @return the cell size, greater than 0.
+	 */
+	double cellSize() default 16.0;
+
+}
@@ -0,0 +1,158 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.handler;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A stack of input captures, where an input handler can temporarily take specific input codes
+ * (or all input) away from whatever would normally handle them, like a focused UI element or a modal dialog.
+ * <p>
+ * Input passed to this goes straight to the most recent capture that wants the input code, 
+ * and only that one. If it does not handle the input, the input is considered not handled by this stack, 
+ * and the owner of the stack can continue its normal dispatch, skipping the capturer 
+ * (see {@link #getCapturer(String)}) so that it does not get the input twice.
+ * <p>
+ * Captures are published as a new copy on every change, so handling input never locks.
+ * @author Matthew Tropiano
+ */
+public class EngineInputCaptureStack implements EngineInputHandler
+{
+	private static final Capture[] NO_CAPTURES = new Capture[0];
+	
+	/** Current captures, most recent last. */
+	private volatile Capture[] captures;
+	
+	/**
+	 * Creates a new, empty capture stack.
+	 */
+	public EngineInputCaptureStack()
+	{
+		this.captures = NO_CAPTURES;
+	}
+	
+	/**
+	 * Makes a handler capture a set of input codes, or all input.
+	 * If the handler already has a capture, it is replaced and moved to the top of the stack.
+	 * @param handler the handler that captures the input.
+	 * @param codes the input codes to capture. If none are provided, all input is captured.
+	 */
+	public synchronized void capture(EngineInputHandler handler, String ... codes)
+	{
+		Capture[] current = removeCapture(captures, handler);
+		Capture[] next = Arrays.copyOf(current, current.length + 1);
+		next[current.length] = new Capture(handler, codes.length > 0 ? new HashSet<>(Arrays.asList(codes)) : null);
+		captures = next;
+	}
+	
+	/**
+	 * Releases a handler's capture.
+	 * @param handler the handler to release.
+	 * @return true if it had a capture, false if not.
+	 */
+	public synchronized boolean release(Object handler)
+	{
+		Capture[] current = captures;
+		Capture[] next = removeCapture(current, handler);
+		captures = next;
+		return next != current;
+	}
+	
+	/**
+	 * Releases all captures.
+	 */
+	public synchronized void releaseAll()
+	{
+		captures = NO_CAPTURES;
+	}
+	
+	/**
+	 * Gets the handler that currently captures an input code.
+	 * @param code the input code.
+	 * @return the capturing handler, or null if the code is not captured.
+	 */
+	public EngineInputHandler getCapturer(String code)
+	{
+		Capture[] current = captures;
+		for (int i = current.length - 1; i >= 0; i--)
+			if (current[i].wants(code))
+				return current[i].handler;
+		return null;
+	}
+	
+	/**
+	 * @return true if there are no captures, false if there is at least one.
+	 */
+	public boolean isEmpty()
+	{
+		return captures.length == 0;
+	}
+	
+	/**
+	 * Passes an input flag to the capturing handler, if any.
+	 * @return true if a capturing handler handled the call, false if not or the code is not captured.
+	 */
+	@Override
+	public boolean onInputFlag(String code, boolean set)
+	{
+		EngineInputHandler handler;
+		return (handler = getCapturer(code)) != null && handler.onInputFlag(code, set);
+	}
+
+	/**
+	 * Passes an input value to the capturing handler, if any.
+	 * @return true if a capturing handler handled the call, false if not or the code is not captured.
+	 */
+	@Override
+	public boolean onInputValue(String code, double value)
+	{
+		EngineInputHandler handler;
+		return (handler = getCapturer(code)) != null && handler.onInputValue(code, value);
+	}
+
+	// Returns the array without a handler's capture, or the same array if it has none.
+	private static Capture[] removeCapture(Capture[] array, Object handler)
+	{
+		for (int i = 0; i < array.length; i++)
+		{
+			if (array[i].handler == handler)
+			{
+				Capture[] out = new Capture[array.length - 1];
+				System.arraycopy(array, 0, out, 0, i);
+				System.arraycopy(array, i + 1, out, i, array.length - i - 1);
+				return out;
+			}
+		}
+		return array;
+	}
+	
+	/**
+	 * A single capture.
+	 */
+	private static class Capture
+	{
+		/** The capturing handler. */
+		private EngineInputHandler handler;
+		/** The captured codes. If null, captures all. */
+		private Set<String> codes;
+
+		private Capture(EngineInputHandler handler, Set<String> codes)
+		{
+			this.handler = handler;
+			this.codes = codes;
+		}
+		
+		private boolean wants(String code)
+		{
+			return codes == null || codes.contains(code);
+		}
+	}
+	
+}
@@ -1,4 +1,4 @@
 /**
- * Contains common interfaces that field events to the Engine.
+ * Contains common interfaces that field events to the Engine, and helpers for routing them.
  */
 package com.blackrook.engine.handler;
\ No newline at end of file
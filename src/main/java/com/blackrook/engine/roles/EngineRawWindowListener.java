@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.roles;
+
+import com.blackrook.engine.EngineConfig;
+import com.blackrook.engine.annotation.element.Ordering;
+
+/**
+ * Describes a window listener that wants to hear every mouse move and resize event as it happens,
+ * even if the engine is set to coalesce them.
+ * <p>
+ * Normally, if {@link EngineConfig#getWindowEventCoalescingInterval()} returns a non-null value, 
+ * consecutive mouse move and resize events are collapsed and delivered at most once per interval
+ * on the update thread. Listeners that implement this interface get them on the window thread instead,
+ * once per event, and are skipped when the coalesced events are delivered.
+ * <p>
+ * The {@link Ordering} annotation can influence invocation order on this type of object.
+ * @author Matthew Tropiano
+ */
+public interface EngineRawWindowListener extends EngineWindowListener
+{
+
+}
@@ -7,6 +7,7 @@
  ******************************************************************************/
 package com.blackrook.engine.state;
 
+import com.blackrook.engine.handler.EngineInputCaptureStack;
 import com.blackrook.engine.handler.EngineInputHandler;
 import com.blackrook.engine.handler.EngineUpdateHandler;
 
@@ -20,11 +21,14 @@ public class StateManager implements EngineUpdateHandler, EngineInputHandler
 	private State[] states;
 	/** Size. */
 	private int size;
+	/** Input captures, consulted before the state stack. */
+	private EngineInputCaptureStack captures;
 
 	public StateManager()
 	{
 		states = new State[4];
 		size = 0;
+		captures = new EngineInputCaptureStack();
 	}
 	
 	/**
@@ -73,6 +77,7 @@ public class StateManager implements EngineUpdateHandler, EngineInputHandler
 		
 		State out = states[--size];
 		states[size] = null;
+		captures.release(out);
 		out.exit();
 		return out;
 	}
@@ -90,6 +95,34 @@ public class StateManager implements EngineUpdateHandler, EngineInputHandler
 		}
 	}
 
+	/**
+	 * Makes a state capture a set of input codes, or all input.
+	 * Captured input goes straight to the most recent state that captured it, instead of down the stack from the top.
+	 * If that state does not handle it, the stack gets it as usual.
+	 * The capture is released when the state is popped.
+	 * @param state the state that captures the input.
+	 * @param codes the input codes to capture. If none are provided, all input is captured.
+	 * @throws IllegalArgumentException if the state is not on the stack.
+	 * @see #release(State)
+	 */
+	public synchronized void capture(State state, String ... codes)
+	{
+		if (!contains(state))
+			throw new IllegalArgumentException("State is not on the state stack.");
+		captures.capture(state, codes);
+	}
+
+	/**
+	 * Releases a state's input capture.
+	 * @param state the state to release.
+	 * @return true if it had a capture, false if not.
+	 * @see #capture(State, String...)
+	 */
+	public boolean release(State state)
+	{
+		return captures.release(state);
+	}
+
 	@Override
 	public synchronized void update(long tick, long currentNanos)
 	{
@@ -100,8 +133,12 @@ public class StateManager implements EngineUpdateHandler, EngineInputHandler
 	@Override
 	public synchronized boolean onInputFlag(String code, boolean set)
 	{
+		// the capturer already had its chance, so it is skipped if the input falls through.
+		EngineInputHandler capturer;
+		if ((capturer = captures.getCapturer(code)) != null && capturer.onInputFlag(code, set))
+			return true;
 		for (int i = size - 1; i >= 0; i--)
-			if (states[i].onInputFlag(code, set))
+			if (states[i] != capturer && states[i].onInputFlag(code, set))
 				return true;
 		return false;
 	}
@@ -109,8 +146,11 @@ public class StateManager implements EngineUpdateHandler, EngineInputHandler
 	@Override
 	public synchronized boolean onInputValue(String code, double value)
 	{
+		EngineInputHandler capturer;
+		if ((capturer = captures.getCapturer(code)) != null && capturer.onInputValue(code, value))
+			return true;
 		for (int i = size - 1; i >= 0; i--)
-			if (states[i].onInputValue(code, value))
+			if (states[i] != capturer && states[i].onInputValue(code, value))
 				return true;
 		return false;
 	}
@@ -130,6 +170,19 @@ public class StateManager implements EngineUpdateHandler, EngineInputHandler
 	{
 		return size() == 0;
 	}
+
+	/**
+	 * Checks if a state is on the stack.
+	 * @param state the state to look for.
+	 * @return true if so, false if not.
+	 */
+	public synchronized boolean contains(State state)
+	{
+		for (int i = 0; i < size; i++)
+			if (states[i] == state)
+				return true;
+		return false;
+	}
 	
 	/**
 	 * State entry.
@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.struct;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A list of objects kept in order by an ordering value (lowest to highest), 
+ * where every change publishes a new copy of the list.
+ * <p>
+ * Reads and iteration never lock and always see a complete list: an iterator walks the
+ * copy that was current when it was created, even if objects are added or removed during iteration.
+ * Changes are synchronized and cost O(n), so this is meant for lists that are iterated far more often than changed.
+ * <p>
+ * Objects with equal ordering values stay in the order that they were added. 
+ * Objects are compared by identity, not {@link Object#equals(Object)}.
+ * @author Matthew Tropiano
+ * @param <T> the type of object stored.
+ */
+public class CopyOnWriteOrderedList<T> implements Iterable<T>
+{
+	private static final Object[] NO_OBJECTS = new Object[0];
+	private static final int[] NO_ORDERINGS = new int[0];
+	
+	/** Current objects. */
+	private volatile Object[] objects;
+	/** Ordering values, aligned with objects. */
+	private int[] orderings;
+
+	/**
+	 * Creates a new, empty list.
+	 */
+	public CopyOnWriteOrderedList()
+	{
+		this.objects = NO_OBJECTS;
+		this.orderings = NO_ORDERINGS;
+	}
+	
+	/**
+	 * Adds an object to this list after every object with an ordering value less than or equal to the provided one.
+	 * If the object is already in the list, this does nothing.
+	 * @param object the object to add.
+	 * @param ordering the ordering value.
+	 * @return true if added, false if already in the list.
+	 */
+	public synchronized boolean add(T object, int ordering)
+	{
+		Object[] current = objects;
+		if (indexOf(current, object) >= 0)
+			return false;
+		
+		int index = current.length;
+		while (index > 0 && orderings[index - 1] > ordering)
+			index--;
+		
+		Object[] nextObjects = new Object[current.length + 1];
+		int[] nextOrderings = new int[current.length + 1];
+		System.arraycopy(current, 0, nextObjects, 0, index);
+		System.arraycopy(orderings, 0, nextOrderings, 0, index);
+		nextObjects[index] = object;
+		nextOrderings[index] = ordering;
+		System.arraycopy(current, index, nextObjects, index + 1, current.length - index);
+		System.arraycopy(orderings, index, nextOrderings, index + 1, current.length - index);
+		
+		orderings = nextOrderings;
+		objects = nextObjects;
+		return true;
+	}
+	
+	/**
+	 * Removes an object from this list.
+	 * @param object the object to remove.
+	 * @return true if removed, false if not in the list.
+	 */
+	public synchronized boolean remove(Object object)
+	{
+		Object[] current = objects;
+		int index;
+		if ((index = indexOf(current, object)) < 0)
+			return false;
+
+		Object[] nextObjects = new Object[current.length - 1];
+		int[] nextOrderings = new int[current.length - 1];
+		System.arraycopy(current, 0, nextObjects, 0, index);
+		System.arraycopy(orderings, 0, nextOrderings, 0, index);
+		System.arraycopy(current, index + 1, nextObjects, index, current.length - index - 1);
+		System.arraycopy(orderings, index + 1, nextOrderings, index, current.length - index - 1);
+		
+		orderings = nextOrderings;
+		objects = nextObjects;
+		return true;
+	}
+	
+	/**
+	 * Checks if an object is in this list.
+	 * @param object the object to look for.
+	 * @return true if so, false if not.
+	 */
+	public boolean contains(Object object)
+	{
+		return indexOf(objects, object) >= 0;
+	}
+	
+	/**
+	 * @return the amount of objects in this list.
+	 */
+	public int size()
+	{
+		return objects.length;
+	}
+	
+	/**
+	 * @return true if this list is empty, false if not.
+	 */
+	public boolean isEmpty()
+	{
+		return size() == 0;
+	}
+	
+	/**
+	 * Returns an iterator over the current copy of this list.
+	 * The iterator does not support removal.
+	 */
+	@Override
+	public Iterator<T> iterator()
+	{
+		final Object[] snapshot = objects;
+		return new Iterator<T>() 
+		{
+			private int cur = 0;
+			
+			@Override
+			public boolean hasNext()
+			{
+				return cur < snapshot.length;
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public T next()
+			{
+				if (!hasNext())
+					throw new NoSuchElementException();
+				return (T)snapshot[cur++];
+			}
+		};
+	}
+	
+	// Finds an object by identity.
+	private static int indexOf(Object[] array, Object object)
+	{
+		for (int i = 0; i < array.length; i++)
+			if (array[i] == object)
+				return i;
+		return -1;
+	}
+	
+}
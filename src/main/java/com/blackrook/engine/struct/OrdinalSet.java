@@ -0,0 +1,207 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.struct;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative integers, such as ordinals, stored as a small sorted array 
+ * while it is small, and as a bitset once it grows past a threshold.
+ * Small sets stay small no matter how large their values are, and large sets get 
+ * constant-time membership changes.
+ * @author Matthew Tropiano
+ */
+public class OrdinalSet
+{
+	/** Size past which the set switches to a bitset. */
+	private static final int ARRAY_LIMIT = 32;
+	
+	/** Sorted values, if not a bitset. */
+	private int[] array;
+	/** Bitset, or null if still an array. */
+	private long[] bits;
+	/** Amount of values. */
+	private int size;
+	
+	/**
+	 * Creates a new empty set.
+	 */
+	public OrdinalSet()
+	{
+		this.array = new int[4];
+		this.bits = null;
+		this.size = 0;
+	}
+	
+	/**
+	 * Creates a new set with the contents of another.
+	 * @param set the set to copy.
+	 */
+	public OrdinalSet(OrdinalSet set)
+	{
+		this.array = set.array != null ? set.array.clone() : null;
+		this.bits = set.bits != null ? set.bits.clone() : null;
+		this.size = set.size;
+	}
+	
+	/**
+	 * Adds a value to this set.
+	 * @param value the value to add.
+	 * @return true if added, false if it was already in the set.
+	 * @throws IllegalArgumentException if the value is negative.
+	 */
+	public boolean add(int value)
+	{
+		if (value < 0)
+			throw new IllegalArgumentException("Value cannot be negative.");
+		
+		if (bits != null)
+		{
+			int word = value >> 6;
+			if (word >= bits.length)
+				bits = Arrays.copyOf(bits, Math.max(bits.length * 2, word + 1));
+			if ((bits[word] & (1L << value)) != 0)
+				return false;
+			bits[word] |= 1L << value;
+			size++;
+			return true;
+		}
+		
+		int index = Arrays.binarySearch(array, 0, size, value);
+		if (index >= 0)
+			return false;
+		
+		if (size == ARRAY_LIMIT)
+		{
+			int max = Math.max(array[size - 1], value);
+			bits = new long[(max >> 6) + 1];
+			for (int i = 0; i < size; i++)
+				bits[array[i] >> 6] |= 1L << array[i];
+			bits[value >> 6] |= 1L << value;
+			array = null;
+			size++;
+			return true;
+		}
+		
+		index = -(index + 1);
+		if (size == array.length)
+			array = Arrays.copyOf(array, array.length * 2);
+		System.arraycopy(array, index, array, index + 1, size - index);
+		array[index] = value;
+		size++;
+		return true;
+	}
+	
+	/**
+	 * Removes a value from this set.
+	 * @param value the value to remove.
+	 * @return true if removed, false if it was not in the set.
+	 */
+	public boolean remove(int value)
+	{
+		if (value < 0)
+			return false;
+		
+		if (bits != null)
+		{
+			int word = value >> 6;
+			if (word >= bits.length || (bits[word] & (1L << value)) == 0)
+				return false;
+			bits[word] &= ~(1L << value);
+			size--;
+			return true;
+		}
+		
+		int index = Arrays.binarySearch(array, 0, size, value);
+		if (index < 0)
+			return false;
+		System.arraycopy(array, index + 1, array, index, size - index - 1);
+		size--;
+		return true;
+	}
+	
+	/**
+	 * Checks if a value is in this set.
+	 * @param value the value.
+	 * @return true if so, false if not.
+	 */
+	public boolean contains(int value)
+	{
+		if (value < 0)
+			return false;
+		if (bits != null)
+			return (value >> 6) < bits.length && (bits[value >> 6] & (1L << value)) != 0;
+		return Arrays.binarySearch(array, 0, size, value) >= 0;
+	}
+	
+	/**
+	 * Gets the smallest value in this set that is greater than or equal to a value.
+	 * Iterate with <code>for (int i = set.next(0); i &gt;= 0; i = set.next(i + 1))</code>.
+	 * @param from the value to start from.
+	 * @return the next value in the set, or -1 if none.
+	 */
+	public int next(int from)
+	{
+		if (from < 0)
+			from = 0;
+		
+		if (bits != null)
+		{
+			int word = from >> 6;
+			if (word >= bits.length)
+				return -1;
+			long w = bits[word] & (-1L << from);
+			while (true)
+			{
+				if (w != 0)
+					return (word << 6) + Long.numberOfTrailingZeros(w);
+				if (++word == bits.length)
+					return -1;
+				w = bits[word];
+			}
+		}
+		
+		int index = Arrays.binarySearch(array, 0, size, from);
+		if (index < 0)
+			index = -(index + 1);
+		return index < size ? array[index] : -1;
+	}
+	
+	/**
+	 * @return the amount of values in this set.
+	 */
+	public int size()
+	{
+		return size;
+	}
+	
+	/**
+	 * @return true if this set is empty, false if not.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+	
+	/**
+	 * @return the length of the sorted value array, or 0 if this set is a bitset.
+	 */
+	public int getArrayLength()
+	{
+		return array != null ? array.length : 0;
+	}
+	
+	/**
+	 * @return the length of the bitset in 64-bit words, or 0 if this set is not a bitset.
+	 */
+	public int getBitsetLength()
+	{
+		return bits != null ? bits.length : 0;
+	}
+	
+}
@@ -0,0 +1,368 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.struct;
+
+import java.util.function.BiConsumer;
+
+/**
+ * A hash map that can be shared between versions, stored as a hash array mapped trie:
+ * each level of the tree is picked by the next 5 bits of a key's hash.
+ * Null keys and values are not allowed.
+ * <p>
+ * Changes copy the nodes on the path to the changed key, so a change costs O(log n),
+ * unless they were made with the same edit token, as described in {@link PersistentLongArray}.
+ * @author Matthew Tropiano
+ * @param <K> the key type.
+ * @param <V> the value type.
+ */
+public final class PersistentHashMap<K, V>
+{
+	/** Bits of a hash used at each level. */
+	private static final int BITS = 5;
+	/** An empty map. */
+	private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, null, 0);
+
+	/** The edit token that this map can be changed in place with. */
+	private final Object edit;
+	/** The root node, or null if empty. */
+	private Node root;
+	/** Amount of mappings. */
+	private int size;
+
+	private PersistentHashMap(Object edit, Node root, int size)
+	{
+		this.edit = edit;
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * @param <K> the key type.
+	 * @param <V> the value type.
+	 * @return an empty map.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <K, V> PersistentHashMap<K, V> empty()
+	{
+		return (PersistentHashMap<K, V>)EMPTY;
+	}
+
+	/**
+	 * Gets the value for a key.
+	 * @param key the key.
+	 * @return the value, or null if the key is not mapped (or is null).
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(Object key)
+	{
+		if (key == null)
+			return null;
+		int hash = hash(key);
+		Node node = root;
+		for (int shift = 0; node != null; shift += BITS)
+		{
+			if (node.hash != 0)
+				return (V)node.find(key);
+			int bit = 1 << ((hash >>> shift) & 31);
+			if ((node.bitmap & bit) == 0)
+				return null;
+			int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+			Object k = node.array[i];
+			if (k == null)
+				node = (Node)node.array[i + 1];
+			else
+				return key.equals(k) ? (V)node.array[i + 1] : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if a key is mapped.
+	 * @param key the key.
+	 * @return true if so, false if not.
+	 */
+	public boolean containsKey(Object key)
+	{
+		return get(key) != null;
+	}
+
+	/**
+	 * Maps a key to a value.
+	 * @param edit the edit token.
+	 * @param key the key.
+	 * @param value the value.
+	 * @return the changed map (this one, if unchanged or made with the same token).
+	 * @throws NullPointerException if the key or value is null.
+	 */
+	public PersistentHashMap<K, V> put(Object edit, K key, V value)
+	{
+		if (key == null || value == null)
+			throw new NullPointerException("Key and value cannot be null.");
+		if (get(key) == value)
+			return this;
+		PersistentHashMap<K, V> out = editable(edit);
+		boolean[] added = new boolean[1];
+		out.root = put(edit, out.root, 0, hash(key), key, value, added);
+		if (added[0])
+			out.size++;
+		return out;
+	}
+
+	/**
+	 * Removes the mapping for a key.
+	 * @param edit the edit token.
+	 * @param key the key.
+	 * @return the changed map (this one, if unchanged or made with the same token).
+	 */
+	public PersistentHashMap<K, V> remove(Object edit, Object key)
+	{
+		if (!containsKey(key))
+			return this;
+		PersistentHashMap<K, V> out = editable(edit);
+		out.root = remove(edit, out.root, 0, hash(key), key);
+		out.size--;
+		return out;
+	}
+
+	/**
+	 * Calls a function for each mapping, in no particular order.
+	 * @param action the function to call with each key and value.
+	 */
+	public void forEach(BiConsumer<? super K, ? super V> action)
+	{
+		forEach(root, action);
+	}
+
+	/**
+	 * @return the amount of mappings.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if this map is empty, false if not.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @return the amount of nodes in the trie, each with an array of two references per key or child.
+	 */
+	public int getNodeCount()
+	{
+		return count(root);
+	}
+
+	// Gets a map that can be changed with an edit token.
+	private PersistentHashMap<K, V> editable(Object edit)
+	{
+		return edit != null && edit == this.edit ? this : new PersistentHashMap<>(edit, root, size);
+	}
+
+	// Spreads the bits of a hash code. The result is never 0, so that 0 can mark nodes that are not collision nodes.
+	private static int hash(Object key)
+	{
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h != 0 ? h : 1;
+	}
+
+	private static Node put(Object edit, Node node, int shift, int hash, Object key, Object value, boolean[] added)
+	{
+		if (node == null)
+		{
+			added[0] = true;
+			return new Node(edit, 1 << ((hash >>> shift) & 31), 0, new Object[]{key, value});
+		}
+
+		if (node.hash != 0)
+		{
+			if (node.hash == hash)
+			{
+				Node out = node.editable(edit);
+				for (int i = 0; i < out.array.length; i += 2)
+					if (key.equals(out.array[i]))
+					{
+						out.array[i + 1] = value;
+						return out;
+					}
+				out.array = append(out.array, key, value);
+				added[0] = true;
+				return out;
+			}
+			// a different hash at a collision node: move the collision node down a level.
+			Node parent = new Node(edit, 1 << ((node.hash >>> shift) & 31), 0, new Object[]{null, node});
+			return put(edit, parent, shift, hash, key, value, added);
+		}
+
+		int bit = 1 << ((hash >>> shift) & 31);
+		int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+		Node out = node.editable(edit);
+		if ((node.bitmap & bit) == 0)
+		{
+			Object[] array = new Object[out.array.length + 2];
+			System.arraycopy(out.array, 0, array, 0, i);
+			array[i] = key;
+			array[i + 1] = value;
+			System.arraycopy(out.array, i, array, i + 2, out.array.length - i);
+			out.array = array;
+			out.bitmap |= bit;
+			added[0] = true;
+			return out;
+		}
+
+		Object k = out.array[i];
+		if (k == null)
+			out.array[i + 1] = put(edit, (Node)out.array[i + 1], shift + BITS, hash, key, value, added);
+		else if (key.equals(k))
+			out.array[i + 1] = value;
+		else
+		{
+			out.array[i] = null;
+			out.array[i + 1] = pair(edit, shift + BITS, hash(k), k, out.array[i + 1], hash, key, value);
+			added[0] = true;
+		}
+		return out;
+	}
+
+	// Creates a node for two keys that share the hash bits up to a level.
+	private static Node pair(Object edit, int shift, int hash1, Object key1, Object value1, int hash2, Object key2, Object value2)
+	{
+		if (hash1 == hash2)
+			return new Node(edit, 0, hash1, new Object[]{key1, value1, key2, value2});
+		int slot1 = (hash1 >>> shift) & 31;
+		int slot2 = (hash2 >>> shift) & 31;
+		if (slot1 == slot2)
+			return new Node(edit, 1 << slot1, 0, new Object[]{null, pair(edit, shift + BITS, hash1, key1, value1, hash2, key2, value2)});
+		else if (slot1 < slot2)
+			return new Node(edit, (1 << slot1) | (1 << slot2), 0, new Object[]{key1, value1, key2, value2});
+		else
+			return new Node(edit, (1 << slot1) | (1 << slot2), 0, new Object[]{key2, value2, key1, value1});
+	}
+
+	// Removes a key that is in the map, and returns the changed node, or null if it is left empty.
+	private static Node remove(Object edit, Node node, int shift, int hash, Object key)
+	{
+		if (node.hash != 0)
+		{
+			if (node.array.length == 2)
+				return null;
+			Node out = node.editable(edit);
+			for (int i = 0; i < out.array.length; i += 2)
+				if (key.equals(out.array[i]))
+				{
+					out.array = cut(out.array, i);
+					break;
+				}
+			return out;
+		}
+
+		int bit = 1 << ((hash >>> shift) & 31);
+		int i = 2 * Integer.bitCount(node.bitmap & (bit - 1));
+		Node out = node.editable(edit);
+		if (out.array[i] == null)
+		{
+			Node child = remove(edit, (Node)out.array[i + 1], shift + BITS, hash, key);
+			if (child != null)
+			{
+				out.array[i + 1] = child;
+				return out;
+			}
+		}
+		if (out.array.length == 2)
+			return null;
+		out.array = cut(out.array, i);
+		out.bitmap &= ~bit;
+		return out;
+	}
+
+	private static Object[] append(Object[] array, Object key, Object value)
+	{
+		Object[] out = new Object[array.length + 2];
+		System.arraycopy(array, 0, out, 0, array.length);
+		out[array.length] = key;
+		out[array.length + 1] = value;
+		return out;
+	}
+
+	// Removes the pair at an index.
+	private static Object[] cut(Object[] array, int i)
+	{
+		Object[] out = new Object[array.length - 2];
+		System.arraycopy(array, 0, out, 0, i);
+		System.arraycopy(array, i + 2, out, i, array.length - i - 2);
+		return out;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <K, V> void forEach(Node node, BiConsumer<? super K, ? super V> action)
+	{
+		if (node == null)
+			return;
+		for (int i = 0; i < node.array.length; i += 2)
+		{
+			if (node.array[i] == null)
+				forEach((Node)node.array[i + 1], action);
+			else
+				action.accept((K)node.array[i], (V)node.array[i + 1]);
+		}
+	}
+
+	private static int count(Node node)
+	{
+		if (node == null)
+			return 0;
+		int out = 1;
+		for (int i = 0; i < node.array.length; i += 2)
+			if (node.array[i] == null)
+				out += count((Node)node.array[i + 1]);
+		return out;
+	}
+
+	/**
+	 * A trie node: pairs of key and value (or null and child node) for each bit set in the bitmap,
+	 * in bit order. A collision node has a hash instead of a bitmap, and pairs of keys with that hash.
+	 */
+	private static final class Node
+	{
+		private final Object edit;
+		private int bitmap;
+		private final int hash;
+		private Object[] array;
+
+		private Node(Object edit, int bitmap, int hash, Object[] array)
+		{
+			this.edit = edit;
+			this.bitmap = bitmap;
+			this.hash = hash;
+			this.array = array;
+		}
+
+		// Gets a node that can be changed with an edit token.
+		private Node editable(Object edit)
+		{
+			return edit != null && edit == this.edit ? this : new Node(edit, bitmap, hash, array.clone());
+		}
+
+		// Finds a key in a collision node.
+		private Object find(Object key)
+		{
+			for (int i = 0; i < array.length; i += 2)
+				if (key.equals(array[i]))
+					return array[i + 1];
+			return null;
+		}
+	}
+
+}
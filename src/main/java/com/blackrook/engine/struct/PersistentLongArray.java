@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.struct;
+
+/**
+ * An array of primitive longs that can be shared between versions,
+ * stored as a tree of fixed-size blocks. Elements that were never set are 0.
+ * <p>
+ * Arrays are not changed in place: a change returns an array that shares every block
+ * with this one except the ones on the path to the changed element, so a change costs O(log n),
+ * and the array that it was made on still reads as before. Changes are made with an edit token
+ * (any object): blocks that were created with the same token are changed in place instead of copied,
+ * so a run of changes with one token copies each block once. Once an array is shared (for instance,
+ * made visible to other threads), the token that it was made with must not be used again.
+ * A null token always copies.
+ * @author Matthew Tropiano
+ */
+public final class PersistentLongArray
+{
+	/** Bits of an index that select an element in a leaf block. */
+	private static final int LEAF_BITS = 6;
+	/** Bits of an index that select a child in a branch block. */
+	private static final int BRANCH_BITS = 5;
+	/** Elements in a leaf block. */
+	public static final int LEAF_SIZE = 1 << LEAF_BITS;
+	/** Children in a branch block. */
+	public static final int BRANCH_SIZE = 1 << BRANCH_BITS;
+
+	/** An empty array. */
+	public static final PersistentLongArray EMPTY = new PersistentLongArray(null, null, 0);
+
+	/** The edit token that this array can be changed in place with. */
+	private final Object edit;
+	/** The root block (a leaf if there are no branch levels), or null if empty. */
+	private Object root;
+	/** Amount of branch levels above the leaves. */
+	private int levels;
+
+	private PersistentLongArray(Object edit, Object root, int levels)
+	{
+		this.edit = edit;
+		this.root = root;
+		this.levels = levels;
+	}
+
+	/**
+	 * Gets an element.
+	 * @param index the index.
+	 * @return the element, or 0 if it was never set (or the index is negative).
+	 */
+	public long get(int index)
+	{
+		long[] leaf;
+		return (leaf = getLeaf(index)) != null ? leaf[index & (LEAF_SIZE - 1)] : 0L;
+	}
+
+	/**
+	 * Gets the leaf block that holds an element, for scanning a run of elements
+	 * without walking the tree for each one. The block holds the elements from
+	 * <code>index &amp; -LEAF_SIZE</code> to that plus {@link #LEAF_SIZE} (exclusive).
+	 * The returned array must not be changed.
+	 * @param index the element index.
+	 * @return the leaf block's elements, or null if no element in the block was set.
+	 */
+	public long[] getLeaf(int index)
+	{
+		if (index < 0 || ((long)index >>> (LEAF_BITS + levels * BRANCH_BITS)) != 0)
+			return null;
+		Object node = root;
+		for (int shift = LEAF_BITS + (levels - 1) * BRANCH_BITS; node != null && shift >= LEAF_BITS; shift -= BRANCH_BITS)
+			node = ((Branch)node).children[(index >>> shift) & (BRANCH_SIZE - 1)];
+		return node != null ? ((Leaf)node).values : null;
+	}
+
+	/**
+	 * Sets an element.
+	 * @param edit the edit token.
+	 * @param index the index.
+	 * @param value the new value.
+	 * @return the changed array (this one, if it was made with the same token).
+	 * @throws IndexOutOfBoundsException if the index is negative.
+	 */
+	public PersistentLongArray set(Object edit, int index, long value)
+	{
+		if (index < 0)
+			throw new IndexOutOfBoundsException("Index cannot be negative.");
+		if (get(index) == value)
+			return this;
+
+		PersistentLongArray out = editable(edit);
+		while (((long)index >>> (LEAF_BITS + out.levels * BRANCH_BITS)) != 0)
+		{
+			if (out.root != null)
+			{
+				Branch branch = new Branch(edit, new Object[BRANCH_SIZE]);
+				branch.children[0] = out.root;
+				out.root = branch;
+			}
+			out.levels++;
+		}
+		out.root = out.set(out.root, LEAF_BITS + (out.levels - 1) * BRANCH_BITS, index, value);
+		return out;
+	}
+
+	// Sets an element under a block, and returns the block (copied if not editable).
+	private Object set(Object node, int shift, int index, long value)
+	{
+		if (shift < LEAF_BITS)
+		{
+			Leaf leaf;
+			if (node == null)
+				leaf = new Leaf(edit, new long[LEAF_SIZE]);
+			else if (edit == null || (leaf = (Leaf)node).edit != edit)
+				leaf = new Leaf(edit, ((Leaf)node).values.clone());
+			leaf.values[index & (LEAF_SIZE - 1)] = value;
+			return leaf;
+		}
+
+		Branch branch;
+		if (node == null)
+			branch = new Branch(edit, new Object[BRANCH_SIZE]);
+		else if (edit == null || (branch = (Branch)node).edit != edit)
+			branch = new Branch(edit, ((Branch)node).children.clone());
+		int i = (index >>> shift) & (BRANCH_SIZE - 1);
+		branch.children[i] = set(branch.children[i], shift - BRANCH_BITS, index, value);
+		return branch;
+	}
+
+	// Gets an array that can be changed with an edit token.
+	private PersistentLongArray editable(Object edit)
+	{
+		return edit != null && edit == this.edit ? this : new PersistentLongArray(edit, root, levels);
+	}
+
+	/**
+	 * @return the amount of leaf blocks, each of {@link #LEAF_SIZE} elements.
+	 */
+	public int getLeafCount()
+	{
+		return count(root, levels, true);
+	}
+
+	/**
+	 * @return the amount of branch blocks, each of {@link #BRANCH_SIZE} references.
+	 */
+	public int getBranchCount()
+	{
+		return count(root, levels, false);
+	}
+
+	private static int count(Object node, int level, boolean leaves)
+	{
+		if (node == null)
+			return 0;
+		if (level == 0)
+			return leaves ? 1 : 0;
+		int out = leaves ? 0 : 1;
+		for (Object child : ((Branch)node).children)
+			out += count(child, level - 1, leaves);
+		return out;
+	}
+
+	private static final class Leaf
+	{
+		private final Object edit;
+		private final long[] values;
+
+		private Leaf(Object edit, long[] values)
+		{
+			this.edit = edit;
+			this.values = values;
+		}
+	}
+
+	private static final class Branch
+	{
+		private final Object edit;
+		private final Object[] children;
+
+		private Branch(Object edit, Object[] children)
+		{
+			this.edit = edit;
+			this.children = children;
+		}
+	}
+
+}
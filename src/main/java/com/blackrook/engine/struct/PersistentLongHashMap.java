@@ -0,0 +1,343 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.struct;
+
+import java.util.function.Consumer;
+
+/**
+ * A hash map of primitive long keys to values that can be shared between versions,
+ * stored as a hash array mapped trie, like {@link PersistentHashMap}, so that keys are never boxed.
+ * Keys are hashed by a mix of all 64 bits that never maps two keys to the same hash,
+ * so there are no collisions. Null values are not allowed.
+ * @author Matthew Tropiano
+ * @param <V> the value type.
+ */
+public final class PersistentLongHashMap<V>
+{
+	/** Bits of a hash used at each level. */
+	private static final int BITS = 5;
+	/** An empty map. */
+	private static final PersistentLongHashMap<?> EMPTY = new PersistentLongHashMap<>(null, null, 0);
+
+	/** The edit token that this map can be changed in place with. */
+	private final Object edit;
+	/** The root node, or null if empty. */
+	private Node root;
+	/** Amount of mappings. */
+	private int size;
+
+	private PersistentLongHashMap(Object edit, Node root, int size)
+	{
+		this.edit = edit;
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * @param <V> the value type.
+	 * @return an empty map.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> PersistentLongHashMap<V> empty()
+	{
+		return (PersistentLongHashMap<V>)EMPTY;
+	}
+
+	/**
+	 * Gets the value for a key.
+	 * @param key the key.
+	 * @return the value, or null if the key is not mapped.
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key)
+	{
+		long hash = hash(key);
+		Node node = root;
+		for (int shift = 0; node != null; shift += BITS)
+		{
+			int bit = 1 << (int)((hash >>> shift) & 31);
+			if ((node.bitmap & bit) == 0)
+				return null;
+			int i = Integer.bitCount(node.bitmap & (bit - 1));
+			Object value = node.values[i];
+			if (value instanceof Node)
+				node = (Node)value;
+			else
+				return node.keys[i] == key ? (V)value : null;
+		}
+		return null;
+	}
+
+	/**
+	 * Checks if a key is mapped.
+	 * @param key the key.
+	 * @return true if so, false if not.
+	 */
+	public boolean containsKey(long key)
+	{
+		return get(key) != null;
+	}
+
+	/**
+	 * Maps a key to a value.
+	 * @param edit the edit token.
+	 * @param key the key.
+	 * @param value the value.
+	 * @return the changed map (this one, if unchanged or made with the same token).
+	 * @throws NullPointerException if the value is null.
+	 */
+	public PersistentLongHashMap<V> put(Object edit, long key, V value)
+	{
+		if (value == null)
+			throw new NullPointerException("Value cannot be null.");
+		V previous = get(key);
+		if (previous == value)
+			return this;
+		PersistentLongHashMap<V> out = editable(edit);
+		out.root = put(edit, out.root, 0, hash(key), key, value);
+		if (previous == null)
+			out.size++;
+		return out;
+	}
+
+	/**
+	 * Removes the mapping for a key.
+	 * @param edit the edit token.
+	 * @param key the key.
+	 * @return the changed map (this one, if unchanged or made with the same token).
+	 */
+	public PersistentLongHashMap<V> remove(Object edit, long key)
+	{
+		if (!containsKey(key))
+			return this;
+		PersistentLongHashMap<V> out = editable(edit);
+		out.root = remove(edit, out.root, 0, hash(key));
+		out.size--;
+		return out;
+	}
+
+	/**
+	 * Calls a function for each value, in no particular order.
+	 * @param action the function to call with each value.
+	 */
+	public void forEachValue(Consumer<? super V> action)
+	{
+		forEachValue(root, action);
+	}
+
+	/**
+	 * Calls a function for each mapping, in no particular order.
+	 * @param action the function to call with each key and value.
+	 */
+	public void forEach(EntryConsumer<? super V> action)
+	{
+		forEach(root, action);
+	}
+
+	/**
+	 * @return the amount of mappings.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if this map is empty, false if not.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @return the amount of nodes in the trie, each with a key and a reference per key or child.
+	 */
+	public int getNodeCount()
+	{
+		return count(root);
+	}
+
+	// Gets a map that can be changed with an edit token.
+	private PersistentLongHashMap<V> editable(Object edit)
+	{
+		return edit != null && edit == this.edit ? this : new PersistentLongHashMap<>(edit, root, size);
+	}
+
+	// Mixes all of the bits of a key. Each step can be undone, so no two keys have the same hash.
+	private static long hash(long key)
+	{
+		key ^= key >>> 33;
+		key *= 0xFF51AFD7ED558CCDL;
+		key ^= key >>> 33;
+		key *= 0xC4CEB9FE1A85EC53L;
+		key ^= key >>> 33;
+		return key;
+	}
+
+	private static Node put(Object edit, Node node, int shift, long hash, long key, Object value)
+	{
+		int slot = (int)((hash >>> shift) & 31);
+		if (node == null)
+			return new Node(edit, 1 << slot, new long[]{key}, new Object[]{value});
+
+		int bit = 1 << slot;
+		int i = Integer.bitCount(node.bitmap & (bit - 1));
+		Node out = node.editable(edit);
+		if ((node.bitmap & bit) == 0)
+		{
+			int n = out.values.length;
+			long[] keys = new long[n + 1];
+			Object[] values = new Object[n + 1];
+			System.arraycopy(out.keys, 0, keys, 0, i);
+			System.arraycopy(out.values, 0, values, 0, i);
+			keys[i] = key;
+			values[i] = value;
+			System.arraycopy(out.keys, i, keys, i + 1, n - i);
+			System.arraycopy(out.values, i, values, i + 1, n - i);
+			out.keys = keys;
+			out.values = values;
+			out.bitmap |= bit;
+			return out;
+		}
+
+		Object existing = out.values[i];
+		if (existing instanceof Node)
+			out.values[i] = put(edit, (Node)existing, shift + BITS, hash, key, value);
+		else if (out.keys[i] == key)
+			out.values[i] = value;
+		else
+			out.values[i] = pair(edit, shift + BITS, hash(out.keys[i]), out.keys[i], existing, hash, key, value);
+		return out;
+	}
+
+	// Creates a node for two keys that share the hash bits up to a level.
+	private static Node pair(Object edit, int shift, long hash1, long key1, Object value1, long hash2, long key2, Object value2)
+	{
+		int slot1 = (int)((hash1 >>> shift) & 31);
+		int slot2 = (int)((hash2 >>> shift) & 31);
+		if (slot1 == slot2)
+			return new Node(edit, 1 << slot1, new long[1], new Object[]{pair(edit, shift + BITS, hash1, key1, value1, hash2, key2, value2)});
+		else if (slot1 < slot2)
+			return new Node(edit, (1 << slot1) | (1 << slot2), new long[]{key1, key2}, new Object[]{value1, value2});
+		else
+			return new Node(edit, (1 << slot1) | (1 << slot2), new long[]{key2, key1}, new Object[]{value2, value1});
+	}
+
+	// Removes a key that is in the map, and returns the changed node, or null if it is left empty.
+	private static Node remove(Object edit, Node node, int shift, long hash)
+	{
+		int bit = 1 << (int)((hash >>> shift) & 31);
+		int i = Integer.bitCount(node.bitmap & (bit - 1));
+		if (node.values[i] instanceof Node)
+		{
+			Node child = remove(edit, (Node)node.values[i], shift + BITS, hash);
+			if (child != null)
+			{
+				Node out = node.editable(edit);
+				out.values[i] = child;
+				return out;
+			}
+		}
+		int n = node.values.length;
+		if (n == 1)
+			return null;
+		Node out = node.editable(edit);
+		long[] keys = new long[n - 1];
+		Object[] values = new Object[n - 1];
+		System.arraycopy(out.keys, 0, keys, 0, i);
+		System.arraycopy(out.values, 0, values, 0, i);
+		System.arraycopy(out.keys, i + 1, keys, i, n - i - 1);
+		System.arraycopy(out.values, i + 1, values, i, n - i - 1);
+		out.keys = keys;
+		out.values = values;
+		out.bitmap &= ~bit;
+		return out;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> void forEachValue(Node node, Consumer<? super V> action)
+	{
+		if (node == null)
+			return;
+		for (Object value : node.values)
+		{
+			if (value instanceof Node)
+				forEachValue((Node)value, action);
+			else
+				action.accept((V)value);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <V> void forEach(Node node, EntryConsumer<? super V> action)
+	{
+		if (node == null)
+			return;
+		for (int i = 0; i < node.values.length; i++)
+		{
+			Object value = node.values[i];
+			if (value instanceof Node)
+				forEach((Node)value, action);
+			else
+				action.accept(node.keys[i], (V)value);
+		}
+	}
+
+	private static int count(Node node)
+	{
+		if (node == null)
+			return 0;
+		int out = 1;
+		for (Object value : node.values)
+			if (value instanceof Node)
+				out += count((Node)value);
+		return out;
+	}
+
+	/**
+	 * A trie node: a key and value (or an unused key and a child node) for each bit set in the bitmap, in bit order.
+	 */
+	private static final class Node
+	{
+		private final Object edit;
+		private int bitmap;
+		private long[] keys;
+		private Object[] values;
+
+		private Node(Object edit, int bitmap, long[] keys, Object[] values)
+		{
+			this.edit = edit;
+			this.bitmap = bitmap;
+			this.keys = keys;
+			this.values = values;
+		}
+
+		// Gets a node that can be changed with an edit token.
+		private Node editable(Object edit)
+		{
+			return edit != null && edit == this.edit ? this : new Node(edit, bitmap, keys.clone(), values.clone());
+		}
+	}
+
+	/**
+	 * A function called with each mapping in a map.
+	 * @param <V> the value type.
+	 */
+	@FunctionalInterface
+	public interface EntryConsumer<V>
+	{
+		/**
+		 * Called with a mapping.
+		 * @param key the key.
+		 * @param value the value.
+		 */
+		void accept(long key, V value);
+	}
+
+}
@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.struct;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative integers, such as ordinals, that can be shared between versions.
+ * Like {@link OrdinalSet}, it is a small sorted array while it is small, and a bitset once
+ * it grows past a threshold. The bitset is a {@link PersistentLongArray}, so a change to a large set
+ * costs O(log n), and changes are made with edit tokens in the same way.
+ * @author Matthew Tropiano
+ */
+public final class PersistentOrdinalSet
+{
+	/** Size past which the set switches to a bitset. */
+	private static final int ARRAY_LIMIT = 32;
+
+	/** An empty set. */
+	public static final PersistentOrdinalSet EMPTY = new PersistentOrdinalSet(null, new int[0], null, 0, 0);
+
+	/** The edit token that this set can be changed in place with. */
+	private final Object edit;
+	/** Sorted values, if not a bitset. */
+	private int[] array;
+	/** Bitset, or null if still an array. */
+	private PersistentLongArray bits;
+	/** Amount of values. */
+	private int size;
+	/** One past the highest bitset word that was set. */
+	private int wordCount;
+
+	private PersistentOrdinalSet(Object edit, int[] array, PersistentLongArray bits, int size, int wordCount)
+	{
+		this.edit = edit;
+		this.array = array;
+		this.bits = bits;
+		this.size = size;
+		this.wordCount = wordCount;
+	}
+
+	/**
+	 * Adds a value to this set.
+	 * @param edit the edit token.
+	 * @param value the value to add.
+	 * @return the changed set (this one, if unchanged or made with the same token).
+	 * @throws IllegalArgumentException if the value is negative.
+	 */
+	public PersistentOrdinalSet add(Object edit, int value)
+	{
+		if (value < 0)
+			throw new IllegalArgumentException("Value cannot be negative.");
+		if (contains(value))
+			return this;
+
+		PersistentOrdinalSet out = editable(edit);
+		if (out.bits == null && out.size == ARRAY_LIMIT)
+		{
+			PersistentLongArray bits = PersistentLongArray.EMPTY;
+			for (int i = 0; i < out.size; i++)
+				bits = setBit(bits, edit, out.array[i], true);
+			out.bits = bits;
+			out.wordCount = (out.array[out.size - 1] >> 6) + 1;
+			out.array = null;
+		}
+
+		if (out.bits != null)
+		{
+			out.bits = setBit(out.bits, edit, value, true);
+			out.wordCount = Math.max(out.wordCount, (value >> 6) + 1);
+		}
+		else
+		{
+			int index = -(Arrays.binarySearch(out.array, 0, out.size, value) + 1);
+			if (out.size == out.array.length)
+				out.array = Arrays.copyOf(out.array, Math.max(out.array.length * 2, 4));
+			System.arraycopy(out.array, index, out.array, index + 1, out.size - index);
+			out.array[index] = value;
+		}
+		out.size++;
+		return out;
+	}
+
+	/**
+	 * Removes a value from this set.
+	 * @param edit the edit token.
+	 * @param value the value to remove.
+	 * @return the changed set (this one, if unchanged or made with the same token).
+	 */
+	public PersistentOrdinalSet remove(Object edit, int value)
+	{
+		if (!contains(value))
+			return this;
+
+		PersistentOrdinalSet out = editable(edit);
+		if (out.bits != null)
+		{
+			out.bits = setBit(out.bits, edit, value, false);
+		}
+		else
+		{
+			int index = Arrays.binarySearch(out.array, 0, out.size, value);
+			System.arraycopy(out.array, index + 1, out.array, index, out.size - index - 1);
+		}
+		out.size--;
+		return out;
+	}
+
+	/**
+	 * Checks if a value is in this set.
+	 * @param value the value.
+	 * @return true if so, false if not.
+	 */
+	public boolean contains(int value)
+	{
+		if (value < 0)
+			return false;
+		if (bits != null)
+			return (bits.get(value >> 6) & (1L << value)) != 0;
+		return Arrays.binarySearch(array, 0, size, value) >= 0;
+	}
+
+	/**
+	 * Gets the smallest value in this set that is greater than or equal to a value.
+	 * Iterate with <code>for (int i = set.next(0); i &gt;= 0; i = set.next(i + 1))</code>.
+	 * @param from the value to start from.
+	 * @return the next value in the set, or -1 if none.
+	 */
+	public int next(int from)
+	{
+		if (from < 0)
+			from = 0;
+
+		if (bits != null)
+		{
+			int w = from >> 6;
+			if (w >= wordCount)
+				return -1;
+			long word = bits.get(w) & (-1L << from);
+			while (word == 0L)
+			{
+				if (++w >= wordCount)
+					return -1;
+				long[] leaf;
+				if ((leaf = bits.getLeaf(w)) == null)
+					w |= PersistentLongArray.LEAF_SIZE - 1;
+				else
+					word = leaf[w & (PersistentLongArray.LEAF_SIZE - 1)];
+			}
+			return (w << 6) + Long.numberOfTrailingZeros(word);
+		}
+
+		int index = Arrays.binarySearch(array, 0, size, from);
+		if (index < 0)
+			index = -(index + 1);
+		return index < size ? array[index] : -1;
+	}
+
+	/**
+	 * @return the amount of 64-bit words that can have values in them (see {@link #word(int)}).
+	 */
+	public int wordCount()
+	{
+		if (bits != null)
+			return wordCount;
+		return size > 0 ? (array[size - 1] >> 6) + 1 : 0;
+	}
+
+	/**
+	 * Gets the values in a range of 64 as bits.
+	 * @param w the word index.
+	 * @return the bits of the values from <code>w * 64</code> to <code>w * 64 + 63</code>.
+	 */
+	public long word(int w)
+	{
+		if (bits != null)
+			return w < wordCount ? bits.get(w) : 0L;
+
+		long out = 0L;
+		int index = Arrays.binarySearch(array, 0, size, w << 6);
+		for (int i = index < 0 ? -(index + 1) : index; i < size && (array[i] >> 6) == w; i++)
+			out |= 1L << array[i];
+		return out;
+	}
+
+	/**
+	 * @return the amount of values in this set.
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return true if this set is empty, false if not.
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * @return the length of the sorted value array, or 0 if this set is a bitset.
+	 */
+	public int getArrayLength()
+	{
+		return array != null ? array.length : 0;
+	}
+
+	/**
+	 * @return the bitset, or null if this set is not a bitset.
+	 */
+	public PersistentLongArray getBits()
+	{
+		return bits;
+	}
+
+	// Gets a set that can be changed with an edit token.
+	private PersistentOrdinalSet editable(Object edit)
+	{
+		if (edit != null && edit == this.edit)
+			return this;
+		return new PersistentOrdinalSet(edit, array != null ? Arrays.copyOf(array, Math.max(size, 4)) : null, bits, size, wordCount);
+	}
+
+	private static PersistentLongArray setBit(PersistentLongArray bits, Object edit, int value, boolean set)
+	{
+		long word = bits.get(value >> 6);
+		return bits.set(edit, value >> 6, set ? word | (1L << value) : word & ~(1L << value));
+	}
+
+}
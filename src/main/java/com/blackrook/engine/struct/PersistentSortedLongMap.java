@@ -0,0 +1,659 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the
+ * terms of the GNU Lesser Public License v2.1 which accompanies this
+ * distribution, and is available at
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine.struct;
+
+import java.util.Arrays;
+
+/**
+ * A sorted map of primitive long keys to values that allows duplicate keys and can be shared between versions,
+ * stored as a B+tree that counts the entries under each branch, so that entries can be found by position.
+ * <p>
+ * Each entry also has an int order that sorts entries with equal keys (such as an ordinal),
+ * and a key and order pair is unique. Keys and orders are compared as signed numbers.
+ * <p>
+ * Lookups, additions and removals cost O(log n). Changes copy the blocks on the path to
+ * the changed entry, unless they were made with the same edit token, as described in {@link PersistentLongArray}.
+ * @author Matthew Tropiano
+ * @param <V> the value type.
+ */
+public final class PersistentSortedLongMap<V>
+{
+	/** Entries in a leaf block. */
+	public static final int LEAF_SIZE = 64;
+	/** Children in a branch block. */
+	public static final int BRANCH_SIZE = 32;
+	/** An empty map. */
+	private static final PersistentSortedLongMap<?> EMPTY = new PersistentSortedLongMap<>(null, null);
+
+	/** The edit token that this map can be changed in place with. */
+	private final Object edit;
+	/** The root block, or null if empty. */
+	private Node root;
+
+	private PersistentSortedLongMap(Object edit, Node root)
+	{
+		this.edit = edit;
+		this.root = root;
+	}
+
+	/**
+	 * @param <V> the value type.
+	 * @return an empty map.
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V> PersistentSortedLongMap<V> empty()
+	{
+		return (PersistentSortedLongMap<V>)EMPTY;
+	}
+
+	/**
+	 * Creates a map from entries that are already sorted.
+	 * @param <V> the value type.
+	 * @param keys the keys.
+	 * @param orders the orders, aligned with the keys.
+	 * @param values the values, aligned with the keys.
+	 * @param size the amount of entries.
+	 * @return the new map.
+	 * @throws IllegalArgumentException if the entries are not in ascending key and order, or a pair is repeated.
+	 */
+	public static <V> PersistentSortedLongMap<V> of(long[] keys, int[] orders, V[] values, int size)
+	{
+		for (int i = 1; i < size; i++)
+			if (compare(keys[i - 1], orders[i - 1], keys[i], orders[i]) >= 0)
+				throw new IllegalArgumentException("Entries are not in order.");
+		if (size == 0)
+			return empty();
+
+		Node[] level = new Node[(size + LEAF_SIZE - 1) / LEAF_SIZE];
+		for (int n = 0; n < level.length; n++)
+		{
+			Leaf leaf = new Leaf(null);
+			leaf.count = Math.min(LEAF_SIZE, size - n * LEAF_SIZE);
+			System.arraycopy(keys, n * LEAF_SIZE, leaf.keys, 0, leaf.count);
+			System.arraycopy(orders, n * LEAF_SIZE, leaf.orders, 0, leaf.count);
+			System.arraycopy(values, n * LEAF_SIZE, leaf.values, 0, leaf.count);
+			level[n] = leaf;
+		}
+		while (level.length > 1)
+		{
+			Node[] parents = new Node[(level.length + BRANCH_SIZE - 1) / BRANCH_SIZE];
+			for (int n = 0; n < parents.length; n++)
+			{
+				Branch branch = new Branch(null);
+				for (int i = n * BRANCH_SIZE; i < level.length && i < (n + 1) * BRANCH_SIZE; i++)
+					branch.insertChild(branch.count, level[i]);
+				parents[n] = branch;
+			}
+			level = parents;
+		}
+		return new PersistentSortedLongMap<>(null, level[0]);
+	}
+
+	/**
+	 * @return the amount of entries.
+	 */
+	public int size()
+	{
+		return root != null ? root.size() : 0;
+	}
+
+	/**
+	 * @return true if this map is empty, false if not.
+	 */
+	public boolean isEmpty()
+	{
+		return root == null;
+	}
+
+	/**
+	 * @param position the position.
+	 * @return the key at the position.
+	 * @throws IndexOutOfBoundsException if the position is out of bounds.
+	 */
+	public long getKey(int position)
+	{
+		int[] offset = {position};
+		return leafAt(offset).keys[offset[0]];
+	}
+
+	/**
+	 * @param position the position.
+	 * @return the order at the position.
+	 * @throws IndexOutOfBoundsException if the position is out of bounds.
+	 */
+	public int getOrder(int position)
+	{
+		int[] offset = {position};
+		return leafAt(offset).orders[offset[0]];
+	}
+
+	/**
+	 * @param position the position.
+	 * @return the value at the position.
+	 * @throws IndexOutOfBoundsException if the position is out of bounds.
+	 */
+	@SuppressWarnings("unchecked")
+	public V getValue(int position)
+	{
+		int[] offset = {position};
+		return (V)leafAt(offset).values[offset[0]];
+	}
+
+	/**
+	 * @param key the key.
+	 * @return the first position with a key greater than or equal to the provided one.
+	 */
+	public int lowerBound(long key)
+	{
+		return rank(key, Integer.MIN_VALUE, false);
+	}
+
+	/**
+	 * @param key the key.
+	 * @return the first position with a key greater than the provided one.
+	 */
+	public int upperBound(long key)
+	{
+		return rank(key, Integer.MAX_VALUE, true);
+	}
+
+	/**
+	 * @param key the key.
+	 * @param order the order.
+	 * @return the position of the entry with the key and order, or -1 if there is none.
+	 */
+	public int indexOf(long key, int order)
+	{
+		int position = rank(key, order, false);
+		if (position < size() && getKey(position) == key && getOrder(position) == order)
+			return position;
+		return -1;
+	}
+
+	/**
+	 * Adds an entry, or replaces the value of the entry with the same key and order.
+	 * @param edit the edit token.
+	 * @param key the key.
+	 * @param order the order.
+	 * @param value the value.
+	 * @return the changed map (this one, if made with the same token).
+	 */
+	public PersistentSortedLongMap<V> add(Object edit, long key, int order, V value)
+	{
+		PersistentSortedLongMap<V> out = editable(edit);
+		if (out.root == null)
+		{
+			Leaf leaf = new Leaf(edit);
+			leaf.insert(0, key, order, value);
+			out.root = leaf;
+			return out;
+		}
+
+		out.root = out.root.editable(edit);
+		Node split = insert(edit, out.root, key, order, value);
+		if (split != null)
+		{
+			Branch branch = new Branch(edit);
+			branch.insertChild(0, out.root);
+			branch.insertChild(1, split);
+			out.root = branch;
+		}
+		return out;
+	}
+
+	/**
+	 * Removes an entry.
+	 * @param edit the edit token.
+	 * @param key the key.
+	 * @param order the order.
+	 * @return the changed map (this one, if unchanged or made with the same token).
+	 */
+	public PersistentSortedLongMap<V> remove(Object edit, long key, int order)
+	{
+		if (indexOf(key, order) < 0)
+			return this;
+
+		PersistentSortedLongMap<V> out = editable(edit);
+		out.root = out.root.editable(edit);
+		delete(edit, out.root, key, order);
+		while (out.root instanceof Branch && out.root.count == 1)
+			out.root = ((Branch)out.root).children[0];
+		if (out.root.count == 0)
+			out.root = null;
+		return out;
+	}
+
+	/**
+	 * @return the amount of leaf blocks, each of {@link #LEAF_SIZE} keys, orders and value references.
+	 */
+	public int getLeafCount()
+	{
+		return count(root, true);
+	}
+
+	/**
+	 * @return the amount of branch blocks, each of {@link #BRANCH_SIZE} child references, sizes, keys and orders.
+	 */
+	public int getBranchCount()
+	{
+		return count(root, false);
+	}
+
+	// Gets a map that can be changed with an edit token.
+	private PersistentSortedLongMap<V> editable(Object edit)
+	{
+		return edit != null && edit == this.edit ? this : new PersistentSortedLongMap<>(edit, root);
+	}
+
+	// Gets the leaf that holds a position, and replaces the position with the position in the leaf.
+	private Leaf leafAt(int[] offset)
+	{
+		int position = offset[0];
+		if (position < 0 || position >= size())
+			throw new IndexOutOfBoundsException("Position " + position + " out of bounds.");
+		Node node = root;
+		while (node instanceof Branch)
+		{
+			Branch branch = (Branch)node;
+			int i = 0;
+			while (position >= branch.sizes[i])
+				position -= branch.sizes[i++];
+			node = branch.children[i];
+		}
+		offset[0] = position;
+		return (Leaf)node;
+	}
+
+	// Counts the entries that are before a key and order (or at them, if inclusive).
+	private int rank(long key, int order, boolean inclusive)
+	{
+		int out = 0;
+		Node node = root;
+		while (node instanceof Branch)
+		{
+			Branch branch = (Branch)node;
+			int i = 0;
+			while (i < branch.count && before(branch.lastKeys[i], branch.lastOrders[i], key, order, inclusive))
+				out += branch.sizes[i++];
+			if (i == branch.count)
+				return out;
+			node = branch.children[i];
+		}
+		return node != null ? out + ((Leaf)node).rank(key, order, inclusive) : 0;
+	}
+
+	private static int compare(long key1, int order1, long key2, int order2)
+	{
+		int c = Long.compare(key1, key2);
+		return c != 0 ? c : Integer.compare(order1, order2);
+	}
+
+	private static boolean before(long key1, int order1, long key2, int order2, boolean inclusive)
+	{
+		int c = compare(key1, order1, key2, order2);
+		return c < 0 || (inclusive && c == 0);
+	}
+
+	// Inserts an entry under an editable block, and returns a new block to put after it if it split, else null.
+	private static Node insert(Object edit, Node node, long key, int order, Object value)
+	{
+		if (node instanceof Leaf)
+		{
+			Leaf leaf = (Leaf)node;
+			int p = leaf.rank(key, order, false);
+			if (p < leaf.count && leaf.keys[p] == key && leaf.orders[p] == order)
+			{
+				leaf.values[p] = value;
+				return null;
+			}
+			Leaf target = leaf;
+			Leaf right = null;
+			if (leaf.count == LEAF_SIZE)
+			{
+				right = leaf.split(edit);
+				if (p > leaf.count)
+				{
+					target = right;
+					p -= leaf.count;
+				}
+			}
+			target.insert(p, key, order, value);
+			return right;
+		}
+
+		Branch branch = (Branch)node;
+		int i = branch.childFor(key, order);
+		Node child = branch.children[i].editable(edit);
+		branch.children[i] = child;
+		Node split = insert(edit, child, key, order, value);
+		branch.update(i);
+		if (split == null)
+			return null;
+
+		Branch target = branch;
+		Branch right = null;
+		int p = i + 1;
+		if (branch.count == BRANCH_SIZE)
+		{
+			right = branch.split(edit);
+			if (p > branch.count)
+			{
+				target = right;
+				p -= branch.count;
+			}
+		}
+		target.insertChild(p, split);
+		return right;
+	}
+
+	// Removes an entry that is under an editable block.
+	private static void delete(Object edit, Node node, long key, int order)
+	{
+		if (node instanceof Leaf)
+		{
+			Leaf leaf = (Leaf)node;
+			leaf.delete(leaf.rank(key, order, false));
+			return;
+		}
+
+		Branch branch = (Branch)node;
+		int i = branch.childFor(key, order);
+		Node child = branch.children[i].editable(edit);
+		branch.children[i] = child;
+		delete(edit, child, key, order);
+		if (child.count == 0)
+		{
+			branch.deleteChild(i);
+			return;
+		}
+		branch.update(i);
+
+		int capacity = child instanceof Leaf ? LEAF_SIZE : BRANCH_SIZE;
+		if (child.count >= capacity / 4)
+			return;
+		if (i > 0 && branch.children[i - 1].count + child.count <= capacity)
+			i--;
+		else if (i + 1 >= branch.count || branch.children[i + 1].count + child.count > capacity)
+			return;
+		Node left = branch.children[i].editable(edit);
+		branch.children[i] = left;
+		left.append(branch.children[i + 1]);
+		branch.deleteChild(i + 1);
+		branch.update(i);
+	}
+
+	private static int count(Node node, boolean leaves)
+	{
+		if (node == null)
+			return 0;
+		if (node instanceof Leaf)
+			return leaves ? 1 : 0;
+		Branch branch = (Branch)node;
+		int out = leaves ? 0 : 1;
+		for (int i = 0; i < branch.count; i++)
+			out += count(branch.children[i], leaves);
+		return out;
+	}
+
+	/**
+	 * A block of entries or children.
+	 */
+	private static abstract class Node
+	{
+		/** The edit token that this block can be changed in place with. */
+		protected final Object edit;
+		/** Amount of entries or children. */
+		protected int count;
+
+		private Node(Object edit)
+		{
+			this.edit = edit;
+		}
+
+		/** @return the amount of entries under this block. */
+		abstract int size();
+		/** @return the key of the last entry. */
+		abstract long lastKey();
+		/** @return the order of the last entry. */
+		abstract int lastOrder();
+		/** @return this block, or a copy of it made with the token if it cannot be changed with it. */
+		abstract Node editable(Object edit);
+		/** Moves the second half of this block into a new block. */
+		abstract Node split(Object edit);
+		/** Appends the contents of a block of the same kind. */
+		abstract void append(Node node);
+	}
+
+	private static final class Leaf extends Node
+	{
+		private final long[] keys;
+		private final int[] orders;
+		private final Object[] values;
+
+		private Leaf(Object edit)
+		{
+			this(edit, new long[LEAF_SIZE], new int[LEAF_SIZE], new Object[LEAF_SIZE], 0);
+		}
+
+		private Leaf(Object edit, long[] keys, int[] orders, Object[] values, int count)
+		{
+			super(edit);
+			this.keys = keys;
+			this.orders = orders;
+			this.values = values;
+			this.count = count;
+		}
+
+		@Override
+		int size()
+		{
+			return count;
+		}
+
+		@Override
+		long lastKey()
+		{
+			return keys[count - 1];
+		}
+
+		@Override
+		int lastOrder()
+		{
+			return orders[count - 1];
+		}
+
+		@Override
+		Leaf editable(Object edit)
+		{
+			if (edit != null && edit == this.edit)
+				return this;
+			return new Leaf(edit, keys.clone(), orders.clone(), values.clone(), count);
+		}
+
+		@Override
+		Leaf split(Object edit)
+		{
+			Leaf out = new Leaf(edit);
+			int half = count / 2;
+			out.count = count - half;
+			System.arraycopy(keys, half, out.keys, 0, out.count);
+			System.arraycopy(orders, half, out.orders, 0, out.count);
+			System.arraycopy(values, half, out.values, 0, out.count);
+			Arrays.fill(values, half, count, null);
+			count = half;
+			return out;
+		}
+
+		@Override
+		void append(Node node)
+		{
+			Leaf leaf = (Leaf)node;
+			System.arraycopy(leaf.keys, 0, keys, count, leaf.count);
+			System.arraycopy(leaf.orders, 0, orders, count, leaf.count);
+			System.arraycopy(leaf.values, 0, values, count, leaf.count);
+			count += leaf.count;
+		}
+
+		// Counts the entries that are before a key and order (or at them, if inclusive).
+		private int rank(long key, int order, boolean inclusive)
+		{
+			int lo = 0;
+			int hi = count;
+			while (lo < hi)
+			{
+				int mid = (lo + hi) >>> 1;
+				if (before(keys[mid], orders[mid], key, order, inclusive))
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+			return lo;
+		}
+
+		private void insert(int p, long key, int order, Object value)
+		{
+			System.arraycopy(keys, p, keys, p + 1, count - p);
+			System.arraycopy(orders, p, orders, p + 1, count - p);
+			System.arraycopy(values, p, values, p + 1, count - p);
+			keys[p] = key;
+			orders[p] = order;
+			values[p] = value;
+			count++;
+		}
+
+		private void delete(int p)
+		{
+			System.arraycopy(keys, p + 1, keys, p, count - p - 1);
+			System.arraycopy(orders, p + 1, orders, p, count - p - 1);
+			System.arraycopy(values, p + 1, values, p, count - p - 1);
+			values[--count] = null;
+		}
+	}
+
+	private static final class Branch extends Node
+	{
+		private final Node[] children;
+		/** Amount of entries under each child. */
+		private final int[] sizes;
+		/** Key of the last entry under each child. */
+		private final long[] lastKeys;
+		/** Order of the last entry under each child. */
+		private final int[] lastOrders;
+		/** Amount of entries under this block. */
+		private int total;
+
+		private Branch(Object edit)
+		{
+			this(edit, new Node[BRANCH_SIZE], new int[BRANCH_SIZE], new long[BRANCH_SIZE], new int[BRANCH_SIZE], 0, 0);
+		}
+
+		private Branch(Object edit, Node[] children, int[] sizes, long[] lastKeys, int[] lastOrders, int count, int total)
+		{
+			super(edit);
+			this.children = children;
+			this.sizes = sizes;
+			this.lastKeys = lastKeys;
+			this.lastOrders = lastOrders;
+			this.count = count;
+			this.total = total;
+		}
+
+		@Override
+		int size()
+		{
+			return total;
+		}
+
+		@Override
+		long lastKey()
+		{
+			return lastKeys[count - 1];
+		}
+
+		@Override
+		int lastOrder()
+		{
+			return lastOrders[count - 1];
+		}
+
+		@Override
+		Branch editable(Object edit)
+		{
+			if (edit != null && edit == this.edit)
+				return this;
+			return new Branch(edit, children.clone(), sizes.clone(), lastKeys.clone(), lastOrders.clone(), count, total);
+		}
+
+		@Override
+		Branch split(Object edit)
+		{
+			Branch out = new Branch(edit);
+			int half = count / 2;
+			for (int i = half; i < count; i++)
+			{
+				out.insertChild(out.count, children[i]);
+				total -= sizes[i];
+				children[i] = null;
+			}
+			count = half;
+			return out;
+		}
+
+		@Override
+		void append(Node node)
+		{
+			Branch branch = (Branch)node;
+			for (int i = 0; i < branch.count; i++)
+				insertChild(count, branch.children[i]);
+		}
+
+		// Gets the child to find a key and order under: the first one that does not end before them.
+		private int childFor(long key, int order)
+		{
+			int i = 0;
+			while (i < count - 1 && before(lastKeys[i], lastOrders[i], key, order, false))
+				i++;
+			return i;
+		}
+
+		// Refreshes the size and last entry of a child after it changed.
+		private void update(int i)
+		{
+			Node child = children[i];
+			total += child.size() - sizes[i];
+			sizes[i] = child.size();
+			lastKeys[i] = child.lastKey();
+			lastOrders[i] = child.lastOrder();
+		}
+
+		private void insertChild(int p, Node child)
+		{
+			System.arraycopy(children, p, children, p + 1, count - p);
+			System.arraycopy(sizes, p, sizes, p + 1, count - p);
+			System.arraycopy(lastKeys, p, lastKeys, p + 1, count - p);
+			System.arraycopy(lastOrders, p, lastOrders, p + 1, count - p);
+			children[p] = child;
+			sizes[p] = child.size();
+			lastKeys[p] = child.lastKey();
+			lastOrders[p] = child.lastOrder();
+			total += sizes[p];
+			count++;
+		}
+
+		private void deleteChild(int p)
+		{
+			total -= sizes[p];
+			System.arraycopy(children, p + 1, children, p, count - p - 1);
+			System.arraycopy(sizes, p + 1, sizes, p, count - p - 1);
+			System.arraycopy(lastKeys, p + 1, lastKeys, p, count - p - 1);
+			System.arraycopy(lastOrders, p + 1, lastOrders, p, count - p - 1);
+			children[--count] = null;
+		}
+	}
+
+}
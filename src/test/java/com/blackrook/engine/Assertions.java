@@ -0,0 +1,44 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import java.util.Objects;
+
+/**
+ * Checks for the engine tests, which are run from their main methods.
+ * A failed check throws an {@link AssertionError}, so the test stops with a stack trace.
+ */
+final class Assertions
+{
+	private Assertions() {}
+	
+	static void assertTrue(boolean condition, String message)
+	{
+		if (!condition)
+			throw new AssertionError(message);
+	}
+
+	static void assertEquals(Object expected, Object actual, String message)
+	{
+		if (!Objects.equals(expected, actual))
+			throw new AssertionError(message + ": expected <" + expected + "> but was <" + actual + ">");
+	}
+
+	static <T extends Throwable> T assertThrows(Class<T> type, Runnable action, String message)
+	{
+		try {
+			action.run();
+		} catch (Throwable t) {
+			if (type.isInstance(t))
+				return type.cast(t);
+			throw new AssertionError(message + ": threw " + t, t);
+		}
+		throw new AssertionError(message + ": nothing was thrown");
+	}
+
+}
@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.blackrook.engine.handler.EngineInputCaptureStack;
+import com.blackrook.engine.state.State;
+import com.blackrook.engine.state.StateConfig;
+import com.blackrook.engine.state.StateManager;
+import com.blackrook.engine.state.StateManager.StateEntry;
+
+public final class EngineInputCaptureTest
+{
+	public static void main(String[] args)
+	{
+		findsCapturers();
+		dispatchesToCapturer();
+		fallsThroughWithoutCapturer();
+		releasesOnPop();
+		System.out.println("EngineInputCaptureTest: OK");
+	}
+	
+	private static void findsCapturers()
+	{
+		List<String> log = new ArrayList<>();
+		TestState a = new TestState("a", log, true);
+		TestState b = new TestState("b", log, true);
+		EngineInputCaptureStack stack = new EngineInputCaptureStack();
+		assertTrue(stack.isEmpty(), "empty");
+		assertTrue(stack.getCapturer("X") == null, "no capturer");
+		assertTrue(!stack.onInputFlag("X", true), "handled without captures");
+		
+		stack.capture(a);
+		stack.capture(b, "X", "Y");
+		assertTrue(stack.getCapturer("X") == b, "latest capture of a code");
+		assertTrue(stack.getCapturer("Z") == a, "capture of all input");
+		
+		stack.capture(a, "X");
+		assertTrue(stack.getCapturer("X") == a, "recapture moves to the top");
+		assertTrue(stack.getCapturer("Z") == null, "recapture replaces codes");
+		assertTrue(stack.onInputValue("X", 0.5), "handled by capturer");
+		assertEquals("[a value X 0.5]", log.toString(), "capturer only");
+		
+		assertTrue(stack.release(a), "released");
+		assertTrue(!stack.release(a), "released twice");
+		assertTrue(stack.getCapturer("X") == b, "capture under a released one");
+		stack.releaseAll();
+		assertTrue(stack.isEmpty(), "released all");
+	}
+	
+	private static void dispatchesToCapturer()
+	{
+		List<String> log = new ArrayList<>();
+		TestState bottom = new TestState("bottom", log, true);
+		TestState top = new TestState("top", log, true);
+		StateManager manager = manager(bottom, top);
+		
+		assertTrue(manager.onInputFlag("X", true), "handled");
+		assertEquals("[top flag X true]", log.toString(), "top of the stack first");
+		
+		log.clear();
+		manager.capture(bottom, "X");
+		assertTrue(manager.onInputFlag("X", true), "captured handled");
+		assertTrue(manager.onInputValue("Y", 1.0), "not captured handled");
+		assertEquals("[bottom flag X true, top value Y 1.0]", log.toString(), "captured code goes to the capturer");
+		
+		log.clear();
+		assertTrue(manager.release(bottom), "released");
+		manager.onInputFlag("X", false);
+		assertEquals("[top flag X false]", log.toString(), "after release");
+		
+		TestState other = new TestState("other", log, true);
+		assertThrows(IllegalArgumentException.class, () -> manager.capture(other), "capture by a state not on the stack");
+	}
+	
+	private static void fallsThroughWithoutCapturer()
+	{
+		List<String> log = new ArrayList<>();
+		TestState bottom = new TestState("bottom", log, true);
+		TestState middle = new TestState("middle", log, false);
+		TestState top = new TestState("top", log, false);
+		StateManager manager = manager(bottom, middle, top);
+		
+		manager.capture(middle);
+		assertTrue(manager.onInputFlag("X", true), "handled after falling through");
+		assertEquals("[middle flag X true, top flag X true, bottom flag X true]", log.toString(), "capturer is asked once");
+		
+		log.clear();
+		TestState none = new TestState("none", log, false);
+		StateManager unhandled = manager(none);
+		unhandled.capture(none);
+		assertTrue(!unhandled.onInputValue("X", 2.0), "unhandled");
+		assertEquals("[none value X 2.0]", log.toString(), "lone capturer is asked once");
+	}
+	
+	private static void releasesOnPop()
+	{
+		List<String> log = new ArrayList<>();
+		TestState bottom = new TestState("bottom", log, true);
+		TestState top = new TestState("top", log, true);
+		StateManager manager = manager(bottom, top);
+		manager.capture(top);
+		manager.pop();
+		assertTrue(!manager.release(top), "capture released on pop");
+		manager.onInputFlag("X", true);
+		assertEquals("[bottom flag X true]", log.toString(), "after pop");
+	}
+	
+	private static StateManager manager(State ... states)
+	{
+		StateManager out = new StateManager();
+		for (State state : states)
+			out.push(new StateEntry(state, StateConfig.createConfig()));
+		return out;
+	}
+	
+	private static class TestState implements State
+	{
+		private final String name;
+		private final List<String> log;
+		private final boolean handles;
+		
+		TestState(String name, List<String> log, boolean handles)
+		{
+			this.name = name;
+			this.log = log;
+			this.handles = handles;
+		}
+		
+		@Override
+		public void update(long tick, long currentNanos)
+		{
+		}
+
+		@Override
+		public boolean onInputFlag(String code, boolean set)
+		{
+			log.add(name + " flag " + code + " " + set);
+			return handles;
+		}
+
+		@Override
+		public boolean onInputValue(String code, double value)
+		{
+			log.add(name + " value " + code + " " + value);
+			return handles;
+		}
+
+		@Override
+		public void enter(StateConfig config)
+		{
+		}
+
+		@Override
+		public void exit()
+		{
+		}
+	}
+	
+}
@@ -0,0 +1,238 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.blackrook.engine.EngineLoggingFactory.Logger;
+import com.blackrook.engine.adapter.EngineConfigAdapter;
+import com.blackrook.engine.receiver.EngineInputEventReceiver;
+import com.blackrook.engine.receiver.EngineWindowEventReceiver;
+import com.blackrook.engine.struct.Utils;
+
+public final class EngineInputRecorderTest
+{
+	private static final Logger LOGGER = new EngineLoggingFactory().getLogger(EngineInputRecorderTest.class);
+	
+	public static void main(String[] args) throws IOException
+	{
+		roundTrip();
+		keepsTicks();
+		ignoresEventsAfterClose();
+		rejectsOtherStreams();
+		System.out.println("EngineInputRecorderTest: OK");
+	}
+	
+	private static void roundTrip() throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		EngineInputRecorder recorder = new EngineInputRecorder(LOGGER, ticker(60), bos);
+		EventLog expected = new EventLog();
+		fireAll(recorder);
+		fireAll(expected);
+		recorder.close();
+		assertEquals((long)expected.events.size(), recorder.getEventCount(), "recorded count");
+		
+		EngineInputReplayer replayer = new EngineInputReplayer(new ByteArrayInputStream(bos.toByteArray()));
+		assertEquals(60, replayer.getUpdatesPerSecond(), "updates per second");
+		EventLog actual = new EventLog();
+		EngineInputReplayer.Result result = replayer.replay(actual, actual, null, 0.0);
+		assertEquals(expected.events, actual.events, "replayed events");
+		assertEquals((long)expected.events.size(), result.getEventCount(), "replayed count");
+		assertEquals(0L, result.getTickCount(), "replayed ticks");
+	}
+	
+	private static void keepsTicks() throws IOException
+	{
+		EngineTicker ticker = ticker(1000);
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		EngineInputRecorder recorder = new EngineInputRecorder(LOGGER, ticker, bos);
+		List<Long> recordedTicks = new ArrayList<>();
+		ticker.start();
+		try {
+			for (int i = 0; i < 3; i++)
+			{
+				long tick = ticker.getCurrentTick();
+				while (ticker.getCurrentTick() < tick + 2)
+					Utils.sleep(1);
+				recordedTicks.add(ticker.getCurrentTick());
+				recorder.fireInputFlag("KEY_" + i, true);
+			}
+		} finally {
+			ticker.stop();
+		}
+		recorder.close();
+		
+		// every event is replayed after the updates for the ticks before it.
+		final List<Long> replayedTicks = new ArrayList<>();
+		final long[] updates = {0L};
+		EngineInputReplayer replayer = new EngineInputReplayer(new ByteArrayInputStream(bos.toByteArray()));
+		EngineInputReplayer.Result result = replayer.replay(new EngineInputEventReceiver()
+		{
+			@Override
+			public void fireInputFlag(String code, boolean set)
+			{
+				replayedTicks.add(updates[0]);
+			}
+			
+			@Override
+			public void fireInputValue(String code, double value)
+			{
+			}
+		}, null, (tick, currentNanos) -> 
+		{
+			assertEquals(updates[0], tick, "update tick");
+			updates[0]++;
+		}, 0.0);
+		
+		long start = recordedTicks.get(0) - replayedTicks.get(0);
+		for (int i = 0; i < recordedTicks.size(); i++)
+			assertEquals(recordedTicks.get(i) - start, (long)replayedTicks.get(i), "replayed tick of event " + i);
+		assertEquals(recorder.getTickCount(), result.getTickCount(), "tick count");
+	}
+	
+	private static void ignoresEventsAfterClose() throws IOException
+	{
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		EngineInputRecorder recorder = new EngineInputRecorder(LOGGER, ticker(60), bos);
+		recorder.fireFocus();
+		recorder.close();
+		int length = bos.size();
+		recorder.fireBlur();
+		recorder.fireInputValue("AXIS", 1.0);
+		recorder.close();
+		assertEquals(1L, recorder.getEventCount(), "event count after close");
+		assertEquals(length, bos.size(), "stream length after close");
+	}
+	
+	private static void rejectsOtherStreams()
+	{
+		boolean thrown = false;
+		try {
+			new EngineInputReplayer(new ByteArrayInputStream(new byte[]{'B', 'R', 'E', 'S', 1, 0}));
+		} catch (IOException e) {
+			thrown = true;
+		}
+		assertTrue(thrown, "other stream rejected");
+	}
+	
+	private static EngineTicker ticker(final int updatesPerSecond)
+	{
+		return new EngineTicker(LOGGER, null, new EngineConfigAdapter()
+		{
+			@Override
+			public Integer getUpdatesPerSecond()
+			{
+				return updatesPerSecond;
+			}
+		});
+	}
+	
+	private static <T extends EngineInputEventReceiver & EngineWindowEventReceiver> void fireAll(T receiver)
+	{
+		receiver.fireInputFlag("KEY_A", true);
+		receiver.fireMouseMove(-5, 300);
+		receiver.fireInputValue("AXIS_X", -0.25);
+		receiver.fireInputFlag("KEY_A", false);
+		receiver.fireInputValue("AXIS_X", Double.MAX_VALUE);
+		receiver.fireResize(1920, 1080);
+		receiver.fireMove(Integer.MIN_VALUE, Integer.MAX_VALUE);
+		receiver.fireFocus();
+		receiver.fireBlur();
+		receiver.fireMouseEnter();
+		receiver.fireMouseExit();
+		receiver.fireMinimize();
+		receiver.fireRestore();
+		receiver.fireClosing();
+	}
+	
+	private static class EventLog implements EngineInputEventReceiver, EngineWindowEventReceiver
+	{
+		private final List<String> events = new ArrayList<>();
+		
+		@Override
+		public void fireInputFlag(String code, boolean set)
+		{
+			events.add("flag " + code + " " + set);
+		}
+
+		@Override
+		public void fireInputValue(String code, double value)
+		{
+			events.add("value " + code + " " + value);
+		}
+
+		@Override
+		public void fireClosing()
+		{
+			events.add("closing");
+		}
+
+		@Override
+		public void fireMinimize()
+		{
+			events.add("minimize");
+		}
+
+		@Override
+		public void fireRestore()
+		{
+			events.add("restore");
+		}
+
+		@Override
+		public void fireFocus()
+		{
+			events.add("focus");
+		}
+
+		@Override
+		public void fireBlur()
+		{
+			events.add("blur");
+		}
+
+		@Override
+		public void fireMouseEnter()
+		{
+			events.add("enter");
+		}
+
+		@Override
+		public void fireMouseExit()
+		{
+			events.add("exit");
+		}
+
+		@Override
+		public void fireMouseMove(int canvasX, int canvasY)
+		{
+			events.add("mouse " + canvasX + " " + canvasY);
+		}
+
+		@Override
+		public void fireResize(int width, int height)
+		{
+			events.add("resize " + width + " " + height);
+		}
+
+		@Override
+		public void fireMove(int positionX, int positionY)
+		{
+			events.add("move " + positionX + " " + positionY);
+		}
+	}
+	
+}
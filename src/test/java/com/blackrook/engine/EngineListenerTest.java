@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.blackrook.engine.adapter.EngineConfigAdapter;
+import com.blackrook.engine.roles.EngineUpdateListener;
+import com.blackrook.engine.struct.CopyOnWriteOrderedList;
+import com.blackrook.engine.struct.Utils;
+
+public final class EngineListenerTest
+{
+	public static void main(String[] args)
+	{
+		keepsOrdering();
+		iteratesCopies();
+		changesWhileTicking();
+		System.out.println("EngineListenerTest: OK");
+	}
+	
+	private static void keepsOrdering()
+	{
+		CopyOnWriteOrderedList<String> list = new CopyOnWriteOrderedList<>();
+		list.add("b1", 1);
+		list.add("a", 0);
+		list.add("c", 2);
+		list.add("b2", 1);
+		assertEquals("[a, b1, b2, c]", toList(list).toString(), "ordering");
+		
+		String duplicate = "a";
+		assertTrue(!list.add(duplicate, 5), "duplicate added");
+		assertTrue(list.add(new String("a"), 5), "equal object by identity");
+		assertEquals(5, list.size(), "size");
+		assertTrue(list.remove("b1"), "removed");
+		assertTrue(!list.remove("b1"), "removed twice");
+		assertEquals("[a, b2, c, a]", toList(list).toString(), "after removal");
+	}
+	
+	private static void iteratesCopies()
+	{
+		CopyOnWriteOrderedList<String> list = new CopyOnWriteOrderedList<>();
+		list.add("a", 0);
+		list.add("b", 0);
+		List<String> seen = new ArrayList<>();
+		for (String s : list)
+		{
+			seen.add(s);
+			list.remove("b");
+			list.add("c", 0);
+		}
+		assertEquals("[a, b]", seen.toString(), "iteration during changes");
+		assertEquals("[a, c]", toList(list).toString(), "after iteration");
+	}
+	
+	private static void changesWhileTicking()
+	{
+		EngineTicker ticker = new EngineTicker(new EngineLoggingFactory().getLogger(EngineListenerTest.class), null, new EngineConfigAdapter()
+		{
+			@Override
+			public Integer getUpdatesPerSecond()
+			{
+				return 1000;
+			}
+		});
+		
+		final List<String> log = new ArrayList<>();
+		final EngineUpdateListener late = (tick, nanos) -> log.add("late " + tick);
+		EngineUpdateListener spawner = new EngineUpdateListener()
+		{
+			private long addTick = -1L;
+			
+			@Override
+			public void update(long tick, long currentNanos)
+			{
+				synchronized (log)
+				{
+					log.add("spawner " + tick);
+					if (addTick < 0L)
+					{
+						ticker.add(late, -1);
+						addTick = tick;
+					}
+					else if (tick == addTick + 2)
+					{
+						ticker.remove(late);
+						ticker.remove(this);
+					}
+				}
+			}
+		};
+		
+		ticker.add(spawner, 0);
+		ticker.start();
+		try {
+			long end = System.currentTimeMillis() + 5000L;
+			while (ticker.getCurrentTick() < 10L)
+			{
+				assertTrue(System.currentTimeMillis() < end, "timed out waiting for ticks");
+				Utils.sleep(1);
+			}
+		} finally {
+			ticker.stop();
+			Utils.sleep(20);
+		}
+		
+		// added listeners are updated from the next tick, before the spawner (lower ordering), until removed.
+		synchronized (log)
+		{
+			long t = Long.parseLong(log.get(0).substring("spawner ".length()));
+			List<String> expected = new ArrayList<>();
+			expected.add("spawner " + t);
+			expected.add("late " + (t + 1));
+			expected.add("spawner " + (t + 1));
+			expected.add("late " + (t + 2));
+			expected.add("spawner " + (t + 2));
+			assertEquals(expected, log, "updates around runtime changes");
+		}
+	}
+	
+	private static <T> List<T> toList(Iterable<T> iterable)
+	{
+		List<T> out = new ArrayList<>();
+		for (T t : iterable)
+			out.add(t);
+		return out;
+	}
+	
+}
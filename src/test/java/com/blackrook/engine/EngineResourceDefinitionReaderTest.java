@@ -0,0 +1,307 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import com.blackrook.engine.annotation.resource.DefinitionName;
+import com.blackrook.engine.annotation.resource.Indexed;
+import com.blackrook.engine.exception.EngineSetupException;
+
+public final class EngineResourceDefinitionReaderTest
+{
+	public static void main(String[] args) throws IOException
+	{
+		readsValues();
+		readsLayout();
+		reportsErrors();
+		rejectsDuplicateNames();
+		countsReads();
+		readsChunksInOrder();
+		reportsChunkErrorLines();
+		System.out.println("EngineResourceDefinitionReaderTest: OK");
+	}
+	
+	private static void readsValues() throws IOException
+	{
+		EngineResourceSet resources = createResources(1);
+		int count = resources.readDefinitions(new StringReader(
+			"pair \"a\" {\n"
+			+ "\tx = 2; l = -9223372036854775808; d = 1.5e3; f = -2; b = true; c = \"q\"; by = -128;\n"
+			+ "\tboxed = null; kind = B; kinds = [A, B, A]; ints = [0x10, -3]; names = [\"x\\ty\", \"\\u0041\\\"\"]; label = \"L\";\n"
+			+ "}\n"
+			+ "pair \"b\" { x = 5; ints = []; boxed = 7; }\n"
+		), "test.def");
+		assertEquals(2, count, "count");
+		
+		Pair a = resources.getResource(Pair.class, "a");
+		assertEquals(2, a.x, "int");
+		assertEquals(Long.MIN_VALUE, a.l, "long");
+		assertEquals(1500.0, a.d, "double");
+		assertEquals(-2.0f, a.f, "float");
+		assertEquals(true, a.b, "boolean");
+		assertEquals('q', a.c, "char");
+		assertEquals((byte)-128, a.by, "byte");
+		assertEquals(null, a.boxed, "null");
+		assertEquals(Kind.B, a.kind, "enum");
+		assertEquals("[A, B, A]", Arrays.toString(a.kinds), "enum array");
+		assertEquals("[16, -3]", Arrays.toString(a.ints), "int array");
+		assertEquals("[x\ty, A\"]", Arrays.toString(a.names), "string array with escapes");
+		assertEquals("L", a.getLabel(), "setter");
+		
+		Pair b = resources.getResource(Pair.class, "b");
+		assertEquals(0, b.ints.length, "empty array");
+		assertEquals(7, b.boxed, "boxed");
+		assertEquals(0L, b.l, "unset member");
+		assertTrue(a == resources.getResourceSet(Pair.class).getUnique("x", 2), "indexed");
+	}
+	
+	private static void readsLayout() throws IOException
+	{
+		EngineResourceSet resources = createResources(1);
+		resources.readDefinitions(new ByteArrayInputStream((
+			"// line comment { not a block }\n"
+			+ "/* block\n comment */ pair \"one\"\n"
+			+ "{\n"
+			+ "\tlabel = \"caf\u00e9 // not a comment\"; // comment\n"
+			+ "}\n"
+			+ "Other \"o\" {}\n"
+			+ "pair \"dup\" { x = 8; label = \"first\"; }\n"
+			+ "pair \"dup\" { x = 9; }\n"
+		).getBytes(StandardCharsets.UTF_8)), "layout.def");
+		
+		assertEquals("caf\u00e9 // not a comment", resources.getResource(Pair.class, "one").getLabel(), "UTF-8 string with comment markers");
+		assertTrue(resources.getResource(Other.class, "o") != null, "class name as definition name");
+		Pair dup = resources.getResource(Pair.class, "dup");
+		assertEquals(9, dup.x, "later block replaces earlier one");
+		assertEquals(null, dup.getLabel(), "replaced block values");
+		assertTrue(resources.isDefinitionSource("layout.def"), "definition source");
+	}
+	
+	private static void reportsErrors()
+	{
+		assertError("pair \"z\" { q = 1; }", 1, "unknown member");
+		assertError("nope \"z\" { }", 1, "unknown type");
+		assertError("pair \"z\" { x = 1 }", 1, "missing semicolon");
+		assertError("pair \"z\" {\n\n x = 99999999999; }", 3, "int out of range");
+		assertError("pair \"z\" {\n kind = C; }", 2, "unknown enum constant");
+		assertError("pair \"z\" { b = 1; }", 1, "number for boolean");
+		assertError("pair \"z\" { c = \"ab\"; }", 1, "long string for char");
+		assertError("pair \"z\" { label = \"abc }", 1, "unterminated string");
+		assertError("pair z { }", 1, "unquoted id");
+		assertError("pair { x = 7; }", 1, "no id");
+		assertError("pair \"z\" { ints = [1, 2; }", 1, "unterminated list");
+		assertError("pair \"z\" { x = 1;", 1, "unterminated block");
+		assertError("/* open", 1, "unterminated comment");
+		
+		// read in one pass, each block is added as soon as it is closed.
+		EngineResourceSet resources = createResources(1);
+		assertThrows(EngineSetupException.class, () -> read(resources, "pair \"ok\" { }\npair \"z\" { q = 1; }"), "error after a block");
+		assertTrue(resources.getResource(Pair.class, "ok") != null, "blocks before the error are added");
+	}
+	
+	private static void rejectsDuplicateNames()
+	{
+		assertThrows(EngineSetupException.class, () -> new EngineResourceDefinitionReader(Arrays.asList(Pair.class, OtherPair.class)), "same definition name");
+		assertThrows(EngineSetupException.class, () -> new EngineResourceDefinitionReader(Arrays.asList(NoConstructor.class)), "no default constructor");
+		// classes without the annotation are ignored.
+		new EngineResourceDefinitionReader(Arrays.asList(Pair.class, Unnamed.class));
+	}
+	
+	private static void countsReads() throws IOException
+	{
+		EngineResourceSet resources = createResources(1);
+		String text = "pair \"a\" { x = 1; }\npair \"b\" { x = 2; }\n";
+		resources.readDefinitions(new StringReader(text), "one.def");
+		resources.readDefinitions(new StringReader(text), "two.def");
+		EngineResourceDefinitionReader reader = resources.getDefinitionReader();
+		assertEquals(4L, reader.getBlockCount(), "blocks");
+		assertEquals(text.length() * 2L, reader.getCharacterCount(), "characters");
+		assertTrue(reader.getReadNanos() > 0L, "time");
+		assertTrue(reader.getBlocksPerSecond() > 0.0 && reader.getMegabytesPerSecond() > 0.0, "throughput");
+	}
+	
+	// Blocks have braces in comments and strings, so that a chunk split in the wrong place would fail or differ.
+	private static void readsChunksInOrder() throws IOException
+	{
+		String text = createLargeInput(20000);
+		EngineResourceSet serial = createResources(1);
+		EngineResourceSet parallel = createResources(4);
+		assertEquals(20001, serial.readDefinitions(new StringReader(text), "large.def"), "serial count");
+		assertEquals(20001, parallel.readDefinitions(new StringReader(text), "large.def"), "parallel count");
+		
+		EngineResourceSet.ResourceSet<Pair> serialSet = serial.getResourceSet(Pair.class);
+		EngineResourceSet.ResourceSet<Pair> parallelSet = parallel.getResourceSet(Pair.class);
+		assertEquals(serialSet.size(), parallelSet.size(), "size");
+		for (Pair pair : serialSet)
+		{
+			Pair other = parallelSet.get(pair.getId());
+			assertEquals(serialSet.ordinalOf(pair.getId()), parallelSet.ordinalOf(pair.getId()), "order of " + pair.getId());
+			assertEquals(pair.x + pair.getLabel() + pair.l, other.x + other.getLabel() + other.l, "values of " + pair.getId());
+		}
+		// the last block with an id wins, as in one pass.
+		assertEquals(-1, parallelSet.get("p0").x, "replaced in a later chunk");
+		assertTrue(parallel.getDefinitionReader().getBlocksPerSecond() > 0.0, "throughput");
+	}
+	
+	private static void reportsChunkErrorLines()
+	{
+		String text = createLargeInput(20000);
+		int middle = text.indexOf("pair", text.length() / 2);
+		String bad = text.substring(0, middle) + "pair \"bad\" { q = 1; }\n" + text.substring(middle);
+		int line = 1;
+		for (int i = 0; i < middle; i++)
+			if (bad.charAt(i) == '\n')
+				line++;
+		
+		EngineSetupException e = assertThrows(EngineSetupException.class, () -> read(createResources(4), bad), "error in a middle chunk");
+		assertTrue(e.getMessage().startsWith("(bad.def) Line " + line + ": "), "line: " + e.getMessage());
+	}
+	
+	private static String createLargeInput(int count)
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < count; i++)
+		{
+			sb.append("// block ").append(i).append(" { not a brace }\n");
+			sb.append("pair \"p").append(i).append("\"\n{\n\tx = ").append(i).append(";\n");
+			sb.append("\tlabel = \"}{ ").append(i).append("\";\n");
+			sb.append("\t/* } */ l = ").append(i * 3L).append(";\n}\n");
+		}
+		sb.append("pair \"p0\" { x = -1; }\n");
+		return sb.toString();
+	}
+	
+	private static void assertError(String text, int line, String message)
+	{
+		EngineSetupException e = assertThrows(EngineSetupException.class, () -> read(createResources(1), text), message);
+		assertTrue(e.getMessage().startsWith("(bad.def) Line " + line + ": "), message + ": " + e.getMessage());
+	}
+	
+	static void read(EngineResourceSet resources, String text)
+	{
+		try {
+			resources.readDefinitions(new StringReader(text), "bad.def");
+		} catch (IOException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	static EngineResourceSet createResources(int threadCount)
+	{
+		return new EngineResourceSet(null, Arrays.asList(Pair.class, Other.class, Unnamed.class), threadCount);
+	}
+	
+	public enum Kind
+	{
+		A,
+		B;
+	}
+	
+	@DefinitionName("pair")
+	public static class Pair implements EngineResource
+	{
+		private String id;
+		@Indexed
+		public int x;
+		public long l;
+		public double d;
+		public float f;
+		public boolean b;
+		public char c;
+		public byte by;
+		public Integer boxed;
+		public Kind kind;
+		public Kind[] kinds;
+		public int[] ints;
+		public String[] names;
+		private String label;
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+		
+		public void setLabel(String label)
+		{
+			this.label = label;
+		}
+		
+		public String getLabel()
+		{
+			return label;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	@DefinitionName
+	public static class Other implements EngineResource
+	{
+		private String id;
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+	}
+	
+	@DefinitionName("pair")
+	public static class OtherPair extends Other
+	{
+	}
+	
+	@DefinitionName
+	public static class NoConstructor extends Other
+	{
+		public NoConstructor(int x)
+		{
+		}
+	}
+	
+	public static class Unnamed extends Other
+	{
+	}
+	
+}
@@ -0,0 +1,247 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import com.blackrook.engine.EngineLoggingFactory.Logger;
+import com.blackrook.engine.annotation.element.ResourceDependencies;
+import com.blackrook.engine.exception.EngineSetupException;
+import com.blackrook.engine.roles.EngineResourceGenerator;
+
+public final class EngineResourceGeneratorRunnerTest
+{
+	private static final EngineLoggingFactory LOGGING = new EngineLoggingFactory();
+	private static final Logger LOGGER = LOGGING.getLogger(EngineResourceGeneratorRunnerTest.class);
+	
+	private static final List<String> EVENTS = Collections.synchronizedList(new ArrayList<>());
+	private static CyclicBarrier barrier;
+	
+	public static void main(String[] args)
+	{
+		runsIndependentGeneratorsTogether();
+		runsConsumersAfterProducers();
+		runsUndeclaredGeneratorsAlone();
+		runsSeriallyInOrder();
+		rejectsCycles();
+		reportsFailures();
+		System.out.println("EngineResourceGeneratorRunnerTest: OK");
+	}
+	
+	// Both generators wait for each other, so this only finishes if they run at the same time.
+	private static void runsIndependentGeneratorsTogether()
+	{
+		barrier = new CyclicBarrier(2);
+		EngineResourceSet resources = new EngineResourceSet();
+		run(resources, 2, new MeetsA(), new MeetsB());
+		assertTrue(resources.getResource(ResA.class, "MeetsA") != null, "first resource");
+		assertTrue(resources.getResource(ResB.class, "MeetsB") != null, "second resource");
+	}
+	
+	private static void runsConsumersAfterProducers()
+	{
+		EVENTS.clear();
+		EngineResourceSet resources = new EngineResourceSet();
+		run(resources, 4, new ConsumesA(), new ProducesA(), new ProducesB());
+		assertTrue(EVENTS.indexOf("end ProducesA") < EVENTS.indexOf("start ConsumesA"), "consumer after producer: " + EVENTS);
+		assertTrue(resources.getResource(ResA.class, "ConsumesA-saw-ProducesA") != null, "consumer read the produced resource");
+	}
+	
+	private static void runsUndeclaredGeneratorsAlone()
+	{
+		EVENTS.clear();
+		run(new EngineResourceSet(), 4, new ProducesA(), new ProducesB(), new Undeclared(), new ProducesB2());
+		int start = EVENTS.indexOf("start Undeclared");
+		int end = EVENTS.indexOf("end Undeclared");
+		assertEquals(start + 1, end, "nothing else runs with it: " + EVENTS);
+		assertTrue(EVENTS.indexOf("end ProducesA") < start && EVENTS.indexOf("end ProducesB") < start, "earlier generators first: " + EVENTS);
+		assertTrue(EVENTS.indexOf("start ProducesB2") > end, "later generators after: " + EVENTS);
+	}
+	
+	private static void runsSeriallyInOrder()
+	{
+		EVENTS.clear();
+		run(new EngineResourceSet(), 1, new ConsumesA(), new ProducesB(), new ProducesA());
+		assertEquals(Arrays.asList(
+			"start ProducesB", "end ProducesB", 
+			"start ProducesA", "end ProducesA", 
+			"start ConsumesA", "end ConsumesA"
+		), EVENTS, "serial order");
+	}
+	
+	private static void rejectsCycles()
+	{
+		EngineSetupException e = assertThrows(EngineSetupException.class, 
+			() -> new EngineResourceGeneratorRunner(LOGGER, LOGGING, null, new EngineResourceSet(), Arrays.asList(new ProducesB(), new CycleA(), new CycleB())),
+			"cycle"
+		);
+		assertEquals("Resource generators have circular dependencies: CycleA, CycleB", e.getMessage(), "cycle message");
+	}
+	
+	private static void reportsFailures()
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		EngineSetupException e = assertThrows(EngineSetupException.class, () -> run(resources, 2, new Fails(), new ProducesB()), "wrapped failure");
+		assertTrue(e.getCause() instanceof IllegalStateException, "cause");
+		// the failed generator's batch has ended, so other threads can change its sets.
+		assertEquals(Boolean.TRUE, onOtherThread(() -> {
+			resources.addResource(new ResA("after"));
+			return true;
+		}), "batch released");
+		assertThrows(EngineSetupException.class, () -> run(new EngineResourceSet(), 1, new Fails()), "serial failure");
+	}
+	
+	private static void run(EngineResourceSet resources, int threads, EngineResourceGenerator... generators)
+	{
+		new EngineResourceGeneratorRunner(LOGGER, LOGGING, null, resources, Arrays.asList(generators)).run(threads);
+	}
+	
+	private static <T> T onOtherThread(Supplier<T> supplier)
+	{
+		Object[] out = new Object[1];
+		Thread thread = new Thread(() -> out[0] = supplier.get());
+		thread.start();
+		try {
+			thread.join(5000);
+		} catch (InterruptedException e) {
+			throw new AssertionError(e);
+		}
+		@SuppressWarnings("unchecked")
+		T result = (T)out[0];
+		return result;
+	}
+	
+	public static class ResA implements EngineResource
+	{
+		private final String id;
+		
+		ResA(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+	}
+	
+	public static class ResB extends ResA
+	{
+		ResB(String id)
+		{
+			super(id);
+		}
+	}
+	
+	private static abstract class Recorded implements EngineResourceGenerator
+	{
+		@Override
+		public void createResources(Logger logger, EngineFileSystem fileSystem, EngineResourceSet resources)
+		{
+			String name = getClass().getSimpleName();
+			EVENTS.add("start " + name);
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			add(name, resources);
+			EVENTS.add("end " + name);
+		}
+		
+		void add(String name, EngineResourceSet resources)
+		{
+			resources.addResource(new ResA(name));
+		}
+	}
+	
+	@ResourceDependencies(produces = ResA.class)
+	private static class ProducesA extends Recorded {}
+	
+	@ResourceDependencies(produces = ResB.class)
+	private static class ProducesB extends Recorded
+	{
+		@Override
+		void add(String name, EngineResourceSet resources)
+		{
+			resources.addResource(new ResB(name));
+		}
+	}
+	
+	@ResourceDependencies(produces = ResB.class)
+	private static class ProducesB2 extends ProducesB {}
+	
+	@ResourceDependencies(consumes = ResA.class)
+	private static class ConsumesA extends Recorded
+	{
+		@Override
+		void add(String name, EngineResourceSet resources)
+		{
+			if (resources.getResource(ResA.class, "ProducesA") != null)
+				resources.addResource(new ResA(name + "-saw-ProducesA"));
+		}
+	}
+	
+	private static class Undeclared extends Recorded {}
+	
+	@ResourceDependencies(produces = ResA.class, consumes = ResB.class)
+	private static class CycleA extends Recorded {}
+	
+	@ResourceDependencies(produces = ResB.class, consumes = ResA.class)
+	private static class CycleB extends Recorded {}
+	
+	private static abstract class Meets implements EngineResourceGenerator
+	{
+		@Override
+		public void createResources(Logger logger, EngineFileSystem fileSystem, EngineResourceSet resources)
+		{
+			try {
+				barrier.await(5, TimeUnit.SECONDS);
+			} catch (Exception e) {
+				throw new AssertionError("Generators did not run at the same time.", e);
+			}
+			resources.addResource(getClass() == MeetsA.class ? new ResA("MeetsA") : new ResB("MeetsB"));
+		}
+	}
+	
+	@ResourceDependencies(produces = ResA.class)
+	private static class MeetsA extends Meets {}
+	
+	@ResourceDependencies(produces = ResB.class)
+	private static class MeetsB extends Meets {}
+	
+	@ResourceDependencies(produces = ResA.class)
+	private static class Fails implements EngineResourceGenerator
+	{
+		@Override
+		public void createResources(Logger logger, EngineFileSystem fileSystem, EngineResourceSet resources)
+		{
+			resources.addResource(new ResA("partial"));
+			throw new IllegalStateException("bad file");
+		}
+	}
+	
+}
@@ -0,0 +1,296 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.blackrook.engine.EngineResourceSet.MemoryUsage;
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.Column;
+import com.blackrook.engine.annotation.resource.Indexed;
+
+public final class EngineResourceMemoryTest
+{
+	private static final byte[] HASH = {4, 7};
+	
+	public static void main(String[] args) throws IOException
+	{
+		estimatesObjects();
+		estimatesSetParts();
+		tracksChanges();
+		ordersTypes();
+		listsUsage();
+		File file = File.createTempFile("memory", ".bin");
+		try {
+			countsHeldResources(file);
+		} finally {
+			file.delete();
+		}
+		System.out.println("EngineResourceMemoryTest: OK");
+	}
+	
+	private static void estimatesObjects()
+	{
+		assertEquals(16L, EngineMemoryEstimator.align(13), "align up");
+		assertEquals(16L, EngineMemoryEstimator.align(16), "aligned");
+		assertEquals(56L, EngineMemoryEstimator.array(10, 4), "int array");
+		assertEquals(16L, EngineMemoryEstimator.array(0, 8), "empty array");
+		
+		Set<Object> seen = newSeen();
+		String name = "abc";
+		assertTrue(EngineMemoryEstimator.string(name, seen) > 0L, "string");
+		assertEquals(0L, EngineMemoryEstimator.string(name, seen), "string counted once");
+		assertEquals(0L, EngineMemoryEstimator.string(null, seen), "null string");
+		assertTrue(EngineMemoryEstimator.string("\u0100\u0101\u0102\u0103\u0104\u0105\u0106\u0107\u0108", newSeen()) >= EngineMemoryEstimator.string("abcdefghi", newSeen()), "wide characters");
+		
+		// header, int, long, and three references.
+		long shallow = EngineMemoryEstimator.align(EngineMemoryEstimator.HEADER + 4 + 8 + 3 * EngineMemoryEstimator.REFERENCE);
+		Sample sample = new Sample();
+		assertEquals(shallow, EngineMemoryEstimator.object(sample, newSeen()), "object without references");
+		sample.name = "sample";
+		sample.values = new int[]{1, 2, 3};
+		sample.kind = Kind.A;
+		long expected = shallow + EngineMemoryEstimator.string(sample.name, newSeen()) + EngineMemoryEstimator.array(3, 4);
+		assertEquals(expected, EngineMemoryEstimator.object(sample, newSeen()), "object with references");
+		
+		seen = newSeen();
+		Sample other = new Sample();
+		other.name = sample.name;
+		other.values = sample.values;
+		EngineMemoryEstimator.object(sample, seen);
+		assertEquals(shallow, EngineMemoryEstimator.object(other, seen), "shared references counted once");
+		assertEquals(0L, EngineMemoryEstimator.object(sample, seen), "object counted once");
+		assertEquals(0L, EngineMemoryEstimator.object(Kind.B, newSeen()), "enum");
+		
+		String[] names = {"x", "x", null};
+		assertEquals(EngineMemoryEstimator.array(3, EngineMemoryEstimator.REFERENCE) + EngineMemoryEstimator.string("x", newSeen()), EngineMemoryEstimator.reference(names, newSeen()), "string array");
+	}
+	
+	private static void estimatesSetParts()
+	{
+		ResourceSet<Part> set = new ResourceSet<>(Part.class);
+		for (int i = 0; i < 1000; i++)
+			set.add(new Part("p" + i, i % 50, "z" + (i % 4), i * 0.5, "t" + (i % 3)));
+		MemoryUsage usage = set.getMemoryUsage();
+		
+		assertTrue(usage.getType() == Part.class, "type");
+		assertEquals(1000, usage.getCount(), "count");
+		assertEquals(1000, usage.getHeldCount(), "held count");
+		assertTrue(usage.getResourceBytes() > 0L, "resources");
+		assertTrue(usage.getEntryBytes() > 0L, "entries");
+		assertTrue(usage.getIdBytes() > 0L, "ids");
+		assertTrue(usage.getTagBytes() > 0L, "tags");
+		assertTrue(usage.getOrdinalBytes() > 0L, "ordinals");
+		assertEquals("[level, zone]", new TreeSet<>(usage.getIndexBytes().keySet()).toString(), "indices");
+		assertEquals("[mass]", usage.getColumnBytes().keySet().toString(), "columns");
+		for (Long bytes : usage.getIndexBytes().values())
+			assertTrue(bytes > 0L, "index size");
+		assertTrue(usage.getColumnBytes().get("mass") >= 1000L * 8, "column holds a long per resource");
+		
+		long total = usage.getResourceBytes() + usage.getEntryBytes() + usage.getIdBytes() + usage.getTagBytes() + usage.getOrdinalBytes();
+		for (Long bytes : usage.getIndexBytes().values())
+			total += bytes;
+		for (Long bytes : usage.getColumnBytes().values())
+			total += bytes;
+		assertEquals(total, usage.getTotalBytes(), "total");
+		
+		// every resource has its own data array, and shares its id and tags with the other parts of the set.
+		Set<Object> seen = newSeen();
+		long resources = 0L;
+		for (Part part : set)
+			resources += EngineMemoryEstimator.object(part, seen);
+		long unshared = 1000L * (EngineMemoryEstimator.object(new Part(), newSeen()) + EngineMemoryEstimator.array(2, 4));
+		assertTrue(usage.getResourceBytes() >= unshared, "resources include their own arrays");
+		assertTrue(usage.getResourceBytes() < resources, "resources leave out what other parts count");
+		assertTrue(usage.getIdBytes() > 1000L * EngineMemoryEstimator.string("p000", newSeen()), "ids include their strings");
+		assertEquals(set.getMemoryUsage().getTotalBytes(), usage.getTotalBytes(), "estimates are repeatable");
+	}
+	
+	private static void tracksChanges()
+	{
+		ResourceSet<Part> set = new ResourceSet<>(Part.class);
+		long empty = set.getMemoryUsage().getTotalBytes();
+		for (int i = 0; i < 500; i++)
+			set.add(new Part("p" + i, i, "z", i, "t"));
+		long full = set.getMemoryUsage().getTotalBytes();
+		assertTrue(full > empty, "grows with resources");
+		for (int i = 0; i < 500; i++)
+			set.add(new Part("q" + i, i, "z", i, "t"));
+		long fuller = set.getMemoryUsage().getTotalBytes();
+		assertTrue(fuller > full + (full - empty) / 2, "grows with more resources");
+		for (int i = 0; i < 500; i++)
+			set.remove("q" + i);
+		MemoryUsage usage = set.getMemoryUsage();
+		assertEquals(500, usage.getCount(), "count after removal");
+		assertTrue(usage.getTotalBytes() < fuller, "shrinks after removal");
+	}
+	
+	private static void ordersTypes()
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		for (int i = 0; i < 200; i++)
+			resources.addResource(new Part("p" + i, i, "z", i, "t"));
+		for (int i = 0; i < 10; i++)
+			resources.addResource(new Sample("s" + i));
+		List<MemoryUsage> usages = resources.getMemoryUsage();
+		assertEquals(2, usages.size(), "types");
+		assertTrue(usages.get(0).getType() == Part.class, "largest first");
+		assertTrue(usages.get(0).getTotalBytes() >= usages.get(1).getTotalBytes(), "sorted");
+		assertEquals(usages.get(0).getTotalBytes() + usages.get(1).getTotalBytes(), resources.getMemoryEstimate(), "memory estimate");
+		assertEquals(210, resources.getResourceCount(), "resource count");
+	}
+	
+	private static void listsUsage()
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		for (int i = 0; i < 20; i++)
+			resources.addResource(new Part("p" + i, i, "z", i, "t"));
+		resources.addResource(new Sample("s"));
+		
+		String all = resources.listMemoryUsage(null);
+		assertTrue(all.contains(Part.class.getName()) && all.contains(Sample.class.getName()), "all types: " + all);
+		assertTrue(all.endsWith("total " + resources.getMemoryEstimate() + " bytes in 2 type(s)"), "all types total: " + all);
+		assertEquals(all, resources.listMemoryUsage(""), "empty name");
+		
+		String one = resources.listMemoryUsage("part");
+		assertTrue(one.startsWith(Part.class.getName() + ": 20 resource(s), 20 in memory"), "one type: " + one);
+		assertTrue(one.contains(" index level\n") && one.contains(" index zone\n") && one.contains(" column mass\n"), "one type parts: " + one);
+		assertTrue(one.endsWith(String.format("%12d total", resources.getResourceSet(Part.class).getMemoryUsage().getTotalBytes())), "one type total: " + one);
+		assertEquals(one, resources.listMemoryUsage(Part.class.getName()), "full name");
+		assertEquals("No resource type \"nothing\".", resources.listMemoryUsage("nothing"), "unknown type");
+	}
+	
+	private static void countsHeldResources(File file) throws IOException
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		for (int i = 0; i < 1000; i++)
+			resources.addResource(new Part("p" + i, i, "z", i, "t"));
+		resources.writeSnapshot(file, HASH);
+		long eager = resources.getResourceSet(Part.class).getMemoryUsage().getResourceBytes();
+		
+		EngineResourceSet loaded = new EngineResourceSet();
+		assertTrue(loaded.readSnapshot(file, HASH, 100), "read");
+		ResourceSet<Part> set = loaded.getResourceSet(Part.class);
+		MemoryUsage usage = set.getMemoryUsage();
+		assertEquals(1000, usage.getCount(), "lazy count");
+		assertEquals(0, usage.getHeldCount(), "nothing held after a lazy load");
+		assertTrue(usage.getResourceBytes() < eager / 100, "only the empty cache after a lazy load");
+		
+		for (int i = 0; i < 300; i++)
+			set.get("p" + i);
+		usage = set.getMemoryUsage();
+		assertTrue(usage.getHeldCount() > 0 && usage.getHeldCount() <= 100, "held by the cache: " + usage.getHeldCount());
+		assertTrue(usage.getResourceBytes() > 0L && usage.getResourceBytes() < eager, "cached resource bytes");
+	}
+	
+	private static Set<Object> newSeen()
+	{
+		return Collections.newSetFromMap(new IdentityHashMap<>());
+	}
+	
+	public enum Kind
+	{
+		A, B;
+	}
+	
+	public static class Part implements EngineResource
+	{
+		private String id;
+		public String[] tags;
+		@Indexed
+		public int level;
+		@Indexed
+		public String zone;
+		@Column
+		public double mass;
+		public int[] data;
+		
+		public Part()
+		{
+		}
+		
+		Part(String id, int level, String zone, double mass, String ... tags)
+		{
+			this.id = id;
+			this.level = level;
+			this.zone = zone;
+			this.mass = mass;
+			this.tags = tags;
+			this.data = new int[]{level, level + 1};
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return tags;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	public static class Sample implements EngineResource
+	{
+		public int count;
+		public long total;
+		public String name;
+		public int[] values;
+		public Kind kind;
+		
+		Sample()
+		{
+		}
+		
+		Sample(String name)
+		{
+			this.name = name;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return name;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+		
+		@Override
+		public String toString()
+		{
+			return name;
+		}
+	}
+	
+}
@@ -0,0 +1,335 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.CompositeIndex;
+import com.blackrook.engine.annotation.resource.Indexed;
+
+public final class EngineResourceQueryTest
+{
+	public static void main(String[] args)
+	{
+		readsIncrementally();
+		combinesConditions();
+		handlesMissingIndexes();
+		splitsCoverResults();
+		readsOneVersion();
+		matchesReference();
+		System.out.println("EngineResourceQueryTest: OK");
+	}
+	
+	private static void readsIncrementally()
+	{
+		ResourceSet<Item> set = new ResourceSet<>(Item.class);
+		for (int i = 0; i < 100; i++)
+			set.add(new Item("i" + i, "z" + (i % 2), Kind.A, i, 0.0, null));
+		
+		EngineResourceCursor<Item> cursor = set.query().inRange("level", 10, true, 60, false).cursor();
+		Item[] buffer = new Item[8];
+		List<Integer> levels = new ArrayList<>();
+		int count;
+		while ((count = cursor.next(buffer, 3)) > 0)
+		{
+			assertTrue(count <= 5, "room in the buffer");
+			for (int i = 3; i < 3 + count; i++)
+				levels.add(buffer[i].level);
+		}
+		assertEquals(50, levels.size(), "no results truncated");
+		for (int i = 0; i < levels.size(); i++)
+			assertEquals(10 + i, levels.get(i), "result " + i);
+		assertTrue(!cursor.hasNext(), "exhausted");
+		assertEquals(-1, cursor.nextOrdinal(), "no more ordinals");
+		assertThrows(NoSuchElementException.class, () -> cursor.next(), "next past the end");
+		
+		EngineResourceCursor<Item> ordinals = set.query().withKey("zone", "z1").cursor();
+		int[] out = new int[7];
+		int total = 0;
+		while ((count = ordinals.nextOrdinals(out, 0)) > 0)
+		{
+			for (int i = 0; i < count; i++)
+				assertEquals("z1", set.getByOrdinal(out[i]).zone, "ordinal result");
+			total += count;
+		}
+		assertEquals(50, total, "ordinal count");
+		assertEquals(0, set.query().cursor().next(new Item[2], 2), "no room");
+	}
+	
+	private static void combinesConditions()
+	{
+		ResourceSet<Item> set = new ResourceSet<>(Item.class);
+		set.add(new Item("a", "north", Kind.A, 5, 1.5, 1L, "red", "big"));
+		set.add(new Item("b", "north", Kind.B, 7, -2.0, 2L, "red"));
+		set.add(new Item("c", "south", Kind.A, 5, 0.5, null, "blue", "big"));
+		set.add(new Item("d", "north", Kind.A, 9, 3.0, 4L, "red", "small"));
+		set.add(new Item("e", "north", Kind.A, 6, Double.NaN, 5L, "big"));
+		
+		assertEquals("[a, b, d, e]", ids(set.query().withKey("zone", "north")), "key");
+		assertEquals("[a, c, e]", ids(set.query().inRange("level", 5, true, 7, false)), "range");
+		assertEquals("[a, e]", ids(set.query().withKey("zone", "north").inRange("level", 5, true, 7, false)), "key and range");
+		assertEquals("[a, d, e]", ids(set.query().withKey("zoneKind", new Object[]{"north", Kind.A})), "composite key");
+		assertEquals("[a, d]", ids(set.query().withKey("zoneKind", new Object[]{"north", Kind.A}).withTags(new String[]{"red"}, null, null)), "composite key and tags");
+		assertEquals("[a, c]", ids(set.query().withTags(null, new String[]{"big", "blue"}, new String[]{"small"}).inRange("weight", 0, true, null, true)), "tags and open range");
+		assertEquals("[d]", ids(set.query().withKey("serial", 4L)), "unique key");
+		assertEquals("[d]", ids(set.query().withKey("serial", 4)), "unique key of another number type");
+		assertEquals("[b, d]", ids(set.query().withTags(new String[]{"red"}, null, null).filter((item) -> item.level > 5)), "tags and predicate");
+		assertEquals("[]", ids(set.query().withKey("zone", "north").withKey("zone", "south")), "conflicting keys");
+		assertEquals("[]", ids(set.query().inRange("level", 7, false, 7, false)), "empty range");
+		assertEquals(5, set.query().count(), "everything");
+		assertEquals(3, set.query().withKey("zoneKind", new Object[]{"north", Kind.A}).count(), "exact count");
+		assertEquals(2, set.query().withKey("zoneKind", new Object[]{"north", Kind.A}).filter((item) -> item.weight > 2.0 || item.level == 5).count(), "filtered count");
+	}
+	
+	private static void handlesMissingIndexes()
+	{
+		ResourceSet<Item> set = new ResourceSet<>(Item.class);
+		set.add(new Item("a", "north", Kind.A, 5, 1.5, 1L));
+		assertEquals(0, set.query().inRange("missing", 0, true, 1, true).count(), "missing range index");
+		assertTrue(!set.query().withKey("missing", 1).cursor().hasNext(), "missing key index");
+		assertThrows(IllegalArgumentException.class, () -> set.query().withKey("level", "x").count(), "wrong key type");
+		assertThrows(NullPointerException.class, () -> set.query().filter(null), "null predicate");
+		assertThrows(NullPointerException.class, () -> set.query().withKey(null, 1), "null index name");
+	}
+	
+	private static void splitsCoverResults()
+	{
+		ResourceSet<Item> set = createSet(new Random(46L), 5000);
+		for (EngineResourceQuery<Item> query : Arrays.asList(set.query(), set.query().withTags(new String[]{"t1"}, null, null), set.query().inRange("level", 20, true, 70, false)))
+		{
+			List<Spliterator<Item>> parts = new ArrayList<>();
+			parts.add(query.spliterator());
+			for (int i = 0; i < 6; i++)
+			{
+				List<Spliterator<Item>> next = new ArrayList<>();
+				for (Spliterator<Item> part : parts)
+				{
+					// a split covers the results before the rest of its parent.
+					Spliterator<Item> split = part.trySplit();
+					if (split != null)
+						next.add(split);
+					next.add(part);
+				}
+				parts = next;
+			}
+			assertTrue(parts.size() > 1, "split");
+			
+			List<String> found = new ArrayList<>();
+			for (Spliterator<Item> part : parts)
+				part.forEachRemaining((item) -> found.add(item.getId()));
+			assertEquals(query.count(), found.size(), "split coverage");
+			assertEquals(found.size(), new HashSet<>(found).size(), "split results are distinct");
+			assertEquals(query.stream().map(Item::getId).collect(Collectors.toList()), found, "split results in order");
+		}
+	}
+	
+	private static void readsOneVersion()
+	{
+		ResourceSet<Item> set = createSet(new Random(47L), 2000);
+		EngineResourceQuery<Item> query = set.query().inRange("level", 0, true, 10, true);
+		int before = query.count();
+		EngineResourceCursor<Item> cursor = query.cursor();
+		for (int i = 0; i < 50; i++)
+			set.add(new Item("new" + i, "z0", Kind.A, 5, 0.0, null));
+		int count = 0;
+		while (cursor.hasNext())
+		{
+			assertTrue(!cursor.next().getId().startsWith("new"), "old version");
+			count++;
+		}
+		assertEquals(before, count, "cursor count");
+		assertEquals(before + 50, query.count(), "a query runs against the latest version");
+	}
+	
+	// Random queries, checked against a scan of every resource.
+	private static void matchesReference()
+	{
+		Random random = new Random(48L);
+		ResourceSet<Item> set = createSet(random, 20000);
+		List<Item> all = new ArrayList<>();
+		for (Item item : set)
+			all.add(item);
+		
+		for (int q = 0; q < 300; q++)
+		{
+			EngineResourceQuery<Item> query = set.query();
+			Predicate<Item> expected = (item) -> true;
+			int kind = random.nextInt(64);
+			if ((kind & 1) != 0)
+			{
+				String all1 = "t" + random.nextInt(5);
+				String none1 = "t" + random.nextInt(5);
+				String any1 = "t" + random.nextInt(5);
+				String any2 = "t" + random.nextInt(5);
+				boolean useAny = random.nextBoolean();
+				query.withTags(new String[]{all1}, useAny ? new String[]{any1, any2} : null, new String[]{none1});
+				expected = expected.and((item) -> item.hasTag(all1) && !item.hasTag(none1) && (!useAny || item.hasTag(any1) || item.hasTag(any2)));
+			}
+			if ((kind & 2) != 0)
+			{
+				int min = random.nextInt(100);
+				int max = min + random.nextInt(60);
+				boolean minInclusive = random.nextBoolean();
+				boolean maxInclusive = random.nextBoolean();
+				query.inRange("level", min, minInclusive, max, maxInclusive);
+				expected = expected.and((item) -> (minInclusive ? item.level >= min : item.level > min) && (maxInclusive ? item.level <= max : item.level < max));
+			}
+			if ((kind & 4) != 0)
+			{
+				double min = random.nextGaussian();
+				double max = min + random.nextDouble();
+				query.inRange("weight", min, true, max, false);
+				expected = expected.and((item) -> item.weight >= min && item.weight < max);
+			}
+			if ((kind & 8) != 0)
+			{
+				String zone = "z" + random.nextInt(7);
+				query.withKey("zone", zone);
+				expected = expected.and((item) -> zone.equals(item.zone));
+			}
+			if ((kind & 16) != 0)
+			{
+				String zone = "z" + random.nextInt(6);
+				Kind itemKind = Kind.values()[random.nextInt(3)];
+				query.withKey("zoneKind", new Object[]{zone, itemKind});
+				expected = expected.and((item) -> zone.equals(item.zone) && item.kind == itemKind);
+			}
+			if ((kind & 32) != 0)
+			{
+				if (random.nextBoolean())
+				{
+					query.filter((item) -> item.level % 3 == 0);
+					expected = expected.and((item) -> item.level % 3 == 0);
+				}
+				else
+				{
+					long serial = random.nextInt(15000);
+					query.withKey("serial", serial);
+					expected = expected.and((item) -> item.serial != null && item.serial == serial);
+				}
+			}
+			
+			Set<String> expectedIds = all.stream().filter(expected).map(Item::getId).collect(Collectors.toSet());
+			EngineResourceCursor<Item> cursor = query.cursor();
+			Item[] buffer = new Item[7];
+			List<String> found = new ArrayList<>();
+			int count;
+			while ((count = cursor.next(buffer, 2)) > 0)
+				for (int i = 2; i < 2 + count; i++)
+					found.add(buffer[i].getId());
+			assertEquals(expectedIds.size(), found.size(), "query " + q + " count");
+			assertEquals(expectedIds, new HashSet<>(found), "query " + q + " results");
+			assertEquals(expectedIds.size(), query.count(), "query " + q + " counted");
+			assertEquals(found, query.stream().map(Item::getId).collect(Collectors.toList()), "query " + q + " stream");
+			assertEquals(found, query.parallelStream().map(Item::getId).collect(Collectors.toList()), "query " + q + " parallel stream");
+		}
+	}
+	
+	private static ResourceSet<Item> createSet(Random random, int changes)
+	{
+		ResourceSet<Item> set = new ResourceSet<>(Item.class);
+		for (int i = 0; i < changes; i++)
+		{
+			String id = "i" + random.nextInt(changes * 3 / 4);
+			if (random.nextInt(6) == 0)
+			{
+				set.remove(id);
+				continue;
+			}
+			List<String> tags = new ArrayList<>();
+			for (int t = 0; t < 5; t++)
+				if (random.nextInt(t + 2) == 0)
+					tags.add("t" + t);
+			double weight = random.nextInt(30) == 0 ? Double.NaN : random.nextInt(10) == 0 ? -0.0 : random.nextGaussian();
+			Long serial = random.nextInt(4) == 0 ? null : Long.valueOf(id.substring(1));
+			Item item = new Item(id, random.nextInt(20) == 0 ? null : "z" + random.nextInt(6), Kind.values()[random.nextInt(3)], random.nextInt(100), weight, serial, tags.toArray(new String[tags.size()]));
+			set.add(item);
+		}
+		return set;
+	}
+	
+	// Results follow the order of whatever index the query is driven by, so they are sorted here.
+	private static String ids(EngineResourceQuery<Item> query)
+	{
+		return query.stream().map(Item::getId).sorted().collect(Collectors.toList()).toString();
+	}
+	
+	public enum Kind
+	{
+		A, B, C;
+	}
+	
+	@CompositeIndex(name = "zoneKind", members = {"zone", "kind"})
+	public static class Item implements EngineResource
+	{
+		private final String id;
+		private final String[] tags;
+		@Indexed
+		public String zone;
+		@Indexed
+		public Kind kind;
+		@Indexed
+		public int level;
+		@Indexed
+		public double weight;
+		@Indexed(unique = true)
+		public Long serial;
+		
+		Item(String id, String zone, Kind kind, int level, double weight, Long serial, String ... tags)
+		{
+			this.id = id;
+			this.zone = zone;
+			this.kind = kind;
+			this.level = level;
+			this.weight = weight;
+			this.serial = serial;
+			this.tags = tags;
+		}
+		
+		boolean hasTag(String tag)
+		{
+			for (String t : tags)
+				if (t.equals(tag))
+					return true;
+			return false;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return tags;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+}
@@ -0,0 +1,184 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import com.blackrook.engine.EngineResourceDefinitionReaderTest.Other;
+import com.blackrook.engine.EngineResourceDefinitionReaderTest.Pair;
+import com.blackrook.engine.EngineResourceSet.DefinitionReload;
+import com.blackrook.engine.exception.EngineSetupException;
+
+public final class EngineResourceReloadTest
+{
+	private static final long WAIT_MILLIS = 10000L;
+	
+	public static void main(String[] args) throws Exception
+	{
+		appliesDifferences();
+		leavesOtherStreams();
+		keepsResourcesOnError();
+		reloadsWatchedFiles();
+		System.out.println("EngineResourceReloadTest: OK");
+	}
+	
+	private static void appliesDifferences() throws IOException
+	{
+		EngineResourceSet resources = EngineResourceDefinitionReaderTest.createResources(1);
+		resources.readDefinitions(new StringReader(
+			"pair \"a\" { x = 1; }\npair \"b\" { x = 2; }\npair \"c\" { x = 3; }\nOther \"o\" {}\n"
+		), "/defs\\x.def");
+		Pair a = resources.getResource(Pair.class, "a");
+		Other o = resources.getResource(Other.class, "o");
+		
+		DefinitionReload reload = resources.reloadDefinitions(new StringReader(
+			"// comments and spacing do not count as changes\npair \"a\"\n{\n\tx = 1 ;\n}\n"
+			+ "pair \"b\" { x = 22; }\npair \"d\" { x = 4; }\nOther \"o\" {}\n"
+		), "defs/x.def");
+		assertEquals("defs/x.def: 1 added, 1 replaced, 1 removed", reload.toString(), "summary");
+		assertEquals("[d]", Arrays.toString(ids(reload.getAdded())), "added");
+		assertEquals("[b]", Arrays.toString(ids(reload.getReplaced())), "replaced");
+		assertEquals("[c]", Arrays.toString(ids(reload.getRemoved())), "removed");
+		assertTrue(a == resources.getResource(Pair.class, "a"), "unchanged block keeps its resource");
+		assertTrue(o == resources.getResource(Other.class, "o"), "unchanged block of another type");
+		assertEquals(null, resources.getResource(Pair.class, "c"), "removed resource");
+		
+		EngineResourceSet.ResourceSet<Pair> set = resources.getResourceSet(Pair.class);
+		assertEquals("b", set.getUnique("x", 22).getId(), "new index value");
+		assertEquals(null, set.getUnique("x", 2), "old index value");
+		
+		assertTrue(resources.reloadDefinitions(new StringReader("pair \"a\" { x = 1; } pair \"b\" { x = 22; } pair \"d\" { x = 4; } Other \"o\" {}"), "defs/x.def").isEmpty(), "no changes");
+		
+		reload = resources.reloadDefinitions(new StringReader("pair \"n\" { }"), "new.def");
+		assertEquals("[n]", Arrays.toString(ids(reload.getAdded())), "stream not read before");
+		assertTrue(resources.isDefinitionSource("/new.def"), "now a definition source");
+	}
+	
+	// Resources that another stream replaced since belong to that stream.
+	private static void leavesOtherStreams() throws IOException
+	{
+		EngineResourceSet resources = EngineResourceDefinitionReaderTest.createResources(1);
+		resources.readDefinitions(new StringReader("pair \"s\" { x = 1; }\npair \"t\" { x = 2; }"), "base.def");
+		resources.readDefinitions(new StringReader("pair \"s\" { x = 10; }\npair \"t\" { x = 20; }"), "mod.def");
+		
+		DefinitionReload reload = resources.reloadDefinitions(new StringReader("pair \"s\" { x = 5; }"), "base.def");
+		assertTrue(reload.isEmpty(), "nothing changed: " + reload);
+		assertEquals(10, resources.getResource(Pair.class, "s").x, "changed block kept the other stream's resource");
+		assertEquals(20, resources.getResource(Pair.class, "t").x, "removed block kept the other stream's resource");
+		
+		reload = resources.reloadDefinitions(new StringReader("pair \"s\" { x = 11; }"), "mod.def");
+		assertEquals("[s]", Arrays.toString(ids(reload.getReplaced())), "owning stream replaces");
+		assertEquals("[t]", Arrays.toString(ids(reload.getRemoved())), "owning stream removes");
+	}
+	
+	private static void keepsResourcesOnError() throws IOException
+	{
+		EngineResourceSet resources = EngineResourceDefinitionReaderTest.createResources(1);
+		resources.readDefinitions(new StringReader("pair \"a\" { x = 1; }\npair \"b\" { x = 2; }"), "x.def");
+		assertThrows(EngineSetupException.class, () -> {
+			try {
+				resources.reloadDefinitions(new StringReader("pair \"a\" { x = 5; }\npair \"c\" { x = ; }"), "x.def");
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+		}, "parse error");
+		assertEquals(1, resources.getResource(Pair.class, "a").x, "not replaced");
+		assertTrue(resources.getResource(Pair.class, "b") != null, "not removed");
+		assertEquals(2, resources.getResourceSet(Pair.class).size(), "size");
+		
+		// the stream is still matched against what was read before the error.
+		DefinitionReload reload = resources.reloadDefinitions(new StringReader("pair \"a\" { x = 1; }"), "x.def");
+		assertEquals("[b]", Arrays.toString(ids(reload.getRemoved())), "removed after the error");
+	}
+	
+	private static void reloadsWatchedFiles() throws Exception
+	{
+		File root = Files.createTempDirectory("reload").toFile();
+		File dir = new File(root, "defs");
+		dir.mkdirs();
+		File file = new File(dir, "z.def");
+		write(file, "pair \"z1\" { x = 1; }\npair \"z2\" { x = 2; }");
+		
+		EngineResourceSet resources = EngineResourceDefinitionReaderTest.createResources(1);
+		resources.readDefinitions(Files.newBufferedReader(file.toPath()), "defs/z.def");
+		Queue<DefinitionReload> messages = new ConcurrentLinkedQueue<>();
+		EngineResourceReloader reloader = new EngineResourceReloader(
+			new EngineLoggingFactory().getLogger(EngineResourceReloader.class), 
+			resources, 
+			(type, arguments) -> {
+				assertEquals(EngineResourceSet.MESSAGE_DEFINITIONS_RELOADED, type, "message type");
+				messages.add((DefinitionReload)arguments[0]);
+			}, 
+			Arrays.asList(root)
+		);
+		reloader.start();
+		try {
+			write(new File(root, "ignored.def"), "pair \"i\" { }");
+			write(file, "pair \"z1\" { x = 1; }\npair \"z3\" { x = 3; }");
+			DefinitionReload reload = awaitReload(reloader, messages);
+			assertEquals("defs/z.def: 1 added, 0 replaced, 1 removed", reload.toString(), "file change");
+			assertTrue(resources.getResource(Pair.class, "z3") != null && resources.getResource(Pair.class, "z2") == null, "applied");
+			assertEquals(null, resources.getResource(Pair.class, "i"), "files that were not read are not reloaded");
+			
+			File sub = new File(dir, "sub");
+			sub.mkdirs();
+			Thread.sleep(300);
+			file.delete();
+			reload = awaitReload(reloader, messages);
+			assertEquals("defs/z.def: 0 added, 0 replaced, 2 removed", reload.toString(), "file deleted");
+		} finally {
+			reloader.onEngineShutdown();
+		}
+		for (Thread thread : Thread.getAllStackTraces().keySet())
+			assertTrue(!thread.getName().equals("EngineResourceReloader"), "watcher stopped");
+		
+		for (File f : new File[]{new File(root, "ignored.def"), new File(dir, "sub"), dir, root})
+			f.delete();
+	}
+	
+	// Applies changes on this thread, as the ticker would, until a reload is sent.
+	private static DefinitionReload awaitReload(EngineResourceReloader reloader, Queue<DefinitionReload> messages) throws InterruptedException
+	{
+		long end = System.currentTimeMillis() + WAIT_MILLIS;
+		DefinitionReload out;
+		while ((out = messages.poll()) == null)
+		{
+			if (System.currentTimeMillis() > end)
+				throw new AssertionError("No reload after " + WAIT_MILLIS + " ms.");
+			Thread.sleep(20);
+			reloader.update(0L, 0L);
+		}
+		return out;
+	}
+	
+	private static void write(File file, String text) throws IOException
+	{
+		Files.write(file.toPath(), text.getBytes(StandardCharsets.UTF_8));
+	}
+	
+	private static String[] ids(List<EngineResource> resources)
+	{
+		String[] out = new String[resources.size()];
+		for (int i = 0; i < out.length; i++)
+			out[i] = resources.get(i).getId();
+		return out;
+	}
+	
+}
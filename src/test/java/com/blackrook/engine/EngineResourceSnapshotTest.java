@@ -0,0 +1,302 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.CompositeIndex;
+import com.blackrook.engine.annotation.resource.Indexed;
+import com.blackrook.engine.exception.EngineSetupException;
+
+public final class EngineResourceSnapshotTest
+{
+	private static final byte[] HASH = {1, 2, 3};
+	
+	public static void main(String[] args) throws IOException
+	{
+		File file = File.createTempFile("snapshot", ".bin");
+		try {
+			roundTrips(file);
+			rejectsStaleSnapshots(file);
+			rejectsDamagedSnapshots(file);
+			rejectsUnsupportedTypes(file);
+		} finally {
+			file.delete();
+		}
+		System.out.println("EngineResourceSnapshotTest: OK");
+	}
+	
+	private static void roundTrips(File file) throws IOException
+	{
+		EngineResourceSet resources = createResources(new Random(39L));
+		resources.writeSnapshot(file, HASH);
+		EngineResourceSet loaded = new EngineResourceSet();
+		assertTrue(loaded.readSnapshot(file, HASH), "read");
+		
+		ResourceSet<Thing> set = resources.getResourceSet(Thing.class);
+		ResourceSet<Thing> copy = loaded.getResourceSet(Thing.class);
+		assertEquals(set.size(), copy.size(), "size");
+		assertEquals(describe(set), describe(copy), "indices");
+		for (Thing thing : set)
+		{
+			Thing other = copy.get(thing.getId());
+			assertEquals(thing.toValues(), other.toValues(), "values of " + thing.getId());
+			assertEquals(set.ordinalOf(thing.getId()), copy.ordinalOf(thing.getId()), "ordinal of " + thing.getId());
+			assertEquals(0, other.scratch, "transient field of " + thing.getId());
+		}
+		assertEquals(2, loaded.getResourceSet(Other.class).size(), "second set");
+		
+		// the loaded indices must keep working after changes.
+		Random random = new Random(39L);
+		for (int i = 0; i < 500; i++)
+		{
+			String id = "t" + random.nextInt(1200);
+			if (random.nextBoolean())
+			{
+				set.remove(id);
+				copy.remove(id);
+			}
+			else
+			{
+				set.add(createThing(id, i, new Random(i)));
+				copy.add(createThing(id, i, new Random(i)));
+			}
+		}
+		assertEquals(describe(set), describe(copy), "indices after changes");
+	}
+	
+	private static void rejectsStaleSnapshots(File file) throws IOException
+	{
+		createResources(new Random(1L)).writeSnapshot(file, HASH);
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Other("kept"));
+		
+		assertTrue(!resources.readSnapshot(file, new byte[]{9}), "other input hash");
+		assertTrue(!resources.readSnapshot(new File(file.getPath() + ".missing"), HASH), "missing file");
+		assertEquals(null, resources.getResourceSet(Thing.class), "nothing read");
+		assertTrue(resources.getResource(Other.class, "kept") != null, "nothing replaced");
+	}
+	
+	private static void rejectsDamagedSnapshots(File file) throws IOException
+	{
+		createResources(new Random(2L)).writeSnapshot(file, HASH);
+		byte[] data = Files.readAllBytes(file.toPath());
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Other("kept"));
+		
+		Files.write(file.toPath(), Arrays.copyOf(data, data.length / 2));
+		assertTrue(readFails(resources, file), "truncated");
+		Files.write(file.toPath(), Arrays.copyOf(data, 10));
+		assertTrue(readFails(resources, file), "header only");
+		assertEquals(null, resources.getResourceSet(Thing.class), "nothing read");
+		assertTrue(resources.getResource(Other.class, "kept") != null, "nothing replaced");
+		
+		data[4] = 99;
+		Files.write(file.toPath(), data);
+		assertTrue(!resources.readSnapshot(file, HASH), "other format version");
+	}
+	
+	private static void rejectsUnsupportedTypes(File file)
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Unsupported());
+		assertThrows(EngineSetupException.class, () -> {
+			try {
+				resources.writeSnapshot(file, HASH);
+			} catch (IOException e) {
+				throw new AssertionError(e);
+			}
+		}, "list field");
+	}
+	
+	private static boolean readFails(EngineResourceSet resources, File file)
+	{
+		try {
+			resources.readSnapshot(file, HASH);
+			return false;
+		} catch (IOException e) {
+			return true;
+		}
+	}
+	
+	private static EngineResourceSet createResources(Random random)
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		for (int i = 0; i < 2000; i++)
+		{
+			String id = "t" + random.nextInt(1000);
+			ResourceSet<Thing> set;
+			if (random.nextInt(6) == 0 && (set = resources.getResourceSet(Thing.class)) != null)
+				set.remove(id);
+			else
+				resources.addResource(createThing(id, i, random));
+		}
+		resources.addResource(new Other("o1"));
+		resources.addResource(new Other("o2"));
+		return resources;
+	}
+	
+	private static Thing createThing(String id, int i, Random random)
+	{
+		Thing out = new Thing();
+		out.setId(id);
+		out.zone = "z" + random.nextInt(4);
+		out.kind = Kind.values()[random.nextInt(3)];
+		out.level = random.nextInt(50);
+		out.weight = random.nextInt(20) == 0 ? Double.NaN : random.nextInt(10) == 0 ? -0.0 : random.nextGaussian();
+		out.serial = random.nextInt(4) == 0 ? null : Long.valueOf(id.substring(1));
+		out.data = new int[]{i, -i};
+		out.kinds = new Kind[]{Kind.C, null};
+		out.letter = 'q';
+		out.small = random.nextBoolean() ? null : (byte)3;
+		out.scratch = 77;
+		List<String> tags = new ArrayList<>();
+		for (int t = 0; t < 4; t++)
+			if (random.nextBoolean())
+				tags.add("t" + t);
+		out.setTags(tags.toArray(new String[tags.size()]));
+		return out;
+	}
+	
+	// Lists the results of one query of each kind.
+	private static String describe(ResourceSet<Thing> set)
+	{
+		Thing[] out = new Thing[set.size()];
+		StringBuilder sb = new StringBuilder();
+		sb.append(Arrays.asList(out).subList(0, set.getInIndexRange("weight", null, true, null, true, out))).append('\n');
+		sb.append(Arrays.asList(out).subList(0, set.getInIndexRange("level", 3, true, 40, false, out))).append('\n');
+		sb.append(Arrays.asList(out).subList(0, set.getByTags(new String[]{"t1"}, null, new String[]{"t3"}, out))).append('\n');
+		sb.append(Arrays.asList(out).subList(0, set.getByKey("zoneKind", new Object[]{"z1", Kind.B}, out))).append('\n');
+		sb.append(Arrays.asList(out).subList(0, set.getByKey("zone", "z2", out))).append('\n');
+		sb.append(Arrays.asList(out).subList(0, set.getByIndex("serial", 17L, out))).append('\n');
+		return sb.toString();
+	}
+	
+	public enum Kind
+	{
+		A,
+		B,
+		C;
+	}
+	
+	@CompositeIndex(name = "zoneKind", members = {"zone", "kind"})
+	public static class Thing implements EngineResource
+	{
+		private String id;
+		private String[] tags = new String[0];
+		@Indexed
+		public String zone;
+		@Indexed
+		public Kind kind;
+		@Indexed
+		public int level;
+		@Indexed
+		public double weight;
+		@Indexed(unique = true)
+		public Long serial;
+		public int[] data;
+		public Kind[] kinds;
+		public char letter;
+		public Byte small;
+		public transient int scratch;
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return tags;
+		}
+		
+		public void setTags(String[] tags)
+		{
+			this.tags = tags;
+		}
+		
+		String toValues()
+		{
+			return id + Arrays.toString(tags) + zone + kind + level + weight + serial 
+				+ Arrays.toString(data) + Arrays.toString(kinds) + letter + small;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	public static class Other implements EngineResource
+	{
+		private String id;
+		
+		public Other()
+		{
+		}
+		
+		Other(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+	}
+	
+	public static class Unsupported implements EngineResource
+	{
+		public List<String> names = new ArrayList<>();
+		
+		@Override
+		public String getId()
+		{
+			return "x";
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+	}
+	
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+
+public final class EngineSymbolTableTest
+{
+	private static final byte[] HASH = {4, 8};
+	
+	public static void main(String[] args) throws Exception
+	{
+		assignsSymbols();
+		internsConcurrently();
+		internsResourceTags();
+		File file = File.createTempFile("symbols", ".bin");
+		try {
+			internsSnapshotTags(file);
+		} finally {
+			file.delete();
+		}
+		System.out.println("EngineSymbolTableTest: OK");
+	}
+	
+	private static void assignsSymbols()
+	{
+		EngineSymbolTable table = new EngineSymbolTable();
+		assertEquals(0, table.size(), "empty");
+		assertEquals(-1, table.lookup("a"), "lookup before intern");
+		assertEquals(0, table.size(), "lookup does not add");
+		
+		String first = new String("a");
+		assertEquals(0, table.intern(first), "first symbol");
+		assertEquals(1, table.intern("b"), "second symbol");
+		assertEquals(0, table.intern(new String("a")), "equal string");
+		assertEquals(0, table.lookup(new String("a")), "lookup");
+		assertTrue(first == table.getName(0), "first instance is kept");
+		assertEquals("b", table.getName(1), "name");
+		assertEquals(null, table.getName(2), "unassigned symbol");
+		assertEquals(null, table.getName(-1), "negative symbol");
+		assertEquals(2, table.size(), "size");
+		
+		for (int i = 0; i < 1000; i++)
+			assertEquals(i + 2, table.intern("s" + i), "symbol past the first block " + i);
+		for (int i = 0; i < 1000; i++)
+			assertEquals("s" + i, table.getName(i + 2), "name past the first block " + i);
+		assertEquals(1002, table.size(), "grown size");
+		assertEquals(null, table.getName(5000), "past the end");
+		
+		assertThrows(NullPointerException.class, () -> table.intern(null), "intern null");
+		assertThrows(NullPointerException.class, () -> table.lookup(null), "lookup null");
+	}
+	
+	private static void internsConcurrently() throws Exception
+	{
+		EngineSymbolTable table = new EngineSymbolTable();
+		int threadCount = 4;
+		int names = 2000;
+		int[][] symbols = new int[threadCount][names];
+		CyclicBarrier barrier = new CyclicBarrier(threadCount);
+		Thread[] threads = new Thread[threadCount];
+		for (int t = 0; t < threadCount; t++)
+		{
+			int thread = t;
+			threads[t] = new Thread(() -> {
+				try {
+					barrier.await();
+				} catch (Exception e) {
+					throw new RuntimeException(e);
+				}
+				// each thread interns the names in a different order.
+				for (int i = 0; i < names; i++)
+				{
+					int name = (thread % 2 == 0 ? i + thread * 500 : names - 1 - i + thread * 500) % names;
+					symbols[thread][name] = table.intern("n" + name);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		
+		assertEquals(names, table.size(), "size");
+		Set<Integer> assigned = new HashSet<>();
+		for (int i = 0; i < names; i++)
+		{
+			for (int t = 1; t < threadCount; t++)
+				assertEquals(symbols[0][i], symbols[t][i], "threads agree on n" + i);
+			assertEquals("n" + i, table.getName(symbols[0][i]), "name of n" + i);
+			assigned.add(symbols[0][i]);
+		}
+		for (int i = 0; i < names; i++)
+			assertTrue(assigned.contains(i), "symbols are dense: " + i);
+	}
+	
+	private static void internsResourceTags()
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		EngineSymbolTable table = resources.getSymbolTable();
+		resources.addResource(new Tagged("a", "red", "big"));
+		resources.addResource(new Tagged("b", new String("red")));
+		resources.addResource(new Other("c", "red", "small"));
+		assertEquals(3, table.size(), "tags of every set share the table");
+		assertTrue(table.lookup("red") >= 0 && table.lookup("big") >= 0 && table.lookup("small") >= 0, "tags are interned");
+		assertEquals(-1, table.lookup("a"), "ids are not interned");
+		
+		ResourceSet<Tagged> set = resources.getResourceSet(Tagged.class);
+		Tagged[] out = new Tagged[4];
+		assertEquals(2, set.getByTag(new String("red"), out), "match by an equal string");
+		assertEquals(0, set.getByTag("missing", out), "unknown tag");
+		assertEquals(0, set.getByTags(new String[]{"missing"}, null, null, out), "unknown tags");
+		assertEquals(2, set.getByTags(new String[]{"red"}, null, new String[]{"missing"}, out), "unknown excluded tag");
+		assertEquals(3, table.size(), "queries do not intern");
+		
+		set.remove("a");
+		assertTrue(table.lookup("big") >= 0, "symbols are kept after removal");
+		resources.addResource(new Tagged("d", "big"));
+		assertEquals(3, table.size(), "symbols are reused by name");
+		assertEquals(1, set.getByTag("big", out), "tag after re-adding");
+	}
+	
+	private static void internsSnapshotTags(File file) throws IOException
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Tagged("a", "red", "big"));
+		resources.addResource(new Tagged("b", "blue"));
+		resources.writeSnapshot(file, HASH);
+		
+		EngineResourceSet loaded = new EngineResourceSet();
+		loaded.addResource(new Other("x", "blue"));
+		int blue = loaded.getSymbolTable().lookup("blue");
+		assertTrue(loaded.readSnapshot(file, HASH), "read");
+		EngineSymbolTable table = loaded.getSymbolTable();
+		assertEquals(3, table.size(), "snapshot tags are interned");
+		assertEquals(blue, table.lookup("blue"), "existing symbols are kept");
+		Tagged[] out = new Tagged[2];
+		ResourceSet<Tagged> set = loaded.getResourceSet(Tagged.class);
+		assertEquals(1, set.getByTag("blue", out), "tag on a loaded set");
+		assertEquals("b", out[0].getId(), "loaded resource");
+		assertEquals(1, set.getByTags(new String[]{"red", "big"}, null, null, out), "tags on a loaded set");
+	}
+	
+	public static class Tagged implements EngineResource
+	{
+		private String id;
+		private String[] tags;
+		
+		public Tagged()
+		{
+		}
+		
+		Tagged(String id, String ... tags)
+		{
+			this.id = id;
+			this.tags = tags;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return tags;
+		}
+		
+		public void setTags(String[] tags)
+		{
+			this.tags = tags;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	public static class Other extends Tagged
+	{
+		public Other()
+		{
+		}
+		
+		Other(String id, String ... tags)
+		{
+			super(id, tags);
+		}
+	}
+	
+}
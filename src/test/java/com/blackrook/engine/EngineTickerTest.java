@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.blackrook.engine.adapter.EngineConfigAdapter;
+import com.blackrook.engine.annotation.element.FaultPolicy;
+import com.blackrook.engine.roles.EngineUpdateListener;
+import com.blackrook.engine.struct.Utils;
+
+public final class EngineTickerTest
+{
+	public static void main(String[] args)
+	{
+		isolatesFailures();
+		quarantinesFailures();
+		System.out.println("EngineTickerTest: OK");
+	}
+	
+	private static void isolatesFailures()
+	{
+		EngineTicker ticker = ticker();
+		Isolated failing = new Isolated();
+		Counter after = new Counter();
+		ticker.add(failing, 0);
+		ticker.add(after, 1);
+		ticker.start();
+		try {
+			waitFor(() -> after.updates.get() >= 10, "updates after a failing listener");
+		} finally {
+			stop(ticker);
+		}
+		assertEquals(failing.updates.get(), ticker.getFailureCount(failing), "isolated failures");
+		assertTrue(failing.updates.get() >= after.updates.get(), "failing listener still updated");
+		assertTrue(!ticker.isQuarantined(failing), "isolated listener not quarantined");
+		assertEquals((long)failing.updates.get(), ticker.getFailureCount(), "total failures");
+		assertEquals(0, ticker.getFailureCount(after), "failures of a working listener");
+	}
+	
+	private static void quarantinesFailures()
+	{
+		EngineTicker ticker = ticker();
+		Quarantined failing = new Quarantined();
+		Counter after = new Counter();
+		ticker.add(failing, 0);
+		ticker.add(after, 1);
+		ticker.start();
+		try {
+			waitFor(() -> after.updates.get() >= 10, "updates after a failing listener");
+			assertEquals(3, failing.updates.get(), "updates until quarantined");
+			assertTrue(ticker.isQuarantined(failing), "quarantined");
+			assertEquals(3, ticker.getFailureCount(failing), "quarantined failures");
+			assertTrue(ticker.listFaults().contains("QUARANTINE"), "fault listing");
+			
+			assertTrue(ticker.release(failing), "released");
+			assertTrue(!ticker.release(failing), "released twice");
+			waitFor(() -> ticker.isQuarantined(failing), "quarantined again");
+			assertEquals(6, failing.updates.get(), "updates after release");
+		} finally {
+			stop(ticker);
+		}
+	}
+	
+	private static EngineTicker ticker()
+	{
+		return new EngineTicker(new EngineLoggingFactory().getLogger(EngineTickerTest.class), null, new EngineConfigAdapter()
+		{
+			@Override
+			public Integer getUpdatesPerSecond()
+			{
+				return 1000;
+			}
+		});
+	}
+	
+	private static void stop(EngineTicker ticker)
+	{
+		ticker.stop();
+		// let the last update finish before the results are checked.
+		Utils.sleep(20);
+	}
+	
+	private static void waitFor(BooleanSupplier condition, String message)
+	{
+		long end = System.currentTimeMillis() + 5000L;
+		while (!condition.getAsBoolean())
+		{
+			assertTrue(System.currentTimeMillis() < end, "timed out waiting for " + message);
+			Utils.sleep(1);
+		}
+	}
+	
+	private static class Counter implements EngineUpdateListener
+	{
+		protected final AtomicInteger updates = new AtomicInteger(0);
+		
+		@Override
+		public void update(long tick, long currentNanos)
+		{
+			updates.incrementAndGet();
+		}
+	}
+	
+	@FaultPolicy(FaultPolicy.Type.ISOLATE)
+	private static class Isolated extends Counter
+	{
+		@Override
+		public void update(long tick, long currentNanos)
+		{
+			super.update(tick, currentNanos);
+			throw new IllegalStateException("Update failed.");
+		}
+	}
+	
+	@FaultPolicy(value = FaultPolicy.Type.QUARANTINE, threshold = 3)
+	private static class Quarantined extends Isolated
+	{
+	}
+	
+}
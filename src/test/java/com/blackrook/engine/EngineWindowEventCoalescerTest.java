@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.blackrook.engine.roles.EngineRawWindowListener;
+import com.blackrook.engine.roles.EngineWindowListener;
+import com.blackrook.engine.struct.CopyOnWriteOrderedList;
+
+public final class EngineWindowEventCoalescerTest
+{
+	public static void main(String[] args)
+	{
+		collapsesMoves();
+		keepsEventOrder();
+		deliversInArrivalOrder();
+		waitsForInterval();
+		skipsRawListeners();
+		System.out.println("EngineWindowEventCoalescerTest: OK");
+	}
+	
+	private static void collapsesMoves()
+	{
+		List<String> events = new ArrayList<>();
+		EngineWindowEventCoalescer coalescer = new EngineWindowEventCoalescer(listeners(new EventLog(events)), 0);
+		coalescer.mouseMove(1, 1);
+		coalescer.mouseMove(2, 2);
+		coalescer.mouseMove(3, 3);
+		coalescer.resize(10, 10);
+		coalescer.resize(20, 20);
+		coalescer.update(0L, System.nanoTime());
+		assertEquals("[move 3 3, resize 20 20]", events.toString(), "collapsed events");
+		assertEquals(3L, coalescer.getCoalescedCount(), "coalesced count");
+		
+		events.clear();
+		coalescer.update(1L, System.nanoTime());
+		assertEquals("[]", events.toString(), "nothing pending");
+	}
+	
+	private static void keepsEventOrder()
+	{
+		List<String> events = new ArrayList<>();
+		EngineWindowEventCoalescer coalescer = new EngineWindowEventCoalescer(listeners(new EventLog(events)), 0);
+		coalescer.mouseMove(1, 1);
+		coalescer.mouseMove(2, 2);
+		coalescer.post((listener) -> listener.onFocus());
+		coalescer.mouseMove(3, 3);
+		coalescer.post((listener) -> listener.onBlur());
+		assertEquals("[]", events.toString(), "delivered before update");
+		coalescer.update(0L, System.nanoTime());
+		assertEquals("[move 2 2, focus, move 3 3, blur]", events.toString(), "events around a posted event");
+	}
+	
+	private static void deliversInArrivalOrder()
+	{
+		List<String> events = new ArrayList<>();
+		EngineWindowEventCoalescer coalescer = new EngineWindowEventCoalescer(listeners(new EventLog(events)), 0);
+		coalescer.resize(10, 10);
+		coalescer.mouseMove(1, 1);
+		coalescer.update(0L, System.nanoTime());
+		assertEquals("[resize 10 10, move 1 1]", events.toString(), "resize recorded first");
+		
+		events.clear();
+		coalescer.mouseMove(2, 2);
+		coalescer.resize(20, 20);
+		coalescer.mouseMove(3, 3);
+		coalescer.update(1L, System.nanoTime());
+		assertEquals("[resize 20 20, move 3 3]", events.toString(), "move recorded last");
+	}
+	
+	private static void waitsForInterval()
+	{
+		List<String> events = new ArrayList<>();
+		EngineWindowEventCoalescer coalescer = new EngineWindowEventCoalescer(listeners(new EventLog(events)), 100);
+		long start = System.nanoTime();
+		coalescer.mouseMove(1, 1);
+		coalescer.update(0L, start);
+		coalescer.mouseMove(2, 2);
+		coalescer.mouseMove(3, 3);
+		coalescer.update(1L, start + 50000000L);
+		assertEquals("[move 1 1]", events.toString(), "move inside interval");
+		coalescer.update(2L, start + 100000000L);
+		assertEquals("[move 1 1, move 3 3]", events.toString(), "move after interval");
+	}
+	
+	private static void skipsRawListeners()
+	{
+		List<String> events = new ArrayList<>();
+		List<String> rawEvents = new ArrayList<>();
+		CopyOnWriteOrderedList<EngineWindowListener> listeners = listeners(new EventLog(events));
+		listeners.add(new RawEventLog(rawEvents), 1);
+		EngineWindowEventCoalescer coalescer = new EngineWindowEventCoalescer(listeners, 0);
+		coalescer.mouseMove(1, 1);
+		coalescer.post((listener) -> listener.onClosing());
+		coalescer.update(0L, System.nanoTime());
+		assertEquals("[move 1 1, closing]", events.toString(), "coalesced listener");
+		assertEquals("[]", rawEvents.toString(), "raw listener");
+	}
+	
+	private static CopyOnWriteOrderedList<EngineWindowListener> listeners(EngineWindowListener listener)
+	{
+		CopyOnWriteOrderedList<EngineWindowListener> out = new CopyOnWriteOrderedList<>();
+		out.add(listener, 0);
+		return out;
+	}
+	
+	private static class EventLog implements EngineWindowListener
+	{
+		private final List<String> events;
+		
+		EventLog(List<String> events)
+		{
+			this.events = events;
+		}
+		
+		@Override
+		public void onClosing()
+		{
+			events.add("closing");
+		}
+
+		@Override
+		public void onMinimize()
+		{
+			events.add("minimize");
+		}
+
+		@Override
+		public void onRestore()
+		{
+			events.add("restore");
+		}
+
+		@Override
+		public void onFocus()
+		{
+			events.add("focus");
+		}
+
+		@Override
+		public void onBlur()
+		{
+			events.add("blur");
+		}
+
+		@Override
+		public void onMouseEnter()
+		{
+			events.add("enter");
+		}
+
+		@Override
+		public void onMouseExit()
+		{
+			events.add("exit");
+		}
+
+		@Override
+		public void onMouseMove(int canvasX, int canvasY)
+		{
+			events.add("move " + canvasX + " " + canvasY);
+		}
+
+		@Override
+		public void onResize(int width, int height)
+		{
+			events.add("resize " + width + " " + height);
+		}
+
+		@Override
+		public void onMove(int positionX, int positionY)
+		{
+			events.add("position " + positionX + " " + positionY);
+		}
+	}
+	
+	private static class RawEventLog extends EventLog implements EngineRawWindowListener
+	{
+		RawEventLog(List<String> events)
+		{
+			super(events);
+		}
+	}
+	
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import com.blackrook.engine.struct.PersistentArray;
+import com.blackrook.engine.struct.PersistentHashMap;
+import com.blackrook.engine.struct.PersistentLongHashMap;
+import com.blackrook.engine.struct.PersistentOrdinalSet;
+import com.blackrook.engine.struct.PersistentSortedLongMap;
+
+public final class PersistentStructTest
+{
+	public static void main(String[] args)
+	{
+		Random random = new Random(34L);
+		for (int round = 0; round < 8; round++)
+			matchesSortedReference(random, round % 2 == 0 ? 50 : 100000);
+		for (int round = 0; round < 6; round++)
+			matchesHashReference(random, round % 2 == 0 ? 100 : 1 << 20);
+		System.out.println("PersistentStructTest: OK");
+	}
+	
+	// Changes a sorted map with a mix of shared and unshared edit tokens, and checks that old copies are unchanged.
+	private static void matchesSortedReference(Random random, int range)
+	{
+		TreeMap<Long, TreeMap<Integer, String>> reference = new TreeMap<>();
+		PersistentSortedLongMap<String> map = PersistentSortedLongMap.empty();
+		List<PersistentSortedLongMap<String>> oldMaps = new ArrayList<>();
+		List<List<String>> oldValues = new ArrayList<>();
+		Object edit = new Object();
+		for (int op = 0; op < 10000; op++)
+		{
+			if (op % 997 == 0)
+			{
+				oldMaps.add(map);
+				oldValues.add(flatten(reference));
+				edit = random.nextBoolean() ? new Object() : null;
+			}
+			long key = random.nextInt(range) - range / 2;
+			int order = random.nextInt(3000);
+			if (random.nextInt(10) < (op < 5000 ? 6 : 3))
+			{
+				String value = key + ":" + order + ":" + op;
+				map = map.add(edit, key, order, value);
+				reference.computeIfAbsent(key, k -> new TreeMap<>()).put(order, value);
+			}
+			else
+			{
+				map = map.remove(edit, key, order);
+				TreeMap<Integer, String> orders = reference.get(key);
+				if (orders != null && orders.remove(order) != null && orders.isEmpty())
+					reference.remove(key);
+			}
+		}
+		
+		assertEquals(flatten(reference), values(map), "sorted values");
+		for (int i = 0; i < oldMaps.size(); i++)
+			assertEquals(oldValues.get(i), values(oldMaps.get(i)), "old sorted values " + i);
+		for (int q = 0; q < 200; q++)
+		{
+			long key = random.nextInt(range + 10) - range / 2 - 5;
+			int lower = 0;
+			for (TreeMap<Integer, String> orders : reference.headMap(key, false).values())
+				lower += orders.size();
+			int upper = lower + (reference.containsKey(key) ? reference.get(key).size() : 0);
+			assertEquals(lower, map.lowerBound(key), "lower bound " + key);
+			assertEquals(upper, map.upperBound(key), "upper bound " + key);
+		}
+		
+		List<String> expected = flatten(reference);
+		int size = expected.size();
+		long[] keys = new long[size];
+		int[] orders = new int[size];
+		String[] values = new String[size];
+		int i = 0;
+		for (Map.Entry<Long, TreeMap<Integer, String>> entry : reference.entrySet())
+			for (Map.Entry<Integer, String> inner : entry.getValue().entrySet())
+			{
+				keys[i] = entry.getKey();
+				orders[i] = inner.getKey();
+				values[i++] = inner.getValue();
+			}
+		assertEquals(expected, values(PersistentSortedLongMap.of(keys, orders, values, size)), "bulk values");
+	}
+	
+	// Changes the hashed structures, and checks that the copies taken before each new edit token are unchanged.
+	private static void matchesHashReference(Random random, int range)
+	{
+		Map<Long, String> longReference = new HashMap<>();
+		Map<String, String> reference = new HashMap<>();
+		TreeSet<Integer> setReference = new TreeSet<>();
+		Map<Integer, String> arrayReference = new HashMap<>();
+		PersistentLongHashMap<String> longMap = PersistentLongHashMap.empty();
+		PersistentHashMap<String, String> map = PersistentHashMap.empty();
+		PersistentOrdinalSet set = PersistentOrdinalSet.EMPTY;
+		PersistentArray<String> array = PersistentArray.empty();
+		
+		PersistentLongHashMap<String> oldLongMap = longMap;
+		Map<Long, String> oldLongReference = new HashMap<>();
+		PersistentOrdinalSet oldSet = set;
+		TreeSet<Integer> oldSetReference = new TreeSet<>();
+		Object edit = new Object();
+		for (int op = 0; op < 20000; op++)
+		{
+			if (op % 1000 == 0)
+			{
+				oldLongMap = longMap;
+				oldLongReference = new HashMap<>(longReference);
+				oldSet = set;
+				oldSetReference = new TreeSet<>(setReference);
+				edit = new Object();
+			}
+			long key = random.nextInt(range) * 0x100000001L;
+			int ordinal = random.nextInt(range);
+			String name = "k" + (ordinal % 5000);
+			if (random.nextInt(10) < 6)
+			{
+				longMap = longMap.put(edit, key, "v" + op);
+				longReference.put(key, "v" + op);
+				map = map.put(edit, name, "v" + op);
+				reference.put(name, "v" + op);
+				set = set.add(edit, ordinal);
+				setReference.add(ordinal);
+				array = array.set(edit, ordinal, "v" + op);
+				arrayReference.put(ordinal, "v" + op);
+			}
+			else
+			{
+				longMap = longMap.remove(edit, key);
+				longReference.remove(key);
+				map = map.remove(edit, name);
+				reference.remove(name);
+				set = set.remove(edit, ordinal);
+				setReference.remove(ordinal);
+			}
+		}
+		
+		assertEquals(longReference.size(), longMap.size(), "long map size");
+		for (Map.Entry<Long, String> entry : longReference.entrySet())
+			assertEquals(entry.getValue(), longMap.get(entry.getKey()), "long map value");
+		assertEquals(oldLongReference.size(), oldLongMap.size(), "old long map size");
+		for (Map.Entry<Long, String> entry : oldLongReference.entrySet())
+			assertEquals(entry.getValue(), oldLongMap.get(entry.getKey()), "old long map value");
+		assertEquals(reference.size(), map.size(), "map size");
+		for (Map.Entry<String, String> entry : reference.entrySet())
+			assertEquals(entry.getValue(), map.get(entry.getKey()), "map value");
+		assertEquals(new ArrayList<>(setReference), ordinals(set), "set");
+		assertEquals(new ArrayList<>(oldSetReference), ordinals(oldSet), "old set");
+		for (Map.Entry<Integer, String> entry : arrayReference.entrySet())
+			assertEquals(entry.getValue(), array.get(entry.getKey()), "array value");
+	}
+	
+	private static List<String> flatten(TreeMap<Long, TreeMap<Integer, String>> reference)
+	{
+		List<String> out = new ArrayList<>();
+		for (TreeMap<Integer, String> orders : reference.values())
+			out.addAll(orders.values());
+		return out;
+	}
+	
+	private static List<String> values(PersistentSortedLongMap<String> map)
+	{
+		List<String> out = new ArrayList<>(map.size());
+		for (int i = 0; i < map.size(); i++)
+			out.add(map.getValue(i));
+		return out;
+	}
+	
+	private static List<Integer> ordinals(PersistentOrdinalSet set)
+	{
+		List<Integer> out = new ArrayList<>();
+		for (int i = set.next(0); i >= 0; i = set.next(i + 1))
+			out.add(i);
+		return out;
+	}
+	
+}
@@ -0,0 +1,337 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.Indexed;
+import com.blackrook.engine.exception.EngineSetupException;
+
+public final class ResourceSetChangeTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		removesEverywhere();
+		replacesEverywhere();
+		reindexesChangedValues();
+		keepsOldVersions();
+		defersChangesInBatch();
+		checksUniqueValues();
+		matchesReference();
+		System.out.println("ResourceSetChangeTest: OK");
+	}
+	
+	private static void removesEverywhere()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		set.add(new Thing("a", 1, "red", "x"));
+		set.add(new Thing("b", 1, "red", "x"));
+		set.add(new Thing("c", 2, "blue", "y"));
+		
+		assertEquals("b", set.remove("b").getId(), "removed resource");
+		assertEquals(null, set.remove("b"), "remove again");
+		assertEquals(null, set.get("b"), "id");
+		assertEquals(2, set.size(), "size");
+		assertEquals("[a]", byIndex(set, 1), "index");
+		assertEquals("[a]", byKey(set, "red"), "key");
+		assertEquals("[a]", byTag(set, "x"), "tag");
+		assertEquals(-1, set.ordinalOf("b"), "ordinal");
+	}
+	
+	private static void replacesEverywhere()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		set.add(new Thing("a", 1, "red", "x"));
+		set.add(new Thing("b", 2, "blue", "y"));
+		int ordinal = set.ordinalOf("a");
+		
+		Thing old = set.get("a");
+		assertTrue(old == set.replace(new Thing("a", 5, "green", "y")), "replaced resource");
+		assertEquals(null, set.replace(new Thing("c", 6, "green", "z")), "new resource");
+		assertEquals(ordinal, set.ordinalOf("a"), "ordinal kept");
+		assertEquals("[]", byIndex(set, 1), "old index value");
+		assertEquals("[a]", byIndex(set, 5), "new index value");
+		assertEquals("[]", byKey(set, "red"), "old key");
+		assertEquals("[a, c]", byKey(set, "green"), "new key");
+		assertEquals("[]", byTag(set, "x"), "old tag");
+		assertEquals("[a, b]", byTag(set, "y"), "new tag");
+	}
+	
+	private static void reindexesChangedValues()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		Thing a = new Thing("a", 1, "red", "x");
+		set.add(a);
+		set.add(new Thing("b", 3, "blue", "x"));
+		
+		a.count = 4;
+		a.color = "blue";
+		a.tags = new String[]{"y"};
+		assertEquals("[a]", byIndex(set, 1), "not seen before reindex");
+		assertTrue(set.reindex("a"), "reindex");
+		assertTrue(!set.reindex("z"), "reindex missing");
+		assertEquals("[]", byIndex(set, 1), "old index value");
+		Thing[] out = new Thing[2];
+		assertEquals("[b, a]", Arrays.toString(Arrays.copyOf(out, set.getBeforeIndexValue("count", 10, out))), "new position");
+		assertEquals("[a, b]", byKey(set, "blue"), "new key");
+		assertEquals("[a]", byTag(set, "y"), "new tag");
+		assertEquals("[b]", byTag(set, "x"), "old tag");
+	}
+	
+	private static void keepsOldVersions()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		for (int i = 0; i < 100; i++)
+			set.add(new Thing("t" + i, i, "red", "x"));
+		
+		Iterator<Thing> all = set.iterator();
+		Iterator<Thing> range = set.iterateIndexRange("count", 10, true, 20, false);
+		for (int i = 0; i < 100; i += 2)
+			set.remove("t" + i);
+		set.replace(new Thing("t11", 500, "red", "x"));
+		
+		int count = 0;
+		while (all.hasNext())
+		{
+			all.next();
+			count++;
+		}
+		assertEquals(100, count, "iterator of old version");
+		StringBuilder sb = new StringBuilder();
+		while (range.hasNext())
+			sb.append(range.next().count).append(' ');
+		assertEquals("10 11 12 13 14 15 16 17 18 19 ", sb.toString(), "range of old version");
+		assertEquals(50, set.size(), "new size");
+		Thing[] out = new Thing[10];
+		assertEquals("[t13, t15, t17, t19]", Arrays.toString(Arrays.copyOf(out, set.getInIndexRange("count", 10, true, 20, false, out))), "range of new version");
+	}
+	
+	private static void defersChangesInBatch() throws Exception
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		for (int i = 0; i < 4; i++)
+			resources.addResource(new Thing("t" + i, i, "red", "x"));
+		ResourceSet<Thing> set = resources.getResourceSet(Thing.class);
+		
+		resources.beginUpdate();
+		try {
+			set.remove("t0");
+			set.get("t1").count = 10;
+			set.reindex("t1");
+			set.replace(new Thing("t2", 20, "blue", "x"));
+			
+			assertEquals(null, set.get("t0"), "batch thread sees removal");
+			assertEquals("[t1]", byIndex(set, 10), "batch thread sees reindex");
+			assertEquals("[t2]", byKey(set, "blue"), "batch thread sees replace");
+			
+			assertEquals("t0", onOtherThread(() -> set.get("t0") != null ? "t0" : null), "other thread does not see removal");
+			assertEquals("[]", onOtherThread(() -> byIndex(set, 10)), "other thread does not see reindex");
+			assertEquals("[]", onOtherThread(() -> byKey(set, "blue")), "other thread does not see replace");
+			assertEquals(4, onOtherThread(set::size), "other thread size");
+		} finally {
+			resources.endUpdate();
+		}
+		
+		assertEquals(null, onOtherThread(() -> set.get("t0")), "removal published");
+		assertEquals("[t1]", onOtherThread(() -> byIndex(set, 10)), "reindex published");
+		assertEquals("[t2]", onOtherThread(() -> byKey(set, "blue")), "replace published");
+		assertThrows(IllegalStateException.class, resources::endUpdate, "unmatched end");
+	}
+	
+	private static void checksUniqueValues()
+	{
+		ResourceSet<Coded> set = new ResourceSet<>(Coded.class);
+		set.add(new Coded("a", 1));
+		Coded b = new Coded("b", 2);
+		set.add(b);
+		
+		assertThrows(EngineSetupException.class, () -> set.replace(new Coded("b", 1)), "replace into a used value");
+		assertEquals(2, set.get("b").code, "resource kept after failed replace");
+		
+		b.code = 1;
+		assertThrows(EngineSetupException.class, () -> set.reindex("b"), "reindex into a used value");
+		assertEquals("b", set.getUnique("code", 2).getId(), "index kept after failed reindex");
+		b.code = 2;
+		
+		set.remove("a");
+		set.replace(new Coded("b", 1));
+		assertEquals("b", set.getUnique("code", 1).getId(), "removed value is free");
+		assertEquals(null, set.getUnique("code", 2), "replaced value is free");
+	}
+	
+	// Applies random changes to a set and a map, and compares each index to the map.
+	private static void matchesReference()
+	{
+		Random random = new Random(34L);
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Thing("seed", 0, "red", "x"));
+		ResourceSet<Thing> set = resources.getResourceSet(Thing.class);
+		Map<String, Thing> reference = new HashMap<>();
+		reference.put("seed", set.get("seed"));
+		String[] colors = {"red", "green", "blue"};
+		
+		for (int round = 0; round < 20; round++)
+		{
+			boolean batch = round % 2 == 0;
+			if (batch)
+				resources.beginUpdate();
+			for (int op = 0; op < 300; op++)
+			{
+				String id = "t" + random.nextInt(200);
+				Thing thing;
+				switch (random.nextInt(3))
+				{
+					case 0:
+						thing = new Thing(id, random.nextInt(20), colors[random.nextInt(3)], "x");
+						set.replace(thing);
+						reference.put(id, thing);
+						break;
+					case 1:
+						assertTrue(set.remove(id) == reference.remove(id), "removed " + id);
+						break;
+					default:
+						if ((thing = reference.get(id)) != null)
+						{
+							thing.count = random.nextInt(20);
+							thing.color = colors[random.nextInt(3)];
+						}
+						assertEquals(thing != null, set.reindex(id), "reindexed " + id);
+						break;
+				}
+			}
+			if (batch)
+				resources.endUpdate();
+			
+			assertEquals(reference.size(), set.size(), "size");
+			Thing[] out = new Thing[reference.size()];
+			for (int value = 0; value < 20; value++)
+			{
+				List<String> expected = new ArrayList<>();
+				for (Thing thing : reference.values())
+					if (thing.count == value)
+						expected.add(thing.getId());
+				List<String> actual = new ArrayList<>();
+				for (int i = 0, n = set.getByIndex("count", value, out); i < n; i++)
+					actual.add(out[i].getId());
+				expected.sort(null);
+				actual.sort(null);
+				assertEquals(expected, actual, "index value " + value);
+			}
+			for (String color : colors)
+			{
+				int expected = 0;
+				for (Thing thing : reference.values())
+					if (thing.color.equals(color))
+						expected++;
+				assertEquals(expected, set.getByKey("color", color, out), "key " + color);
+			}
+		}
+	}
+	
+	private static <T> T onOtherThread(Supplier<T> supplier) throws InterruptedException
+	{
+		AtomicReference<T> out = new AtomicReference<>();
+		Thread thread = new Thread(() -> out.set(supplier.get()));
+		thread.start();
+		thread.join();
+		return out.get();
+	}
+	
+	private static String byIndex(ResourceSet<Thing> set, int value)
+	{
+		Thing[] out = new Thing[16];
+		return Arrays.toString(Arrays.copyOf(out, set.getByIndex("count", value, out)));
+	}
+	
+	private static String byKey(ResourceSet<Thing> set, String color)
+	{
+		Thing[] out = new Thing[16];
+		return Arrays.toString(Arrays.copyOf(out, set.getByKey("color", color, out)));
+	}
+	
+	private static String byTag(ResourceSet<Thing> set, String tag)
+	{
+		Thing[] out = new Thing[16];
+		return Arrays.toString(Arrays.copyOf(out, set.getByTag(tag, out)));
+	}
+	
+	public static class Thing implements EngineResource
+	{
+		private final String id;
+		@Indexed
+		public int count;
+		@Indexed
+		public String color;
+		private String[] tags;
+		
+		Thing(String id, int count, String color, String tag)
+		{
+			this.id = id;
+			this.count = count;
+			this.color = color;
+			this.tags = new String[]{tag};
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return tags;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	public static class Coded implements EngineResource
+	{
+		private final String id;
+		@Indexed(unique = true)
+		public int code;
+		
+		Coded(String id, int code)
+		{
+			this.id = id;
+			this.code = code;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+	}
+	
+}
@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.Column;
+import com.blackrook.engine.annotation.resource.Indexed;
+import com.blackrook.engine.exception.EngineSetupException;
+
+public final class ResourceSetColumnTest
+{
+	private static final byte[] HASH = {4, 5};
+	
+	public static void main(String[] args) throws IOException
+	{
+		matchesResources();
+		keepsStableViews();
+		filtersOrdinals();
+		handlesEmptyColumns();
+		rejectsNonNumericColumns();
+		File file = File.createTempFile("columns", ".bin");
+		try {
+			roundTripsSnapshots(file);
+		} finally {
+			file.delete();
+		}
+		System.out.println("ResourceSetColumnTest: OK");
+	}
+	
+	private static void matchesResources()
+	{
+		EngineResourceSet resources = createResources(new Random(45L));
+		verify(resources.getResourceSet(Unit.class), "live");
+		assertEquals(null, resources.getResourceSet(Unit.class).getColumn("missing"), "missing column");
+	}
+	
+	private static void keepsStableViews()
+	{
+		EngineResourceSet resources = createResources(new Random(46L));
+		ResourceSet<Unit> set = resources.getResourceSet(Unit.class);
+		EngineResourceColumnView before = set.getColumn("hp");
+		long sum = before.getLongSum();
+		int count = before.getCount();
+		set.add(new Unit("added", 100000, 1f, null));
+		assertEquals(sum, before.getLongSum(), "old view sum");
+		assertEquals(count, before.getCount(), "old view count");
+		assertTrue(!before.hasValue(set.ordinalOf("added")), "old view has no new value");
+		assertEquals(sum + 100000, set.getColumn("hp").getLongSum(), "new view sum");
+		assertEquals(100000L, set.getColumn("hp").getLong(set.ordinalOf("added")), "new view value");
+		
+		resources.beginUpdate();
+		try {
+			set.remove("added");
+			assertEquals(sum, set.getColumn("hp").getLongSum(), "batch reads its own changes");
+		} finally {
+			resources.endUpdate();
+		}
+	}
+	
+	private static void filtersOrdinals()
+	{
+		ResourceSet<Unit> set = new ResourceSet<>(Unit.class);
+		for (int i = 0; i < 10; i++)
+			set.add(new Unit("u" + i, i * 10, i, i % 3 == 0 ? null : (double)i));
+		EngineResourceColumnView hp = set.getColumn("hp");
+		EngineResourceColumnView weight = set.getColumn("w");
+		
+		int[] out = new int[10];
+		int count = hp.getOrdinalsWhereLong((v) -> v >= 50, out, 0);
+		assertEquals(5, count, "filter count");
+		for (int i = 0; i < count; i++)
+			assertEquals(5 + i, out[i], "filter ordinal " + i);
+		assertEquals(3, hp.getOrdinalsWhereLong((v) -> true, new int[3], 0), "output limit");
+		
+		out = new int[10];
+		count = weight.getOrdinalsWhereDouble((v) -> v > 4.5, out, 2);
+		assertEquals(3, count, "double filter count");
+		assertEquals(0, out[0], "offset leaves the start alone");
+		assertEquals(5, out[2], "double filter first");
+		assertEquals(7, out[3], "double filter second");
+		assertEquals(8, out[4], "double filter third");
+		assertEquals(10, set.getColumn("speed").getOrdinalsWhereDouble((v) -> true, new int[10], 0), "float column");
+		
+		assertThrows(IllegalStateException.class, () -> weight.getLongSum(), "long sum of a double column");
+		assertThrows(IllegalStateException.class, () -> weight.getOrdinalsWhereLong((v) -> true, new int[1], 0), "long filter of a double column");
+	}
+	
+	private static void handlesEmptyColumns()
+	{
+		ResourceSet<Unit> set = new ResourceSet<>(Unit.class);
+		set.add(new Unit("a", 5, 1f, null));
+		set.remove("a");
+		EngineResourceColumnView hp = set.getColumn("hp");
+		EngineResourceColumnView weight = set.getColumn("w");
+		assertEquals(0, hp.getCount(), "count");
+		assertEquals(0L, hp.getLongSum(), "long sum");
+		assertEquals(Long.MAX_VALUE, hp.getLongMin(), "long min");
+		assertEquals(Long.MIN_VALUE, hp.getLongMax(), "long max");
+		assertTrue(Double.isNaN(hp.getMin()) && Double.isNaN(hp.getMax()), "integral min and max");
+		assertTrue(Double.isNaN(weight.getMin()) && Double.isNaN(weight.getMax()), "double min and max");
+		assertEquals(0.0, weight.getSum(), "double sum");
+		assertEquals(0L, hp.getLong(0), "no value");
+		assertTrue(!hp.hasValue(0) && !hp.hasValue(-1) && !hp.hasValue(100), "has no values");
+	}
+	
+	private static void rejectsNonNumericColumns()
+	{
+		assertThrows(EngineSetupException.class, () -> new ResourceSet<>(Named.class), "string column");
+	}
+	
+	private static void roundTripsSnapshots(File file) throws IOException
+	{
+		createResources(new Random(47L)).writeSnapshot(file, HASH);
+		for (int cacheSize : new int[]{0, 16})
+		{
+			EngineResourceSet loaded = new EngineResourceSet();
+			assertTrue(loaded.readSnapshot(file, HASH, cacheSize), "read with cache " + cacheSize);
+			verify(loaded.getResourceSet(Unit.class), "snapshot with cache " + cacheSize);
+		}
+	}
+	
+	private static EngineResourceSet createResources(Random random)
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		for (int i = 0; i < 3000; i++)
+		{
+			String id = "u" + random.nextInt(1500);
+			ResourceSet<Unit> set = resources.getResourceSet(Unit.class);
+			if (set != null && random.nextInt(6) == 0)
+				set.remove(id);
+			else
+				resources.addResource(new Unit(id, random.nextInt(100) - 10, random.nextFloat(), random.nextInt(4) == 0 ? null : random.nextGaussian()));
+		}
+		return resources;
+	}
+	
+	// Checks each column against the resources themselves.
+	private static void verify(ResourceSet<Unit> set, String message)
+	{
+		EngineResourceColumnView hp = set.getColumn("hp");
+		EngineResourceColumnView weight = set.getColumn("w");
+		EngineResourceColumnView speed = set.getColumn("speed");
+		assertTrue(hp.isIntegral(), message + ": hp is integral");
+		assertTrue(!weight.isIntegral() && !speed.isIntegral(), message + ": w and speed are not integral");
+		
+		long sum = 0L;
+		long min = Long.MAX_VALUE;
+		long max = Long.MIN_VALUE;
+		double weightSum = 0.0;
+		double weightMin = Double.NaN;
+		int weightCount = 0;
+		double speedMax = Double.NEGATIVE_INFINITY;
+		List<Integer> over = new ArrayList<>();
+		for (Unit unit : set)
+		{
+			int ordinal = set.ordinalOf(unit.getId());
+			assertTrue(hp.hasValue(ordinal), message + ": hp at " + ordinal);
+			assertEquals((long)unit.hp, hp.getLong(ordinal), message + ": hp value at " + ordinal);
+			assertEquals((double)unit.speed, speed.getDouble(ordinal), message + ": speed value at " + ordinal);
+			assertEquals(unit.weight != null, weight.hasValue(ordinal), message + ": w at " + ordinal);
+			sum += unit.hp;
+			min = Math.min(min, unit.hp);
+			max = Math.max(max, unit.hp);
+			speedMax = Math.max(speedMax, unit.speed);
+			if (unit.weight != null)
+			{
+				assertEquals(unit.weight, weight.getDouble(ordinal), message + ": w value at " + ordinal);
+				weightSum += unit.weight;
+				weightCount++;
+				if (!(unit.weight >= weightMin))
+					weightMin = unit.weight;
+			}
+			if (unit.hp > 50)
+				over.add(ordinal);
+		}
+		over.sort(null);
+		
+		assertEquals(set.size(), hp.getCount(), message + ": hp count");
+		assertEquals(sum, hp.getLongSum(), message + ": hp sum");
+		assertEquals(min, hp.getLongMin(), message + ": hp min");
+		assertEquals(max, hp.getLongMax(), message + ": hp max");
+		assertEquals((double)sum, hp.getSum(), message + ": hp sum as double");
+		assertEquals(weightCount, weight.getCount(), message + ": w count");
+		assertTrue(Math.abs(weight.getSum() - weightSum) < 1e-6, message + ": w sum");
+		assertEquals(weightMin, weight.getMin(), message + ": w min");
+		assertEquals(speedMax, speed.getMax(), message + ": speed max");
+		
+		int[] out = new int[set.getOrdinalLimit()];
+		int count = hp.getOrdinalsWhereLong((v) -> v > 50, out, 0);
+		List<Integer> found = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+			found.add(out[i]);
+		assertEquals(over, found, message + ": hp filter");
+	}
+	
+	public static class Unit implements EngineResource
+	{
+		private String id;
+		@Column
+		public int hp;
+		@Indexed
+		@Column
+		public float speed;
+		private Double weight;
+		
+		public Unit()
+		{
+		}
+		
+		Unit(String id, int hp, float speed, Double weight)
+		{
+			this.id = id;
+			this.hp = hp;
+			this.speed = speed;
+			this.weight = weight;
+		}
+		
+		@Column("w")
+		public Double getWeight()
+		{
+			return weight;
+		}
+		
+		public void setWeight(Double weight)
+		{
+			this.weight = weight;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	public static class Named implements EngineResource
+	{
+		@Column
+		public String name;
+		
+		@Override
+		public String getId()
+		{
+			return "named";
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+	}
+	
+}
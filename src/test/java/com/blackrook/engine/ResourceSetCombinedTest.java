@@ -0,0 +1,512 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.CombinedSet;
+import com.blackrook.engine.annotation.resource.CompositeIndex;
+import com.blackrook.engine.annotation.resource.Indexed;
+import com.blackrook.engine.exception.EngineSetupException;
+
+public final class ResourceSetCombinedTest
+{
+	private static final byte[] HASH = {5, 0};
+	
+	public static void main(String[] args) throws Exception
+	{
+		combinesMembers();
+		changesThroughCombinedSets();
+		rejectsConflicts();
+		matchesMembers();
+		File file = File.createTempFile("combined", ".bin");
+		try {
+			roundTripsSnapshots(file);
+		} finally {
+			file.delete();
+		}
+		changesConcurrently();
+		System.out.println("ResourceSetCombinedTest: OK");
+	}
+	
+	private static void combinesMembers()
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		assertEquals(null, resources.getCombinedSet(Shape.class), "no combined set before members");
+		Circle circle = new Circle("c1", 3, 1L);
+		Square square = new Square("s1", 3, 2L);
+		Loose loose = new Loose("l1", 5);
+		resources.addResource(circle);
+		resources.addResource(square);
+		resources.addResource(loose);
+		
+		ResourceSet<Shape> shapes = resources.getCombinedSet(Shape.class);
+		ResourceSet<Base> bases = resources.getCombinedSet(Base.class);
+		assertTrue(shapes.isCombined() && bases.isCombined(), "combined");
+		assertTrue(!resources.getResourceSet(Circle.class).isCombined(), "member set is not combined");
+		assertEquals(0, resources.getResourceSet(Circle.class).getMemberTypes().size(), "member set has no members");
+		assertEquals(new HashSet<>(Arrays.asList(Circle.class, Square.class, Loose.class)), new HashSet<>(shapes.getMemberTypes()), "shape members");
+		assertEquals(new HashSet<>(Arrays.asList(Circle.class, Square.class)), new HashSet<>(bases.getMemberTypes()), "base members");
+		assertEquals(3, shapes.size(), "shape count");
+		assertEquals(2, bases.size(), "base count");
+		
+		assertTrue(shapes.get("c1") == circle && shapes.get("l1") == loose, "get by id");
+		assertEquals(null, bases.get("l1"), "not a member");
+		Shape[] out = new Shape[4];
+		assertEquals(2, shapes.getByIndex("size", 3, out), "inherited index");
+		assertEquals(1, shapes.getByKey("kind", "loose", out), "inherited key index");
+		assertTrue(out[0] == loose, "key index result");
+		assertEquals(0, shapes.getByIndex("radius", 3, out), "member-only index is not combined");
+		assertEquals(1, resources.getResourceSet(Circle.class).getByIndex("radius", 3, new Circle[1]), "member-only index on the member");
+		assertTrue(bases.getUnique("serial", 2L) == square, "unique index across members");
+		assertEquals(2, shapes.query().inRange("size", 3, true, 3, true).count(), "query");
+		
+		List<String> ids = new ArrayList<>();
+		for (Shape shape : shapes)
+			ids.add(shape.getId());
+		assertEquals(new HashSet<>(Arrays.asList("c1", "s1", "l1")), new HashSet<>(ids), "iteration");
+	}
+	
+	private static void changesThroughCombinedSets()
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Circle("c1", 3, 1L));
+		ResourceSet<Shape> shapes = resources.getCombinedSet(Shape.class);
+		ResourceSet<Base> bases = resources.getCombinedSet(Base.class);
+		
+		Square square = new Square("s1", 4, 2L);
+		shapes.add(square);
+		assertTrue(resources.getResourceSet(Square.class).get("s1") == square, "add goes to the member set");
+		assertTrue(bases.get("s1") == square, "add shows in every combined set");
+		Loose loose = new Loose("l1", 4);
+		shapes.add(loose);
+		assertTrue(resources.getResourceSet(Loose.class).get("l1") == loose, "add creates the member set");
+		
+		Square replacement = new Square("s1", 8, 2L);
+		assertTrue(bases.replace(replacement) == square, "replace returns the old resource");
+		assertTrue(shapes.get("s1") == replacement, "replaced");
+		Shape[] out = new Shape[4];
+		assertEquals(1, shapes.getByIndex("size", 8, out), "replacement indexed");
+		
+		replacement.size = 9;
+		shapes.reindex("s1");
+		assertEquals(1, shapes.getByIndex("size", 9, out), "reindexed through the combined set");
+		loose.size = 7;
+		resources.getResourceSet(Loose.class).reindex("l1");
+		assertEquals(1, shapes.getByIndex("size", 7, out), "reindexed through the member set");
+		
+		assertEquals(null, bases.remove("l1"), "remove of a non-member");
+		assertTrue(shapes.get("l1") == loose, "non-member is kept");
+		assertTrue(bases.remove("c1") != null, "remove through the combined set");
+		assertEquals(null, resources.getResourceSet(Circle.class).get("c1"), "removed from the member set");
+		assertEquals(null, shapes.get("c1"), "removed from every combined set");
+		resources.getResourceSet(Loose.class).remove("l1");
+		assertEquals(null, shapes.get("l1"), "removed through the member set");
+		assertEquals(1, shapes.size(), "count after removal");
+	}
+	
+	private static void rejectsConflicts()
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Circle("a", 1, 1L));
+		resources.addResource(new Square("b", 2, 2L));
+		ResourceSet<Shape> shapes = resources.getCombinedSet(Shape.class);
+		
+		assertThrows(EngineSetupException.class, () -> resources.addResource(new Square("a", 5, 5L)), "same id in another member");
+		assertEquals(null, resources.getResourceSet(Square.class).get("a"), "conflicting resource is not added");
+		assertTrue(shapes.get("a") instanceof Circle, "combined set is unchanged");
+		assertThrows(EngineSetupException.class, () -> resources.addResource(new Loose("b", 5)), "same id in a new member");
+		assertEquals(2, shapes.size(), "count after conflicts");
+		
+		assertThrows(EngineSetupException.class, () -> resources.addResource(new Square("c", 3, 1L)), "unique index across members");
+		assertEquals(null, resources.getResourceSet(Square.class).get("c"), "unique conflict is not added");
+		assertEquals(null, shapes.get("c"), "unique conflict is not in the combined set");
+		
+		resources.addResource(new Circle("a", 4, 1L));
+		assertEquals(4, shapes.get("a").getSize(), "same id in the same member replaces");
+		assertEquals(2, shapes.size(), "count after replacement");
+		
+		assertThrows(EngineSetupException.class, () -> new EngineResourceSet().addResource(new NotShape()), "combined type that is not a resource");
+	}
+	
+	private static void matchesMembers()
+	{
+		Random random = new Random(50L);
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.beginUpdate();
+		try {
+			for (int i = 0; i < 6000; i++)
+			{
+				EngineResource resource = createResource(random, i);
+				ResourceSet<Shape> shapes = resources.getCombinedSet(Shape.class);
+				try {
+					if (shapes != null && random.nextInt(8) == 0)
+						shapes.remove(resource.getId());
+					else if (shapes != null && random.nextInt(5) == 0)
+						shapes.add((Shape)resource);
+					else
+						resources.addResource(resource);
+				} catch (EngineSetupException e) {
+					// an id in use by another class.
+				}
+			}
+		} finally {
+			resources.endUpdate();
+		}
+		verify(resources, "batch");
+		
+		ResourceSet<Shape> shapes = resources.getCombinedSet(Shape.class);
+		for (EngineResource resource : members(resources))
+		{
+			if (random.nextInt(3) != 0)
+				continue;
+			((Shape)resource).setSize(random.nextInt(50));
+			if (random.nextBoolean())
+				shapes.reindex(resource.getId());
+			else
+				resources.getResourceSet(resource.getClass()).reindex(resource.getId());
+		}
+		verify(resources, "reindex");
+	}
+	
+	private static void roundTripsSnapshots(File file) throws IOException
+	{
+		Random random = new Random(51L);
+		EngineResourceSet resources = new EngineResourceSet();
+		for (int i = 0; i < 3000; i++)
+		{
+			try {
+				resources.addResource(createResource(random, i));
+			} catch (EngineSetupException e) {
+				// an id in use by another class.
+			}
+		}
+		resources.writeSnapshot(file, HASH);
+		
+		for (int cacheSize : new int[]{0, 3})
+		{
+			EngineResourceSet loaded = new EngineResourceSet();
+			assertTrue(loaded.readSnapshot(file, HASH, cacheSize), "read with cache " + cacheSize);
+			verify(loaded, "snapshot with cache " + cacheSize);
+			
+			Circle circle = new Circle("new", 3, 999999L);
+			loaded.addResource(circle);
+			assertTrue(loaded.getCombinedSet(Shape.class).get("new") == circle, "add after a snapshot with cache " + cacheSize);
+			loaded.getCombinedSet(Base.class).remove("new");
+			assertEquals(null, loaded.getResourceSet(Circle.class).get("new"), "remove after a snapshot with cache " + cacheSize);
+			verify(loaded, "changed snapshot with cache " + cacheSize);
+		}
+	}
+	
+	private static void changesConcurrently() throws InterruptedException
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++)
+		{
+			int thread = t;
+			threads[t] = new Thread(() -> {
+				Random random = new Random(thread);
+				for (int i = 0; i < 3000; i++)
+				{
+					EngineResource resource = createResource(random, thread * 3000 + i);
+					try {
+						ResourceSet<? extends EngineResource> set;
+						if (random.nextInt(6) == 0 && (set = resources.getResourceSet(resource.getClass())) != null)
+							set.remove(resource.getId());
+						else
+							resources.addResource(resource);
+					} catch (EngineSetupException e) {
+						// an id in use by another class.
+					}
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads)
+			thread.join();
+		verify(resources, "concurrent");
+	}
+	
+	// Checks the combined sets against the member sets.
+	private static void verify(EngineResourceSet resources, String message)
+	{
+		ResourceSet<Shape> shapes = resources.getCombinedSet(Shape.class);
+		ResourceSet<Base> bases = resources.getCombinedSet(Base.class);
+		List<EngineResource> members = members(resources);
+		assertEquals(members.size(), shapes.size(), message + ": shape count");
+		
+		Set<String> ids = new HashSet<>();
+		int baseCount = 0;
+		for (EngineResource resource : members)
+		{
+			Shape shape = shapes.get(resource.getId());
+			assertTrue(shape != null && shape.getClass() == resource.getClass(), message + ": shape " + resource.getId());
+			assertEquals(((Shape)resource).getSize(), shape.getSize(), message + ": size of " + resource.getId());
+			assertTrue(ids.add(resource.getId()), message + ": ids are unique across members");
+			if (resource instanceof Base)
+			{
+				baseCount++;
+				Base base = bases.getUnique("serial", ((Base)resource).serial);
+				assertTrue(base != null && base.getId().equals(resource.getId()), message + ": serial of " + resource.getId());
+			}
+		}
+		assertEquals(baseCount, bases.size(), message + ": base count");
+		
+		Shape[] out = new Shape[members.size()];
+		for (int size = 0; size < 50; size += 7)
+		{
+			int expected = 0;
+			for (EngineResource resource : members)
+				if (((Shape)resource).getSize() == size)
+					expected++;
+			int count = shapes.getByIndex("size", size, out);
+			assertEquals(expected, count, message + ": size " + size);
+			for (int i = 0; i < count; i++)
+				assertEquals(size, out[i].getSize(), message + ": size of result " + i);
+		}
+		for (String kind : new String[]{"circle", "square", "loose"})
+		{
+			int expected = 0;
+			for (EngineResource resource : members)
+				if (((Shape)resource).getKind().equals(kind))
+					expected++;
+			assertEquals(expected, shapes.getByKey("kind", kind, out), message + ": kind " + kind);
+			assertEquals(expected, shapes.query().withKey("kind", kind).count(), message + ": query kind " + kind);
+		}
+	}
+	
+	private static List<EngineResource> members(EngineResourceSet resources)
+	{
+		List<EngineResource> out = new ArrayList<>();
+		for (Class<? extends EngineResource> type : Arrays.asList(Circle.class, Square.class, Loose.class))
+		{
+			ResourceSet<? extends EngineResource> set;
+			if ((set = resources.getResourceSet(type)) != null)
+				for (EngineResource resource : set)
+					out.add(resource);
+		}
+		return out;
+	}
+	
+	private static EngineResource createResource(Random random, long serial)
+	{
+		String id = "s" + random.nextInt(3000);
+		switch (random.nextInt(3))
+		{
+			case 0:
+				return new Circle(id, random.nextInt(50), serial);
+			case 1:
+				return new Square(id, random.nextInt(50), serial);
+			default:
+				return new Loose(id, random.nextInt(50));
+		}
+	}
+	
+	@CombinedSet
+	public interface Shape extends EngineResource
+	{
+		@Indexed
+		int getSize();
+		
+		void setSize(int size);
+		
+		@Indexed
+		String getKind();
+	}
+	
+	@CombinedSet
+	@CompositeIndex(name = "serial", members = {"serial"}, unique = true)
+	public static abstract class Base implements Shape
+	{
+		private String id;
+		public String[] tags;
+		public long serial;
+		protected int size;
+		
+		Base()
+		{
+			this.tags = new String[0];
+		}
+		
+		Base(String id, int size, long serial)
+		{
+			this();
+			this.id = id;
+			this.size = size;
+			this.serial = serial;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return tags;
+		}
+		
+		@Override
+		public int getSize()
+		{
+			return size;
+		}
+		
+		@Override
+		public void setSize(int size)
+		{
+			this.size = size;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	public static class Circle extends Base
+	{
+		public Circle()
+		{
+		}
+		
+		Circle(String id, int size, long serial)
+		{
+			super(id, size, serial);
+		}
+		
+		@Indexed("radius")
+		public int getRadius()
+		{
+			return size;
+		}
+		
+		@Override
+		public String getKind()
+		{
+			return "circle";
+		}
+	}
+	
+	public static class Square extends Base
+	{
+		public Square()
+		{
+		}
+		
+		Square(String id, int size, long serial)
+		{
+			super(id, size, serial);
+		}
+		
+		@Override
+		public String getKind()
+		{
+			return "square";
+		}
+	}
+	
+	public static class Loose implements Shape
+	{
+		private String id;
+		private int size;
+		
+		public Loose()
+		{
+		}
+		
+		Loose(String id, int size)
+		{
+			this.id = id;
+			this.size = size;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+		
+		@Override
+		public int getSize()
+		{
+			return size;
+		}
+		
+		@Override
+		public void setSize(int size)
+		{
+			this.size = size;
+		}
+		
+		@Override
+		public String getKind()
+		{
+			return "loose";
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	@CombinedSet
+	public interface NotResource
+	{
+	}
+	
+	public static class NotShape implements EngineResource, NotResource
+	{
+		@Override
+		public String getId()
+		{
+			return "not";
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+	}
+	
+}
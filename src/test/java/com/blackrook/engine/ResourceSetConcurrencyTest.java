@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.Indexed;
+
+public final class ResourceSetConcurrencyTest
+{
+	private static final int BATCHES = 100;
+	private static final int BATCH_SIZE = 200;
+	
+	public static void main(String[] args) throws Exception
+	{
+		readsWholeBatches();
+		readsOwnBatch();
+		publishesOuterBatch();
+		waitsForOtherBatch();
+		publishesOnlyOwnBatch();
+		System.out.println("ResourceSetConcurrencyTest: OK");
+	}
+	
+	// A reader running alongside a writer must only ever see whole batches, in every index.
+	private static void readsWholeBatches() throws Exception
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Thing("seed", 0));
+		ResourceSet<Thing> set = resources.getResourceSet(Thing.class);
+		AtomicBoolean done = new AtomicBoolean();
+		AtomicReference<Throwable> failure = new AtomicReference<>();
+		
+		Thread writer = new Thread(() -> {
+			try {
+				for (int b = 0; b < BATCHES; b++)
+				{
+					resources.beginUpdate();
+					try {
+						for (int i = 0; i < BATCH_SIZE; i++)
+							resources.addResource(new Thing("t" + (b * BATCH_SIZE + i), b));
+					} finally {
+						resources.endUpdate();
+					}
+				}
+			} catch (Throwable t) {
+				failure.set(t);
+			} finally {
+				done.set(true);
+			}
+		});
+		writer.start();
+		
+		Thing[] out = new Thing[BATCHES * BATCH_SIZE + 1];
+		while (!done.get())
+		{
+			int size = set.size();
+			assertEquals(0, (size - 1) % BATCH_SIZE, "whole batches in size " + size);
+			int tagged = set.getByTag("t", out);
+			int indexed = set.getInIndexRange("batch", null, true, null, true, out);
+			assertTrue(tagged >= size && indexed >= size, "indices behind size " + size + ": " + tagged + ", " + indexed);
+			assertEquals(0, (tagged - 1) % BATCH_SIZE, "whole batches in tags " + tagged);
+			assertEquals(0, (indexed - 1) % BATCH_SIZE, "whole batches in index " + indexed);
+		}
+		writer.join();
+		assertEquals(null, failure.get(), "writer failure");
+		assertEquals(BATCHES * BATCH_SIZE + 1, set.size(), "final size");
+	}
+	
+	private static void readsOwnBatch() throws Exception
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Thing("seed", 0));
+		ResourceSet<Thing> set = resources.getResourceSet(Thing.class);
+		
+		resources.beginUpdate();
+		try {
+			resources.addResource(new Thing("a", 1));
+			set.remove("seed");
+			assertTrue(set.get("a") != null, "own add");
+			assertEquals(null, set.get("seed"), "own remove");
+			assertEquals(1, set.size(), "own size");
+			assertEquals(Boolean.FALSE, onOtherThread(() -> set.get("a") != null), "add not published");
+			assertEquals(Boolean.TRUE, onOtherThread(() -> set.get("seed") != null), "remove not published");
+		} finally {
+			resources.endUpdate();
+		}
+		assertEquals(Boolean.TRUE, onOtherThread(() -> set.get("a") != null && set.get("seed") == null), "published");
+	}
+	
+	private static void publishesOuterBatch() throws Exception
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Thing("seed", 0));
+		ResourceSet<Thing> set = resources.getResourceSet(Thing.class);
+		
+		resources.beginUpdate();
+		resources.beginUpdate();
+		resources.addResource(new Thing("a", 1));
+		resources.endUpdate();
+		assertEquals(1, onOtherThread(set::size), "inner batch does not publish");
+		resources.endUpdate();
+		assertEquals(2, onOtherThread(set::size), "outer batch publishes");
+	}
+	
+	// A change from another thread must wait for a batch that holds the set, so it cannot publish half of it.
+	private static void waitsForOtherBatch() throws Exception
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Thing("seed", 0));
+		ResourceSet<Thing> set = resources.getResourceSet(Thing.class);
+		CountDownLatch started = new CountDownLatch(1);
+		
+		Thread batch = new Thread(() -> {
+			resources.beginUpdate();
+			try {
+				resources.addResource(new Thing("a1", 1));
+				started.countDown();
+				Thread.sleep(100);
+				resources.addResource(new Thing("a2", 1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				resources.endUpdate();
+			}
+		});
+		batch.start();
+		started.await();
+		resources.addResource(new Thing("b1", 2));
+		assertTrue(set.get("a1") != null && set.get("a2") != null, "change waited for the batch");
+		batch.join();
+		assertEquals(4, set.size(), "final size");
+	}
+	
+	private static void publishesOnlyOwnBatch() throws Exception
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		resources.addResource(new Thing("seed", 0));
+		ResourceSet<Thing> set = resources.getResourceSet(Thing.class);
+		CountDownLatch added = new CountDownLatch(1);
+		CountDownLatch checked = new CountDownLatch(1);
+		
+		Thread batch = new Thread(() -> {
+			resources.beginUpdate();
+			try {
+				resources.addResource(new Thing("a", 1));
+				added.countDown();
+				checked.await();
+				resources.addResource(new Thing("b", 1));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} finally {
+				resources.endUpdate();
+			}
+		});
+		batch.start();
+		added.await();
+		set.publish();
+		assertEquals(null, set.get("a"), "publish from another thread");
+		checked.countDown();
+		batch.join();
+		assertTrue(set.get("a") != null && set.get("b") != null, "batch published");
+		
+		resources.beginUpdate();
+		try {
+			resources.addResource(new Thing("c", 1));
+			set.publish();
+			assertEquals(Boolean.TRUE, onOtherThread(() -> set.get("c") != null), "early publish from the batch");
+		} finally {
+			resources.endUpdate();
+		}
+	}
+	
+	private static <T> T onOtherThread(Supplier<T> supplier) throws InterruptedException
+	{
+		AtomicReference<T> out = new AtomicReference<>();
+		Thread thread = new Thread(() -> out.set(supplier.get()));
+		thread.start();
+		thread.join();
+		return out.get();
+	}
+	
+	public static class Thing implements EngineResource
+	{
+		private final String id;
+		@Indexed
+		public int batch;
+		
+		Thing(String id, int batch)
+		{
+			this.id = id;
+			this.batch = batch;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[]{"t"};
+		}
+	}
+	
+}
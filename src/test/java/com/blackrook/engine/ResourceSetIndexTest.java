@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.Indexed;
+import com.blackrook.engine.exception.EngineSetupException;
+
+public final class ResourceSetIndexTest
+{
+	public static void main(String[] args)
+	{
+		findsValues();
+		ordersSpecialDoubles();
+		keepsLongPrecision();
+		checksUniqueValues();
+		matchesReference();
+		findsRanges();
+		iteratesPublishedRange();
+		System.out.println("ResourceSetIndexTest: OK");
+	}
+	
+	private static void findsValues()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		set.add(new Thing("a", 3, 1.5, 10L));
+		set.add(new Thing("b", 1, 2.0, null));
+		set.add(new Thing("c", 3, -4.0, 7L));
+		set.add(new Thing("d", 2, 2.0, 10L));
+		
+		assertEquals("[a, c]", byIndex(set, "count", 3), "int index");
+		assertEquals("[a, c]", byIndex(set, "count", 3.0), "int index by double");
+		assertEquals("[]", byIndex(set, "count", 3.5), "int index by fraction");
+		assertEquals("[b, d]", byIndex(set, "weight", 2), "double index by int");
+		assertEquals("[a, d]", byIndex(set, "serial", (short)10), "boxed index by short");
+		assertEquals("[]", byIndex(set, "missing", 1), "missing index");
+		
+		Thing[] out = new Thing[8];
+		assertEquals("[b, d, a, c]", Arrays.toString(Arrays.copyOf(out, set.getBeforeIndexValue("count", 3, out))), "before, ascending");
+		assertEquals("[a, c, d]", Arrays.toString(Arrays.copyOf(out, set.getAfterIndexValue("count", 2, out))), "after, descending");
+		assertEquals("[c, a, d]", Arrays.toString(Arrays.copyOf(out, set.getBeforeIndexValue("serial", 100, out))), "null values are not indexed");
+		
+		int[] ordinals = new int[8];
+		assertEquals("[0, 2]", Arrays.toString(Arrays.copyOf(ordinals, set.getOrdinalsByIndex("count", 3, ordinals))), "ordinals");
+		assertEquals(1, set.getByIndex("count", 3, out, 7), "output limit");
+	}
+	
+	private static void ordersSpecialDoubles()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		set.add(new Thing("nan", 0, Double.NaN, null));
+		set.add(new Thing("neg", 0, Double.NEGATIVE_INFINITY, null));
+		set.add(new Thing("zero", 0, 0.0, null));
+		set.add(new Thing("negzero", 0, -0.0, null));
+		set.add(new Thing("pos", 0, Double.POSITIVE_INFINITY, null));
+		set.add(new Thing("nan2", 0, Double.NaN, null));
+		
+		Thing[] out = new Thing[8];
+		assertEquals("[nan, nan2, neg, zero, negzero, pos]", Arrays.toString(Arrays.copyOf(out, set.getBeforeIndexValue("weight", Double.POSITIVE_INFINITY, out))), "NaN lowest, zeros equal");
+		assertEquals("[zero, negzero]", byIndex(set, "weight", -0.0), "negative zero");
+		assertEquals("[nan, nan2]", byIndex(set, "weight", Double.NaN), "NaN");
+	}
+	
+	private static void keepsLongPrecision()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		long big = 1L << 53;
+		set.add(new Thing("a", 0, 0.0, big));
+		set.add(new Thing("b", 0, 0.0, big + 1));
+		set.add(new Thing("c", 0, 0.0, Long.MAX_VALUE));
+		set.add(new Thing("d", 0, 0.0, Long.MIN_VALUE));
+		assertEquals("[a]", byIndex(set, "serial", big), "2^53");
+		assertEquals("[b]", byIndex(set, "serial", big + 1), "2^53 + 1");
+		assertEquals("[c]", byIndex(set, "serial", Long.MAX_VALUE), "max");
+		assertEquals("[d]", byIndex(set, "serial", Long.MIN_VALUE), "min");
+	}
+	
+	private static void checksUniqueValues()
+	{
+		ResourceSet<Unique> set = new ResourceSet<>(Unique.class);
+		set.add(new Unique("a", 1));
+		set.add(new Unique("b", 2));
+		assertThrows(EngineSetupException.class, () -> set.add(new Unique("c", 1)), "duplicate unique value");
+		assertEquals(2, set.size(), "size after rejected add");
+		set.add(new Unique("a", 3));
+		set.add(new Unique("c", 1));
+		assertEquals("c", set.get("c").id, "value of a replaced resource is free");
+	}
+	
+	// Compares lookups against a sorted copy, with equal values in ordinal (addition) order.
+	private static void matchesReference()
+	{
+		Random random = new Random(31L);
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		List<Thing> all = new ArrayList<>();
+		for (int i = 0; i < 2000; i++)
+		{
+			double weight = random.nextInt(10) == 0 ? Double.NaN : random.nextInt(40) / 4.0;
+			Thing thing = new Thing("t" + i, random.nextInt(50) - 25, weight, random.nextInt(4) == 0 ? null : (long)random.nextInt(30));
+			set.add(thing);
+			all.add(thing);
+		}
+		
+		Thing[] out = new Thing[all.size()];
+		for (int q = 0; q < 200; q++)
+		{
+			double value = random.nextInt(120) / 2.0 - 30.0;
+			for (String index : new String[]{"count", "weight", "serial"})
+			{
+				List<Thing> sorted = new ArrayList<>();
+				for (Thing thing : all)
+					if (!Double.isNaN(value(thing, index)) || index.equals("weight"))
+						sorted.add(thing);
+				sorted.sort((a, b) -> compare(value(a, index), value(b, index)));
+				
+				List<Thing> equal = new ArrayList<>();
+				List<Thing> before = new ArrayList<>();
+				for (Thing thing : sorted)
+				{
+					int c = compare(value(thing, index), value);
+					if (c == 0)
+						equal.add(thing);
+					if (c <= 0)
+						before.add(thing);
+				}
+				assertEquals(equal, Arrays.asList(out).subList(0, set.getByIndex(index, value, out)), "equal " + index + " " + value);
+				assertEquals(before, Arrays.asList(out).subList(0, set.getBeforeIndexValue(index, value, out)), "before " + index + " " + value);
+			}
+		}
+	}
+	
+	// Compares range lookups against a filter over a sorted copy.
+	private static void findsRanges()
+	{
+		Random random = new Random(32L);
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		List<Thing> sorted = new ArrayList<>();
+		for (int i = 0; i < 1000; i++)
+		{
+			Thing thing = new Thing("t" + i, random.nextInt(100), 0.0, null);
+			set.add(thing);
+			sorted.add(thing);
+		}
+		sorted.sort((a, b) -> Integer.compare(a.count, b.count));
+		
+		Thing[] out = new Thing[sorted.size() + 4];
+		int[] ordinals = new int[sorted.size()];
+		for (int q = 0; q < 300; q++)
+		{
+			Integer min = random.nextInt(8) == 0 ? null : random.nextInt(110) - 5;
+			Integer max = random.nextInt(8) == 0 ? null : random.nextInt(110) - 5;
+			boolean minInclusive = random.nextBoolean();
+			boolean maxInclusive = random.nextBoolean();
+			List<Thing> expected = new ArrayList<>();
+			for (Thing thing : sorted)
+			{
+				if (min != null && (minInclusive ? thing.count < min : thing.count <= min))
+					continue;
+				if (max != null && (maxInclusive ? thing.count > max : thing.count >= max))
+					continue;
+				expected.add(thing);
+			}
+			String range = (minInclusive ? "[" : "(") + min + ", " + max + (maxInclusive ? "]" : ")");
+			
+			int count = set.getInIndexRange("count", min, minInclusive, max, maxInclusive, out, 4);
+			assertEquals(expected, Arrays.asList(out).subList(4, 4 + count), "array " + range);
+			assertEquals(expected, set.streamIndexRange("count", min, minInclusive, max, maxInclusive).collect(Collectors.toList()), "stream " + range);
+			count = set.getOrdinalsInIndexRange("count", min, minInclusive, max, maxInclusive, ordinals);
+			for (int i = 0; i < count; i++)
+				assertEquals(expected.get(i), set.getByOrdinal(ordinals[i]), "ordinal " + range);
+		}
+		
+		assertEquals(3, set.getInIndexRange("count", null, true, null, true, new Thing[3]), "output limit");
+		assertEquals(0, set.getInIndexRange("count", 50, true, 10, true, out), "empty range");
+		assertEquals(0L, set.streamIndexRange("missing", null, true, null, true).count(), "missing index");
+	}
+	
+	private static void iteratesPublishedRange()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		for (int i = 0; i < 10; i++)
+			set.add(new Thing("t" + i, i, 0.0, null));
+		
+		Iterator<Thing> iterator = set.iterateIndexRange("count", 2, true, 5, false);
+		set.add(new Thing("t10", 3, 0.0, null));
+		set.remove("t4");
+		StringBuilder sb = new StringBuilder();
+		while (iterator.hasNext())
+			sb.append(iterator.next()).append(' ');
+		assertEquals("t2 t3 t4 ", sb.toString(), "iterator reads the version it started with");
+		assertEquals("[t2, t3, t10]", set.streamIndexRange("count", 2, true, 5, false).collect(Collectors.toList()).toString(), "later range");
+		assertThrows(UnsupportedOperationException.class, () -> set.iterateIndexRange("count", null, true, null, true).remove(), "no removal");
+	}
+	
+	private static double value(Thing thing, String index)
+	{
+		switch (index)
+		{
+			case "count":
+				return thing.count;
+			case "weight":
+				return thing.weight;
+			default:
+				return thing.serial != null ? thing.serial : Double.NaN;
+		}
+	}
+	
+	// NaN is lowest, and equal to itself.
+	private static int compare(double a, double b)
+	{
+		if (Double.isNaN(a))
+			return Double.isNaN(b) ? 0 : -1;
+		else if (Double.isNaN(b))
+			return 1;
+		return a < b ? -1 : (a > b ? 1 : 0);
+	}
+	
+	private static String byIndex(ResourceSet<Thing> set, String index, Number value)
+	{
+		Thing[] out = new Thing[16];
+		return Arrays.toString(Arrays.copyOf(out, set.getByIndex(index, value, out)));
+	}
+	
+	public static class Thing implements EngineResource
+	{
+		private final String id;
+		@Indexed
+		public int count;
+		@Indexed
+		public double weight;
+		private Long serial;
+		
+		Thing(String id, int count, double weight, Long serial)
+		{
+			this.id = id;
+			this.count = count;
+			this.weight = weight;
+			this.serial = serial;
+		}
+		
+		@Indexed
+		public Long getSerial()
+		{
+			return serial;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	public static class Unique implements EngineResource
+	{
+		private final String id;
+		@Indexed(unique = true)
+		public int code;
+		
+		Unique(String id, int code)
+		{
+			this.id = id;
+			this.code = code;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+	}
+	
+}
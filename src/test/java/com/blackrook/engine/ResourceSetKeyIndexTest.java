@@ -0,0 +1,281 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.CompositeIndex;
+import com.blackrook.engine.annotation.resource.Indexed;
+import com.blackrook.engine.exception.EngineSetupException;
+
+public final class ResourceSetKeyIndexTest
+{
+	public static void main(String[] args)
+	{
+		findsKeys();
+		findsCompositeKeys();
+		checksUniqueKeys();
+		rejectsBadDeclarations();
+		matchesReference();
+		System.out.println("ResourceSetKeyIndexTest: OK");
+	}
+	
+	private static void findsKeys()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		set.add(new Thing("a", "north", Kind.ROCK, 1));
+		set.add(new Thing("b", "south", Kind.TREE, 1));
+		set.add(new Thing("c", "north", Kind.TREE, 2));
+		set.add(new Thing("d", null, Kind.ROCK, 2));
+		
+		assertEquals("[a, c]", byKey(set, "zone", "north"), "string key");
+		assertEquals("[b, c]", byKey(set, "kind", Kind.TREE), "enum key");
+		assertEquals("[]", byKey(set, "zone", "east"), "missing key");
+		assertEquals("[]", byKey(set, "missing", "north"), "missing index");
+		assertEquals("[c, d]", byKey(set, "level", 2), "numeric index by key");
+		assertEquals("a", set.getUnique("zone", "north").getId(), "first match of a non-unique index");
+		assertEquals(null, set.getUnique("zone", null), "null values are not indexed");
+		assertEquals("[]", byKey(set, "kind", "ROCK"), "key of another type");
+		
+		int[] ordinals = new int[4];
+		assertEquals(2, set.getOrdinalsByKey("kind", Kind.ROCK, ordinals), "ordinal count");
+		assertEquals("[0, 3]", Arrays.toString(Arrays.copyOf(ordinals, 2)), "ordinals");
+	}
+	
+	private static void findsCompositeKeys()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		set.add(new Thing("a", "north", Kind.ROCK, 1));
+		set.add(new Thing("b", "north", Kind.ROCK, 2));
+		set.add(new Thing("c", "north", Kind.TREE, 1));
+		set.add(new Thing("d", "south", Kind.ROCK, 1));
+		set.add(new Thing("e", "north", Kind.ROCK, 1));
+		set.add(new Thing("f", null, Kind.ROCK, 1));
+		
+		assertEquals("[a, c, e]", byKey(set, "zoneLevel", new Object[]{"north", 1}), "composite key");
+		assertEquals("[a, c, e]", byKey(set, "zoneLevel", new Object[]{"north", 1L}), "composite key, other numeric type");
+		assertEquals("[b]", byKey(set, "zoneLevel", new Object[]{"north", 2.0}), "composite key, double");
+		assertEquals("[]", byKey(set, "zoneLevel", new Object[]{"north", 3}), "missing composite key");
+		assertEquals("[a, b, e]", byKey(set, "zoneKind", new Object[]{"north", Kind.ROCK}), "getter member");
+		assertThrows(IllegalArgumentException.class, () -> set.getByKey("zoneLevel", "north", new Thing[1]), "single value on composite index");
+		assertThrows(IllegalArgumentException.class, () -> set.getByKey("zoneLevel", new Object[]{"north"}, new Thing[1]), "too few values");
+		
+		set.remove("a");
+		set.replace(new Thing("e", "south", Kind.ROCK, 1));
+		assertEquals("[c]", byKey(set, "zoneLevel", new Object[]{"north", 1}), "after remove and replace");
+		assertEquals("[d, e]", byKey(set, "zoneLevel", new Object[]{"south", 1}), "replaced key");
+	}
+	
+	private static void checksUniqueKeys()
+	{
+		ResourceSet<Coded> set = new ResourceSet<>(Coded.class);
+		set.add(new Coded("a", "x1", "north", 1));
+		set.add(new Coded("b", "x2", "north", 2));
+		
+		assertEquals("a", set.getUnique("code", "x1").getId(), "unique key");
+		assertEquals("b", set.getUnique("zoneSlot", new Object[]{"north", 2}).getId(), "unique composite key");
+		assertThrows(EngineSetupException.class, () -> set.add(new Coded("c", "x1", "south", 1)), "duplicate key");
+		assertThrows(EngineSetupException.class, () -> set.add(new Coded("c", "x3", "north", 1)), "duplicate composite key");
+		assertEquals(null, set.get("c"), "nothing added");
+		assertEquals(null, set.getUnique("code", "x3"), "no partial index entries");
+		
+		set.add(new Coded("c", null, "north", 1L << 40));
+		set.add(new Coded("d", null, "north", (1L << 40) + 1));
+		assertEquals("d", set.getUnique("zoneSlot", new Object[]{"north", (1L << 40) + 1}).getId(), "null keys do not conflict, large longs stay distinct");
+		
+		set.replace(new Coded("a", "x2b", "south", 1));
+		set.add(new Coded("e", "x1", "north", 1));
+		assertEquals("e", set.getUnique("code", "x1").getId(), "replaced key is free");
+	}
+	
+	private static void rejectsBadDeclarations()
+	{
+		assertThrows(EngineSetupException.class, () -> new ResourceSet<>(UnknownMember.class), "unknown member");
+		assertThrows(EngineSetupException.class, () -> new ResourceSet<>(DuplicateName.class), "duplicate name");
+		assertThrows(EngineSetupException.class, () -> new ResourceSet<>(BadType.class), "bad member type");
+	}
+	
+	// Applies random adds and removes, and compares each key lookup to a filter over a map.
+	private static void matchesReference()
+	{
+		Random random = new Random(38L);
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		Map<String, Thing> reference = new LinkedHashMap<>();
+		for (int i = 0; i < 3000; i++)
+		{
+			String id = "t" + random.nextInt(400);
+			if (random.nextInt(5) == 0)
+			{
+				set.remove(id);
+				reference.remove(id);
+			}
+			else
+			{
+				Thing thing = new Thing(id, random.nextInt(8) == 0 ? null : "z" + random.nextInt(5), Kind.values()[random.nextInt(3)], random.nextInt(4));
+				set.add(thing);
+				reference.put(id, thing);
+			}
+		}
+		
+		Thing[] out = new Thing[reference.size()];
+		for (int z = 0; z < 5; z++)
+		{
+			String zone = "z" + z;
+			for (int level = 0; level < 4; level++)
+			{
+				List<Thing> expected = new ArrayList<>();
+				for (Thing thing : reference.values())
+					if (zone.equals(thing.zone) && thing.level == level)
+						expected.add(thing);
+				expected.sort((a, b) -> Integer.compare(set.ordinalOf(a.getId()), set.ordinalOf(b.getId())));
+				assertEquals(expected, Arrays.asList(out).subList(0, set.getByKey("zoneLevel", new Object[]{zone, level}, out)), "composite " + zone + " " + level);
+			}
+		}
+		for (Kind kind : Kind.values())
+		{
+			int expected = 0;
+			for (Thing thing : reference.values())
+				if (Objects.equals(kind, thing.kind))
+					expected++;
+			assertEquals(expected, set.getByKey("kind", kind, out), "enum " + kind);
+		}
+		for (Thing thing : reference.values())
+			assertTrue(set.getByKey("zone", thing.zone, out) > 0 || thing.zone == null, "zone " + thing.zone);
+	}
+	
+	private static String byKey(ResourceSet<? extends EngineResource> set, String index, Object key)
+	{
+		EngineResource[] out = new EngineResource[16];
+		@SuppressWarnings("unchecked")
+		int count = ((ResourceSet<EngineResource>)set).getByKey(index, key, out);
+		return Arrays.toString(Arrays.copyOf(out, count));
+	}
+	
+	public enum Kind
+	{
+		ROCK,
+		TREE,
+		WATER;
+	}
+	
+	private static abstract class Named implements EngineResource
+	{
+		private final String id;
+		
+		Named(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	@CompositeIndex(name = "zoneLevel", members = {"zone", "level"})
+	@CompositeIndex(name = "zoneKind", members = {"zone", "kind"})
+	public static class Thing extends Named
+	{
+		@Indexed
+		public String zone;
+		private Kind kind;
+		@Indexed
+		public int level;
+		
+		Thing(String id, String zone, Kind kind, int level)
+		{
+			super(id);
+			this.zone = zone;
+			this.kind = kind;
+			this.level = level;
+		}
+		
+		@Indexed
+		public Kind getKind()
+		{
+			return kind;
+		}
+	}
+	
+	@CompositeIndex(name = "zoneSlot", members = {"zone", "slot"}, unique = true)
+	public static class Coded extends Named
+	{
+		@Indexed(unique = true)
+		public String code;
+		public String zone;
+		public long slot;
+		
+		Coded(String id, String code, String zone, long slot)
+		{
+			super(id);
+			this.code = code;
+			this.zone = zone;
+			this.slot = slot;
+		}
+	}
+	
+	@CompositeIndex(name = "bad", members = {"zone", "nothing"})
+	public static class UnknownMember extends Named
+	{
+		public String zone;
+		
+		UnknownMember()
+		{
+			super("x");
+		}
+	}
+	
+	@CompositeIndex(name = "zone", members = {"zone"})
+	public static class DuplicateName extends Named
+	{
+		@Indexed
+		public String zone;
+		
+		DuplicateName()
+		{
+			super("x");
+		}
+	}
+	
+	@CompositeIndex(name = "bad", members = {"names"})
+	public static class BadType extends Named
+	{
+		public String[] names;
+		
+		BadType()
+		{
+			super("x");
+		}
+	}
+	
+}
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.Indexed;
+
+public final class ResourceSetLazyTest
+{
+	private static final byte[] HASH = {4, 0};
+	private static final int COUNT = 200;
+	private static final int CACHE_SIZE = 8;
+	
+	public static void main(String[] args) throws IOException
+	{
+		File file = File.createTempFile("lazy", ".bin");
+		try {
+			EngineResourceSet resources = new EngineResourceSet();
+			for (int i = 0; i < COUNT; i++)
+				resources.addResource(new Thing("t" + i, i % 10));
+			resources.writeSnapshot(file, HASH);
+			
+			readsNothingOnLoad(file);
+			countsHitsAndMisses(file);
+			evictsLeastRecentlyUsed(file);
+			holdsChangedResources(file);
+			matchesEagerLoad(file);
+		} finally {
+			file.delete();
+		}
+		System.out.println("ResourceSetLazyTest: OK");
+	}
+	
+	private static void readsNothingOnLoad(File file) throws IOException
+	{
+		ResourceSet<Thing> set = load(file, CACHE_SIZE);
+		assertTrue(set.isLazy(), "lazy");
+		assertEquals(COUNT, set.size(), "size");
+		int[] ordinals = new int[COUNT];
+		assertEquals(20, set.getOrdinalsByIndex("group", 3, ordinals), "ordinal query");
+		assertEquals(COUNT, set.countByTags(new String[]{"all"}, null, null), "count query");
+		assertEquals(0L, set.getCacheMissCount(), "nothing read by ordinal queries");
+		assertEquals(0, set.getMemoryUsage().getHeldCount(), "nothing held");
+		
+		ResourceSet<Thing> eager = load(file, 0);
+		assertTrue(!eager.isLazy(), "not lazy");
+		eager.get("t1");
+		assertEquals(0L, eager.getCacheHitCount() + eager.getCacheMissCount() + eager.getCacheEvictionCount(), "no counts when not lazy");
+	}
+	
+	private static void countsHitsAndMisses(File file) throws IOException
+	{
+		ResourceSet<Thing> set = load(file, CACHE_SIZE);
+		Thing first = set.get("t5");
+		assertEquals("t5", first.getId(), "read resource");
+		assertEquals(5, first.group, "read value");
+		assertEquals(1L, set.getCacheMissCount(), "first get misses");
+		assertTrue(first == set.get("t5"), "cached resource");
+		assertTrue(first == set.getByOrdinal(set.ordinalOf("t5")), "cached by ordinal");
+		assertEquals(2L, set.getCacheHitCount(), "later gets hit");
+		assertEquals(1L, set.getCacheMissCount(), "no more misses");
+		assertEquals(null, set.get("missing"), "missing id");
+	}
+	
+	private static void evictsLeastRecentlyUsed(File file) throws IOException
+	{
+		ResourceSet<Thing> set = load(file, CACHE_SIZE);
+		Thing[] held = new Thing[COUNT];
+		for (int i = 0; i < COUNT; i++)
+			held[i] = set.get("t" + i);
+		assertEquals((long)COUNT, set.getCacheMissCount(), "misses");
+		assertEquals((long)(COUNT - CACHE_SIZE), set.getCacheEvictionCount(), "evictions");
+		assertEquals(CACHE_SIZE, set.getMemoryUsage().getHeldCount(), "held up to the cache size");
+		
+		// evicted resources are still softly referenced, and cannot be collected while strongly reachable here.
+		for (int i = 0; i < COUNT; i++)
+			assertTrue(held[i] == set.get("t" + i), "same object for t" + i);
+		assertEquals((long)COUNT, set.getCacheMissCount(), "no misses for referenced resources");
+		assertEquals((long)COUNT, set.getCacheHitCount(), "hits");
+	}
+	
+	private static void holdsChangedResources(File file) throws IOException
+	{
+		ResourceSet<Thing> set = load(file, CACHE_SIZE);
+		Thing added = new Thing("new", 3);
+		Thing replacement = new Thing("t7", 4);
+		set.add(added);
+		set.replace(replacement);
+		for (int i = 0; i < COUNT; i++)
+			set.get("t" + i);
+		long misses = set.getCacheMissCount();
+		
+		assertTrue(added == set.get("new"), "added resource");
+		assertTrue(replacement == set.get("t7"), "replacement");
+		assertEquals(misses, set.getCacheMissCount(), "changed resources are never read");
+		assertEquals(21, set.getOrdinalsByIndex("group", 4, new int[COUNT]), "replacement indexed");
+		assertEquals(CACHE_SIZE + 2, set.getMemoryUsage().getHeldCount(), "changed resources held");
+	}
+	
+	private static void matchesEagerLoad(File file) throws IOException
+	{
+		ResourceSet<Thing> lazy = load(file, CACHE_SIZE);
+		ResourceSet<Thing> eager = load(file, 0);
+		Thing[] lazyOut = new Thing[COUNT];
+		Thing[] eagerOut = new Thing[COUNT];
+		for (int group = 0; group < 10; group++)
+		{
+			int count = lazy.getByIndex("group", group, lazyOut);
+			assertEquals(eager.getByIndex("group", group, eagerOut), count, "count of group " + group);
+			for (int i = 0; i < count; i++)
+				assertEquals(eagerOut[i].getId(), lazyOut[i].getId(), "group " + group);
+		}
+		assertEquals(Arrays.toString(ids(eager)), Arrays.toString(ids(lazy)), "iteration");
+	}
+	
+	private static String[] ids(ResourceSet<Thing> set)
+	{
+		String[] out = new String[set.size()];
+		int i = 0;
+		for (Thing thing : set)
+			out[i++] = thing.getId();
+		return out;
+	}
+	
+	private static ResourceSet<Thing> load(File file, int cacheSize) throws IOException
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		assertTrue(resources.readSnapshot(file, HASH, cacheSize), "read");
+		return resources.getResourceSet(Thing.class);
+	}
+	
+	public static class Thing implements EngineResource
+	{
+		private String id;
+		@Indexed
+		public int group;
+		
+		public Thing()
+		{
+		}
+		
+		Thing(String id, int group)
+		{
+			this.id = id;
+			this.group = group;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[]{"all"};
+		}
+		
+		public void setTags(String[] tags)
+		{
+		}
+	}
+	
+}
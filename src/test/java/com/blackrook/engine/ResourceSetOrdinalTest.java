@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.Indexed;
+
+public final class ResourceSetOrdinalTest
+{
+	public static void main(String[] args)
+	{
+		assignsDenseOrdinals();
+		reusesOrdinals();
+		iteratesInOrdinalOrder();
+		matchesObjectQueries();
+		System.out.println("ResourceSetOrdinalTest: OK");
+	}
+	
+	private static void assignsDenseOrdinals()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		for (int i = 0; i < 10; i++)
+			set.add(new Thing("t" + i, i, "k"));
+		for (int i = 0; i < 10; i++)
+		{
+			assertEquals(i, set.ordinalOf("t" + i), "ordinal of t" + i);
+			assertEquals("t" + i, set.getByOrdinal(i).getId(), "resource at " + i);
+		}
+		assertEquals(10, set.getOrdinalLimit(), "limit");
+		assertEquals(-1, set.ordinalOf("missing"), "missing id");
+		assertEquals(null, set.getByOrdinal(10), "past the limit");
+		assertEquals(null, set.getByOrdinal(-1), "negative");
+		
+		Thing replacement = new Thing("t3", 30, "k");
+		set.replace(replacement);
+		assertEquals(3, set.ordinalOf("t3"), "replace keeps the ordinal");
+		assertTrue(replacement == set.getByOrdinal(3), "replacement at the ordinal");
+		replacement.value = 31;
+		set.reindex("t3");
+		assertEquals(3, set.ordinalOf("t3"), "reindex keeps the ordinal");
+	}
+	
+	private static void reusesOrdinals()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		for (int i = 0; i < 10; i++)
+			set.add(new Thing("t" + i, i, "k"));
+		set.remove("t2");
+		set.remove("t7");
+		assertEquals(null, set.getByOrdinal(2), "freed ordinal");
+		assertEquals(10, set.getOrdinalLimit(), "limit after removal");
+		
+		set.add(new Thing("a", 0, "k"));
+		set.add(new Thing("b", 0, "k"));
+		set.add(new Thing("c", 0, "k"));
+		List<Integer> reused = new ArrayList<>();
+		reused.add(set.ordinalOf("a"));
+		reused.add(set.ordinalOf("b"));
+		reused.sort(null);
+		assertEquals("[2, 7]", reused.toString(), "freed ordinals reused first");
+		assertEquals(10, set.ordinalOf("c"), "new ordinal after reuse");
+		assertEquals(11, set.getOrdinalLimit(), "limit");
+		assertEquals(set.size(), set.getOrdinalLimit(), "no gaps");
+	}
+	
+	private static void iteratesInOrdinalOrder()
+	{
+		Random random = new Random(44L);
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		for (int i = 0; i < 2000; i++)
+		{
+			String id = "t" + random.nextInt(500);
+			if (random.nextInt(3) == 0)
+				set.remove(id);
+			else
+				set.add(new Thing(id, i, "k"));
+		}
+		
+		int last = -1;
+		int count = 0;
+		for (Thing thing : set)
+		{
+			int ordinal = set.ordinalOf(thing.getId());
+			assertTrue(ordinal > last, "ordinal order");
+			assertTrue(thing == set.getByOrdinal(ordinal), "resource at ordinal");
+			last = ordinal;
+			count++;
+		}
+		assertEquals(set.size(), count, "count");
+		int live = 0;
+		for (int i = 0; i < set.getOrdinalLimit(); i++)
+			if (set.getByOrdinal(i) != null)
+				live++;
+		assertEquals(set.size(), live, "live ordinals");
+	}
+	
+	// Every query that returns ordinals must return the ordinals of the resources that its object form returns.
+	private static void matchesObjectQueries()
+	{
+		Random random = new Random(44L);
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		for (int i = 0; i < 500; i++)
+			set.add(new Thing("t" + i, random.nextInt(20), random.nextBoolean() ? "k1" : "k2"));
+		for (int i = 0; i < 500; i += 7)
+			set.remove("t" + i);
+		
+		Thing[] objects = new Thing[600];
+		int[] ordinals = new int[600];
+		assertSame(set, objects, set.getByIndex("value", 3, objects), ordinals, set.getOrdinalsByIndex("value", 3, ordinals), "by index");
+		assertSame(set, objects, set.getBeforeIndexValue("value", 5, objects), ordinals, set.getOrdinalsBeforeIndexValue("value", 5, ordinals), "before");
+		assertSame(set, objects, set.getAfterIndexValue("value", 15, objects), ordinals, set.getOrdinalsAfterIndexValue("value", 15, ordinals), "after");
+		assertSame(set, objects, set.getInIndexRange("value", 2, false, 6, true, objects), ordinals, set.getOrdinalsInIndexRange("value", 2, false, 6, true, ordinals), "range");
+		assertSame(set, objects, set.getByKey("kind", "k2", objects), ordinals, set.getOrdinalsByKey("kind", "k2", ordinals), "by key");
+		assertSame(set, objects, set.getByTag("tag", objects), ordinals, set.getOrdinalsByTag("tag", ordinals), "by tag");
+		assertSame(set, objects, set.getByTags(null, new String[]{"tag"}, null, objects), ordinals, set.getOrdinalsByTags(null, new String[]{"tag"}, null, ordinals), "by tags");
+		int count = set.getOrdinalsByIndex("value", 3, ordinals, 5);
+		assertEquals(set.getByIndex("value", 3, objects, 5), count, "offset count");
+		for (int i = 5; i < 5 + count; i++)
+			assertTrue(objects[i] == set.getByOrdinal(ordinals[i]), "offset at " + i);
+		assertEquals(3, set.getOrdinalsByIndex("value", 3, new int[3]), "output limit");
+	}
+	
+	private static void assertSame(ResourceSet<Thing> set, Thing[] objects, int objectCount, int[] ordinals, int ordinalCount, String message)
+	{
+		assertEquals(objectCount, ordinalCount, message + " count");
+		assertTrue(objectCount > 0, message + " is not empty");
+		for (int i = 0; i < objectCount; i++)
+			assertTrue(objects[i] == set.getByOrdinal(ordinals[i]), message + " at " + i);
+	}
+	
+	public static class Thing implements EngineResource
+	{
+		private final String id;
+		@Indexed
+		public int value;
+		@Indexed
+		public String kind;
+		
+		Thing(String id, int value, String kind)
+		{
+			this.id = id;
+			this.value = value;
+			this.kind = kind;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[]{"tag"};
+		}
+	}
+	
+}
@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+import com.blackrook.engine.annotation.resource.Spatial;
+import com.blackrook.engine.annotation.resource.Spatial.Axis;
+import com.blackrook.engine.exception.EngineSetupException;
+
+public final class ResourceSetSpatialTest
+{
+	private static final byte[] HASH = {4, 9};
+	
+	public static void main(String[] args) throws IOException
+	{
+		findsPoints();
+		findsNearest();
+		skipsMissingCoordinates();
+		rejectsBadQueries();
+		rejectsBadDeclarations();
+		matchesReference();
+		File file = File.createTempFile("spatial", ".bin");
+		try {
+			roundTripsSnapshots(file);
+		} finally {
+			file.delete();
+		}
+		System.out.println("ResourceSetSpatialTest: OK");
+	}
+	
+	private static void findsPoints()
+	{
+		ResourceSet<Point2> set = new ResourceSet<>(Point2.class);
+		set.add(new Point2("a", 0.0, 0.0));
+		set.add(new Point2("b", 3.0, 4.0));
+		set.add(new Point2("c", 10.0, 0.0));
+		set.add(new Point2("d", -20.0, 35.0));
+		set.add(new Point2("e", 3.0, -4.0));
+		
+		assertEquals("[a, b, e]", radius(set, 0.0, 0.0, 5.0), "radius includes its edge");
+		assertEquals("[a]", radius(set, 0.0, 0.0, 4.99), "radius");
+		assertEquals("[]", radius(set, 100.0, 100.0, 5.0), "empty radius");
+		assertEquals("[a, b, c, e]", box(set, new double[]{0.0, -4.0}, new double[]{10.0, 4.0}), "box includes its edges");
+		assertEquals("[d]", box(set, new double[]{-25.0, 30.0}, new double[]{-15.0, 40.0}), "box across cells");
+		assertEquals("[]", box(set, new double[]{5.0, 5.0}, new double[]{1.0, 1.0}), "inverted box");
+		
+		Point2[] out = new Point2[4];
+		assertEquals(2, set.getInRadius("pos", new double[]{0.0, 0.0}, 5.0, out, 2), "output limit");
+		assertEquals("a", out[2].getId(), "offset first");
+		assertEquals("b", out[3].getId(), "offset second");
+		int[] ordinals = new int[5];
+		assertEquals(3, set.getOrdinalsInBox("pos", new double[]{0.0, -4.0}, new double[]{3.0, 4.0}, ordinals, 1), "ordinals in box");
+		assertEquals(set.ordinalOf("a"), ordinals[1], "ordinal order first");
+		assertEquals(set.ordinalOf("b"), ordinals[2], "ordinal order second");
+		assertEquals(set.ordinalOf("e"), ordinals[3], "ordinal order third");
+		
+		set.get("d").x = 1.0;
+		set.get("d").y = 1.0;
+		set.reindex("d");
+		assertEquals("[a, d]", radius(set, 0.0, 0.0, 2.0), "moved point");
+		set.remove("a");
+		assertEquals("[d]", radius(set, 0.0, 0.0, 2.0), "removed point");
+	}
+	
+	private static void findsNearest()
+	{
+		ResourceSet<Point3> set = new ResourceSet<>(Point3.class);
+		set.add(new Point3("far", 50f, 50L, 50));
+		set.add(new Point3("near", 1f, 0L, 0));
+		set.add(new Point3("tie2", 0f, 2L, 0));
+		set.add(new Point3("tie1", 0f, 0L, -2));
+		set.add(new Point3("mid", 5f, 5L, 5));
+		
+		Point3[] out = new Point3[6];
+		assertEquals(5, set.getNearest("p", new double[]{0.0, 0.0, 0.0}, out, 1), "all nearest");
+		assertEquals("near", out[1].getId(), "nearest");
+		assertEquals("tie2", out[2].getId(), "tie in ordinal order");
+		assertEquals("tie1", out[3].getId(), "tie in ordinal order");
+		assertEquals("mid", out[4].getId(), "farther");
+		assertEquals("far", out[5].getId(), "farthest");
+		
+		int[] ordinals = new int[2];
+		assertEquals(2, set.getNearestOrdinals("p", new double[]{49.0, 49.0, 49.0}, ordinals), "nearest ordinals");
+		assertEquals(set.ordinalOf("far"), ordinals[0], "nearest ordinal");
+		assertEquals(set.ordinalOf("mid"), ordinals[1], "next nearest ordinal");
+		assertEquals(0, set.getNearest("p", new double[]{0.0, 0.0, 0.0}, new Point3[1], 1), "no room");
+		assertEquals(0, new ResourceSet<>(Point3.class).getNearestOrdinals("p", new double[]{0.0, 0.0, 0.0}, new int[3]), "empty set");
+	}
+	
+	private static void skipsMissingCoordinates()
+	{
+		ResourceSet<Point2> set = new ResourceSet<>(Point2.class);
+		set.add(new Point2("null", 1.0, null));
+		set.add(new Point2("nan", Double.NaN, 1.0));
+		set.add(new Point2("infinite", Double.POSITIVE_INFINITY, 1.0));
+		set.add(new Point2("valid", 1.0, 1.0));
+		assertEquals("[valid]", box(set, new double[]{-Double.MAX_VALUE, -Double.MAX_VALUE}, new double[]{Double.MAX_VALUE, Double.MAX_VALUE}), "only valid points");
+		Point2[] out = new Point2[4];
+		assertEquals(1, set.getNearest("pos", new double[]{0.0, 0.0}, out), "only valid nearest");
+		
+		set.get("null").y = 1.0;
+		set.reindex("null");
+		assertEquals("[null, valid]", radius(set, 1.0, 1.0, 0.5), "indexed after reindex");
+		set.get("valid").x = Double.NaN;
+		set.reindex("valid");
+		assertEquals("[null]", radius(set, 1.0, 1.0, 0.5), "unindexed after reindex");
+	}
+	
+	private static void rejectsBadQueries()
+	{
+		ResourceSet<Point2> set = new ResourceSet<>(Point2.class);
+		set.add(new Point2("a", 0.0, 0.0));
+		assertThrows(IllegalArgumentException.class, () -> set.getOrdinalsInRadius("pos", new double[3], 1.0, new int[1]), "too many coordinates");
+		assertThrows(IllegalArgumentException.class, () -> set.getOrdinalsInBox("pos", new double[2], new double[1], new int[1]), "too few coordinates");
+		assertThrows(IllegalArgumentException.class, () -> set.getNearestOrdinals("pos", new double[1], new int[1]), "nearest coordinates");
+		assertEquals(0, set.getOrdinalsInRadius("missing", new double[2], 1.0, new int[1]), "missing index");
+		assertEquals(0, set.getNearestOrdinals("missing", new double[2], new int[1]), "missing nearest index");
+	}
+	
+	private static void rejectsBadDeclarations()
+	{
+		assertThrows(EngineSetupException.class, () -> new ResourceSet<>(NoY.class), "no Y coordinate");
+		assertThrows(EngineSetupException.class, () -> new ResourceSet<>(MixedCells.class), "different cell sizes");
+		assertThrows(EngineSetupException.class, () -> new ResourceSet<>(NotNumeric.class), "non-numeric coordinate");
+		assertThrows(EngineSetupException.class, () -> new ResourceSet<>(EmptyCell.class), "no cell size");
+		assertThrows(EngineSetupException.class, () -> new ResourceSet<>(TwoX.class), "repeated axis");
+	}
+	
+	private static void matchesReference()
+	{
+		Random random = new Random(49L);
+		EngineResourceSet resources = createResources(random);
+		ResourceSet<Point2> set2 = resources.getResourceSet(Point2.class);
+		for (int i = 0; i < 300; i++)
+		{
+			Point2 point;
+			if ((point = set2.getByOrdinal(random.nextInt(set2.getOrdinalLimit()))) == null)
+				continue;
+			point.x = random.nextDouble() * 500.0;
+			set2.reindex(point.getId());
+		}
+		verify(set2, "pos", 2, random, 500.0, "2D");
+		verify(resources.getResourceSet(Point3.class), "p", 3, random, 100.0, "3D");
+	}
+	
+	private static void roundTripsSnapshots(File file) throws IOException
+	{
+		Random random = new Random(50L);
+		createResources(random).writeSnapshot(file, HASH);
+		for (int cacheSize : new int[]{0, 5})
+		{
+			EngineResourceSet loaded = new EngineResourceSet();
+			assertTrue(loaded.readSnapshot(file, HASH, cacheSize), "read with cache " + cacheSize);
+			verify(loaded.getResourceSet(Point2.class), "pos", 2, random, 500.0, "2D snapshot with cache " + cacheSize);
+			verify(loaded.getResourceSet(Point3.class), "p", 3, random, 100.0, "3D snapshot with cache " + cacheSize);
+		}
+	}
+	
+	private static EngineResourceSet createResources(Random random)
+	{
+		EngineResourceSet resources = new EngineResourceSet();
+		for (int i = 0; i < 4000; i++)
+		{
+			Double y = random.nextInt(10) == 0 ? null : random.nextInt(3) == 0 ? Math.floor(random.nextDouble() * 50.0) * 10.0 : random.nextDouble() * 500.0;
+			Point2 point = new Point2("p" + random.nextInt(2500), random.nextInt(20) == 0 ? Double.NaN : random.nextDouble() * 500.0, y);
+			ResourceSet<Point2> set = resources.getResourceSet(Point2.class);
+			if (set != null && random.nextInt(7) == 0)
+				set.remove(point.getId());
+			else
+				resources.addResource(point);
+			resources.addResource(new Point3("q" + random.nextInt(2000), random.nextFloat() * 100f, random.nextInt(100), random.nextInt(100) - 20));
+		}
+		return resources;
+	}
+	
+	// Checks random radius, box, and nearest queries against a scan of every resource.
+	private static <R extends EngineResource> void verify(ResourceSet<R> set, String indexName, int dimensions, Random random, double span, String message)
+	{
+		int[] buffer = new int[set.getOrdinalLimit() + 3];
+		List<Integer> indexed = new ArrayList<>();
+		for (int i = 0; i < set.getOrdinalLimit(); i++)
+		{
+			R resource;
+			if ((resource = set.getByOrdinal(i)) != null && point(resource) != null)
+				indexed.add(i);
+		}
+		
+		for (int q = 0; q < 200; q++)
+		{
+			double[] center = new double[dimensions];
+			for (int i = 0; i < dimensions; i++)
+				center[i] = random.nextDouble() * span * 1.2 - span * 0.1;
+			double radius = q % 10 == 0 ? span * 3.0 : random.nextDouble() * span / 5.0;
+			List<Integer> expected = new ArrayList<>();
+			for (int ordinal : indexed)
+				if (distanceSquared(point(set.getByOrdinal(ordinal)), center) <= radius * radius)
+					expected.add(ordinal);
+			assertEquals(expected, toList(buffer, 0, set.getOrdinalsInRadius(indexName, center, radius, buffer, 0)), message + " radius " + q);
+			
+			double[] min = new double[dimensions];
+			double[] max = new double[dimensions];
+			for (int i = 0; i < dimensions; i++)
+			{
+				double a = q % 7 == 0 ? -1e300 : random.nextDouble() * span;
+				double b = q % 7 == 0 ? 1e300 : random.nextDouble() * span;
+				min[i] = Math.min(a, b);
+				max[i] = Math.max(a, b);
+			}
+			expected.clear();
+			for (int ordinal : indexed)
+				if (inBox(point(set.getByOrdinal(ordinal)), min, max))
+					expected.add(ordinal);
+			assertEquals(expected, toList(buffer, 3, set.getOrdinalsInBox(indexName, min, max, buffer, 3)), message + " box " + q);
+			
+			int k = q % 13 == 0 ? indexed.size() + 5 : 1 + random.nextInt(20);
+			List<Integer> sorted = new ArrayList<>(indexed);
+			sorted.sort((a, b) -> {
+				int c = Double.compare(distanceSquared(point(set.getByOrdinal(a)), center), distanceSquared(point(set.getByOrdinal(b)), center));
+				return c != 0 ? c : Integer.compare(a, b);
+			});
+			int[] nearest = new int[k];
+			assertEquals(sorted.subList(0, Math.min(k, sorted.size())), toList(nearest, 0, set.getNearestOrdinals(indexName, center, nearest)), message + " nearest " + q);
+		}
+	}
+	
+	// Gets the coordinates of a resource, or null if it is not indexed.
+	private static double[] point(EngineResource resource)
+	{
+		if (resource instanceof Point2)
+		{
+			Point2 point = (Point2)resource;
+			return point.y == null || !Double.isFinite(point.x) ? null : new double[]{point.x, point.y};
+		}
+		Point3 point = (Point3)resource;
+		return new double[]{point.x, point.y, point.getZ()};
+	}
+	
+	private static double distanceSquared(double[] a, double[] b)
+	{
+		double out = 0.0;
+		for (int i = 0; i < a.length; i++)
+			out += (a[i] - b[i]) * (a[i] - b[i]);
+		return out;
+	}
+	
+	private static boolean inBox(double[] point, double[] min, double[] max)
+	{
+		for (int i = 0; i < point.length; i++)
+			if (point[i] < min[i] || point[i] > max[i])
+				return false;
+		return true;
+	}
+	
+	private static List<Integer> toList(int[] values, int offset, int count)
+	{
+		List<Integer> out = new ArrayList<>(count);
+		for (int i = offset; i < offset + count; i++)
+			out.add(values[i]);
+		return out;
+	}
+	
+	private static String radius(ResourceSet<Point2> set, double x, double y, double radius)
+	{
+		Point2[] out = new Point2[set.getOrdinalLimit()];
+		int count = set.getInRadius("pos", new double[]{x, y}, radius, out);
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+			ids.add(out[i].getId());
+		return ids.toString();
+	}
+	
+	private static String box(ResourceSet<Point2> set, double[] min, double[] max)
+	{
+		Point2[] out = new Point2[set.getOrdinalLimit()];
+		int count = set.getInBox("pos", min, max, out);
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+			ids.add(out[i].getId());
+		return ids.toString();
+	}
+	
+	public static class Point2 implements EngineResource
+	{
+		private String id;
+		@Spatial(value = "pos", axis = Axis.X, cellSize = 8)
+		public double x;
+		@Spatial(value = "pos", axis = Axis.Y, cellSize = 8)
+		public Double y;
+		
+		public Point2()
+		{
+		}
+		
+		Point2(String id, double x, Double y)
+		{
+			this.id = id;
+			this.x = x;
+			this.y = y;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	public static class Point3 implements EngineResource
+	{
+		private String id;
+		@Spatial(value = "p", axis = Axis.X, cellSize = 5)
+		public float x;
+		@Spatial(value = "p", axis = Axis.Y, cellSize = 5)
+		public long y;
+		private int z;
+		
+		public Point3()
+		{
+		}
+		
+		Point3(String id, float x, long y, int z)
+		{
+			this.id = id;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+		
+		@Spatial(value = "p", axis = Axis.Z, cellSize = 5)
+		public int getZ()
+		{
+			return z;
+		}
+		
+		public void setZ(int z)
+		{
+			this.z = z;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		public void setId(String id)
+		{
+			this.id = id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+	public static abstract class Invalid implements EngineResource
+	{
+		@Override
+		public String getId()
+		{
+			return "invalid";
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return new String[0];
+		}
+	}
+	
+	public static class NoY extends Invalid
+	{
+		@Spatial(value = "p", axis = Axis.X)
+		public double x;
+	}
+	
+	public static class MixedCells extends Invalid
+	{
+		@Spatial(value = "p", axis = Axis.X, cellSize = 2)
+		public double x;
+		@Spatial(value = "p", axis = Axis.Y, cellSize = 3)
+		public double y;
+	}
+	
+	public static class NotNumeric extends Invalid
+	{
+		@Spatial(value = "p", axis = Axis.X)
+		public String x;
+		@Spatial(value = "p", axis = Axis.Y)
+		public double y;
+	}
+	
+	public static class EmptyCell extends Invalid
+	{
+		@Spatial(value = "p", axis = Axis.X, cellSize = 0)
+		public double x;
+		@Spatial(value = "p", axis = Axis.Y, cellSize = 0)
+		public double y;
+	}
+	
+	public static class TwoX extends Invalid
+	{
+		@Spatial(value = "p", axis = Axis.X)
+		public double x;
+		@Spatial(value = "p", axis = Axis.X)
+		public double y;
+	}
+	
+}
@@ -0,0 +1,189 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet;
+
+public final class ResourceSetTagTest
+{
+	private static final String[] TAGS = {"a", "b", "c", "d", "e", "f", "g", "h"};
+	
+	public static void main(String[] args)
+	{
+		combinesTags();
+		handlesUnknownTags();
+		matchesReference();
+		System.out.println("ResourceSetTagTest: OK");
+	}
+	
+	private static void combinesTags()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		set.add(new Thing("ab", "a", "b"));
+		set.add(new Thing("a", "a"));
+		set.add(new Thing("bc", "b", "c"));
+		set.add(new Thing("abc", "a", "b", "c", "a"));
+		set.add(new Thing("none"));
+		
+		assertEquals("[ab, abc]", byTags(set, tags("a", "b"), null, null), "all of");
+		assertEquals("[ab, a, bc, abc]", byTags(set, null, tags("a", "c"), null), "any of");
+		assertEquals("[ab, a]", byTags(set, null, tags("a", "c"), tags("c")), "any of, none of");
+		assertEquals("[a]", byTags(set, tags("a"), null, tags("b")), "all of, none of");
+		assertEquals("[bc, abc]", byTags(set, tags("b"), tags("c"), null), "all of, any of");
+		assertEquals("[none]", byTags(set, null, null, tags("a", "b", "c")), "none of");
+		assertEquals("[ab, a, bc, abc, none]", byTags(set, null, null, null), "no conditions");
+		assertEquals("[ab, a, bc, abc, none]", byTags(set, new String[0], new String[0], new String[0]), "empty conditions");
+		assertEquals("[ab, a, abc]", byTag(set, "a"), "single tag");
+		assertEquals(2, set.getByTags(tags("a"), null, null, new Thing[2]), "output limit");
+	}
+	
+	private static void handlesUnknownTags()
+	{
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		set.add(new Thing("a", "a"));
+		set.add(new Thing("b", "b"));
+		
+		assertEquals("[]", byTag(set, "zz"), "unknown tag");
+		assertEquals("[]", byTags(set, tags("a", "zz"), null, null), "unknown in all of");
+		assertEquals("[]", byTags(set, null, tags("zz"), null), "unknown in any of");
+		assertEquals("[a]", byTags(set, null, tags("a", "zz"), null), "unknown among any of");
+		assertEquals("[a, b]", byTags(set, null, null, tags("zz")), "unknown in none of");
+		assertEquals(0, set.countByTags(tags("zz"), null, null), "count unknown");
+	}
+	
+	// Compares every query form against a filter over a reference list, with gaps left by removals.
+	private static void matchesReference()
+	{
+		Random random = new Random(37L);
+		ResourceSet<Thing> set = new ResourceSet<>(Thing.class);
+		List<Thing> reference = new ArrayList<>();
+		for (int i = 0; i < 3000; i++)
+		{
+			List<String> tags = new ArrayList<>();
+			for (String tag : TAGS)
+				if (random.nextInt(3) == 0)
+					tags.add(tag);
+			Thing thing = new Thing("t" + i, tags.toArray(new String[tags.size()]));
+			set.add(thing);
+			reference.add(thing);
+		}
+		for (int i = 0; i < 3000; i += 1 + random.nextInt(5))
+			set.remove("t" + i);
+		reference.removeIf(thing -> set.get(thing.getId()) == null);
+		
+		Thing[] out = new Thing[reference.size()];
+		int[] ordinals = new int[reference.size()];
+		for (int q = 0; q < 300; q++)
+		{
+			String[] allOf = randomTags(random);
+			String[] anyOf = randomTags(random);
+			String[] noneOf = randomTags(random);
+			String query = Arrays.toString(allOf) + Arrays.toString(anyOf) + Arrays.toString(noneOf);
+			
+			List<Thing> expected = new ArrayList<>();
+			for (Thing thing : reference)
+				if (matches(thing, allOf, anyOf, noneOf))
+					expected.add(thing);
+			expected.sort((a, b) -> Integer.compare(set.ordinalOf(a.getId()), set.ordinalOf(b.getId())));
+			
+			assertEquals(expected, Arrays.asList(out).subList(0, set.getByTags(allOf, anyOf, noneOf, out)), "array " + query);
+			assertEquals(expected.size(), set.countByTags(allOf, anyOf, noneOf), "count " + query);
+			assertEquals(expected, set.streamByTags(allOf, anyOf, noneOf).collect(Collectors.toList()), "stream " + query);
+			List<Thing> iterated = new ArrayList<>();
+			for (Iterator<Thing> it = set.iterateByTags(allOf, anyOf, noneOf); it.hasNext(); )
+				iterated.add(it.next());
+			assertEquals(expected, iterated, "iterator " + query);
+			int count = set.getOrdinalsByTags(allOf, anyOf, noneOf, ordinals);
+			assertEquals(expected.size(), count, "ordinal count " + query);
+			for (int i = 0; i < count; i++)
+				assertEquals(expected.get(i), set.getByOrdinal(ordinals[i]), "ordinal " + query);
+		}
+	}
+	
+	private static boolean matches(Thing thing, String[] allOf, String[] anyOf, String[] noneOf)
+	{
+		Set<String> tags = new HashSet<>(Arrays.asList(thing.getTags()));
+		for (String tag : allOf)
+			if (!tags.contains(tag))
+				return false;
+		boolean any = anyOf.length == 0;
+		for (String tag : anyOf)
+			any |= tags.contains(tag);
+		for (String tag : noneOf)
+			if (tags.contains(tag))
+				return false;
+		return any;
+	}
+	
+	private static String[] randomTags(Random random)
+	{
+		String[] out = new String[random.nextInt(3)];
+		for (int i = 0; i < out.length; i++)
+			out[i] = TAGS[random.nextInt(TAGS.length)];
+		return out;
+	}
+	
+	private static String[] tags(String... tags)
+	{
+		return tags;
+	}
+	
+	private static String byTag(ResourceSet<Thing> set, String tag)
+	{
+		Thing[] out = new Thing[16];
+		return Arrays.toString(Arrays.copyOf(out, set.getByTag(tag, out)));
+	}
+	
+	private static String byTags(ResourceSet<Thing> set, String[] allOf, String[] anyOf, String[] noneOf)
+	{
+		Thing[] out = new Thing[16];
+		return Arrays.toString(Arrays.copyOf(out, set.getByTags(allOf, anyOf, noneOf, out)));
+	}
+	
+	public static class Thing implements EngineResource
+	{
+		private final String id;
+		private final String[] tags;
+		
+		Thing(String id, String... tags)
+		{
+			this.id = id;
+			this.tags = tags;
+		}
+		
+		@Override
+		public String getId()
+		{
+			return id;
+		}
+		
+		@Override
+		public String[] getTags()
+		{
+			return tags;
+		}
+		
+		@Override
+		public String toString()
+		{
+			return id;
+		}
+	}
+	
+}
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (c) 2016-2021 Black Rook Software
+ * This program and the accompanying materials are made available under the 
+ * terms of the GNU Lesser Public License v2.1 which accompanies this 
+ * distribution, and is available at 
+ * http://www.gnu.org/licenses/old-licenses/lgpl-2.1.html
+ ******************************************************************************/
+package com.blackrook.engine;
+
+import static com.blackrook.engine.Assertions.assertEquals;
+import static com.blackrook.engine.Assertions.assertThrows;
+import static com.blackrook.engine.Assertions.assertTrue;
+
+import com.blackrook.engine.EngineResourceSet.ResourceSet.ValueGetter;
+
+public final class ValueGetterTest
+{
+	public static void main(String[] args) throws Exception
+	{
+		readsPrimitiveFields();
+		readsBoxedAndObjectFields();
+		readsMethods();
+		readsPrivateMembers();
+		passesExceptionsThrough();
+		System.out.println("ValueGetterTest: OK");
+	}
+	
+	private static void readsPrimitiveFields() throws Exception
+	{
+		Values values = new Values();
+		
+		ValueGetter getter = field("b");
+		assertTrue(getter.isPrimitive(), "byte is primitive");
+		assertEquals(-3L, getter.applyAsLong(values), "byte as long");
+		assertEquals(-3.0, getter.applyAsDouble(values), "byte as double");
+		assertEquals((byte)-3, getter.get(values), "byte boxed");
+		
+		assertEquals(1L << 40, field("l").applyAsLong(values), "long as long");
+		assertEquals((long)'x', field("c").applyAsLong(values), "char as long");
+		assertEquals(2.5, field("f").applyAsDouble(values), "float as double");
+		assertEquals(2L, field("f").applyAsLong(values), "float as long truncates");
+		assertEquals(-0.25, field("d").applyAsDouble(values), "double as double");
+		assertEquals(Character.class, field("c").getValue(values).getClass(), "char boxed");
+		assertEquals(Boolean.TRUE, field("z").getValue(values), "boolean boxed");
+		assertThrows(ClassCastException.class, () -> field("z").applyAsLong(values), "boolean is not a number");
+		
+		// values are read on every call, not cached.
+		values.l = 7L;
+		assertEquals(7L, field("l").applyAsLong(values), "changed value");
+	}
+	
+	private static void readsBoxedAndObjectFields() throws Exception
+	{
+		Values values = new Values();
+		ValueGetter getter = field("boxed");
+		assertTrue(!getter.isPrimitive(), "boxed is not primitive");
+		assertEquals(Integer.class, getter.getType(), "boxed type");
+		assertEquals(12L, getter.applyAsLong(values), "boxed as long");
+		assertEquals(12.0, getter.applyAsDouble(values), "boxed as double");
+		values.boxed = null;
+		assertEquals(null, getter.get(values), "null boxed");
+		assertThrows(NullPointerException.class, () -> getter.applyAsLong(values), "null boxed as long");
+		assertEquals("name", field("name").getValue(values), "object value");
+	}
+	
+	private static void readsMethods() throws Exception
+	{
+		Values values = new Values();
+		ValueGetter getter = new ValueGetter(Values.class.getMethod("getHalf"));
+		assertEquals(double.class, getter.getType(), "method type");
+		assertEquals(6.0, getter.applyAsDouble(values), "method as double");
+		assertEquals(6L, getter.applyAsLong(values), "method as long");
+		assertEquals(Long.valueOf(1L << 40), new ValueGetter(Values.class.getMethod("getBoxedLong")).get(values), "boxed method");
+	}
+	
+	private static void readsPrivateMembers() throws Exception
+	{
+		Hidden hidden = new Hidden();
+		assertEquals(42L, new ValueGetter(Hidden.class.getDeclaredField("secret")).applyAsLong(hidden), "private field");
+		assertEquals(43L, new ValueGetter(Hidden.class.getDeclaredMethod("getSecret")).applyAsLong(hidden), "private method");
+	}
+	
+	private static void passesExceptionsThrough() throws Exception
+	{
+		ValueGetter getter = new ValueGetter(Values.class.getMethod("getBroken"));
+		assertThrows(IllegalStateException.class, () -> getter.applyAsLong(new Values()), "primitive path");
+		assertThrows(IllegalStateException.class, () -> getter.getValue(new Values()), "object path");
+	}
+	
+	private static ValueGetter field(String name)
+	{
+		try {
+			return new ValueGetter(Values.class.getField(name));
+		} catch (NoSuchFieldException e) {
+			throw new AssertionError(e);
+		}
+	}
+	
+	public static class Values
+	{
+		public byte b = -3;
+		public char c = 'x';
+		public long l = 1L << 40;
+		public float f = 2.5f;
+		public double d = -0.25;
+		public boolean z = true;
+		public Integer boxed = 12;
+		public String name = "name";
+		
+		public double getHalf()
+		{
+			return boxed / 2.0;
+		}
+		
+		public Long getBoxedLong()
+		{
+			return 1L << 40;
+		}
+		
+		public int getBroken()
+		{
+			throw new IllegalStateException();
+		}
+	}
+	
+	private static class Hidden
+	{
+		private int secret = 42;
+		
+		private int getSecret()
+		{
+			return secret + 1;
+		}
+	}
+	
+}